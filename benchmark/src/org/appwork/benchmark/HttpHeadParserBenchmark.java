@@ -0,0 +1,102 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.appwork.utils.Regex;
+import org.appwork.utils.net.httpserver.HttpConnection;
+import org.appwork.utils.net.httpserver.HttpRequestHeadParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * request head parsing: HttpRequestHeadParser compared with the readheader/String/Regex path of HttpConnection
+ *
+ * @author thomas
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HttpHeadParserBenchmark {
+    private static class LegacyParser extends HttpConnection {
+        private InputStream is;
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return this.is;
+        }
+
+        private Object parse(final InputStream is) throws IOException {
+            this.is = is;
+            final String requestLine = this.parseRequestLine();
+            final String requestedURL = new Regex(requestLine, "\\s+(.+)\\s+HTTP/").getMatch(0);
+            final String requestedPath = new Regex(requestedURL, "^(/.*?)($|\\?)").getMatch(0);
+            return new Object[] { this.parseConnectionType(requestLine), requestedPath, this.parseRequestURLParams(requestedURL), this.parseRequestHeaders() };
+        }
+    }
+
+    /* typical RemoteAPI call of a browser */
+    private static final String   REQUEST = "GET /downloadsV2/queryLinks?params=%7B%22bytesLoaded%22%3Atrue%2C%22status%22%3Atrue%7D&_=1539849381 HTTP/1.1\r\nHost: 127.0.0.1:3128\r\nConnection: keep-alive\r\nAccept: application/json, text/javascript, */*; q=0.01\r\nOrigin: http://my.jdownloader.org\r\nUser-Agent: Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/70.0.3538.67 Safari/537.36\r\nReferer: http://my.jdownloader.org/\r\nAccept-Encoding: gzip, deflate, br\r\nAccept-Language: de-DE,de;q=0.9,en-US;q=0.8,en;q=0.7\r\nCookie: session=0123456789abcdef\r\n\r\n";
+    private byte[]                bytes;
+    private LegacyParser          legacy;
+    private HttpRequestHeadParser parser;
+
+    @Setup
+    public void setup() throws Exception {
+        this.bytes = REQUEST.getBytes("ISO-8859-1");
+        this.legacy = new LegacyParser();
+        this.parser = new HttpRequestHeadParser();
+    }
+
+    @Benchmark
+    public Object legacyParser() throws IOException {
+        return this.legacy.parse(new ByteArrayInputStream(this.bytes));
+    }
+
+    @Benchmark
+    public Object headParser() throws IOException {
+        this.parser.parse(new ByteArrayInputStream(this.bytes));
+        return this.parser.getHeaders();
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.appwork.storage.simplejson.JSonFactory;
+import org.appwork.storage.simplejson.JSonNode;
+import org.appwork.storage.simplejson.JSonStreamParser;
+import org.appwork.storage.simplejson.JSonStreamWriter;
+import org.appwork.storage.simplejson.mapper.JSonMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * JSonMapper object <-> tree <-> json, and the streaming variants that skip the tree
+ *
+ * @author thomas
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JSonMapperBenchmark {
+    @Param({ "SMALL", "LIST_10K", "DEEP" })
+    public Payloads    payload;
+    private JSonMapper mapper;
+    private Object     object;
+    private JSonNode   tree;
+    private byte[]     bytes;
+
+    @Setup
+    public void setup() throws Exception {
+        this.mapper = new JSonMapper();
+        this.object = this.payload.create();
+        final String json = this.payload.createJSon();
+        this.tree = new JSonFactory(json).parse();
+        this.bytes = json.getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public JSonNode create() throws Exception {
+        return this.mapper.create(this.object);
+    }
+
+    @Benchmark
+    public String createToString() throws Exception {
+        return this.mapper.create(this.object).toString();
+    }
+
+    @Benchmark
+    public int write() throws Exception {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final JSonStreamWriter writer = new JSonStreamWriter(bos);
+        this.mapper.write(this.object, writer);
+        writer.close();
+        return bos.size();
+    }
+
+    @Benchmark
+    public Object jsonToObjectTree() throws Exception {
+        return this.mapper.jsonToObject(this.tree, this.payload.getType());
+    }
+
+    @Benchmark
+    public Object jsonToObjectStream() throws Exception {
+        return this.mapper.jsonToObject(new JSonStreamParser(this.bytes), this.payload.getType());
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.appwork.storage.JSonStorage;
+import org.appwork.storage.TypeRef;
+import org.appwork.utils.Application;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * contention on the JSonStorage storage registry and file locks. compare the 1 thread and the Threads.MAX results, the per thread throughput
+ * should not collapse when all cores access the storage at the same time
+ *
+ * @author thomas
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JSonStorageBenchmark {
+    @State(Scope.Benchmark)
+    public static class Shared {
+        private File home;
+
+        @Setup
+        public void setup() throws Exception {
+            Application.setApplication(".appwork-benchmark");
+            this.home = new File(System.getProperty("java.io.tmpdir"), "appwork-benchmark");
+            this.home.mkdirs();
+            JSonStorage.getPlainStorage("benchmark");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PerThread {
+        private File file;
+
+        @Setup
+        public void setup(final Shared shared) throws Exception {
+            this.file = new File(shared.home, "lock_" + Thread.currentThread().getId() + ".json");
+            JSonStorage.saveTo(this.file, true, null, "{\"a\":1}");
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object registryLookup_1() {
+        return JSonStorage.getPlainStorage("benchmark");
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Object registryLookup_max() {
+        return JSonStorage.getPlainStorage("benchmark");
+    }
+
+    /**
+     * every thread uses its own file, so only the lock registry is shared
+     */
+    @Benchmark
+    @Threads(1)
+    public Object distinctFiles_1(final PerThread state) {
+        return JSonStorage.restoreFrom(state.file, true, null, TypeRef.HASHMAP, null);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Object distinctFiles_max(final PerThread state) {
+        return JSonStorage.restoreFrom(state.file, true, null, TypeRef.HASHMAP, null);
+    }
+}
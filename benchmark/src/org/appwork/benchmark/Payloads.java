@@ -0,0 +1,214 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.appwork.storage.Storable;
+import org.appwork.storage.TypeRef;
+import org.appwork.storage.simplejson.mapper.JSonMapper;
+import org.appwork.storage.simplejson.mapper.MapperException;
+
+/**
+ * Representative payloads for the benchmarks: a small config like object, a list with 10k entries and a deep nested object
+ *
+ * @author thomas
+ *
+ */
+public enum Payloads {
+    SMALL {
+        @Override
+        public Object create() {
+            return Payloads.createEntry(1);
+        }
+
+        @Override
+        public TypeRef<?> getType() {
+            return new TypeRef<Entry>() {
+            };
+        }
+    },
+    LIST_10K {
+        @Override
+        public Object create() {
+            final ArrayList<Entry> ret = new ArrayList<Entry>();
+            for (int i = 0; i < 10000; i++) {
+                ret.add(Payloads.createEntry(i));
+            }
+            return ret;
+        }
+
+        @Override
+        public TypeRef<?> getType() {
+            return new TypeRef<ArrayList<Entry>>() {
+            };
+        }
+    },
+    DEEP {
+        @Override
+        public Object create() {
+            final Node root = new Node();
+            Node node = root;
+            for (int i = 0; i < 100; i++) {
+                node.setName("node" + i);
+                node.setEntry(Payloads.createEntry(i));
+                node.setChild(new Node());
+                node = node.getChild();
+            }
+            return root;
+        }
+
+        @Override
+        public TypeRef<?> getType() {
+            return new TypeRef<Node>() {
+            };
+        }
+    };
+
+    public abstract Object create();
+
+    public abstract TypeRef<?> getType();
+
+    public String createJSon() throws MapperException {
+        return new JSonMapper().create(this.create()).toString();
+    }
+
+    private static Entry createEntry(final int i) {
+        final Entry ret = new Entry();
+        ret.setId(i);
+        ret.setName("Entry äöü " + i);
+        ret.setEnabled(i % 2 == 0);
+        ret.setRatio(i / 3d);
+        ret.setTags(new String[] { "a", "b\"c", "d\\e" });
+        final HashMap<String, Long> map = new HashMap<String, Long>();
+        map.put("size", i * 1024l);
+        map.put("time", 1400000000000l + i);
+        ret.setProperties(map);
+        return ret;
+    }
+
+    public static class Entry implements Storable {
+        private long                  id;
+        private String                name;
+        private boolean               enabled;
+        private double                ratio;
+        private String[]              tags;
+        private HashMap<String, Long> properties;
+
+        public Entry(/* storable */) {
+        }
+
+        public long getId() {
+            return this.id;
+        }
+
+        public void setId(final long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public void setName(final String name) {
+            this.name = name;
+        }
+
+        public boolean isEnabled() {
+            return this.enabled;
+        }
+
+        public void setEnabled(final boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getRatio() {
+            return this.ratio;
+        }
+
+        public void setRatio(final double ratio) {
+            this.ratio = ratio;
+        }
+
+        public String[] getTags() {
+            return this.tags;
+        }
+
+        public void setTags(final String[] tags) {
+            this.tags = tags;
+        }
+
+        public HashMap<String, Long> getProperties() {
+            return this.properties;
+        }
+
+        public void setProperties(final HashMap<String, Long> properties) {
+            this.properties = properties;
+        }
+    }
+
+    public static class Node implements Storable {
+        private String name;
+        private Entry  entry;
+        private Node   child;
+
+        public Node(/* storable */) {
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public void setName(final String name) {
+            this.name = name;
+        }
+
+        public Entry getEntry() {
+            return this.entry;
+        }
+
+        public void setEntry(final Entry entry) {
+            this.entry = entry;
+        }
+
+        public Node getChild() {
+            return this.child;
+        }
+
+        public void setChild(final Node child) {
+            this.child = child;
+        }
+    }
+}
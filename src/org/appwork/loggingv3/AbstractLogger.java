@@ -42,13 +42,14 @@ import org.appwork.utils.logging2.LogInterface;
  */
 public abstract class AbstractLogger implements LogInterface {
     public static StackTraceElement getThrownAt() {
+        return getThrownAt(new Exception().getStackTrace());
+    }
+
+    public static StackTraceElement getThrownAt(final StackTraceElement[] stackTrace) {
         StackTraceElement last = null;
-        for (StackTraceElement es : new Exception().getStackTrace()) {
+        for (StackTraceElement es : stackTrace) {
             last = es;
-            if (es.getClassName().startsWith(LogV3.class.getPackage().getName()) || es.getClassName().startsWith("org.slf4j.") || es.getClassName().contains("Logger") || es.getClassName().contains("logging")) {
-                continue;
-            }
-            if (es.getMethodName().equals("log") || es.getMethodName().equals("info") || es.getMethodName().equals("messageLogged") || es.getMethodName().equals("fireMessageLoggedEvent") || es.getMethodName().equals("fireMessageLogged") || es.getMethodName().contains("Logger") || es.getMethodName().contains("logger")) {
+            if (isLoggingFrame(es.getClassName(), es.getMethodName())) {
                 continue;
             }
             return es;
@@ -56,6 +57,19 @@ public abstract class AbstractLogger implements LogInterface {
         return last;
     }
 
+    /**
+     * @return true if the frame belongs to the logging code and not to the caller
+     */
+    public static boolean isLoggingFrame(final String className, final String methodName) {
+        if (className.startsWith(LogV3.class.getPackage().getName()) || className.startsWith("org.slf4j.") || className.contains("Logger") || className.contains("logging")) {
+            return true;
+        }
+        if (methodName.equals("log") || methodName.equals("info") || methodName.equals("messageLogged") || methodName.equals("fireMessageLoggedEvent") || methodName.equals("fireMessageLogged") || methodName.contains("Logger") || methodName.contains("logger")) {
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public void log(Throwable e) {
         info(getStackTrace(e));
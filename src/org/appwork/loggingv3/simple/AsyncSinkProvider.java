@@ -0,0 +1,341 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.loggingv3.simple;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * decouples the logging threads from the sinks. records are put into a bounded multi producer/single consumer ring buffer and handed to
+ * the target by one writer thread. if the target is {@link Flushable}, it gets flushed after maxBatchSize records or after flushInterval,
+ * whatever comes first
+ *
+ * @author Thomas
+ * @date 18.10.2026
+ *
+ */
+public class AsyncSinkProvider implements SinkProvider {
+    public static enum OverflowPolicy {
+        /**
+         * the logging thread waits until there is space in the buffer
+         */
+        BLOCK,
+        /**
+         * the record is dropped and counted
+         */
+        DROP,
+        /**
+         * the logging thread publishes the record itself
+         */
+        CALLER_RUNS
+    }
+
+    private final SinkProvider                     target;
+    private final OverflowPolicy                   overflowPolicy;
+    private final AtomicReferenceArray<LogRecord2> buffer;
+    /* Vyukov style slot sequences, a slot is readable at sequence pos+1 and writable at pos */
+    private final AtomicLongArray                  sequences;
+    private final int                              mask;
+    private final AtomicLong                       tail          = new AtomicLong(0);
+    private volatile long                          head          = 0;
+    private final AtomicLong                       dropped       = new AtomicLong(0);
+    private final AtomicLong                       published     = new AtomicLong(0);
+    private volatile boolean                       running       = true;
+    private volatile boolean                       sleeping      = false;
+    private volatile int                           maxBatchSize  = 256;
+    private volatile long                          flushInterval = 500;
+    private final Thread                           writer;
+    private final Thread                           shutdownHook;
+
+    /**
+     * @param capacity
+     *            rounded up to the next power of two
+     */
+    public AsyncSinkProvider(final SinkProvider target, final int capacity, final OverflowPolicy overflowPolicy) {
+        if (target == null) {
+            throw new IllegalArgumentException("target is null");
+        }
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.target = target;
+        this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.BLOCK : overflowPolicy;
+        this.buffer = new AtomicReferenceArray<LogRecord2>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.writer = new Thread("LogV3: AsyncSinkProvider") {
+            @Override
+            public void run() {
+                AsyncSinkProvider.this.runWriter();
+            }
+        };
+        this.writer.setDaemon(true);
+        this.writer.start();
+        this.shutdownHook = new Thread("ShutdownHook: AsyncSinkProvider") {
+            @Override
+            public void run() {
+                AsyncSinkProvider.this.close();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(this.shutdownHook);
+    }
+
+    public SinkProvider getTarget() {
+        return this.target;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    public int getCapacity() {
+        return this.buffer.length();
+    }
+
+    public int getMaxBatchSize() {
+        return this.maxBatchSize;
+    }
+
+    public void setMaxBatchSize(final int maxBatchSize) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    public long getFlushInterval() {
+        return this.flushInterval;
+    }
+
+    public void setFlushInterval(final long flushInterval) {
+        this.flushInterval = Math.max(1, flushInterval);
+    }
+
+    /**
+     * @return number of records that got lost because the buffer was full
+     */
+    public long getDroppedRecords() {
+        return this.dropped.get();
+    }
+
+    /**
+     * @return number of records that wait for the writer thread
+     */
+    public int getQueuedRecords() {
+        return (int) Math.max(0, this.tail.get() - this.head);
+    }
+
+    /**
+     * @return number of records the writer thread handed to the target
+     */
+    public long getPublishedRecords() {
+        return this.published.get();
+    }
+
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    @Override
+    public void publish(final LogRecord2 record) {
+        if (record == null) {
+            return;
+        } else if (!this.running || Thread.currentThread() == this.writer) {
+            /* closed, or a sink logs itself */
+            this.target.publish(record);
+        } else if (this.offer(record)) {
+            this.wakeup();
+        } else {
+            switch (this.overflowPolicy) {
+            case DROP:
+                this.dropped.incrementAndGet();
+                break;
+            case CALLER_RUNS:
+                this.target.publish(record);
+                break;
+            default:
+                while (!this.offer(record)) {
+                    if (!this.running) {
+                        this.target.publish(record);
+                        return;
+                    }
+                    this.wakeup();
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                }
+                this.wakeup();
+                break;
+            }
+        }
+    }
+
+    private boolean offer(final LogRecord2 record) {
+        long pos;
+        int index;
+        while (true) {
+            pos = this.tail.get();
+            index = (int) (pos & this.mask);
+            final long diff = this.sequences.get(index) - pos;
+            if (diff == 0) {
+                if (this.tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+            } else if (diff < 0) {
+                /* full */
+                return false;
+            }
+        }
+        this.buffer.set(index, record);
+        this.sequences.lazySet(index, pos + 1);
+        return true;
+    }
+
+    /**
+     * only called by the writer thread
+     */
+    private LogRecord2 poll() {
+        final long pos = this.head;
+        final int index = (int) (pos & this.mask);
+        if (this.sequences.get(index) != pos + 1) {
+            return null;
+        }
+        final LogRecord2 ret = this.buffer.get(index);
+        this.buffer.lazySet(index, null);
+        this.sequences.lazySet(index, pos + this.buffer.length());
+        this.head = pos + 1;
+        return ret;
+    }
+
+    private void wakeup() {
+        if (this.sleeping) {
+            this.sleeping = false;
+            LockSupport.unpark(this.writer);
+        }
+    }
+
+    private void runWriter() {
+        long lastFlush = System.currentTimeMillis();
+        int unflushed = 0;
+        while (true) {
+            LogRecord2 record;
+            int batch = 0;
+            final int maxBatchSize = this.getMaxBatchSize();
+            while (batch < maxBatchSize && (record = this.poll()) != null) {
+                try {
+                    this.target.publish(record);
+                } catch (final Throwable e) {
+                    e.printStackTrace();
+                }
+                this.published.incrementAndGet();
+                batch++;
+            }
+            unflushed += batch;
+            final long now = System.currentTimeMillis();
+            final long flushIn = lastFlush + this.getFlushInterval() - now;
+            if (unflushed > 0 && (unflushed >= maxBatchSize || flushIn <= 0)) {
+                this.flush();
+                unflushed = 0;
+                lastFlush = now;
+            } else if (batch == 0) {
+                if (!this.running) {
+                    if (unflushed > 0) {
+                        this.flush();
+                    }
+                    return;
+                }
+                this.sleeping = true;
+                /* recheck, a producer may have missed the flag */
+                if (this.tail.get() == this.head) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(unflushed > 0 ? Math.max(1, flushIn) : this.getFlushInterval()));
+                }
+                this.sleeping = false;
+            }
+        }
+    }
+
+    private void flush() {
+        try {
+            this.flushTarget();
+        } catch (final Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * called by the writer thread after a batch
+     */
+    protected void flushTarget() throws IOException {
+        if (this.target instanceof Flushable) {
+            ((Flushable) this.target).flush();
+        }
+    }
+
+    /**
+     * publishes and flushes all queued records and stops the writer thread. records logged after this are published by the logging thread.
+     * synchronized, because the shutdown hooks of this provider and of its sinks may close it at the same time
+     */
+    public synchronized void close() {
+        this.running = false;
+        LockSupport.unpark(this.writer);
+        if (Thread.currentThread() == this.writer) {
+            return;
+        }
+        try {
+            this.writer.join(5000);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!this.writer.isAlive()) {
+            /* records of producers that passed the running check right before close */
+            LogRecord2 record;
+            while ((record = this.poll()) != null) {
+                this.target.publish(record);
+                this.published.incrementAndGet();
+            }
+            this.flush();
+        }
+        if (Thread.currentThread() != this.shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(this.shutdownHook);
+            } catch (final IllegalStateException e) {
+                /* shutdown in progress */
+            }
+        }
+    }
+}
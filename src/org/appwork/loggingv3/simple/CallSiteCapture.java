@@ -0,0 +1,163 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.loggingv3.simple;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Iterator;
+
+import org.appwork.loggingv3.AbstractLogger;
+
+/**
+ * how a {@link LogRecord2} finds the source of the log call
+ *
+ * @author Thomas
+ * @date 18.10.2026
+ *
+ */
+public enum CallSiteCapture {
+    /**
+     * no source, for hot loops or formatters that do not print it
+     */
+    NONE,
+    /**
+     * java 9+ uses the StackWalker and stops at the first frame outside of the logging code. older jvms keep the unresolved stack and
+     * create the StackTraceElements only if a formatter asks for the source
+     */
+    LAZY,
+    /**
+     * the full stack is resolved in the logging thread
+     */
+    EAGER;
+
+    /**
+     * @return a StackTraceElement, a Throwable that still has to be resolved, or null
+     */
+    Object capture() {
+        switch (this) {
+        case NONE:
+            return null;
+        case LAZY:
+            if (Walker.FUNCTION != null) {
+                return Walker.walk();
+            }
+            return new Exception();
+        default:
+            return AbstractLogger.getThrownAt();
+        }
+    }
+
+    static StackTraceElement resolve(final Object callSite) {
+        if (callSite instanceof Throwable) {
+            return AbstractLogger.getThrownAt(((Throwable) callSite).getStackTrace());
+        }
+        return (StackTraceElement) callSite;
+    }
+
+    /**
+     * java.lang.StackWalker by reflection, this lib still compiles for 1.6
+     */
+    private static class Walker implements InvocationHandler {
+        private static final Object WALKER;
+        private static final Method WALK;
+        private static final Method ITERATOR;
+        private static final Method GET_CLASS_NAME;
+        private static final Method GET_METHOD_NAME;
+        private static final Method TO_STACK_TRACE_ELEMENT;
+        /* stateless java.util.function.Function<Stream<StackFrame>, StackTraceElement> */
+        private static final Object FUNCTION;
+        static {
+            Object walker = null;
+            Method walk = null;
+            Method iterator = null;
+            Method getClassName = null;
+            Method getMethodName = null;
+            Method toStackTraceElement = null;
+            Object function = null;
+            try {
+                final Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+                final Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+                final Class<?> functionClass = Class.forName("java.util.function.Function");
+                walker = walkerClass.getMethod("getInstance").invoke(null);
+                walk = walkerClass.getMethod("walk", functionClass);
+                iterator = Class.forName("java.util.stream.BaseStream").getMethod("iterator");
+                getClassName = frameClass.getMethod("getClassName");
+                getMethodName = frameClass.getMethod("getMethodName");
+                toStackTraceElement = frameClass.getMethod("toStackTraceElement");
+                function = Proxy.newProxyInstance(Walker.class.getClassLoader(), new Class<?>[] { functionClass }, new Walker());
+            } catch (final Throwable e) {
+                /* java < 9 */
+                function = null;
+            }
+            WALKER = walker;
+            WALK = walk;
+            ITERATOR = iterator;
+            GET_CLASS_NAME = getClassName;
+            GET_METHOD_NAME = getMethodName;
+            TO_STACK_TRACE_ELEMENT = toStackTraceElement;
+            FUNCTION = function;
+        }
+
+        private static StackTraceElement walk() {
+            try {
+                return (StackTraceElement) WALK.invoke(WALKER, FUNCTION);
+            } catch (final Throwable e) {
+                return AbstractLogger.getThrownAt();
+            }
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            if ("apply".equals(method.getName())) {
+                final Iterator<?> it = (Iterator<?>) ITERATOR.invoke(args[0]);
+                Object last = null;
+                while (it.hasNext()) {
+                    last = it.next();
+                    if (!AbstractLogger.isLoggingFrame((String) GET_CLASS_NAME.invoke(last), (String) GET_METHOD_NAME.invoke(last))) {
+                        break;
+                    }
+                }
+                return last == null ? null : TO_STACK_TRACE_ELEMENT.invoke(last);
+            } else if ("hashCode".equals(method.getName())) {
+                return System.identityHashCode(proxy);
+            } else if ("equals".equals(method.getName())) {
+                return proxy == args[0];
+            } else if ("toString".equals(method.getName())) {
+                return "StackWalker call site function";
+            }
+            throw new UnsupportedOperationException(method.toString());
+        }
+    }
+}
@@ -35,7 +35,6 @@ package org.appwork.loggingv3.simple;
 
 import java.util.logging.LogRecord;
 
-import org.appwork.loggingv3.AbstractLogger;
 import org.appwork.utils.logging2.LogInterface;
 
 /**
@@ -48,6 +47,8 @@ public class LogRecord2 {
     public final Thread       thread;
     public final long         timestamp;
     private StackTraceElement thrownAt;
+    /* unresolved call site, see CallSiteCapture */
+    private Object            callSite;
     private LogInterface      logger;
     private LogV3Level        level = LogV3Level.UNDEFINED;
 
@@ -64,11 +65,15 @@ public class LogRecord2 {
      * @param msg
      */
     public LogRecord2(LogInterface logger, String msg) {
+        this(logger, msg, CallSiteCapture.LAZY);
+    }
+
+    public LogRecord2(LogInterface logger, String msg, CallSiteCapture callSiteCapture) {
         this.logger = logger;
         this.message = msg;
         thread = Thread.currentThread();
         timestamp = System.currentTimeMillis();
-        thrownAt = AbstractLogger.getThrownAt();
+        callSite = callSiteCapture == null ? null : callSiteCapture.capture();
     }
 
     /**
@@ -80,7 +85,7 @@ public class LogRecord2 {
         this.message = record.getMessage();
         thread = Thread.currentThread();
         timestamp = record.getMillis();
-        thrownAt = AbstractLogger.getThrownAt();
+        callSite = CallSiteCapture.LAZY.capture();
     }
 
     public LogRecord2 level(LogV3Level level) {
@@ -92,9 +97,14 @@ public class LogRecord2 {
     }
 
     /**
-     * @return
+     * @return the source of the log call, null if it was not captured
      */
     public StackTraceElement getThrownAt() {
+        final Object callSite = this.callSite;
+        if (callSite != null) {
+            thrownAt = CallSiteCapture.resolve(callSite);
+            this.callSite = null;
+        }
         return thrownAt;
     }
 }
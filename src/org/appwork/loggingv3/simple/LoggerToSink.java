@@ -33,6 +33,8 @@
  * ==================================================================================================================================================== */
 package org.appwork.loggingv3.simple;
 
+import java.util.EnumMap;
+
 import org.appwork.loggingv3.AbstractLogger;
 
 /**
@@ -41,13 +43,50 @@ import org.appwork.loggingv3.AbstractLogger;
  *
  */
 public class LoggerToSink extends AbstractLogger {
-    protected final SinkProvider sinkProvider;
+    protected final SinkProvider                            sinkProvider;
+    protected final String                                  name;
+    protected volatile EnumMap<LogV3Level, CallSiteCapture> callSiteCapture = new EnumMap<LogV3Level, CallSiteCapture>(LogV3Level.class);
 
     /**
      * @param simpleLoggerFactory
      */
     public LoggerToSink(SinkProvider sinkprovider) {
+        this(sinkprovider, null);
+    }
+
+    /**
+     * @param name
+     *            the name this logger has been created for, see {@link SimpleLoggerFactory#getLogger(Object)}
+     */
+    public LoggerToSink(SinkProvider sinkprovider, String name) {
         this.sinkProvider = sinkprovider;
+        this.name = name;
+    }
+
+    /**
+     * @return the name of the logger or null
+     */
+    public String getName() {
+        return name;
+    }
+
+    public CallSiteCapture getCallSiteCapture(LogV3Level level) {
+        final CallSiteCapture ret = callSiteCapture.get(level);
+        return ret == null ? CallSiteCapture.LAZY : ret;
+    }
+
+    /**
+     * @param capture
+     *            how records of this level find their source, e.g. {@link CallSiteCapture#NONE} for hot info logging
+     */
+    public synchronized void setCallSiteCapture(LogV3Level level, CallSiteCapture capture) {
+        final EnumMap<LogV3Level, CallSiteCapture> map = new EnumMap<LogV3Level, CallSiteCapture>(callSiteCapture);
+        if (capture == null) {
+            map.remove(level);
+        } else {
+            map.put(level, capture);
+        }
+        callSiteCapture = map;
     }
 
     @Override
@@ -55,12 +94,12 @@ public class LoggerToSink extends AbstractLogger {
         if (msg == null || msg.trim().length() == 0) {
             return;
         }
-        sinkProvider.publish(new LogRecord2(this, msg));
+        sinkProvider.publish(new LogRecord2(this, msg, getCallSiteCapture(LogV3Level.UNDEFINED)));
     }
 
     @Override
     public void log(Throwable e) {
-        sinkProvider.publish(new LogRecord2(this, getStackTrace(e)).level(LogV3Level.EXCEPTION));
+        sinkProvider.publish(new LogRecord2(this, getStackTrace(e), getCallSiteCapture(LogV3Level.EXCEPTION)).level(LogV3Level.EXCEPTION));
     }
 
     /*
@@ -70,6 +109,6 @@ public class LoggerToSink extends AbstractLogger {
      */
     @Override
     public void exception(String msg, Throwable e) {
-        sinkProvider.publish(new LogRecord2(this, msg + "\r\n" + getStackTrace(e)).level(LogV3Level.EXCEPTION));
+        sinkProvider.publish(new LogRecord2(this, msg + "\r\n" + getStackTrace(e), getCallSiteCapture(LogV3Level.EXCEPTION)).level(LogV3Level.EXCEPTION));
     }
 }
@@ -33,11 +33,16 @@
  * ==================================================================================================================================================== */
 package org.appwork.loggingv3.simple;
 
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.Map.Entry;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.appwork.loggingv3.LogV3;
 import org.appwork.loggingv3.LogV3Factory;
+import org.appwork.loggingv3.simple.sink.LogToBinaryFileSink;
 import org.appwork.loggingv3.simple.sink.LogToFileSink;
 import org.appwork.loggingv3.simple.sink.LogToStdOutSink;
 import org.appwork.loggingv3.simple.sink.Sink;
@@ -48,10 +53,12 @@ import org.appwork.utils.logging2.LogInterface;
  * @date 19.09.2018
  *
  */
-public class SimpleLoggerFactory implements LogV3Factory, SinkProvider {
-    protected final CopyOnWriteArrayList<Sink>    sinks  = new CopyOnWriteArrayList<Sink>();
-    protected final HashMap<String, LoggerToSink> logger = new HashMap<String, LoggerToSink>();
-    protected LogToFileSink                       sinkToFile;
+public class SimpleLoggerFactory implements LogV3Factory, SinkProvider, Flushable {
+    protected final CopyOnWriteArrayList<Sink>           sinks           = new CopyOnWriteArrayList<Sink>();
+    protected final HashMap<String, LoggerToSink>        logger          = new HashMap<String, LoggerToSink>();
+    protected LogToFileSink                              sinkToFile;
+    protected volatile AsyncSinkProvider                 async;
+    protected final EnumMap<LogV3Level, CallSiteCapture> callSiteCapture = new EnumMap<LogV3Level, CallSiteCapture>(LogV3Level.class);
 
     public LogToFileSink getSinkToFile() {
         return sinkToFile;
@@ -113,13 +120,32 @@ public class SimpleLoggerFactory implements LogV3Factory, SinkProvider {
             synchronized (logger) {
                 LoggerToSink ret = logger.get(name.toString());
                 if (ret == null) {
-                    logger.put(name.toString(), ret = new LoggerToSink(this));
+                    logger.put(name.toString(), ret = new LoggerToSink(this, name.toString()));
+                    for (final Entry<LogV3Level, CallSiteCapture> es : callSiteCapture.entrySet()) {
+                        ret.setCallSiteCapture(es.getKey(), es.getValue());
+                    }
                 }
                 return ret;
             }
         }
     }
 
+    /**
+     * sets how records of this level find their source for all existing and future loggers
+     */
+    public void setCallSiteCapture(LogV3Level level, CallSiteCapture capture) {
+        synchronized (logger) {
+            if (capture == null) {
+                callSiteCapture.remove(level);
+            } else {
+                callSiteCapture.put(level, capture);
+            }
+            for (final LoggerToSink l : logger.values()) {
+                l.setCallSiteCapture(level, capture);
+            }
+        }
+    }
+
     @Override
     public LogInterface getDefaultLogger() {
         return getLogger(LogV3.class.getSimpleName());
@@ -130,6 +156,9 @@ public class SimpleLoggerFactory implements LogV3Factory, SinkProvider {
      */
     public void addSink(Sink sink) {
         if (sink != null) {
+            if (async != null) {
+                setAsyncSource(sink, async);
+            }
             sinks.addIfAbsent(sink);
         }
     }
@@ -138,15 +167,91 @@ public class SimpleLoggerFactory implements LogV3Factory, SinkProvider {
      * @param logToFileSink
      */
     public void removeSink(Sink sink) {
-        if (sink != null) {
-            sinks.remove(sink);
+        if (sink != null && sinks.remove(sink)) {
+            setAsyncSource(sink, null);
+        }
+    }
+
+    public AsyncSinkProvider getAsync() {
+        return async;
+    }
+
+    /**
+     * from now on the sinks get the records from a single writer thread. file sinks get flushed per batch instead of per record
+     *
+     * @param capacity
+     *            max number of queued records
+     */
+    public synchronized AsyncSinkProvider startAsync(int capacity, AsyncSinkProvider.OverflowPolicy overflowPolicy) {
+        stopAsync();
+        final AsyncSinkProvider ret = new AsyncSinkProvider(new SinkProvider() {
+            @Override
+            public void publish(LogRecord2 record) {
+                publishToSinks(record);
+            }
+        }, capacity, overflowPolicy) {
+            @Override
+            protected void flushTarget() throws IOException {
+                SimpleLoggerFactory.this.flush();
+            }
+        };
+        async = ret;
+        setAsyncSource(ret);
+        return ret;
+    }
+
+    /**
+     * publishes all queued records and switches back to synchronous publishing
+     */
+    public synchronized void stopAsync() {
+        final AsyncSinkProvider async = this.async;
+        if (async != null) {
+            this.async = null;
+            async.close();
+            setAsyncSource(null);
+        }
+    }
+
+    /**
+     * file sinks flush per batch and drain the async provider before they close on shutdown
+     */
+    private void setAsyncSource(AsyncSinkProvider async) {
+        for (final Sink sink : sinks) {
+            setAsyncSource(sink, async);
+        }
+    }
+
+    private static void setAsyncSource(Sink sink, AsyncSinkProvider async) {
+        if (sink instanceof LogToFileSink) {
+            ((LogToFileSink) sink).setAutoFlush(async == null);
+            ((LogToFileSink) sink).setAsyncSource(async);
+        } else if (sink instanceof LogToBinaryFileSink) {
+            ((LogToBinaryFileSink) sink).setAsyncSource(async);
         }
     }
 
     @Override
     public void publish(LogRecord2 record) {
+        final AsyncSinkProvider async = this.async;
+        if (async != null) {
+            async.publish(record);
+        } else {
+            publishToSinks(record);
+        }
+    }
+
+    protected void publishToSinks(LogRecord2 record) {
         for (final Sink sink : sinks) {
             sink.publish(record);
         }
     }
+
+    @Override
+    public void flush() throws IOException {
+        for (final Sink sink : sinks) {
+            if (sink instanceof Flushable) {
+                ((Flushable) sink).flush();
+            }
+        }
+    }
 }
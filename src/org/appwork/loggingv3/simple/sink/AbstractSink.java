@@ -33,8 +33,12 @@
  * ==================================================================================================================================================== */
 package org.appwork.loggingv3.simple.sink;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 import org.appwork.loggingv3.simple.Formatter;
 import org.appwork.loggingv3.simple.LogRecord2;
+import org.appwork.loggingv3.simple.UTF8Formatter;
 
 /**
  * @author Thomas
@@ -42,7 +46,9 @@ import org.appwork.loggingv3.simple.LogRecord2;
  *
  */
 public abstract class AbstractSink implements Sink {
-    private Formatter formatter;
+    private Formatter     formatter;
+    /* a subclass that customizes format() must not be bypassed by the UTF8Formatter byte path */
+    private final boolean formatOverridden = isFormatOverridden(getClass());
 
     /**
      *
@@ -63,6 +69,35 @@ public abstract class AbstractSink implements Sink {
         return formatter.format(record);
     }
 
+    /**
+     * writes the formatted record followed by \r\n as UTF-8. Uses {@link UTF8Formatter#formatUTF8(LogRecord2, OutputStream)} if the
+     * formatter supports it and {@link #format(LogRecord2)} is not overridden
+     *
+     * @param record
+     * @param os
+     * @throws IOException
+     */
+    protected void formatUTF8(LogRecord2 record, OutputStream os) throws IOException {
+        final Formatter formatter = this.formatter;
+        if (!formatOverridden && formatter instanceof UTF8Formatter) {
+            ((UTF8Formatter) formatter).formatUTF8(record, os);
+        } else {
+            os.write((format(record) + "\r\n").getBytes("UTF-8"));
+        }
+    }
+
+    private static boolean isFormatOverridden(Class<?> cls) {
+        for (; cls != AbstractSink.class; cls = cls.getSuperclass()) {
+            try {
+                cls.getDeclaredMethod("format", LogRecord2.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // check the super class
+            }
+        }
+        return false;
+    }
+
     public AbstractSink setFormatter(Formatter formatter) {
         this.formatter = formatter;
         return this;
@@ -0,0 +1,428 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.loggingv3.simple.sink;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import org.appwork.loggingv3.simple.LogV3Level;
+
+/**
+ * reads files of the {@link LogToBinaryFileSink}. Only the block headers are read when the file is opened, queries by time range and
+ * logger read the payload of the matching blocks only.
+ *
+ * @author Thomas
+ * @date 18.10.2026
+ *
+ */
+public class BinaryLogReader implements Closeable {
+    public static class Record {
+        public final long       timestamp;
+        public final LogV3Level level;
+        public final long       threadID;
+        public final String     threadName;
+        public final String     logger;
+        public final String     message;
+
+        private Record(long timestamp, LogV3Level level, long threadID, String threadName, String logger, String message) {
+            this.timestamp = timestamp;
+            this.level = level;
+            this.threadID = threadID;
+            this.threadName = threadName;
+            this.logger = logger;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return timestamp + " " + level + " " + threadID + "(" + threadName + ") " + logger + ": " + message;
+        }
+    }
+
+    public static interface RecordHandler {
+        /**
+         * @return false to stop reading
+         */
+        boolean onRecord(Record record);
+    }
+
+    /**
+     * thread and logger names. copied on change, so blocks share the instance until a block defines new names
+     */
+    private static class Names {
+        private final HashMap<Integer, String> byID;
+        private final HashMap<String, Integer> byName;
+
+        private Names(Names copy) {
+            byID = copy == null ? new HashMap<Integer, String>() : new HashMap<Integer, String>(copy.byID);
+            byName = copy == null ? new HashMap<String, Integer>() : new HashMap<String, Integer>(copy.byName);
+        }
+    }
+
+    private static class Block {
+        private long   offset;
+        private byte[] header;
+        private int    payloadLength;
+        private int    crc;
+        private long   baseTime;
+        private long   minTime;
+        private long   maxTime;
+        private int    records;
+        private int[]  loggers;
+        private Names  names;
+    }
+
+    private final File             file;
+    private final RandomAccessFile raf;
+    private final ArrayList<Block> blocks = new ArrayList<Block>();
+    /* maxTime of block 0..i, to find the first block of a time range */
+    private long[]                 maxTimeUntil;
+    /* minTime of block i..n, to find the last block of a time range */
+    private long[]                 minTimeFrom;
+    private final long             validLength;
+
+    public BinaryLogReader(File file) throws IOException {
+        this.file = file;
+        raf = new RandomAccessFile(file, "r");
+        try {
+            validLength = readBlocks();
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        maxTimeUntil = new long[blocks.size()];
+        minTimeFrom = new long[blocks.size()];
+        for (int i = 0; i < blocks.size(); i++) {
+            maxTimeUntil[i] = Math.max(i == 0 ? Long.MIN_VALUE : maxTimeUntil[i - 1], blocks.get(i).maxTime);
+        }
+        for (int i = blocks.size() - 1; i >= 0; i--) {
+            minTimeFrom[i] = Math.min(i == blocks.size() - 1 ? Long.MAX_VALUE : minTimeFrom[i + 1], blocks.get(i).minTime);
+        }
+    }
+
+    /**
+     * @return the length of the complete blocks in the file
+     * @throws IOException
+     *             if the file is not a binary log
+     */
+    public static long getValidLength(File file) throws IOException {
+        final BinaryLogReader reader = new BinaryLogReader(file);
+        try {
+            return reader.validLength;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * reads the headers of all complete blocks. an incomplete block at the end (still written or killed process) is ignored
+     *
+     * @return end of the last complete block
+     */
+    private long readBlocks() throws IOException {
+        final byte[] magic = new byte[LogToBinaryFileSink.MAGIC.length + 1];
+        if (raf.length() < magic.length) {
+            throw new IOException("Not a binary log: " + file);
+        }
+        raf.readFully(magic);
+        if (!Arrays.equals(Arrays.copyOf(magic, LogToBinaryFileSink.MAGIC.length), LogToBinaryFileSink.MAGIC)) {
+            throw new IOException("Not a binary log: " + file);
+        }
+        if (magic[magic.length - 1] != LogToBinaryFileSink.VERSION) {
+            throw new IOException("Unsupported binary log version " + magic[magic.length - 1] + ": " + file);
+        }
+        final long length = raf.length();
+        long offset = magic.length;
+        Names names = null;
+        while (offset + 16 <= length) {
+            raf.seek(offset);
+            if (raf.readInt() != LogToBinaryFileSink.BLOCK_MAGIC) {
+                break;
+            }
+            final int headerLength = raf.readInt();
+            final int payloadLength = raf.readInt();
+            final long end = offset + 16 + headerLength + (long) payloadLength;
+            if (headerLength < 0 || payloadLength < 0 || end > length) {
+                break;
+            }
+            final Block block = new Block();
+            block.offset = offset;
+            block.crc = raf.readInt();
+            block.header = new byte[headerLength];
+            raf.readFully(block.header);
+            block.payloadLength = payloadLength;
+            final Input in = new Input(block.header);
+            final int flags = in.readByte();
+            block.baseTime = in.readLong();
+            block.minTime = in.readLong();
+            block.maxTime = in.readLong();
+            block.records = (int) in.readVarLong();
+            final int newNames = (int) in.readVarLong();
+            if ((flags & LogToBinaryFileSink.FLAG_RESET_NAMES) != 0) {
+                names = null;
+            }
+            if (newNames > 0 || names == null) {
+                names = new Names((flags & LogToBinaryFileSink.FLAG_RESET_NAMES) != 0 ? null : names);
+                for (int i = 0; i < newNames; i++) {
+                    final int id = (int) in.readVarLong();
+                    final String name = in.readString((int) in.readVarLong());
+                    names.byID.put(id, name);
+                    names.byName.put(name, id);
+                }
+            }
+            block.names = names;
+            block.loggers = new int[(int) in.readVarLong()];
+            for (int i = 0; i < block.loggers.length; i++) {
+                block.loggers[i] = (int) in.readVarLong();
+            }
+            blocks.add(block);
+            offset = end;
+        }
+        return offset;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getBlockCount() {
+        return blocks.size();
+    }
+
+    public long getRecordCount() {
+        long ret = 0;
+        for (final Block block : blocks) {
+            ret += block.records;
+        }
+        return ret;
+    }
+
+    /**
+     * @return -1 if the file is empty
+     */
+    public long getFirstTimestamp() {
+        return blocks.size() == 0 ? -1 : minTimeFrom[0];
+    }
+
+    /**
+     * @return -1 if the file is empty
+     */
+    public long getLastTimestamp() {
+        return blocks.size() == 0 ? -1 : maxTimeUntil[blocks.size() - 1];
+    }
+
+    /**
+     * @return all logger names in the file
+     */
+    public List<String> getLoggers() {
+        final TreeSet<String> ret = new TreeSet<String>();
+        for (final Block block : blocks) {
+            for (final int logger : block.loggers) {
+                final String name = block.names.byID.get(logger);
+                if (name != null) {
+                    ret.add(name);
+                }
+            }
+        }
+        return new ArrayList<String>(ret);
+    }
+
+    /**
+     * @param loggers
+     *            only records of these loggers, all records if empty
+     */
+    public List<Record> read(long from, long to, String... loggers) throws IOException {
+        final ArrayList<Record> ret = new ArrayList<Record>();
+        read(from, to, loggers == null || loggers.length == 0 ? null : Arrays.asList(loggers), new RecordHandler() {
+            @Override
+            public boolean onRecord(Record record) {
+                ret.add(record);
+                return true;
+            }
+        });
+        return ret;
+    }
+
+    /**
+     * reads the records with from <= timestamp <= to in file order
+     *
+     * @param loggers
+     *            only records of these loggers, all records if null
+     */
+    public synchronized void read(long from, long to, Collection<String> loggers, RecordHandler handler) throws IOException {
+        // first block that may contain records >= from
+        int low = 0;
+        int high = blocks.size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (maxTimeUntil[mid] < from) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        final CRC32 crc = new CRC32();
+        byte[] payload = new byte[0];
+        int[] loggerIDs = null;
+        Names loggerIDsFor = null;
+        for (int i = low; i < blocks.size() && minTimeFrom[i] <= to; i++) {
+            final Block block = blocks.get(i);
+            if (block.maxTime < from || block.minTime > to) {
+                continue;
+            }
+            if (loggers != null) {
+                if (loggerIDsFor != block.names) {
+                    loggerIDsFor = block.names;
+                    loggerIDs = new int[loggers.size()];
+                    int index = 0;
+                    for (final String logger : loggers) {
+                        final Integer id = block.names.byName.get(logger);
+                        loggerIDs[index++] = id == null ? -1 : id.intValue();
+                    }
+                }
+                if (!containsAny(block.loggers, loggerIDs)) {
+                    continue;
+                }
+            }
+            if (payload.length < block.payloadLength) {
+                payload = new byte[block.payloadLength];
+            }
+            raf.seek(block.offset + 16 + block.header.length);
+            raf.readFully(payload, 0, block.payloadLength);
+            crc.reset();
+            crc.update(block.header);
+            crc.update(payload, 0, block.payloadLength);
+            if ((int) crc.getValue() != block.crc) {
+                throw new IOException("Corrupt block at " + block.offset + ": " + file);
+            }
+            final Input in = new Input(payload);
+            final LogV3Level[] levels = LogV3Level.values();
+            for (int r = 0; r < block.records; r++) {
+                final long zigzag = in.readVarLong();
+                final long timestamp = block.baseTime + (zigzag >>> 1 ^ -(zigzag & 1));
+                final int level = in.readByte();
+                final long threadID = in.readVarLong();
+                final int threadName = (int) in.readVarLong();
+                final int logger = (int) in.readVarLong();
+                final int messageLength = (int) in.readVarLong();
+                if (timestamp < from || timestamp > to || loggers != null && !contains(loggerIDs, logger)) {
+                    in.skip(Math.max(0, messageLength - 1));
+                    continue;
+                }
+                final String message = messageLength == 0 ? null : in.readString(messageLength - 1);
+                if (!handler.onRecord(new Record(timestamp, level < levels.length ? levels[level] : LogV3Level.UNDEFINED, threadID, block.names.byID.get(threadName), block.names.byID.get(logger), message))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static boolean contains(int[] ids, int id) {
+        for (final int i : ids) {
+            if (i == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsAny(int[] blockLoggers, int[] ids) {
+        for (final int id : blockLoggers) {
+            if (contains(ids, id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    /**
+     * counterpart of {@link LogToBinaryFileSink.Bytes}
+     */
+    private static class Input {
+        private final byte[] buf;
+        private int          pos = 0;
+
+        private Input(byte[] buf) {
+            this.buf = buf;
+        }
+
+        private int readByte() {
+            return buf[pos++] & 0xff;
+        }
+
+        private long readLong() {
+            long ret = 0;
+            for (int i = 0; i < 8; i++) {
+                ret = ret << 8 | readByte();
+            }
+            return ret;
+        }
+
+        private long readVarLong() {
+            long ret = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = readByte();
+                ret |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return ret;
+        }
+
+        private String readString(int length) throws IOException {
+            final String ret = new String(buf, pos, length, "UTF-8");
+            pos += length;
+            return ret;
+        }
+
+        private void skip(int length) {
+            pos += length;
+        }
+    }
+}
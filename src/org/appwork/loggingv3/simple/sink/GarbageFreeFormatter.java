@@ -0,0 +1,274 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.loggingv3.simple.sink;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Calendar;
+
+import org.appwork.loggingv3.simple.LogRecord2;
+import org.appwork.loggingv3.simple.UTF8Formatter;
+
+/**
+ * same output as {@link SimpleFormatter}, but appends into reusable per thread buffers. the date part of the timestamp is cached per second,
+ * and {@link #formatUTF8(LogRecord2, OutputStream)} encodes the chars itself, so a record usually creates no garbage at all. records larger
+ * than {@link #MAX_BUFFER_SIZE} use temporary buffers, so one huge message does not pin its memory in every logging thread
+ *
+ * @author Thomas
+ * @date 18.10.2026
+ *
+ */
+public class GarbageFreeFormatter implements UTF8Formatter {
+    /* chars in the StringBuilder, bytes in the utf8 buffer */
+    private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+    private static class Buffers {
+        private StringBuilder       sb           = new StringBuilder(256);
+        private final StringBuilder source       = new StringBuilder(128);
+        private byte[]              bytes        = new byte[1024];
+        private final Calendar      calendar     = Calendar.getInstance();
+        /* dd.MM.yy HH:mm:ss. of cachedSecond */
+        private final char[]        date         = new char[18];
+        private long                cachedSecond = Long.MIN_VALUE;
+    }
+
+    private final ThreadLocal<Buffers> buffers               = new ThreadLocal<Buffers>() {
+                                                                 @Override
+                                                                 protected Buffers initialValue() {
+                                                                     return new Buffers();
+                                                                 }
+                                                             };
+    private final int                  maxThreadNameLength   = 30;
+    private final int                  maxSourceStringLength = 90;
+    /* the columns only grow, like the IntByReference widths of SimpleFormatter */
+    private volatile int               threadIDWidth         = 3;
+    private volatile int               threadNameWidth       = maxThreadNameLength + 3;
+    private volatile int               thrownAtWidth         = maxSourceStringLength + 3;
+
+    @Override
+    public String format(LogRecord2 record) {
+        final Buffers buffers = this.buffers.get();
+        this.format(record, buffers);
+        final String ret = buffers.sb.toString();
+        shrink(buffers);
+        return ret;
+    }
+
+    @Override
+    public void formatUTF8(LogRecord2 record, OutputStream os) throws IOException {
+        final Buffers buffers = this.buffers.get();
+        final StringBuilder sb = buffers.sb;
+        this.format(record, buffers);
+        sb.append("\r\n");
+        final int length = sb.length();
+        final byte[] bytes;
+        if (length * 3 > MAX_BUFFER_SIZE) {
+            bytes = new byte[length * 3];
+        } else {
+            if (buffers.bytes.length < length * 3) {
+                buffers.bytes = new byte[length * 3];
+            }
+            bytes = buffers.bytes;
+        }
+        int index = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = sb.charAt(i);
+            if (c < 0x80) {
+                bytes[index++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[index++] = (byte) (0xc0 | c >> 6);
+                bytes[index++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(sb.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, sb.charAt(++i));
+                bytes[index++] = (byte) (0xf0 | codePoint >> 18);
+                bytes[index++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                bytes[index++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                bytes[index++] = (byte) (0x80 | codePoint & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                /* unpaired, like the replacement of the jdk encoder */
+                bytes[index++] = (byte) '?';
+            } else {
+                bytes[index++] = (byte) (0xe0 | c >> 12);
+                bytes[index++] = (byte) (0x80 | c >> 6 & 0x3f);
+                bytes[index++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        shrink(buffers);
+        os.write(bytes, 0, index);
+    }
+
+    /**
+     * drops the StringBuilder if a huge record grew it beyond {@link #MAX_BUFFER_SIZE}
+     */
+    private static void shrink(final Buffers buffers) {
+        if (buffers.sb.capacity() > MAX_BUFFER_SIZE) {
+            buffers.sb = new StringBuilder(256);
+        }
+    }
+
+    private void format(LogRecord2 record, final Buffers buffers) {
+        final StringBuilder sb = buffers.sb;
+        sb.setLength(0);
+        sb.append("--");
+        final int idStart = sb.length();
+        sb.append(record.thread.getId());
+        this.threadIDWidth = pad(sb, idStart, this.threadIDWidth, true);
+        final int nameStart = sb.length();
+        sb.append('(');
+        abbr(sb, record.thread.getName(), maxThreadNameLength);
+        sb.append(')');
+        this.threadNameWidth = pad(sb, nameStart, this.threadNameWidth, false);
+        sb.append(' ');
+        this.appendTimestamp(sb, buffers, record.timestamp);
+        sb.append(" - ");
+        final int sourceStart = sb.length();
+        final StackTraceElement source = record.getThrownAt();
+        if (source != null) {
+            appendSource(buffers.source, source);
+            abbr(sb, buffers.source, maxSourceStringLength);
+        }
+        this.thrownAtWidth = pad(sb, sourceStart, this.thrownAtWidth, false);
+        sb.append(" > ");
+        final int preLength = sb.length();
+        final String message = record.message == null ? "" : record.message;
+        int lines = 0;
+        int lineStart = 0;
+        final int length = message.length();
+        for (int i = 0; i <= length; i++) {
+            if (i == length || message.charAt(i) == '\r' || message.charAt(i) == '\n') {
+                if (!isBlank(message, lineStart, i)) {
+                    if (lines > 0) {
+                        sb.append("\r\n");
+                        for (int p = 0; p < preLength; p++) {
+                            sb.append(' ');
+                        }
+                    }
+                    sb.append(message, lineStart, i);
+                    lines++;
+                }
+                lineStart = i + 1;
+            }
+        }
+    }
+
+    /**
+     * @return the new column width
+     */
+    private static int pad(final StringBuilder sb, final int start, int width, final boolean pre) {
+        final int length = sb.length() - start;
+        if (length >= width) {
+            return length;
+        }
+        final int missing = width - length;
+        for (int i = 0; i < missing; i++) {
+            if (pre) {
+                sb.insert(start, ' ');
+            } else {
+                sb.append(' ');
+            }
+        }
+        return width;
+    }
+
+    private static void abbr(final StringBuilder sb, final CharSequence name, final int max) {
+        if (name.length() <= max + 3) {
+            sb.append(name);
+        } else {
+            sb.append("...");
+            sb.append(name, name.length() - max, name.length());
+        }
+    }
+
+    private static boolean isBlank(final String message, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            if (message.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * same as Exceptions.stacktraceElementToThrownAtString
+     */
+    private static void appendSource(final StringBuilder sb, final StackTraceElement source) {
+        sb.setLength(0);
+        final String className = source.getClassName();
+        final String fileName = source.getFileName();
+        if (fileName != null && fileName.length() > 0 && source.getLineNumber() >= 0) {
+            final int li = className.lastIndexOf('.');
+            if (li > 0) {
+                sb.append(className, 0, li).append(" (").append(fileName).append(':').append(source.getLineNumber()).append(')');
+            } else {
+                sb.append("DEBUG").append(className);
+            }
+        } else {
+            sb.append(className);
+        }
+        sb.append('.').append(source.getMethodName());
+    }
+
+    /**
+     * dd.MM.yy HH:mm:ss.SSS, the calendar is only asked once per second
+     */
+    private void appendTimestamp(final StringBuilder sb, final Buffers buffers, final long timestamp) {
+        final long second = timestamp >= 0 ? timestamp / 1000 : (timestamp - 999) / 1000;
+        if (second != buffers.cachedSecond) {
+            final Calendar calendar = buffers.calendar;
+            calendar.setTimeInMillis(second * 1000);
+            final char[] date = buffers.date;
+            twoDigits(date, 0, calendar.get(Calendar.DAY_OF_MONTH));
+            date[2] = '.';
+            twoDigits(date, 3, calendar.get(Calendar.MONTH) + 1);
+            date[5] = '.';
+            twoDigits(date, 6, calendar.get(Calendar.YEAR) % 100);
+            date[8] = ' ';
+            twoDigits(date, 9, calendar.get(Calendar.HOUR_OF_DAY));
+            date[11] = ':';
+            twoDigits(date, 12, calendar.get(Calendar.MINUTE));
+            date[14] = ':';
+            twoDigits(date, 15, calendar.get(Calendar.SECOND));
+            date[17] = '.';
+            buffers.cachedSecond = second;
+        }
+        sb.append(buffers.date);
+        final int millis = (int) (timestamp - buffers.cachedSecond * 1000);
+        sb.append((char) ('0' + millis / 100)).append((char) ('0' + millis / 10 % 10)).append((char) ('0' + millis % 10));
+    }
+
+    private static void twoDigits(final char[] chars, final int index, final int value) {
+        chars[index] = (char) ('0' + value / 10 % 10);
+        chars[index + 1] = (char) ('0' + value % 10);
+    }
+}
@@ -0,0 +1,477 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.loggingv3.simple.sink;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.zip.CRC32;
+
+import org.appwork.loggingv3.LogV3;
+import org.appwork.loggingv3.simple.AsyncSinkProvider;
+import org.appwork.loggingv3.simple.LogRecord2;
+import org.appwork.loggingv3.simple.LoggerToSink;
+import org.appwork.scheduler.DelayedRunnable;
+import org.appwork.utils.logging2.LogInterface;
+
+/**
+ * writes records in a compact binary format that can be searched by time and logger with the {@link BinaryLogReader} instead of grepping
+ * text logs. The format does not use the formatter, and the source of the log call is not stored, so it works best with
+ * {@link org.appwork.loggingv3.simple.CallSiteCapture#NONE}.
+ *
+ * The file starts with "AWBL" and a version byte, followed by blocks of records:
+ *
+ * <pre>
+ * int magic, int headerLength, int payloadLength, int crc32(header+payload)
+ * header:  byte flags, long baseTime, long minTime, long maxTime, varint records, varint newNames, (varint id, varint length, utf8)*, varint loggers, (varint id)*
+ * payload: (zigzag varint time-baseTime, byte level, varlong threadID, varint threadName, varint logger, varint length+1, utf8 message)*
+ * </pre>
+ *
+ * Thread and logger names are written once per file as id definitions in the block header where they are used first. The header of each
+ * block is the sparse index: the reader only reads the headers and skips the payload of blocks that do not match.
+ *
+ * Records are collected in memory until the block is full, {@link #getMaxBlockDelay()} has passed, or {@link #flush()} is called. The
+ * delay is also checked by a scheduler, so the last block of an idle process does not stay in memory. If a block cannot be written, it is
+ * dropped and the failure is logged.
+ *
+ * @author Thomas
+ * @date 18.10.2026
+ *
+ */
+public class LogToBinaryFileSink extends AbstractSink implements Flushable, Closeable {
+    static final byte[]                           MAGIC            = new byte[] { 'A', 'W', 'B', 'L' };
+    static final int                              VERSION          = 1;
+    static final int                              BLOCK_MAGIC      = 0x424c4b31;
+    /* first block written by a sink, the name ids start again */
+    static final int                              FLAG_RESET_NAMES = 1;
+    private static final ScheduledExecutorService EXECUTER         = DelayedRunnable.getNewScheduledExecutorService();
+
+    /**
+     * growable byte buffer with little helpers for the varint encoding
+     */
+    static class Bytes {
+        byte[] buf    = new byte[4096];
+        int    length = 0;
+
+        void ensure(final int more) {
+            if (this.length + more > this.buf.length) {
+                final byte[] newBuf = new byte[Math.max(this.buf.length * 2, this.length + more)];
+                System.arraycopy(this.buf, 0, newBuf, 0, this.length);
+                this.buf = newBuf;
+            }
+        }
+
+        void writeByte(final int b) {
+            this.ensure(1);
+            this.buf[this.length++] = (byte) b;
+        }
+
+        void writeInt(final int v) {
+            this.ensure(4);
+            this.buf[this.length++] = (byte) (v >>> 24);
+            this.buf[this.length++] = (byte) (v >>> 16);
+            this.buf[this.length++] = (byte) (v >>> 8);
+            this.buf[this.length++] = (byte) v;
+        }
+
+        void writeLong(final long v) {
+            this.writeInt((int) (v >>> 32));
+            this.writeInt((int) v);
+        }
+
+        /**
+         * unsigned LEB128
+         */
+        void writeVarLong(long v) {
+            this.ensure(10);
+            while ((v & ~0x7fl) != 0) {
+                this.buf[this.length++] = (byte) (v & 0x7f | 0x80);
+                v >>>= 7;
+            }
+            this.buf[this.length++] = (byte) v;
+        }
+
+        void write(final byte[] b) {
+            this.ensure(b.length);
+            System.arraycopy(b, 0, this.buf, this.length, b.length);
+            this.length += b.length;
+        }
+    }
+
+    private final File                     file;
+    private final OutputStream             os;
+    private final HashMap<String, Integer> names           = new HashMap<String, Integer>();
+    private final Bytes                    prefix          = new Bytes();
+    private final Bytes                    header          = new Bytes();
+    private final Bytes                    payload         = new Bytes();
+    private final Bytes                    newNames        = new Bytes();
+    private final BitSet                   blockLoggers    = new BitSet();
+    private final CRC32                    crc             = new CRC32();
+    private int                            newNamesCount   = 0;
+    private int                            blockRecords    = 0;
+    private long                           blockBaseTime;
+    private long                           blockMinTime;
+    private long                           blockMaxTime;
+    private long                           blockStarted    = 0;
+    private boolean                        resetNames      = true;
+    private boolean                        closed          = false;
+    private volatile int                   maxBlockSize    = 64 * 1024;
+    private volatile int                   maxBlockRecords = 1024;
+    private volatile long                  maxBlockDelay   = 1000;
+    private volatile AsyncSinkProvider     asyncSource;
+    private volatile DelayedRunnable       blockDelayer    = createBlockDelayer(maxBlockDelay);
+    /* only the first of several failed writes gets logged */
+    private boolean                        writeFailed     = false;
+
+    /**
+     * appends to the file. an incomplete block at the end(killed process) gets truncated.
+     *
+     * @throws IOException
+     *             if the file exists, but is not a binary log
+     */
+    public LogToBinaryFileSink(File file) throws IOException {
+        this.file = file;
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        final long valid = file.isFile() && file.length() > 0 ? BinaryLogReader.getValidLength(file) : 0;
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(valid);
+        } finally {
+            raf.close();
+        }
+        os = new BufferedOutputStream(new FileOutputStream(file, true), 64 * 1024);
+        if (valid == 0) {
+            os.write(MAGIC);
+            os.write(VERSION);
+            os.flush();
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread("ShutdownHook: BinaryLogger") {
+            /*
+             * (non-Javadoc)
+             *
+             * @see java.lang.Thread#run()
+             */
+            @Override
+            public void run() {
+                final AsyncSinkProvider asyncSource = LogToBinaryFileSink.this.asyncSource;
+                if (asyncSource != null) {
+                    asyncSource.close();
+                }
+                try {
+                    LogToBinaryFileSink.this.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public AsyncSinkProvider getAsyncSource() {
+        return asyncSource;
+    }
+
+    /**
+     * @param asyncSource
+     *            its queue gets drained by the shutdown hook before the file is closed
+     */
+    public void setAsyncSource(AsyncSinkProvider asyncSource) {
+        this.asyncSource = asyncSource;
+    }
+
+    public int getMaxBlockSize() {
+        return maxBlockSize;
+    }
+
+    /**
+     * @param maxBlockSize
+     *            payload bytes per block. smaller blocks make the index finer, but larger
+     */
+    public void setMaxBlockSize(int maxBlockSize) {
+        this.maxBlockSize = maxBlockSize;
+    }
+
+    public int getMaxBlockRecords() {
+        return maxBlockRecords;
+    }
+
+    public void setMaxBlockRecords(int maxBlockRecords) {
+        this.maxBlockRecords = maxBlockRecords;
+    }
+
+    public long getMaxBlockDelay() {
+        return maxBlockDelay;
+    }
+
+    /**
+     * @param maxBlockDelay
+     *            ms, >0. a block is written after this time even if it is not full
+     */
+    public void setMaxBlockDelay(long maxBlockDelay) {
+        this.blockDelayer = createBlockDelayer(maxBlockDelay);
+        this.maxBlockDelay = maxBlockDelay;
+    }
+
+    private DelayedRunnable createBlockDelayer(final long maxBlockDelay) {
+        return new DelayedRunnable(EXECUTER, maxBlockDelay, maxBlockDelay) {
+            @Override
+            public void delayedrun() {
+                IOException failed = null;
+                synchronized (LogToBinaryFileSink.this) {
+                    if (closed || blockRecords == 0 || System.currentTimeMillis() - blockStarted < LogToBinaryFileSink.this.maxBlockDelay) {
+                        // a younger block re-triggered the delayer
+                        return;
+                    }
+                    try {
+                        writeBlock();
+                    } catch (IOException e) {
+                        failed = onWriteFailed(e);
+                    }
+                }
+                logWriteFailed(failed);
+            }
+        };
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.appwork.loggingv3.simple.sink.Sink#publish(org.appwork.loggingv3.simple.LogRecord2)
+     */
+    @Override
+    public void publish(LogRecord2 record) {
+        IOException failed = null;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                if (blockRecords > 0 && (record.timestamp < blockMaxTime - 60000 || record.timestamp > blockMinTime + 60000)) {
+                    // keep the time range of a block small, even if the clock jumps
+                    writeBlock();
+                }
+                final int threadName = getNameID(record.thread.getName());
+                final int logger = getNameID(getLoggerName(record));
+                if (blockRecords == 0) {
+                    blockStarted = System.currentTimeMillis();
+                    blockDelayer.run();
+                    blockBaseTime = record.timestamp;
+                    blockMinTime = record.timestamp;
+                    blockMaxTime = record.timestamp;
+                } else {
+                    blockMinTime = Math.min(blockMinTime, record.timestamp);
+                    blockMaxTime = Math.max(blockMaxTime, record.timestamp);
+                }
+                // relative to the first record of the block. records of other threads may be older, zigzag keeps them small
+                final long relative = record.timestamp - blockBaseTime;
+                payload.writeVarLong(relative << 1 ^ relative >> 63);
+                payload.writeByte(record.getLevel().ordinal());
+                payload.writeVarLong(record.thread.getId());
+                payload.writeVarLong(threadName);
+                payload.writeVarLong(logger);
+                if (record.message == null) {
+                    payload.writeVarLong(0);
+                } else {
+                    final byte[] message = record.message.getBytes("UTF-8");
+                    payload.writeVarLong(message.length + 1);
+                    payload.write(message);
+                }
+                if (logger > 0) {
+                    blockLoggers.set(logger);
+                }
+                blockRecords++;
+                if (payload.length >= maxBlockSize || blockRecords >= maxBlockRecords || System.currentTimeMillis() - blockStarted >= maxBlockDelay) {
+                    writeBlock();
+                }
+            } catch (IOException e) {
+                failed = onWriteFailed(e);
+            }
+        }
+        logWriteFailed(failed);
+    }
+
+    /**
+     * @return e if it is the first failure since the last successful write
+     */
+    private IOException onWriteFailed(IOException e) {
+        if (writeFailed) {
+            return null;
+        }
+        writeFailed = true;
+        return e;
+    }
+
+    /**
+     * outside the lock: the logger may publish into this sink again
+     */
+    private void logWriteFailed(IOException e) {
+        if (e != null) {
+            LogV3.logger(LogToBinaryFileSink.class).exception("Could not write to " + file + ", the pending records are dropped", e);
+        }
+    }
+
+    /**
+     * drops the pending records. the name ids of the dropped block are unknown to the reader, so they are defined again in the next block
+     */
+    private void discardBlock() {
+        names.clear();
+        resetNames = true;
+        newNames.length = 0;
+        newNamesCount = 0;
+        blockLoggers.clear();
+        payload.length = 0;
+        blockRecords = 0;
+    }
+
+    /**
+     * @return 0 for null
+     */
+    private int getNameID(String name) {
+        if (name == null) {
+            return 0;
+        }
+        Integer id = names.get(name);
+        if (id == null) {
+            names.put(name, id = names.size() + 1);
+            try {
+                final byte[] bytes = name.getBytes("UTF-8");
+                newNames.writeVarLong(id);
+                newNames.writeVarLong(bytes.length);
+                newNames.write(bytes);
+                newNamesCount++;
+            } catch (java.io.UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * @return the name of the logger, or the class for loggers without a name
+     */
+    protected String getLoggerName(LogRecord2 record) {
+        final LogInterface logger = record.getLogger();
+        if (logger == null) {
+            return null;
+        } else if (logger instanceof LoggerToSink && ((LoggerToSink) logger).getName() != null) {
+            return ((LoggerToSink) logger).getName();
+        } else {
+            return logger.getClass().getName();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (blockRecords == 0) {
+            return;
+        }
+        header.length = 0;
+        header.writeByte(resetNames ? FLAG_RESET_NAMES : 0);
+        header.writeLong(blockBaseTime);
+        header.writeLong(blockMinTime);
+        header.writeLong(blockMaxTime);
+        header.writeVarLong(blockRecords);
+        header.writeVarLong(newNamesCount);
+        header.ensure(newNames.length);
+        System.arraycopy(newNames.buf, 0, header.buf, header.length, newNames.length);
+        header.length += newNames.length;
+        header.writeVarLong(blockLoggers.cardinality());
+        for (int i = blockLoggers.nextSetBit(0); i >= 0; i = blockLoggers.nextSetBit(i + 1)) {
+            header.writeVarLong(i);
+        }
+        crc.reset();
+        crc.update(header.buf, 0, header.length);
+        crc.update(payload.buf, 0, payload.length);
+        prefix.length = 0;
+        prefix.writeInt(BLOCK_MAGIC);
+        prefix.writeInt(header.length);
+        prefix.writeInt(payload.length);
+        prefix.writeInt((int) crc.getValue());
+        try {
+            os.write(prefix.buf, 0, prefix.length);
+            os.write(header.buf, 0, header.length);
+            os.write(payload.buf, 0, payload.length);
+            os.flush();
+        } catch (IOException e) {
+            discardBlock();
+            throw e;
+        }
+        writeFailed = false;
+        resetNames = false;
+        newNames.length = 0;
+        newNamesCount = 0;
+        blockLoggers.clear();
+        payload.length = 0;
+        blockRecords = 0;
+    }
+
+    /**
+     * writes the pending records as block
+     */
+    @Override
+    public void flush() throws IOException {
+        synchronized (this) {
+            if (!closed) {
+                writeBlock();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                writeBlock();
+            } finally {
+                closed = true;
+                os.close();
+            }
+        }
+    }
+}
@@ -34,15 +34,15 @@
 package org.appwork.loggingv3.simple.sink;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.nio.file.StandardCopyOption;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -50,7 +50,15 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.LinkedList;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
@@ -58,18 +66,21 @@ import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import org.appwork.loggingv3.LogV3;
+import org.appwork.loggingv3.simple.AsyncSinkProvider;
 import org.appwork.loggingv3.simple.LogRecord2;
 import org.appwork.utils.CompareUtils;
 import org.appwork.utils.Exceptions;
 import org.appwork.utils.Files;
 import org.appwork.utils.IO;
+import org.appwork.utils.zip.ZipIOException;
+import org.appwork.utils.zip.ZipIORawWriter;
 
 /**
  * @author Thomas
  * @date 19.09.2018
  *
  */
-public class LogToFileSink extends AbstractSink {
+public class LogToFileSink extends AbstractSink implements Flushable {
     /**
      *
      */
@@ -84,6 +95,8 @@ public class LogToFileSink extends AbstractSink {
     private String                        timeTag;
     private boolean                       shutdown;
     private boolean                       enabled            = true;
+    private volatile boolean              autoFlush          = true;
+    private volatile AsyncSinkProvider    asyncSource;
 
     public boolean isEnabled() {
         return enabled;
@@ -93,6 +106,31 @@ public class LogToFileSink extends AbstractSink {
         this.enabled = enabled;
     }
 
+    public boolean isAutoFlush() {
+        return autoFlush;
+    }
+
+    /**
+     * @param autoFlush
+     *            false if somebody else calls {@link #flush()}, e.g. the {@link AsyncSinkProvider} after a batch
+     */
+    public void setAutoFlush(boolean autoFlush) {
+        this.autoFlush = autoFlush;
+    }
+
+    public AsyncSinkProvider getAsyncSource() {
+        return asyncSource;
+    }
+
+    /**
+     * @param asyncSource
+     *            the provider that publishes into this sink. Its queue gets drained on shutdown before the file is closed, because the
+     *            shutdown hooks run in no fixed order
+     */
+    public void setAsyncSource(AsyncSinkProvider asyncSource) {
+        this.asyncSource = asyncSource;
+    }
+
     /**
      * @param string
      */
@@ -105,6 +143,7 @@ public class LogToFileSink extends AbstractSink {
         }
         this.filepattern = filepattern;
         this.zipLevel = zipLevel;
+        setFormatter(new GarbageFreeFormatter());
         Runtime.getRuntime().addShutdownHook(new Thread("ShutdownHook: Logger") {
             /*
              * (non-Javadoc)
@@ -171,6 +210,49 @@ public class LogToFileSink extends AbstractSink {
                 }
             }
         }
+        synchronized (DISK_USAGE_LOCK) {
+            olderLogFolders = null;
+        }
+    }
+
+    public long getMaxTotalBytes() {
+        return maxTotalBytes;
+    }
+
+    /**
+     * bounds the disk usage of the log root. Unlike {@link #keepOnlyLatestByBytes(long)}, this is checked incrementally after every
+     * compressed rotation: the oldest folders of previous sessions get deleted first, then the oldest compressed files of the current
+     * session.
+     *
+     * @param maxTotalBytes
+     *            -1 to disable
+     */
+    public void setMaxTotalBytes(long maxTotalBytes) {
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    /**
+     * @param compressionThreads
+     *            number of rotated files that get compressed in parallel
+     */
+    public void setCompressionThreads(int compressionThreads) {
+        compressionThreads = Math.max(1, compressionThreads);
+        synchronized (this) {
+            this.compressionThreads = compressionThreads;
+            if (compressionExecutor != null) {
+                if (compressionThreads > compressionExecutor.getMaximumPoolSize()) {
+                    compressionExecutor.setMaximumPoolSize(compressionThreads);
+                    compressionExecutor.setCorePoolSize(compressionThreads);
+                } else {
+                    compressionExecutor.setCorePoolSize(compressionThreads);
+                    compressionExecutor.setMaximumPoolSize(compressionThreads);
+                }
+            }
+        }
     }
 
     /**
@@ -232,7 +314,8 @@ public class LogToFileSink extends AbstractSink {
      * properly
      */
     public void runPostCleanupAndCompressionThread() {
-        synchronized (WORK_ON_FOLDERS_AND_FILES_LOCK) {
+        WORK_ON_FOLDERS_AND_FILES_LOCK.writeLock().lock();
+        try {
             for (LogFolder f : getLogFilesOrFolders(true)) {
                 if (f.path.isFile()) {
                     continue;
@@ -243,6 +326,12 @@ public class LogToFileSink extends AbstractSink {
                     LogV3.logger(LogToFileSink.class).exception("Failed to compress old logfolder " + f, e);
                 }
             }
+            synchronized (DISK_USAGE_LOCK) {
+                // folders are zips now
+                olderLogFolders = null;
+            }
+        } finally {
+            WORK_ON_FOLDERS_AND_FILES_LOCK.writeLock().unlock();
         }
     }
 
@@ -258,6 +347,11 @@ public class LogToFileSink extends AbstractSink {
      *
      */
     protected void onShutdown() {
+        final AsyncSinkProvider asyncSource = this.asyncSource;
+        if (asyncSource != null) {
+            // not within the lock: the writer thread publishes into this sink
+            asyncSource.close();
+        }
         synchronized (this) {
             this.shutdown = true;
             closeOldFile();
@@ -306,9 +400,8 @@ public class LogToFileSink extends AbstractSink {
             }
             File tmp = new File(zip.getAbsolutePath() + ".tmp");
             java.nio.file.Files.deleteIfExists(tmp.toPath());
-            ZipOutputStream zipout = new ZipOutputStream(new FileOutputStream(tmp));
+            ZipIORawWriter zipout = new ZipIORawWriter(tmp, zipLevel);
             try {
-                zipout.setLevel(zipLevel);
                 writeFolderToZip(logFolder, delete, zipout, false);
                 zipout.close();
                 java.nio.file.Files.move(tmp.toPath(), zip.toPath(), StandardCopyOption.ATOMIC_MOVE);
@@ -387,6 +480,52 @@ public class LogToFileSink extends AbstractSink {
         }
     }
 
+    /**
+     * like {@link #writeFolderToZip(File, boolean, ZipOutputStream, boolean)}, but the entries of the already compressed rotations are
+     * copied raw instead of inflating and deflating them again
+     */
+    protected void writeFolderToZip(File logFolder, boolean delete, ZipIORawWriter zipout, boolean addSubfolder) throws IOException, InterruptedException {
+        final String prefix = addSubfolder ? logFolder.getName() + "/" : "";
+        try {
+            for (File f : logFolder.listFiles()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (!f.isFile()) {
+                    continue;
+                }
+                if (f.getName().endsWith(".zip")) {
+                    try {
+                        zipout.addZip(f, prefix);
+                    } catch (ZipIOException e) {
+                        // cannot be copied raw (e.g. zip64) - recompress it
+                        ZipInputStream zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(f)));
+                        try {
+                            ZipEntry entry;
+                            while ((entry = zis.getNextEntry()) != null) {
+                                zipout.addStream(zis, prefix + entry.getName(), entry.getTime());
+                            }
+                        } finally {
+                            zis.close();
+                        }
+                    }
+                } else if (f.getName().endsWith(".txt")) {
+                    zipout.addFile(f, prefix + f.getName());
+                } else {
+                    continue;
+                }
+                if (delete) {
+                    java.nio.file.Files.move(f.toPath(), new File(f.getAbsolutePath() + ".deleteMe").toPath(), StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+        } catch (IOException e) {
+            if (Thread.interrupted()) {
+                throw Exceptions.addSuppressed(new InterruptedException(), e);
+            }
+            throw e;
+        }
+    }
+
     protected String createTimeTag() {
         return SIMPLE_DATE_FORMAT.format(new Date());
     }
@@ -397,8 +536,8 @@ public class LogToFileSink extends AbstractSink {
         return currentFile;
     }
 
-    private BufferedWriter fos;
-    private int            zipLevel = 3;
+    private BufferedOutputStream fos;
+    private int                  zipLevel = 3;
 
     /*
      * (non-Javadoc)
@@ -418,8 +557,10 @@ public class LogToFileSink extends AbstractSink {
                 nextFile();
             }
             try {
-                fos.write(format(record) + "\r\n");
-                fos.flush();
+                formatUTF8(record, fos);
+                if (autoFlush) {
+                    fos.flush();
+                }
             } catch (IOException e) {
                 // TODO: WAS JETZT?
                 // TODO Auto-generated catch block
@@ -428,6 +569,15 @@ public class LogToFileSink extends AbstractSink {
         }
     }
 
+    @Override
+    public void flush() throws IOException {
+        synchronized (this) {
+            if (fos != null) {
+                fos.flush();
+            }
+        }
+    }
+
     int                          files = 0;
     private CountingOutputStream counter;
 
@@ -449,7 +599,7 @@ public class LogToFileSink extends AbstractSink {
                 }
             }
             file.getParentFile().mkdirs();
-            fos = new BufferedWriter(new OutputStreamWriter(counter = new CountingOutputStream(new FileOutputStream(file)), "UTF-8"));
+            fos = new BufferedOutputStream(counter = new CountingOutputStream(new FileOutputStream(file)));
             this.currentFile = file;
         } catch (IOException e) {
             // TODO: WAS JETZT?
@@ -465,7 +615,17 @@ public class LogToFileSink extends AbstractSink {
         }
     }
 
-    private AtomicInteger compressionThreadsRunning = new AtomicInteger(0);
+    private AtomicInteger          compressionThreadsRunning = new AtomicInteger(0);
+    private volatile int           compressionThreads        = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private ThreadPoolExecutor     compressionExecutor;
+    private volatile long          maxTotalBytes             = -1;
+    private final Object           DISK_USAGE_LOCK           = new Object();
+    /* log folders of previous sessions, oldest first. null until the first check */
+    private LinkedList<LogFolder>  olderLogFolders;
+    private long                   olderLogFoldersBytes;
+    /* compressed rotations of this session by file index */
+    private TreeMap<Integer, File> compressedRotations       = new TreeMap<Integer, File>();
+    private long                   compressedRotationsBytes;
 
     /**
      *
@@ -485,19 +645,91 @@ public class LogToFileSink extends AbstractSink {
 
     protected void startAsyncCompressionAfterLogRotation() {
         final File cf = currentFile;
-        Thread th = new Thread("compress log") {
+        final int index = files;
+        compressionThreadsRunning.incrementAndGet();
+        getCompressionExecutor().execute(new Runnable() {
+            @Override
             public void run() {
-                synchronized (WORK_ON_FOLDERS_AND_FILES_LOCK) {
-                    try {
-                        compress(cf, new File(cf.getAbsolutePath() + ".zip"));
-                    } finally {
-                        compressionThreadsRunning.decrementAndGet();
+                // rotations are compressed in parallel, only folder wide operations (export, cleanup) are exclusive
+                WORK_ON_FOLDERS_AND_FILES_LOCK.readLock().lock();
+                try {
+                    File zip = new File(cf.getAbsolutePath() + ".zip");
+                    compress(cf, zip);
+                    if (zip.isFile()) {
+                        synchronized (DISK_USAGE_LOCK) {
+                            compressedRotations.put(index, zip);
+                            compressedRotationsBytes += zip.length();
+                        }
                     }
+                    enforceMaxTotalBytes();
+                } finally {
+                    WORK_ON_FOLDERS_AND_FILES_LOCK.readLock().unlock();
+                    compressionThreadsRunning.decrementAndGet();
                 }
-            };
-        };
-        compressionThreadsRunning.incrementAndGet();
-        th.start();
+            }
+        });
+    }
+
+    protected synchronized ThreadPoolExecutor getCompressionExecutor() {
+        if (compressionExecutor == null) {
+            compressionExecutor = new ThreadPoolExecutor(compressionThreads, compressionThreads, 10000l, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger number = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread th = new Thread(r, "compress log " + number.incrementAndGet());
+                    // onShutdown waits for running compressions
+                    th.setDaemon(true);
+                    return th;
+                }
+            });
+            compressionExecutor.allowCoreThreadTimeOut(true);
+        }
+        return compressionExecutor;
+    }
+
+    /**
+     * deletes the oldest logs until the log root is below {@link #getMaxTotalBytes()}. Sizes are cached, so only the first call scans the
+     * log root
+     */
+    protected void enforceMaxTotalBytes() {
+        long max = maxTotalBytes;
+        if (max < 0) {
+            return;
+        }
+        synchronized (DISK_USAGE_LOCK) {
+            if (olderLogFolders == null) {
+                ArrayList<LogFolder> logFolders = getLogFilesOrFolders(true);
+                Collections.sort(logFolders, new Comparator<LogFolder>() {
+                    @Override
+                    public int compare(LogFolder o1, LogFolder o2) {
+                        return CompareUtils.compare(o1.time, o2.time);
+                    }
+                });
+                olderLogFolders = new LinkedList<LogFolder>(logFolders);
+                olderLogFoldersBytes = 0;
+                for (LogFolder f : olderLogFolders) {
+                    olderLogFoldersBytes += f.getSize();
+                }
+            }
+            while (olderLogFoldersBytes + compressedRotationsBytes > max && olderLogFolders.size() > 0) {
+                LogFolder f = olderLogFolders.removeFirst();
+                long size = f.getSize();
+                LogV3.info("Cleanup Logs: " + f.path);
+                try {
+                    Files.deleteRecursive(f.path, false);
+                } catch (IOException e) {
+                    LogV3.defaultLogger().exception("Could not delete Logfolder: " + f.path, e);
+                }
+                olderLogFoldersBytes -= size;
+            }
+            while (olderLogFoldersBytes + compressedRotationsBytes > max && compressedRotations.size() > 0) {
+                Entry<Integer, File> oldest = compressedRotations.pollFirstEntry();
+                compressedRotationsBytes -= oldest.getValue().length();
+                LogV3.info("Cleanup Logs: " + oldest.getValue());
+                oldest.getValue().delete();
+            }
+        }
     }
 
     /**
@@ -506,16 +738,15 @@ public class LogToFileSink extends AbstractSink {
      */
     protected void compress(File file, File zip) {
         try {
-            ZipOutputStream zipout;
             zip.delete();
             File tmp = new File(zip.getAbsolutePath() + ".tmp");
             tmp.delete();
-            zipout = new ZipOutputStream(new FileOutputStream(tmp));
-            zipout.setLevel(zipLevel);
-            zipout.putNextEntry(new ZipEntry(file.getName()));
-            IO.readStreamToOutputStream(-1, new BufferedInputStream(new FileInputStream(file)), zipout, true);
-            zipout.closeEntry();
-            zipout.close();
+            ZipIORawWriter zipout = new ZipIORawWriter(tmp, zipLevel);
+            try {
+                zipout.addFile(file, file.getName());
+            } finally {
+                zipout.close();
+            }
             java.nio.file.Files.move(tmp.toPath(), zip.toPath(), StandardCopyOption.ATOMIC_MOVE);
             file.delete();
         } catch (Throwable e) {
@@ -588,7 +819,7 @@ public class LogToFileSink extends AbstractSink {
         this.maxFileSize = maxFileSize;
     }
 
-    private Object WORK_ON_FOLDERS_AND_FILES_LOCK = new Object();
+    private final ReentrantReadWriteLock WORK_ON_FOLDERS_AND_FILES_LOCK = new ReentrantReadWriteLock();
 
     /**
      * @param days
@@ -598,7 +829,8 @@ public class LogToFileSink extends AbstractSink {
      * @throws InterruptedException
      */
     public File exportFull(long days) throws IOException, Error, InterruptedException {
-        synchronized (WORK_ON_FOLDERS_AND_FILES_LOCK) {
+        WORK_ON_FOLDERS_AND_FILES_LOCK.writeLock().lock();
+        try {
             ArrayList<LogFolder> logFolders = getLogFilesOrFolders(false);
             Collections.sort(logFolders, new Comparator<LogFolder>() {
                 @Override
@@ -655,7 +887,7 @@ public class LogToFileSink extends AbstractSink {
                                 } finally {
                                     if (restoreFos) {
                                         CountingOutputStream oldCounter = counter;
-                                        fos = new BufferedWriter(new OutputStreamWriter(counter = new CountingOutputStream(new FileOutputStream(currentFile, true)), "UTF-8"));
+                                        fos = new BufferedOutputStream(counter = new CountingOutputStream(new FileOutputStream(currentFile, true)));
                                         counter.written = oldCounter.written;
                                     }
                                 }
@@ -679,6 +911,8 @@ public class LogToFileSink extends AbstractSink {
             }
             java.nio.file.Files.move(tmp.toPath(), zip.toPath(), StandardCopyOption.ATOMIC_MOVE);
             return zip;
+        } finally {
+            WORK_ON_FOLDERS_AND_FILES_LOCK.writeLock().unlock();
         }
     }
 
@@ -77,7 +77,7 @@ public class SimpleFormatter implements Formatter {
         // long t = System.currentTimeMillis();
         String message = record.message == null ? "" : record.message;
         StackTraceElement source = record.getThrownAt();
-        String sourceString = Exceptions.stacktraceElementToThrownAtString(source);
+        String sourceString = source == null ? "" : Exceptions.stacktraceElementToThrownAtString(source);
         String pre = "--" + fillPre(String.valueOf(record.thread.getId()), " ", threadID) + fillPost("(" + abbr(record.thread.getName(), maxThreadNameLength) + ")", " ", threadName) + " " + fillPre(longTimestamp.format(new Date(record.timestamp)), " ", timestamp) + " - " + fillPost("" + abbr(String.valueOf(sourceString) + "", maxSourceStringLength), " ", thrownAt) + " > ";
         int line = 0;
         int preLength = pre.length();
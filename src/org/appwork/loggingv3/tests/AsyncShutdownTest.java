@@ -0,0 +1,150 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.loggingv3.tests;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.loggingv3.simple.AsyncSinkProvider.OverflowPolicy;
+import org.appwork.loggingv3.simple.SimpleLoggerFactory;
+import org.appwork.loggingv3.simple.sink.BinaryLogReader;
+import org.appwork.loggingv3.simple.sink.LogToBinaryFileSink;
+import org.appwork.loggingv3.simple.sink.LogToFileSink;
+import org.appwork.utils.Files;
+import org.appwork.utils.logging2.LogInterface;
+
+/**
+ * a child process logs through the async provider into a file sink and a binary sink and exits with records in the queue. all of them have to end up in
+ * both log files, although the shutdown hooks of the provider and of the sink run in no fixed order
+ *
+ * @author Thomas
+ * @date 18.10.2026
+ *
+ */
+public class AsyncShutdownTest {
+    private static final int RECORDS = 100000;
+
+    private static void child(final File root) throws Exception {
+        final SimpleLoggerFactory factory = new SimpleLoggerFactory();
+        factory.setSinkToFile(new LogToFileSink(root, "log.\\d.txt", 3));
+        factory.addSink(new LogToBinaryFileSink(new File(root, "log.bin")));
+        factory.startAsync(RECORDS, OverflowPolicy.BLOCK);
+        final LogInterface logger = factory.getLogger("shutdown");
+        for (int i = 0; i < RECORDS; i++) {
+            logger.info("record " + i);
+        }
+        System.out.println("queued at exit: " + factory.getAsync().getQueuedRecords());
+    }
+
+    private static int countRecords(final File root) throws Exception {
+        int ret = 0;
+        for (final File zip : root.listFiles()) {
+            if (!zip.getName().endsWith(".zip")) {
+                continue;
+            }
+            final ZipFile zipFile = new ZipFile(zip);
+            try {
+                final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    final BufferedReader reader = new BufferedReader(new InputStreamReader(zipFile.getInputStream(entries.nextElement()), "UTF-8"));
+                    try {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            if (line.contains("> record ")) {
+                                ret++;
+                            }
+                        }
+                    } finally {
+                        reader.close();
+                    }
+                }
+            } finally {
+                zipFile.close();
+            }
+        }
+        return ret;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && "child".equals(args[0])) {
+            child(new File(args[1]));
+            return;
+        }
+        final File root = new File(System.getProperty("java.io.tmpdir"), "asyncShutdownTest_" + System.currentTimeMillis());
+        try {
+            for (int run = 0; run < 3; run++) {
+                if (root.exists()) {
+                    Files.deleteRecursive(root, false);
+                }
+                final ProcessBuilder pb = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath(), "-cp", System.getProperty("java.class.path"), AsyncShutdownTest.class.getName(), "child", root.getAbsolutePath());
+                pb.redirectErrorStream(true);
+                final Process process = pb.start();
+                final BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+                String line;
+                while ((line = output.readLine()) != null) {
+                    if (line.startsWith("queued")) {
+                        System.out.println(line);
+                    }
+                }
+                if (process.waitFor() != 0) {
+                    throw new WTFException("child failed");
+                }
+                final int records = countRecords(root);
+                System.out.println(records + " of " + RECORDS + " records written");
+                if (records != RECORDS) {
+                    throw new WTFException("lost " + (RECORDS - records) + " records");
+                }
+                final BinaryLogReader reader = new BinaryLogReader(new File(root, "log.bin"));
+                try {
+                    System.out.println(reader.getRecordCount() + " of " + RECORDS + " binary records written");
+                    if (reader.getRecordCount() != RECORDS) {
+                        throw new WTFException("lost " + (RECORDS - reader.getRecordCount()) + " binary records");
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+            System.out.println("SUCCESSFUL");
+        } finally {
+            if (root.exists()) {
+                Files.deleteRecursive(root, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.loggingv3.tests;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.loggingv3.simple.AsyncSinkProvider;
+import org.appwork.loggingv3.simple.AsyncSinkProvider.OverflowPolicy;
+import org.appwork.loggingv3.simple.LogRecord2;
+import org.appwork.loggingv3.simple.SinkProvider;
+
+/**
+ * several threads log through the ring buffer into a slow target, checks order, batch flushing and the overflow policies
+ *
+ * @author Thomas
+ * @date 18.10.2026
+ *
+ */
+public class AsyncSinkProviderTest {
+    private static class SlowTarget implements SinkProvider, Flushable {
+        private final int[]         next;
+        private final AtomicInteger published = new AtomicInteger(0);
+        private final AtomicInteger flushes   = new AtomicInteger(0);
+        private final long          delay;
+
+        private SlowTarget(final int threads, final long delay) {
+            this.next = new int[threads];
+            this.delay = delay;
+        }
+
+        @Override
+        public void publish(final LogRecord2 record) {
+            final String[] parts = record.message.split(":");
+            final int thread = Integer.parseInt(parts[0]);
+            final int index = Integer.parseInt(parts[1]);
+            if (this.next[thread] > index) {
+                throw new WTFException("order: " + record.message);
+            }
+            this.next[thread] = index + 1;
+            this.published.incrementAndGet();
+            if (this.delay > 0) {
+                sleep(this.delay);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.flushes.incrementAndGet();
+            /* disk latency */
+            sleep(1);
+        }
+    }
+
+    private static void sleep(final long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (final InterruptedException e) {
+            throw new WTFException(e);
+        }
+    }
+
+    private static long log(final AsyncSinkProvider provider, final int threads, final int records) throws InterruptedException {
+        final Thread[] producers = new Thread[threads];
+        final long started = System.currentTimeMillis();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            producers[t] = new Thread("producer " + t) {
+                @Override
+                public void run() {
+                    for (int i = 0; i < records; i++) {
+                        provider.publish(new LogRecord2(null, thread + ":" + i));
+                    }
+                }
+            };
+            producers[t].start();
+        }
+        for (final Thread producer : producers) {
+            producer.join();
+        }
+        return System.currentTimeMillis() - started;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int threads = 4;
+        final int records = 50000;
+        SlowTarget target = new SlowTarget(threads, 0);
+        AsyncSinkProvider provider = new AsyncSinkProvider(target, 8192, OverflowPolicy.BLOCK);
+        final long logged = log(provider, threads, records);
+        provider.close();
+        System.out.println(threads * records + " records logged in " + logged + "ms, " + target.flushes.get() + " flushes");
+        if (target.published.get() != threads * records || provider.getPublishedRecords() != threads * records || provider.getDroppedRecords() != 0) {
+            throw new WTFException("block: " + target.published.get());
+        }
+        if (target.flushes.get() == 0 || target.flushes.get() > threads * records / 10) {
+            throw new WTFException("flushes: " + target.flushes.get());
+        }
+        /* the target is slower than the producers */
+        target = new SlowTarget(threads, 1);
+        provider = new AsyncSinkProvider(target, 64, OverflowPolicy.DROP);
+        log(provider, threads, 500);
+        provider.close();
+        System.out.println("dropped " + provider.getDroppedRecords() + " of " + threads * 500);
+        if (provider.getDroppedRecords() == 0 || provider.getDroppedRecords() + target.published.get() != threads * 500 || provider.getQueuedRecords() != 0) {
+            throw new WTFException("drop: " + provider.getDroppedRecords() + "/" + target.published.get());
+        }
+        /* idle records get flushed after the interval */
+        target = new SlowTarget(1, 0);
+        provider = new AsyncSinkProvider(target, 64, OverflowPolicy.CALLER_RUNS);
+        provider.setFlushInterval(50);
+        provider.publish(new LogRecord2(null, "0:0"));
+        sleep(500);
+        if (target.published.get() != 1 || target.flushes.get() != 1) {
+            throw new WTFException("interval: " + target.flushes.get());
+        }
+        provider.close();
+        System.out.println("SUCCESSFUL");
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.loggingv3.tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.loggingv3.simple.CallSiteCapture;
+import org.appwork.loggingv3.simple.LogRecord2;
+import org.appwork.loggingv3.simple.LogV3Level;
+import org.appwork.loggingv3.simple.LoggerToSink;
+import org.appwork.loggingv3.simple.SinkProvider;
+import org.appwork.loggingv3.simple.sink.BinaryLogReader;
+import org.appwork.loggingv3.simple.sink.BinaryLogReader.Record;
+import org.appwork.loggingv3.simple.sink.LogToBinaryFileSink;
+
+/**
+ * writes records of several loggers and threads into a binary log, and compares time range and logger queries with the written records
+ *
+ * @author Thomas
+ * @date 18.10.2026
+ *
+ */
+public class BinaryLogTest {
+    private static List<LogRecord2> log(final LogToBinaryFileSink sink, final String[] loggerNames, final int threads, final int records) throws InterruptedException {
+        final List<LogRecord2> written = Collections.synchronizedList(new ArrayList<LogRecord2>());
+        final SinkProvider provider = new SinkProvider() {
+            @Override
+            public void publish(final LogRecord2 record) {
+                synchronized (written) {
+                    written.add(record);
+                    sink.publish(record);
+                }
+            }
+        };
+        final LoggerToSink[] loggers = new LoggerToSink[loggerNames.length];
+        for (int i = 0; i < loggers.length; i++) {
+            loggers[i] = new LoggerToSink(provider, loggerNames[i]);
+            loggers[i].setCallSiteCapture(LogV3Level.UNDEFINED, CallSiteCapture.NONE);
+            loggers[i].setCallSiteCapture(LogV3Level.EXCEPTION, CallSiteCapture.NONE);
+        }
+        final Thread[] producers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            producers[t] = new Thread("producer " + t) {
+                @Override
+                public void run() {
+                    for (int i = 0; i < records; i++) {
+                        final LoggerToSink logger = loggers[(thread + i) % loggers.length];
+                        if (i % 1000 == 999) {
+                            logger.log(new Exception("failure " + thread + ":" + i));
+                        } else {
+                            logger.info("record " + thread + ":" + i + " äöü €");
+                        }
+                        if (i % 100 == 0) {
+                            try {
+                                Thread.sleep(1);
+                            } catch (InterruptedException e) {
+                                throw new WTFException(e);
+                            }
+                        }
+                    }
+                }
+            };
+            producers[t].start();
+        }
+        for (final Thread producer : producers) {
+            producer.join();
+        }
+        return written;
+    }
+
+    private static void check(final BinaryLogReader reader, final List<LogRecord2> written, final long from, final long to, final String logger) throws Exception {
+        final long started = System.nanoTime();
+        final List<Record> read = logger == null ? reader.read(from, to) : reader.read(from, to, logger);
+        final long took = System.nanoTime() - started;
+        final List<LogRecord2> expected = new ArrayList<LogRecord2>();
+        for (final LogRecord2 record : written) {
+            if (record.timestamp >= from && record.timestamp <= to && (logger == null || logger.equals(((LoggerToSink) record.getLogger()).getName()))) {
+                expected.add(record);
+            }
+        }
+        if (read.size() != expected.size()) {
+            throw new WTFException("count " + from + "-" + to + " " + logger + ": " + read.size() + " != " + expected.size());
+        }
+        for (int i = 0; i < read.size(); i++) {
+            final Record r = read.get(i);
+            final LogRecord2 e = expected.get(i);
+            if (r.timestamp != e.timestamp || r.level != e.getLevel() || r.threadID != e.thread.getId() || !r.threadName.equals(e.thread.getName()) || !r.logger.equals(((LoggerToSink) e.getLogger()).getName()) || !r.message.equals(e.message)) {
+                throw new WTFException("record " + i + ": " + r);
+            }
+        }
+        System.out.println((to - from) + "ms range, logger " + logger + ": " + read.size() + " records in " + took / 1000 + "us");
+    }
+
+    public static void main(String[] args) throws Exception {
+        final File file = File.createTempFile("binaryLogTest", ".bin");
+        try {
+            file.delete();
+            LogToBinaryFileSink sink = new LogToBinaryFileSink(file);
+            sink.setMaxBlockRecords(256);
+            final List<LogRecord2> written = log(sink, new String[] { "downloads", "gui", "network" }, 4, 20000);
+            sink.close();
+            System.out.println(written.size() + " records: " + file.length() + " bytes");
+            BinaryLogReader reader = new BinaryLogReader(file);
+            try {
+                if (reader.getRecordCount() != written.size() || !reader.getLoggers().toString().equals("[downloads, gui, network]")) {
+                    throw new WTFException("file: " + reader.getRecordCount() + " " + reader.getLoggers());
+                }
+                final long first = reader.getFirstTimestamp();
+                final long last = reader.getLastTimestamp();
+                check(reader, written, first, last, null);
+                check(reader, written, first, last, "gui");
+                check(reader, written, first + (last - first) / 2, first + (last - first) / 2 + 10, null);
+                check(reader, written, first + (last - first) / 3, first + (last - first) / 3 + 50, "network");
+                check(reader, written, first, first, "unknown");
+            } finally {
+                reader.close();
+            }
+            /* killed while a block was written: the incomplete block is ignored, and truncated by the next sink */
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            final long complete = raf.length();
+            raf.setLength(complete + 100);
+            raf.close();
+            if (BinaryLogReader.getValidLength(file) != complete) {
+                throw new WTFException("valid length");
+            }
+            sink = new LogToBinaryFileSink(file);
+            final List<LogRecord2> appended = log(sink, new String[] { "update", "downloads" }, 2, 1000);
+            sink.close();
+            written.addAll(appended);
+            reader = new BinaryLogReader(file);
+            try {
+                if (reader.getRecordCount() != written.size() || !reader.getLoggers().toString().equals("[downloads, gui, network, update]")) {
+                    throw new WTFException("appended: " + reader.getRecordCount() + " " + reader.getLoggers());
+                }
+                check(reader, written, reader.getFirstTimestamp(), reader.getLastTimestamp(), "downloads");
+                check(reader, written, appended.get(0).timestamp, reader.getLastTimestamp(), "update");
+            } finally {
+                reader.close();
+            }
+            /* an idle sink writes its last block after maxBlockDelay without flush or close */
+            sink = new LogToBinaryFileSink(file);
+            sink.setMaxBlockDelay(200);
+            written.addAll(log(sink, new String[] { "idle" }, 1, 10));
+            final long timeout = System.currentTimeMillis() + 5000;
+            while (true) {
+                reader = new BinaryLogReader(file);
+                try {
+                    if (reader.getRecordCount() == written.size()) {
+                        break;
+                    }
+                } finally {
+                    reader.close();
+                }
+                if (System.currentTimeMillis() > timeout) {
+                    throw new WTFException("idle block not written");
+                }
+                Thread.sleep(50);
+            }
+            sink.close();
+            final FileOutputStream fos = new FileOutputStream(file);
+            fos.write("plain text log".getBytes("UTF-8"));
+            fos.close();
+            try {
+                new LogToBinaryFileSink(file);
+                throw new WTFException("text log overwritten");
+            } catch (java.io.IOException e) {
+                // expected
+            }
+            System.out.println("SUCCESSFUL");
+        } finally {
+            file.delete();
+        }
+    }
+}
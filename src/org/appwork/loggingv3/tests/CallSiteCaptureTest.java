@@ -0,0 +1,111 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.loggingv3.tests;
+
+import java.util.concurrent.Executors;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.loggingv3.simple.CallSiteCapture;
+import org.appwork.loggingv3.simple.LogRecord2;
+import org.appwork.loggingv3.simple.LogV3Level;
+import org.appwork.loggingv3.simple.LoggerToSink;
+import org.appwork.loggingv3.simple.SinkProvider;
+
+/**
+ * checks the call site of all capture modes and compares their costs
+ *
+ * @author Thomas
+ * @date 18.10.2026
+ *
+ */
+public class CallSiteCaptureTest {
+    private static LogRecord2 last;
+
+    /**
+     * every frame of this package counts as logging code, so the first frame outside is the jdk code that calls the runnable
+     */
+    private static void log(final LoggerToSink logger, final int depth, final int records) throws Exception {
+        if (depth > 0) {
+            log(logger, depth - 1, records);
+        } else {
+            Executors.callable(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < records; i++) {
+                        logger.info("record");
+                    }
+                }
+            }).call();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final LoggerToSink logger = new LoggerToSink(new SinkProvider() {
+            @Override
+            public void publish(final LogRecord2 record) {
+                last = record;
+            }
+        });
+        for (final CallSiteCapture capture : CallSiteCapture.values()) {
+            logger.setCallSiteCapture(LogV3Level.UNDEFINED, capture);
+            log(logger, 0, 1);
+            final StackTraceElement thrownAt = last.getThrownAt();
+            if (capture == CallSiteCapture.NONE) {
+                if (thrownAt != null) {
+                    throw new WTFException("none: " + thrownAt);
+                }
+            } else if (thrownAt == null || !thrownAt.getClassName().startsWith(Executors.class.getName()) || !"call".equals(thrownAt.getMethodName())) {
+                throw new WTFException(capture + ": " + thrownAt);
+            }
+        }
+        logger.setCallSiteCapture(LogV3Level.UNDEFINED, CallSiteCapture.NONE);
+        logger.exception("exceptions keep their call site", new Exception());
+        if (last.getThrownAt() == null) {
+            throw new WTFException("level");
+        }
+        /* a typical stack depth of a worker thread */
+        final int records = 100000;
+        for (int round = 0; round < 2; round++) {
+            for (final CallSiteCapture capture : CallSiteCapture.values()) {
+                logger.setCallSiteCapture(LogV3Level.UNDEFINED, capture);
+                final long started = System.nanoTime();
+                log(logger, 50, records);
+                if (round == 1) {
+                    System.out.println(capture + ": " + (System.nanoTime() - started) / records + "ns per record");
+                }
+            }
+        }
+        System.out.println("SUCCESSFUL");
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.loggingv3.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.loggingv3.simple.CallSiteCapture;
+import org.appwork.loggingv3.simple.LogRecord2;
+import org.appwork.loggingv3.simple.sink.AbstractSink;
+import org.appwork.loggingv3.simple.sink.GarbageFreeFormatter;
+import org.appwork.loggingv3.simple.sink.SimpleFormatter;
+
+/**
+ * the garbage free formatter must produce exactly the bytes of SimpleFormatter, and allocate (almost) nothing
+ *
+ * @author Thomas
+ * @date 18.10.2026
+ *
+ */
+public class GarbageFreeFormatterTest {
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public static void main(String[] args) throws Exception {
+        final List<LogRecord2> records = new ArrayList<LogRecord2>();
+        records.add(new LogRecord2(null, "simple message"));
+        records.add(new LogRecord2(null, "first line\r\n\r\n  \n   second line\nthird line\n"));
+        records.add(new LogRecord2(null, (String) null));
+        records.add(new LogRecord2(null, "umlauts äöü, euro €, emoji 😀, broken \ud83d surrogate", CallSiteCapture.NONE));
+        final StringBuilder huge = new StringBuilder();
+        while (huge.length() < 128 * 1024) {
+            huge.append("a huge message with € signs\n");
+        }
+        records.add(new LogRecord2(null, huge.toString()));
+        final Thread thread = new Thread("a very long thread name that has to be abbreviated by the formatter") {
+            @Override
+            public void run() {
+                records.add(new LogRecord2(null, "from another thread"));
+            }
+        };
+        thread.start();
+        thread.join();
+        records.add(new LogRecord2(null, "after the long thread name"));
+        final SimpleFormatter simple = new SimpleFormatter();
+        final GarbageFreeFormatter garbageFree = new GarbageFreeFormatter();
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (final LogRecord2 record : records) {
+            final String expected = simple.format(record);
+            if (!expected.equals(garbageFree.format(record))) {
+                throw new WTFException("format:\r\n" + expected + "\r\n" + garbageFree.format(record));
+            }
+            bos.reset();
+            garbageFree.formatUTF8(record, bos);
+            if (!new String(bos.toByteArray(), "UTF-8").equals(expected.replace("\ud83d ", "? ") + "\r\n")) {
+                throw new WTFException("utf8: " + new String(bos.toByteArray(), "UTF-8"));
+            }
+        }
+        // the huge record must not stay in the per thread buffers
+        final Field field = GarbageFreeFormatter.class.getDeclaredField("buffers");
+        field.setAccessible(true);
+        final Object buffers = ((ThreadLocal<?>) field.get(garbageFree)).get();
+        for (final String name : new String[] { "sb", "bytes" }) {
+            final Field buffer = buffers.getClass().getDeclaredField(name);
+            buffer.setAccessible(true);
+            final Object value = buffer.get(buffers);
+            final int size = value instanceof StringBuilder ? ((StringBuilder) value).capacity() : ((byte[]) value).length;
+            if (size > 64 * 1024) {
+                throw new WTFException(name + " not shrunk: " + size);
+            }
+        }
+        // sinks use the byte path only if format() is not customized
+        final LogRecord2 sinkRecord = records.get(0);
+        final ByteSink plainSink = new ByteSink();
+        plainSink.setFormatter(garbageFree);
+        plainSink.publish(sinkRecord);
+        if (!new String(plainSink.bos.toByteArray(), "UTF-8").equals(simple.format(sinkRecord) + "\r\n")) {
+            throw new WTFException("sink: " + new String(plainSink.bos.toByteArray(), "UTF-8"));
+        }
+        final ByteSink customSink = new ByteSink() {
+            @Override
+            protected String format(LogRecord2 record) {
+                return "custom " + super.format(record);
+            }
+        };
+        customSink.setFormatter(garbageFree);
+        customSink.publish(sinkRecord);
+        if (!new String(customSink.bos.toByteArray(), "UTF-8").equals("custom " + simple.format(sinkRecord) + "\r\n")) {
+            throw new WTFException("format() bypassed: " + new String(customSink.bos.toByteArray(), "UTF-8"));
+        }
+        final LogRecord2 record = new LogRecord2(null, "a typical download log line with some information");
+        final NullOutputStream nos = new NullOutputStream();
+        final int rounds = 100000;
+        for (int warmup = 0; warmup < 2; warmup++) {
+            long allocated = allocatedBytes();
+            long started = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                nos.write((simple.format(record) + "\r\n").getBytes("UTF-8"));
+            }
+            final long simpleTime = System.nanoTime() - started;
+            final long simpleAllocated = allocatedBytes() - allocated;
+            allocated = allocatedBytes();
+            started = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                garbageFree.formatUTF8(record, nos);
+            }
+            final long garbageFreeTime = System.nanoTime() - started;
+            final long garbageFreeAllocated = allocatedBytes() - allocated;
+            if (warmup == 1) {
+                System.out.println("SimpleFormatter: " + simpleTime / rounds + "ns, " + simpleAllocated / rounds + " bytes per record");
+                System.out.println("GarbageFreeFormatter: " + garbageFreeTime / rounds + "ns, " + garbageFreeAllocated / rounds + " bytes per record");
+                if (garbageFreeAllocated / rounds > 16) {
+                    throw new WTFException("allocations: " + garbageFreeAllocated / rounds);
+                }
+            }
+        }
+        System.out.println("SUCCESSFUL");
+    }
+
+    private static class ByteSink extends AbstractSink {
+        private final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+        @Override
+        public void publish(LogRecord2 record) {
+            try {
+                formatUTF8(record, bos);
+            } catch (final IOException e) {
+                throw new WTFException(e);
+            }
+        }
+    }
+
+    private static class NullOutputStream extends java.io.OutputStream {
+        @Override
+        public void write(final int b) {
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+        }
+    }
+}
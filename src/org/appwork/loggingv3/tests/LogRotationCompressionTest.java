@@ -0,0 +1,189 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.loggingv3.tests;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.loggingv3.simple.LogRecord2;
+import org.appwork.loggingv3.simple.sink.LogToFileSink;
+import org.appwork.utils.Files;
+import org.appwork.utils.IO;
+
+/**
+ * rotated files get compressed in parallel, the shutdown packing copies them raw, and maxTotalBytes bounds the log root
+ *
+ * @author Thomas
+ * @date 18.10.2026
+ *
+ */
+public class LogRotationCompressionTest {
+    private static class TestSink extends LogToFileSink {
+        private boolean down = false;
+
+        private TestSink(final File root) {
+            super(root, "log.\\d.txt", 3);
+        }
+
+        @Override
+        protected synchronized void onShutdown() {
+            if (!this.down) {
+                this.down = true;
+                super.onShutdown();
+            }
+        }
+    }
+
+    private static void log(final LogToFileSink sink, final int threads, final int records) throws InterruptedException {
+        final Thread[] producers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            producers[t] = new Thread("producer " + t) {
+                @Override
+                public void run() {
+                    for (int i = 0; i < records; i++) {
+                        sink.publish(new LogRecord2(null, "record " + thread + ":" + i + " some padding to get larger log files, some padding to get larger log files"));
+                    }
+                }
+            };
+            producers[t].start();
+        }
+        for (final Thread producer : producers) {
+            producer.join();
+        }
+    }
+
+    /**
+     * @return number of lines of all entries
+     */
+    private static int countLines(final File zip) throws IOException {
+        final ZipFile zipFile = new ZipFile(zip);
+        try {
+            int lines = 0;
+            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(zipFile.getInputStream(entries.nextElement()), "UTF-8"));
+                try {
+                    while (reader.readLine() != null) {
+                        lines++;
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+            return lines;
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    private static void waitFor(final File file, final boolean exists) throws InterruptedException {
+        final long timeout = System.currentTimeMillis() + 30000;
+        while (file.exists() != exists) {
+            if (System.currentTimeMillis() > timeout) {
+                throw new WTFException((exists ? "missing: " : "not deleted: ") + file);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final File root = new File(System.getProperty("java.io.tmpdir"), "logRotationCompressionTest_" + System.currentTimeMillis());
+        try {
+            /* unpacked folder of a killed session: one plain file and one compressed rotation */
+            final File killed = new File(root, "logs_2020.01.01_00.00.00.000_1");
+            killed.mkdirs();
+            IO.writeStringToFile(new File(killed, "log.002.txt"), "plain 1\r\nplain 2\r\n");
+            final ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(new File(killed, "log.001.txt.zip")));
+            zos.putNextEntry(new ZipEntry("log.001.txt"));
+            zos.write("zipped 1\r\nzipped 2\r\nzipped 3\r\n".getBytes("UTF-8"));
+            zos.close();
+            TestSink sink = new TestSink(root);
+            final File killedZip = new File(root, killed.getName() + ".zip");
+            waitFor(killedZip, true);
+            /* the folder gets deleted after the zip has been moved into place */
+            waitFor(killed, false);
+            if (countLines(killedZip) != 5) {
+                throw new WTFException("post cleanup: " + countLines(killedZip));
+            }
+            /* parallel compression of the rotations */
+            sink.setMaxFileSize(64 * 1024);
+            sink.setCompressionThreads(4);
+            final int threads = 4;
+            final int records = 10000;
+            log(sink, threads, records);
+            final File folder = sink.getLogFolder();
+            long started = System.currentTimeMillis();
+            sink.onShutdown();
+            System.out.println("rotations packed in " + (System.currentTimeMillis() - started) + "ms");
+            final File sessionZip = new File(folder.getAbsolutePath() + ".zip");
+            if (folder.exists() || countLines(sessionZip) != threads * records) {
+                throw new WTFException("session: " + countLines(sessionZip));
+            }
+            /* the export reads the written zips with ZipInputStream */
+            final File export = sink.exportFull(0);
+            if (countLines(export) != threads * records + 5) {
+                throw new WTFException("export: " + countLines(export));
+            }
+            Files.deleteRecursive(export.getParentFile(), false);
+            /* the disk limit removes the old sessions first, then the oldest rotations */
+            final long limit = 256 * 1024;
+            sink = new TestSink(root);
+            sink.setMaxFileSize(64 * 1024);
+            sink.setMaxTotalBytes(limit);
+            log(sink, threads, records);
+            sink.onShutdown();
+            if (killedZip.exists() || sessionZip.exists()) {
+                throw new WTFException("old sessions not deleted");
+            }
+            final long size = Files.getDirectorySize(root);
+            System.out.println("log root: " + size + " bytes, limit " + limit);
+            /* the current, uncompressed file is not part of the limit */
+            if (size > limit + 64 * 1024) {
+                throw new WTFException("limit: " + size);
+            }
+            System.out.println("SUCCESSFUL");
+        } finally {
+            Files.deleteRecursive(root, false);
+        }
+    }
+}
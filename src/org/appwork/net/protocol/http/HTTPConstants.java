@@ -71,6 +71,7 @@ public class HTTPConstants {
          * frameworks still use the 302 status code as if it were the 303[6].
          */
         REDIRECT_FOUND(302, "Found"),
+        NOT_MODIFIED(304, "Not Modified"),
         /**
          * http://code.google.com/p/gears/wiki/ResumableHttpRequestsProposal
          */
@@ -293,6 +294,7 @@ public class HTTPConstants {
     public static final String HEADER_RESPONSE_TRANSFER_ENCODING             = "Transfer-Encoding";            // https://tools.ietf.org/html/rfc2616#section-3.6
     public static final String HEADER_RESPONSE_TRANSFER_ENCODING_CHUNKED     = "chunked";
     public static final String HEADER_RESPONSE_ACCEPT_RANGES                 = "Accept-Ranges";
+    public static final String HEADER_RESPONSE_LAST_MODIFIED                 = "Last-Modified";
     public static final String HEADER_RESPONSE_CONTENT_ENCODING              = "Content-Encoding";             // https://tools.ietf.org/html/rfc2616#section-3.5
     public static final String HEADER_RESPONSE_LOCATION                      = "Location";
     public static final String HEADER_RESPONSE_SERVER                        = "Server";
@@ -33,12 +33,16 @@
  * ==================================================================================================================================================== */
 package org.appwork.remoteapi.events;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import org.appwork.remoteapi.RemoteAPIRequest;
@@ -50,8 +54,17 @@ import org.appwork.remoteapi.events.json.SubscriptionStatusResponse;
 import org.appwork.remoteapi.events.local.LocalEventsAPIEvent;
 import org.appwork.remoteapi.events.local.LocalEventsAPIEventSender;
 import org.appwork.remoteapi.exceptions.APIFileNotFoundException;
+import org.appwork.remoteapi.exceptions.BadRequestException;
 import org.appwork.remoteapi.exceptions.InternalApiException;
+import org.appwork.remoteapi.exceptions.ServiceUnavailableException;
 import org.appwork.loggingv3.LogV3;
+import org.appwork.net.protocol.http.HTTPConstants;
+import org.appwork.net.protocol.http.HTTPConstants.ResponseCode;
+import org.appwork.utils.net.HTTPHeader;
+import org.appwork.utils.net.HeaderCollection;
+import org.appwork.utils.net.httpserver.HttpConnection;
+import org.appwork.utils.net.httpserver.RawHttpConnectionInterface;
+import org.appwork.utils.net.websocket.WebSocketServerEndPoint;
 
 /**
  * @author daniel
@@ -60,8 +73,8 @@ import org.appwork.loggingv3.LogV3;
 public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
     private final LocalEventsAPIEventSender localEventSender;
 
-    /**
-     *
+    /**
+     *
      */
     public EventsAPI() {
         localEventSender = new LocalEventsAPIEventSender();
@@ -71,7 +84,30 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
         return localEventSender;
     }
 
-    protected final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+    protected final CopyOnWriteArrayList<Subscriber>  subscribers     = new CopyOnWriteArrayList<Subscriber>();
+    protected final SubscriptionMatcher               matcher         = new SubscriptionMatcher();
+    /* max number of events in one listen response */
+    protected volatile int                            maxBatchSize    = 256;
+    /* max idle time of a stream/websocket connection before a heartbeat is sent */
+    protected volatile long                           streamHeartbeat = 15 * 1000l;
+    private static final byte[]                       SSE_HEARTBEAT   = ":\n\n".getBytes();
+    /* max number of concurrent stream/websocket connections */
+    protected volatile int                            maxStreams      = 64;
+    protected final AtomicInteger                     streamCount     = new AtomicInteger(0);
+    /* streams handed over to the pushThread, also its lock */
+    protected final CopyOnWriteArrayList<EventStream> pushedStreams   = new CopyOnWriteArrayList<EventStream>();
+    protected Thread                                  pushThread      = null;
+    private boolean                                   pushSignalled   = false;
+    /* wakes up the pushThread, the streamListener of the pushed subscribers */
+    private final Runnable                            pushSignal      = new Runnable() {
+                                                                          @Override
+                                                                          public void run() {
+                                                                              synchronized (EventsAPI.this.pushedStreams) {
+                                                                                  EventsAPI.this.pushSignalled = true;
+                                                                                  EventsAPI.this.pushedStreams.notifyAll();
+                                                                              }
+                                                                          }
+                                                                      };
 
     public List<Subscriber> getSubscribers() {
         return Collections.unmodifiableList(this.subscribers);
@@ -139,6 +175,49 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
         return subscriber.poll(waitfor);
     }
 
+    /**
+     * removes all queued events of the subscriber (up to maxBatchSize) at once, waits up to waitfor ms if there is none
+     */
+    protected List<EventObject> pollEvents(Subscriber subscriber, long waitfor) throws InterruptedException {
+        final List<EventObject> ret = new ArrayList<EventObject>();
+        subscriber.poll(ret, this.getMaxBatchSize(), waitfor);
+        return ret;
+    }
+
+    public int getMaxBatchSize() {
+        return this.maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    public long getStreamHeartbeat() {
+        return this.streamHeartbeat;
+    }
+
+    public void setStreamHeartbeat(long streamHeartbeat) {
+        this.streamHeartbeat = Math.max(1000, streamHeartbeat);
+    }
+
+    /**
+     * a connected stream keeps its subscriber alive, so never wait longer than half the keepalive
+     */
+    protected long getStreamWait(Subscriber subscriber) {
+        return Math.max(1, Math.min(this.getStreamHeartbeat(), subscriber.getMaxKeepalive() / 2));
+    }
+
+    /**
+     * serializes a batch the same way listen does
+     */
+    protected String serializeEvents(final RemoteAPIRequest request, final RemoteAPIResponse response, final List<EventObject> events) {
+        final ArrayList<EventObjectStorable> eventStorables = new ArrayList<EventObjectStorable>(events.size());
+        for (final EventObject event : events) {
+            eventStorables.add(new EventObjectStorable(event));
+        }
+        return response.getRemoteAPI().toString(request, response, eventStorables);
+    }
+
     protected void pushBackEvent(Subscriber subscriber, List<EventObject> events) {
         subscriber.pushBack(events);
     }
@@ -194,16 +273,15 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
         if (subscriber == null) {
             throw new APIFileNotFoundException();
         }
-        final ArrayList<EventObject> events = new ArrayList<EventObject>();
-        final ArrayList<EventObjectStorable> eventStorables = new ArrayList<EventObjectStorable>();
+        List<EventObject> events = new ArrayList<EventObject>();
         try {
-            EventObject event;
-            while (getSubscriber(subscriptionid) == subscriber && (event = pollEvent(subscriber, events.size() == 0 ? subscriber.getPollTimeout() : 0)) != null) {
-                events.add(event);
-                eventStorables.add(new EventObjectStorable(event));
-            }
+            events = pollEvents(subscriber, subscriber.getPollTimeout());
         } catch (final InterruptedException e) {
         }
+        final ArrayList<EventObjectStorable> eventStorables = new ArrayList<EventObjectStorable>(events.size());
+        for (final EventObject event : events) {
+            eventStorables.add(new EventObjectStorable(event));
+        }
         try {
             response.getRemoteAPI().writeStringResponse(eventStorables, null, request, response);
         } catch (final Throwable e) {
@@ -212,6 +290,321 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
         }
     }
 
+    @Override
+    public void stream(final RemoteAPIRequest request, final RemoteAPIResponse response, final long subscriptionid) throws APIFileNotFoundException, InternalApiException, ServiceUnavailableException {
+        final Subscriber subscriber = getSubscriber(subscriptionid);
+        if (subscriber == null) {
+            throw new APIFileNotFoundException();
+        }
+        reserveStream();
+        final OutputStream os;
+        try {
+            /* no Content-Length, the connection gets closed after the stream ended */
+            response.setResponseCode(ResponseCode.SUCCESS_OK);
+            response.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_TYPE, "text/event-stream; charset=utf-8"));
+            response.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_REQUEST_CACHE_CONTROL, "no-store, no-cache"));
+            os = response.getOutputStream(true);
+            os.flush();
+        } catch (final IOException e) {
+            this.streamCount.decrementAndGet();
+            throw new InternalApiException(e);
+        }
+        runStream(new EventStream(subscriber, request, response) {
+            @Override
+            protected boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            protected void writeEvents(final String json) throws IOException {
+                /* one message per batch, https://html.spec.whatwg.org/multipage/server-sent-events.html#event-stream-interpretation */
+                final StringBuilder sb = new StringBuilder();
+                for (final String line : json.split("\r?\n")) {
+                    sb.append("data: ").append(line).append('\n');
+                }
+                sb.append('\n');
+                os.write(sb.toString().getBytes("UTF-8"));
+                os.flush();
+            }
+
+            @Override
+            protected void writeHeartbeat() throws IOException {
+                os.write(SSE_HEARTBEAT);
+                os.flush();
+            }
+
+            @Override
+            protected void close() {
+            }
+        });
+    }
+
+    @Override
+    public void websocket(final RemoteAPIRequest request, final RemoteAPIResponse response, final long subscriptionid) throws APIFileNotFoundException, InternalApiException, BadRequestException, ServiceUnavailableException {
+        final Subscriber subscriber = getSubscriber(subscriptionid);
+        if (subscriber == null) {
+            throw new APIFileNotFoundException();
+        }
+        final HeaderCollection requestHeaders = request.getRequestHeaders();
+        if (!WebSocketServerEndPoint.isUpgradeRequest(requestHeaders) || request.getHttpRequest().getConnection() == null) {
+            throw new BadRequestException("WebSocket upgrade expected");
+        }
+        reserveStream();
+        final RawHttpConnectionInterface connection = request.getHttpRequest().getConnection();
+        final Socket socket = connection instanceof HttpConnection ? ((HttpConnection) connection).getClientSocket() : null;
+        final WebSocketServerEndPoint endPoint;
+        try {
+            if (socket != null) {
+                /*
+                 * a read timeout lets channel based sockets switch to non blocking mode while reading, which breaks concurrent writes. gone
+                 * clients are detected by failing pings instead
+                 */
+                socket.setSoTimeout(0);
+            }
+            response.setResponseCode(ResponseCode.SWITCHING_PROTOCOLS);
+            response.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_REQUEST_UPGRADE, "websocket"));
+            /* replaces the default Connection: close header, so the connection will never be reused for http requests */
+            response.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_REQUEST_CONNECTION, "Upgrade"));
+            response.getResponseHeaders().add(new HTTPHeader(WebSocketServerEndPoint.HEADER_SEC_WEBSOCKET_ACCEPT, WebSocketServerEndPoint.buildAcceptKey(requestHeaders.getValue(WebSocketServerEndPoint.HEADER_SEC_WEBSOCKET_KEY))));
+            final OutputStream os = response.getOutputStream(true);
+            os.flush();
+            endPoint = new WebSocketServerEndPoint(connection.getInputStream(), os, socket != null ? socket.getChannel() : null);
+        } catch (final IOException e) {
+            this.streamCount.decrementAndGet();
+            throw new InternalApiException(e);
+        }
+        /* answers pings and close frames, available() is useless on channel based sockets */
+        final Thread reader = new Thread("EventsAPI:WebSocket:" + subscriptionid) {
+            @Override
+            public void run() {
+                try {
+                    endPoint.readFrames();
+                } catch (final IOException ignore) {
+                } finally {
+                    /* the stream ends as soon as possible */
+                    subscriber.notifyListener();
+                }
+            }
+        };
+        reader.setDaemon(true);
+        reader.start();
+        runStream(new EventStream(subscriber, request, response) {
+            @Override
+            protected boolean isOpen() {
+                return !endPoint.isClosed();
+            }
+
+            @Override
+            protected void writeEvents(final String json) throws IOException {
+                endPoint.writeFrame(endPoint.buildUTF8TextFrame(json));
+            }
+
+            @Override
+            protected void writeHeartbeat() throws IOException {
+                endPoint.writeFrame(endPoint.buildPingFrame());
+            }
+
+            @Override
+            protected void close() {
+                try {
+                    endPoint.close();
+                } catch (final IOException ignore) {
+                }
+            }
+        });
+    }
+
+    public int getMaxStreams() {
+        return this.maxStreams;
+    }
+
+    /**
+     * @param maxStreams
+     *            max number of concurrent stream/websocket connections, more get a 503 response
+     */
+    public void setMaxStreams(int maxStreams) {
+        this.maxStreams = Math.max(0, maxStreams);
+    }
+
+    public int getStreamCount() {
+        return this.streamCount.get();
+    }
+
+    /**
+     * @throws ServiceUnavailableException
+     *             if there are already {@link #getMaxStreams()} streams
+     */
+    protected void reserveStream() throws ServiceUnavailableException {
+        while (true) {
+            final int count = this.streamCount.get();
+            if (count >= this.getMaxStreams()) {
+                throw new ServiceUnavailableException("too many streams");
+            } else if (this.streamCount.compareAndSet(count, count + 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * hands a connection of the HttpServer over to the push thread, so it does not block a worker of the server. Other connections are
+     * served by the calling thread until the stream ended
+     */
+    protected void runStream(final EventStream stream) {
+        final RawHttpConnectionInterface connection = stream.request.getHttpRequest().getConnection();
+        if (connection instanceof HttpConnection) {
+            ((HttpConnection) connection).detach(new Runnable() {
+                @Override
+                public void run() {
+                    addPushedStream(stream, (HttpConnection) connection);
+                }
+            });
+            return;
+        }
+        try {
+            while (stream.push(getStreamWait(stream.subscriber))) {
+                /* push waits for the events itself */
+            }
+        } catch (final InterruptedException e) {
+        } finally {
+            stream.close();
+            this.streamCount.decrementAndGet();
+        }
+    }
+
+    private void addPushedStream(final EventStream stream, final HttpConnection connection) {
+        stream.connection = connection;
+        stream.subscriber.streamListener = this.pushSignal;
+        synchronized (this.pushedStreams) {
+            this.pushedStreams.add(stream);
+            this.pushSignalled = true;
+            this.pushedStreams.notifyAll();
+            if (this.pushThread == null) {
+                this.pushThread = new Thread("EventsAPI:Push") {
+                    @Override
+                    public void run() {
+                        pushStreams();
+                    }
+                };
+                this.pushThread.setDaemon(true);
+                this.pushThread.start();
+            }
+        }
+    }
+
+    /**
+     * the loop of the push thread: writes the queued events of all handed over streams and waits until a subscriber gets new events or a
+     * heartbeat is due. A client that does not read blocks the other streams until its socket buffer has space again
+     */
+    protected void pushStreams() {
+        while (true) {
+            long wait = this.getStreamHeartbeat();
+            synchronized (this.pushedStreams) {
+                this.pushSignalled = false;
+            }
+            for (final EventStream stream : this.pushedStreams) {
+                boolean open = false;
+                try {
+                    open = stream.push(0);
+                } catch (final Throwable e) {
+                    LogV3.log(e);
+                }
+                if (!open) {
+                    this.pushedStreams.remove(stream);
+                    stream.subscriber.streamListener = null;
+                    stream.close();
+                    stream.connection.closeConnection();
+                    stream.connection.close();
+                    this.streamCount.decrementAndGet();
+                } else if (stream.subscriber.size() > 0) {
+                    /* more than maxBatchSize events */
+                    wait = 0;
+                } else {
+                    wait = Math.min(wait, stream.lastWrite + getStreamWait(stream.subscriber) - System.currentTimeMillis());
+                }
+            }
+            synchronized (this.pushedStreams) {
+                if (this.pushedStreams.size() == 0) {
+                    this.pushThread = null;
+                    return;
+                }
+                if (!this.pushSignalled && wait > 0) {
+                    try {
+                        this.pushedStreams.wait(wait);
+                    } catch (final InterruptedException e) {
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * one stream/websocket connection of a subscriber
+     */
+    protected abstract class EventStream {
+        protected final Subscriber        subscriber;
+        protected final RemoteAPIRequest  request;
+        protected final RemoteAPIResponse response;
+        protected long                    lastWrite  = System.currentTimeMillis();
+        /* set if the connection has been handed over to the push thread */
+        protected HttpConnection          connection = null;
+
+        protected EventStream(final Subscriber subscriber, final RemoteAPIRequest request, final RemoteAPIResponse response) {
+            this.subscriber = subscriber;
+            this.request = request;
+            this.response = response;
+        }
+
+        /**
+         * @return false if the client closed the stream
+         */
+        protected abstract boolean isOpen();
+
+        protected abstract void writeEvents(String json) throws IOException;
+
+        protected abstract void writeHeartbeat() throws IOException;
+
+        /**
+         * ends the stream protocol, the connection itself is closed by the http server or the push thread
+         */
+        protected abstract void close();
+
+        /**
+         * writes the queued events, waits up to waitfor ms for them. writes a heartbeat if nothing has been written for
+         * {@link EventsAPI#getStreamWait(Subscriber)}
+         *
+         * @return false if the stream has ended
+         */
+        protected boolean push(final long waitfor) throws InterruptedException {
+            if (!this.subscriber.isAlive() || !this.isOpen()) {
+                return false;
+            }
+            final List<EventObject> events = pollEvents(this.subscriber, waitfor);
+            try {
+                if (!this.subscriber.isAlive() || !this.isOpen()) {
+                    if (events.size() > 0) {
+                        pushBackEvent(this.subscriber, events);
+                    }
+                    return false;
+                }
+                final long now = System.currentTimeMillis();
+                if (events.size() > 0) {
+                    this.writeEvents(serializeEvents(this.request, this.response, events));
+                    this.lastWrite = now;
+                } else if (now - this.lastWrite >= getStreamWait(this.subscriber)) {
+                    this.writeHeartbeat();
+                    this.lastWrite = now;
+                }
+                return true;
+            } catch (final IOException e) {
+                /* client is gone */
+                if (events.size() > 0) {
+                    pushBackEvent(this.subscriber, events);
+                }
+                return false;
+            }
+        }
+    }
+
     @Override
     public List<PublisherResponse> listpublisher() {
         final ArrayList<PublisherResponse> ret = new ArrayList<PublisherResponse>();
@@ -225,7 +618,7 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
     public boolean hasSubscriptionFor(EventPublisher publisher, String eventID) {
         if (eventID != null && subscribers.size() > 0) {
             final String event = publisher.getPublisherName().concat(".").concat(eventID);
-            for (final Subscriber subscriber : subscribers) {
+            for (final Subscriber subscriber : matcher.getSubscribers(event, subscribers)) {
                 if (subscriber.isAlive() && subscriber.isSubscribed(event)) {
                     return true;
                 }
@@ -247,9 +640,9 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
                     }
                 }
             }
-        } else {
-            /* publish to all subscribers */
-            for (final Subscriber subscriber : subscribers) {
+        } else if (eventID != null) {
+            /* publish to all matching subscribers */
+            for (final Subscriber subscriber : matcher.getSubscribers(eventID, subscribers)) {
                 if (push(subscriber, eventID, event)) {
                     ret.add(subscriber.getSubscriptionID());
                 }
@@ -341,6 +734,7 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
         if (subscriber != null && subscriber.isAlive()) {
             final Subscriber existing = getSubscriber(subscriber.getSubscriptionID());
             if (existing == null && subscribers.addIfAbsent(subscriber)) {
+                matcher.invalidate();
                 this.subscribersCleanupThread();
                 try {
                     localEventSender.fireEvent(new LocalEventsAPIEvent(this, LocalEventsAPIEvent.Type.CHANNEL_OPENED, subscriber));
@@ -354,6 +748,7 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
 
     public boolean removeSubscriber(Subscriber subscriber) {
         if (subscriber != null && subscribers.remove(subscriber)) {
+            matcher.invalidate();
             subscriber.kill();
             subscriber.notifyListener();
             try {
@@ -369,6 +764,7 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
     public SubscriptionResponse subscribe(final String[] subscriptions, final String[] exclusions) {
         final Subscriber subscriber = new Subscriber(convertToPatternArray(subscriptions), convertToPatternArray(exclusions));
         this.subscribers.add(subscriber);
+        this.matcher.invalidate();
         this.subscribersCleanupThread();
         final SubscriptionResponse ret = new SubscriptionResponse(subscriber);
         try {
@@ -402,6 +798,7 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
                                     final Subscriber subscriber = it.next();
                                     if (!subscriber.isAlive() || subscriber.isExpired()) {
                                         if (subscribers.remove(subscriber)) {
+                                            matcher.invalidate();
                                             subscriber.kill();
                                             subscriber.notifyListener();
                                             try {
@@ -448,6 +845,7 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
     public SubscriptionResponse unsubscribe(final long subscriptionid) {
         final Subscriber subscriber = getSubscriber(subscriptionid);
         if (subscriber != null && subscribers.remove(subscriber)) {
+            matcher.invalidate();
             subscriber.kill();
             subscriber.notifyListener();
             try {
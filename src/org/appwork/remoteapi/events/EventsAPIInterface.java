@@ -45,7 +45,9 @@ import org.appwork.remoteapi.events.json.PublisherResponse;
 import org.appwork.remoteapi.events.json.SubscriptionResponse;
 import org.appwork.remoteapi.events.json.SubscriptionStatusResponse;
 import org.appwork.remoteapi.exceptions.APIFileNotFoundException;
+import org.appwork.remoteapi.exceptions.BadRequestException;
 import org.appwork.remoteapi.exceptions.InternalApiException;
+import org.appwork.remoteapi.exceptions.ServiceUnavailableException;
 import org.appwork.remoteapi.responsewrapper.RawJSonWrapper;
 
 /**
@@ -72,6 +74,20 @@ public interface EventsAPIInterface extends RemoteAPIInterface {
     @APIParameterNames({ "request", "response", "subscriptionid" })
     public void listen(RemoteAPIRequest request, RemoteAPIResponse response, long subscriptionid) throws APIFileNotFoundException, InternalApiException;
 
+    /**
+     * pushes the events as server-sent events (text/event-stream) over one persistent connection, one message per batch. Answers 503 if
+     * the max number of streams is connected
+     */
+    @APIParameterNames({ "request", "response", "subscriptionid" })
+    public void stream(RemoteAPIRequest request, RemoteAPIResponse response, long subscriptionid) throws APIFileNotFoundException, InternalApiException, ServiceUnavailableException;
+
+    /**
+     * upgrades to a websocket and pushes the events as text frames, one frame per batch. Answers 503 if the max number of streams is
+     * connected
+     */
+    @APIParameterNames({ "request", "response", "subscriptionid" })
+    public void websocket(RemoteAPIRequest request, RemoteAPIResponse response, long subscriptionid) throws APIFileNotFoundException, InternalApiException, BadRequestException, ServiceUnavailableException;
+
     @ResponseWrapper(RawJSonWrapper.class)
     public List<PublisherResponse> listpublisher();
 
@@ -48,7 +48,20 @@ import java.util.regex.Pattern;
  *
  */
 public class Subscriber {
-    protected static final AtomicLong ID = new AtomicLong(System.currentTimeMillis());
+    public static enum OverflowPolicy {
+        /**
+         * a full queue drops its oldest event
+         */
+        DROP_OLDEST,
+        /**
+         * a full queue drops the oldest event with the same event id, the oldest event if there is none
+         */
+        COALESCE
+    }
+
+    protected static final AtomicLong ID                   = new AtomicLong(System.currentTimeMillis());
+    /* incremented on every subscriptions/exclusions change, invalidates SubscriptionMatcher results */
+    protected static final AtomicLong SUBSCRIPTION_CHANGES = new AtomicLong(0);
 
     private static long createUniqueAlltimeID() {
         long id = -1;
@@ -76,6 +89,11 @@ public class Subscriber {
     protected long                          pollTimeout         = 25 * 1000l;
     protected long                          maxKeepalive        = 120 * 1000l;
     protected final AtomicBoolean           alive               = new AtomicBoolean(true);
+    protected volatile int                  maxQueueSize        = 1024;
+    protected volatile OverflowPolicy       overflowPolicy      = OverflowPolicy.COALESCE;
+    protected final AtomicLong              droppedEvents       = new AtomicLong(0);
+    /* set by the EventsAPI while a stream pushes the events of this subscriber */
+    protected volatile Runnable             streamListener      = null;
 
     public boolean isAlive() {
         return alive.get();
@@ -131,6 +149,35 @@ public class Subscriber {
         return this.subscriptions.clone();
     }
 
+    /**
+     * @return max number of queued events, older events get dropped according to the {@link OverflowPolicy}
+     */
+    public int getMaxQueueSize() {
+        return this.maxQueueSize;
+    }
+
+    public void setMaxQueueSize(final int maxQueueSize) {
+        this.maxQueueSize = Math.max(1, maxQueueSize);
+        synchronized (this.events) {
+            this.trim();
+        }
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    public void setOverflowPolicy(final OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.DROP_OLDEST : overflowPolicy;
+    }
+
+    /**
+     * @return number of events dropped because the queue was full
+     */
+    public long getDroppedEvents() {
+        return this.droppedEvents.get();
+    }
+
     protected boolean isSubscribed(final EventObject event) {
         if (this.subscriptions.length == 0 || !isAlive() || isExpired()) {
             /* no subscriptions = no interest in any event */
@@ -141,7 +188,14 @@ public class Subscriber {
     }
 
     public boolean isSubscribed(final String eventID) {
-        if (isAlive() && !isExpired() && this.subscriptions.length > 0) {
+        return isAlive() && !isExpired() && matches(eventID);
+    }
+
+    /**
+     * @return true if the subscriptions/exclusions match the eventID, does not check alive/expired
+     */
+    protected boolean matches(final String eventID) {
+        if (this.subscriptions.length > 0) {
             for (final Pattern subscription : this.subscriptions) {
                 try {
                     if (subscription.matcher(eventID).find()) {
@@ -180,6 +234,10 @@ public class Subscriber {
         synchronized (this.events) {
             this.events.notifyAll();
         }
+        final Runnable streamListener = this.streamListener;
+        if (streamListener != null) {
+            streamListener.run();
+        }
     }
 
     protected EventObject poll(final long waitfor) throws InterruptedException {
@@ -194,6 +252,32 @@ public class Subscriber {
         }
     }
 
+    /**
+     * removes up to max events at once, waits up to waitfor ms if the queue is empty
+     *
+     * @return number of events added to the list
+     */
+    protected int poll(final List<EventObject> list, final int max, final long waitfor) throws InterruptedException {
+        synchronized (this.events) {
+            keepAlive();
+            if (this.events.size() == 0 && waitfor > 0) {
+                final long deadline = System.currentTimeMillis() + waitfor;
+                long wait = waitfor;
+                while (this.events.size() == 0 && wait > 0 && isAlive()) {
+                    this.events.wait(wait);
+                    wait = deadline - System.currentTimeMillis();
+                }
+            }
+            int ret = 0;
+            EventObject event;
+            while (ret < max && (event = this.events.poll()) != null) {
+                list.add(event);
+                ret++;
+            }
+            return ret;
+        }
+    }
+
     /**
      * @param filtered
      */
@@ -223,10 +307,42 @@ public class Subscriber {
                     }
                 }
             }
+            if (this.events.size() >= this.maxQueueSize) {
+                this.overflow(event);
+            }
             this.events.offerLast(event);
         }
     }
 
+    /**
+     * makes room for the given event in a full queue
+     */
+    protected void overflow(final EventObject event) {
+        if (this.overflowPolicy == OverflowPolicy.COALESCE && event.getEventid() != null) {
+            final Iterator<EventObject> it = this.events.iterator();
+            while (it.hasNext()) {
+                final EventObject next = it.next();
+                if (next.getPublisher() == event.getPublisher() && event.getEventid().equals(next.getEventid())) {
+                    it.remove();
+                    this.droppedEvents.incrementAndGet();
+                    return;
+                }
+            }
+        }
+        this.events.pollFirst();
+        this.droppedEvents.incrementAndGet();
+    }
+
+    /**
+     * drops the oldest events until the queue fits into maxQueueSize
+     */
+    private void trim() {
+        while (this.events.size() > this.maxQueueSize) {
+            this.events.pollFirst();
+            this.droppedEvents.incrementAndGet();
+        }
+    }
+
     protected void pushBack(final List<EventObject> pushBackEvents) {
         if (pushBackEvents.size() == 0) {
             return;
@@ -237,6 +353,7 @@ public class Subscriber {
                  * fast, current eventqueue is empty, so we can pushBack all at once
                  */
                 this.events.addAll(pushBackEvents);
+                this.trim();
                 return;
             }
             final ArrayList<EventObject> addFirst = new ArrayList<EventObject>(pushBackEvents.size());
@@ -261,6 +378,7 @@ public class Subscriber {
             this.events.clear();
             this.events.addAll(addFirst);
             this.events.addAll(backup);
+            this.trim();
         }
     }
 
@@ -270,6 +388,7 @@ public class Subscriber {
         } else {
             this.exclusions = this.uniquify(exclusions);
         }
+        SUBSCRIPTION_CHANGES.incrementAndGet();
     }
 
     /**
@@ -301,6 +420,7 @@ public class Subscriber {
         } else {
             this.subscriptions = this.uniquify(subscriptions);
         }
+        SUBSCRIPTION_CHANGES.incrementAndGet();
     }
 
     public int size() {
@@ -0,0 +1,101 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.remoteapi.events;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * caches the matching subscribers per event id, so publishing an event only evaluates the subscription patterns once per event id and
+ * subscription change instead of once per event and subscriber
+ *
+ * @author thomas
+ *
+ */
+public class SubscriptionMatcher {
+    private static class Match {
+        private final long         version;
+        private final long         changes;
+        private final Subscriber[] subscribers;
+
+        private Match(final long version, final long changes, final Subscriber[] subscribers) {
+            this.version = version;
+            this.changes = changes;
+            this.subscribers = subscribers;
+        }
+    }
+
+    /* event ids are usually a small fixed set, the cache is cleared if it grows beyond */
+    private static final int                       MAX_ENTRIES = 1024;
+    private final ConcurrentHashMap<String, Match> cache       = new ConcurrentHashMap<String, Match>();
+    private final AtomicLong                       version     = new AtomicLong(0);
+
+    /**
+     * call after subscribers got added or removed
+     */
+    public void invalidate() {
+        this.version.incrementAndGet();
+    }
+
+    /**
+     * @return subscribers whose subscriptions match the eventID, alive/expired state is not checked
+     */
+    public Subscriber[] getSubscribers(final String eventID, final List<Subscriber> subscribers) {
+        final long version = this.version.get();
+        final long changes = Subscriber.SUBSCRIPTION_CHANGES.get();
+        final Match match = this.cache.get(eventID);
+        if (match != null && match.version == version && match.changes == changes) {
+            return match.subscribers;
+        }
+        final List<Subscriber> ret = new ArrayList<Subscriber>();
+        for (final Subscriber subscriber : subscribers) {
+            if (subscriber.matches(eventID)) {
+                ret.add(subscriber);
+            }
+        }
+        final Subscriber[] array = ret.toArray(new Subscriber[ret.size()]);
+        if (this.cache.size() >= MAX_ENTRIES) {
+            this.cache.clear();
+        }
+        /* version/changes were read before matching, a concurrent change invalidates this entry */
+        this.cache.put(eventID, new Match(version, changes, array));
+        return array;
+    }
+
+    public int size() {
+        return this.cache.size();
+    }
+}
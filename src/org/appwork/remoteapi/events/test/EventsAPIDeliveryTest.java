@@ -0,0 +1,134 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.remoteapi.events.test;
+
+import java.util.List;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.remoteapi.events.EventObject;
+import org.appwork.remoteapi.events.EventPublisher;
+import org.appwork.remoteapi.events.EventsAPI;
+import org.appwork.remoteapi.events.RemoteAPIEventsSender;
+import org.appwork.remoteapi.events.SimpleEventObject;
+import org.appwork.remoteapi.events.Subscriber;
+import org.appwork.remoteapi.events.Subscriber.OverflowPolicy;
+
+/**
+ * publishes to many subscribers with few matches, checks bounded queues with both overflow policies and batched polling
+ *
+ * @author thomas
+ *
+ */
+public class EventsAPIDeliveryTest {
+    private static class TestEventsAPI extends EventsAPI {
+        private List<EventObject> poll(final Subscriber subscriber) throws InterruptedException {
+            return this.pollEvents(subscriber, 100);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final TestEventsAPI api = new TestEventsAPI();
+        final EventPublisher publisher = new EventPublisher() {
+            public String[] getPublisherEventIDs() {
+                return new String[] { "progress", "status" };
+            }
+
+            public String getPublisherName() {
+                return "downloads";
+            }
+
+            public void register(RemoteAPIEventsSender eventsAPI) {
+            }
+
+            public void unregister(RemoteAPIEventsSender eventsAPI) {
+            }
+        };
+        api.register(publisher);
+        for (int i = 0; i < 1000; i++) {
+            api.subscribe(new String[] { "other\\." + i }, null);
+        }
+        final long id = api.subscribe(new String[] { "downloads\\..*" }, new String[] { "\\.status$" }).getSubscriptionid();
+        Subscriber subscriber = null;
+        for (final Subscriber s : api.getSubscribers()) {
+            if (s.getSubscriptionID() == id) {
+                subscriber = s;
+            }
+        }
+        subscriber.setMaxQueueSize(10);
+        subscriber.setOverflowPolicy(OverflowPolicy.COALESCE);
+        for (int i = 0; i < 5; i++) {
+            if (!api.publishEvent(new SimpleEventObject(publisher, "status", i), null).isEmpty()) {
+                throw new WTFException("excluded event delivered");
+            }
+        }
+        final long started = System.currentTimeMillis();
+        for (int i = 0; i < 100000; i++) {
+            final List<Long> ret = api.publishEvent(new SimpleEventObject(publisher, i < 9 ? "started" + i : "progress", i), null);
+            if (ret.size() != 1 || ret.get(0) != id) {
+                throw new WTFException("delivered to " + ret);
+            }
+        }
+        System.out.println("100000 events to 1001 subscribers in " + (System.currentTimeMillis() - started) + "ms");
+        /* 9 distinct events and the latest progress event */
+        List<EventObject> events = api.poll(subscriber);
+        if (events.size() != 10 || !"started0".equals(events.get(0).getEventid()) || !Integer.valueOf(99999).equals(events.get(9).getEventdata())) {
+            throw new WTFException("coalesce: " + events.size());
+        }
+        if (subscriber.getDroppedEvents() != 100000 - 10) {
+            throw new WTFException("dropped: " + subscriber.getDroppedEvents());
+        }
+        subscriber.setOverflowPolicy(OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 25; i++) {
+            api.publishEvent(new SimpleEventObject(publisher, "started" + i, i), null);
+        }
+        api.setMaxBatchSize(4);
+        events = api.poll(subscriber);
+        if (events.size() != 4 || !Integer.valueOf(15).equals(events.get(0).getEventdata())) {
+            throw new WTFException("drop oldest: " + events.size());
+        }
+        if (api.poll(subscriber).size() != 4 || subscriber.size() != 2) {
+            throw new WTFException("batch: " + subscriber.size());
+        }
+        /* subscription changes must be visible to the matcher */
+        api.setsubscription(id, new String[] { "nothing" }, null);
+        if (!api.publishEvent(new SimpleEventObject(publisher, "progress", 0), null).isEmpty()) {
+            throw new WTFException("matcher not invalidated");
+        }
+        api.unsubscribe(id);
+        if (api.poll(subscriber).size() != 2) {
+            throw new WTFException("remaining events");
+        }
+        System.out.println("SUCCESSFUL");
+    }
+}
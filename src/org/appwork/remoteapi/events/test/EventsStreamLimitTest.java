@@ -0,0 +1,153 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.remoteapi.events.test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.remoteapi.RemoteAPI;
+import org.appwork.remoteapi.events.EventPublisher;
+import org.appwork.remoteapi.events.EventsAPI;
+import org.appwork.remoteapi.events.RemoteAPIEventsSender;
+import org.appwork.remoteapi.events.SimpleEventObject;
+import org.appwork.utils.Application;
+import org.appwork.utils.net.httpserver.HttpServer;
+import org.appwork.utils.net.httpserver.HttpServer.Engine;
+
+/**
+ * opens more streams than the HttpServer has workers. The streams must not block the workers, so a plain listen call still gets its
+ * answer, and streams beyond maxStreams get a 503
+ *
+ * @author thomas
+ *
+ */
+public class EventsStreamLimitTest {
+    private static final int STREAMS = 25;
+
+    private static final String WEBSOCKET = "Upgrade: websocket\r\nConnection: Upgrade\r\nSec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\nSec-WebSocket-Version: 13\r\n";
+
+    private static String request(final Socket socket, final String path, final String headers) throws IOException {
+        socket.setSoTimeout(5000);
+        socket.getOutputStream().write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n" + headers + "\r\n").getBytes("ISO-8859-1"));
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1")).readLine();
+    }
+
+    private static void test(final Engine engine) throws Exception {
+        final EventsAPI api = new EventsAPI();
+        api.setStreamHeartbeat(1000);
+        api.setMaxStreams(STREAMS);
+        final EventPublisher publisher = new EventPublisher() {
+            public String[] getPublisherEventIDs() {
+                return new String[] { "progress" };
+            }
+
+            public String getPublisherName() {
+                return "downloads";
+            }
+
+            public void register(RemoteAPIEventsSender eventsAPI) {
+            }
+
+            public void unregister(RemoteAPIEventsSender eventsAPI) {
+            }
+        };
+        api.register(publisher);
+        final RemoteAPI remoteAPI = new RemoteAPI();
+        remoteAPI.register(api);
+        final HttpServer server = new HttpServer(0, engine);
+        /* the blocking engine has 20 workers */
+        server.setMaxWorkers(4);
+        server.setLocalhostOnly(true);
+        server.registerRequestHandler(remoteAPI);
+        server.start();
+        final List<Socket> sockets = new ArrayList<Socket>();
+        final List<Long> ids = new ArrayList<Long>();
+        try {
+            for (int i = 0; i < STREAMS; i++) {
+                final long id = api.subscribe(new String[] { "downloads\\..*" }, null).getSubscriptionid();
+                ids.add(id);
+                final Socket socket = new Socket("127.0.0.1", server.getPort());
+                sockets.add(socket);
+                final boolean websocket = i % 2 == 1;
+                final String status = request(socket, "/events/" + (websocket ? "websocket" : "stream") + "?subscriptionid=" + id, websocket ? WEBSOCKET : "");
+                if (status == null || !status.startsWith(websocket ? "HTTP/1.1 101" : "HTTP/1.1 200")) {
+                    throw new WTFException(engine + " stream " + i + ": " + status);
+                }
+            }
+            final long id = api.subscribe(new String[] { "downloads\\..*" }, null).getSubscriptionid();
+            ids.add(id);
+            Socket socket = new Socket("127.0.0.1", server.getPort());
+            sockets.add(socket);
+            String status = request(socket, "/events/stream?subscriptionid=" + id, "");
+            if (status == null || !status.startsWith("HTTP/1.1 503")) {
+                throw new WTFException(engine + " stream beyond maxStreams: " + status);
+            }
+            api.publishEvent(new SimpleEventObject(publisher, "progress", 1), null);
+            socket = new Socket("127.0.0.1", server.getPort());
+            sockets.add(socket);
+            status = request(socket, "/events/listen?subscriptionid=" + id, "");
+            if (status == null || !status.startsWith("HTTP/1.1 200")) {
+                throw new WTFException(engine + " listen: " + status);
+            }
+            System.out.println(engine + ": " + api.getStreamCount() + " streams, listen answered");
+            for (final long subscription : ids) {
+                api.unsubscribe(subscription);
+            }
+            final long timeout = System.currentTimeMillis() + 5000;
+            while (api.getStreamCount() > 0) {
+                if (System.currentTimeMillis() > timeout) {
+                    throw new WTFException(engine + " streams not released: " + api.getStreamCount());
+                }
+                Thread.sleep(50);
+            }
+        } finally {
+            for (final Socket socket : sockets) {
+                socket.close();
+            }
+            server.stop();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Application.setApplication(".appwork-test");
+        test(Engine.BLOCKING);
+        test(Engine.SELECTOR);
+        System.out.println("SUCCESSFUL");
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.remoteapi.events.test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.remoteapi.RemoteAPI;
+import org.appwork.remoteapi.events.EventPublisher;
+import org.appwork.remoteapi.events.EventsAPI;
+import org.appwork.remoteapi.events.RemoteAPIEventsSender;
+import org.appwork.remoteapi.events.SimpleEventObject;
+import org.appwork.remoteapi.events.Subscriber;
+import org.appwork.utils.Application;
+import org.appwork.utils.net.httpserver.HttpServer;
+import org.appwork.utils.net.httpserver.HttpServer.Engine;
+import org.appwork.utils.net.websocket.ReadWebSocketFrame;
+import org.appwork.utils.net.websocket.WebSocketEndPoint;
+import org.appwork.utils.net.websocket.WebSocketFrame;
+import org.appwork.utils.net.websocket.WebSocketFrameHeader.OP_CODE;
+
+/**
+ * streams events over server-sent events and a websocket, checks that all events arrive and the websocket handshake/close
+ *
+ * @author thomas
+ *
+ */
+public class EventsStreamTest {
+    private static final Pattern EVENTID = Pattern.compile("\"eventid\"");
+    private static final int     EVENTS  = 10000;
+
+    private static int count(final String text) {
+        int ret = 0;
+        final Matcher matcher = EVENTID.matcher(text);
+        while (matcher.find()) {
+            ret++;
+        }
+        return ret;
+    }
+
+    private static long subscribe(final EventsAPI api) {
+        final long id = api.subscribe(new String[] { "downloads\\..*" }, null).getSubscriptionid();
+        for (final Subscriber subscriber : api.getSubscribers()) {
+            if (subscriber.getSubscriptionID() == id) {
+                /* no coalescing, every event must arrive */
+                subscriber.setMaxQueueSize(EVENTS);
+            }
+        }
+        return id;
+    }
+
+    private static void publish(final EventsAPI api, final EventPublisher publisher) {
+        new Thread("publisher") {
+            @Override
+            public void run() {
+                for (int i = 0; i < EVENTS; i++) {
+                    api.publishEvent(new SimpleEventObject(publisher, "progress", i), null);
+                }
+            }
+        }.start();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Application.setApplication(".appwork-test");
+        final EventsAPI api = new EventsAPI();
+        api.setStreamHeartbeat(1000);
+        final EventPublisher publisher = new EventPublisher() {
+            public String[] getPublisherEventIDs() {
+                return new String[] { "progress" };
+            }
+
+            public String getPublisherName() {
+                return "downloads";
+            }
+
+            public void register(RemoteAPIEventsSender eventsAPI) {
+            }
+
+            public void unregister(RemoteAPIEventsSender eventsAPI) {
+            }
+        };
+        api.register(publisher);
+        final RemoteAPI remoteAPI = new RemoteAPI();
+        remoteAPI.register(api);
+        final HttpServer server = new HttpServer(0, Engine.SELECTOR);
+        server.setLocalhostOnly(true);
+        server.registerRequestHandler(remoteAPI);
+        server.start();
+        try {
+            /* server-sent events */
+            long id = subscribe(api);
+            Socket socket = new Socket("127.0.0.1", server.getPort());
+            socket.setSoTimeout(10000);
+            socket.getOutputStream().write(("GET /events/stream?subscriptionid=" + id + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes("ISO-8859-1"));
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            String line = reader.readLine();
+            if (!line.startsWith("HTTP/1.1 200")) {
+                throw new WTFException("sse: " + line);
+            }
+            boolean eventStream = false;
+            while ((line = reader.readLine()).length() > 0) {
+                eventStream |= line.startsWith("Content-Type: text/event-stream");
+            }
+            if (!eventStream) {
+                throw new WTFException("sse content type");
+            }
+            long started = System.currentTimeMillis();
+            publish(api, publisher);
+            int received = 0;
+            int messages = 0;
+            boolean heartbeat = false;
+            while (received < EVENTS || !heartbeat) {
+                line = reader.readLine();
+                if (line.startsWith("data: ")) {
+                    received += count(line);
+                } else if (line.startsWith(":")) {
+                    heartbeat = true;
+                } else if (line.length() == 0) {
+                    messages++;
+                }
+            }
+            System.out.println("sse: " + received + " events in " + messages + " messages, " + (System.currentTimeMillis() - started) + "ms");
+            if (received != EVENTS) {
+                throw new WTFException("sse received " + received);
+            }
+            api.unsubscribe(id);
+            /* the stream ends with the subscription, read timeout otherwise */
+            while (reader.readLine() != null) {
+            }
+            socket.close();
+            /* websocket, https://tools.ietf.org/html/rfc6455#section-1.3 */
+            id = subscribe(api);
+            socket = new Socket("127.0.0.1", server.getPort());
+            socket.setSoTimeout(10000);
+            final InputStream is = socket.getInputStream();
+            final OutputStream os = socket.getOutputStream();
+            os.write(("GET /events/websocket?subscriptionid=" + id + " HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\nConnection: Upgrade\r\nSec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\nSec-WebSocket-Version: 13\r\n\r\n").getBytes("ISO-8859-1"));
+            final StringBuilder head = new StringBuilder();
+            while (!head.toString().endsWith("\r\n\r\n")) {
+                head.append((char) is.read());
+            }
+            if (!head.toString().startsWith("HTTP/1.1 101") || !head.toString().contains("Sec-WebSocket-Accept: s3pPLMBiTxaQ9kYGzzhZRbK+xOo=")) {
+                throw new WTFException("handshake: " + head);
+            }
+            final WebSocketEndPoint client = new WebSocketEndPoint() {
+                @Override
+                protected void log(WebSocketFrame webSocketFrame) {
+                }
+
+                @Override
+                protected InputStream getInputStream() throws IOException {
+                    return is;
+                }
+
+                @Override
+                protected OutputStream getOutputStream() throws IOException {
+                    return os;
+                }
+            };
+            started = System.currentTimeMillis();
+            publish(api, publisher);
+            received = 0;
+            messages = 0;
+            heartbeat = false;
+            while (received < EVENTS || !heartbeat) {
+                final ReadWebSocketFrame frame = client.readNextFrame();
+                if (frame.getMask() != null) {
+                    throw new WTFException("masked server frame");
+                } else if (OP_CODE.UTF8_TEXT.equals(frame.getOpCode())) {
+                    received += count(new String(frame.getPayload(), "UTF-8"));
+                    messages++;
+                } else if (OP_CODE.PING.equals(frame.getOpCode())) {
+                    heartbeat = true;
+                }
+            }
+            System.out.println("websocket: " + received + " events in " + messages + " frames, " + (System.currentTimeMillis() - started) + "ms");
+            if (received != EVENTS) {
+                throw new WTFException("websocket received " + received);
+            }
+            client.writeFrame(client.buildCloseFrame());
+            ReadWebSocketFrame frame;
+            while (!OP_CODE.CLOSE.equals((frame = client.readNextFrame()).getOpCode())) {
+            }
+            if (is.read() != -1) {
+                throw new WTFException("websocket not closed");
+            }
+            socket.close();
+        } finally {
+            server.stop();
+        }
+        System.out.println("SUCCESSFUL");
+    }
+}
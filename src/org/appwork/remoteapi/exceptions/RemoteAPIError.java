@@ -54,7 +54,8 @@ public enum RemoteAPIError implements APIError {
     INTERNAL_SERVER_ERROR(ResponseCode.SERVERERROR_INTERNAL),
     API_INTERFACE_NOT_FOUND(ResponseCode.ERROR_NOT_FOUND),
     BAD_PARAMETERS(ResponseCode.ERROR_BAD_REQUEST),
-    UNAUTHORIZED(ResponseCode.ERROR_UNAUTHORIZED);
+    UNAUTHORIZED(ResponseCode.ERROR_UNAUTHORIZED),
+    SERVICE_UNAVAILABLE(ResponseCode.SERVERERROR_SERVICE_UNAVAILABLE);
     private ResponseCode code;
 
     private RemoteAPIError() {
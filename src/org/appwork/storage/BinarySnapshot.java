@@ -0,0 +1,342 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+
+import org.appwork.utils.IO;
+import org.appwork.utils.os.CrossSystem;
+
+/**
+ * Compact binary snapshot of a key value map (see {@link JsonKeyValueStorage#setBinarySnapshotEnabled(boolean)}).
+ *
+ * <pre>
+ * header: "AWBS", byte version, int records
+ * record: int length, body, int crc32(body)
+ * body:   byte type, UTF key, value
+ * </pre>
+ *
+ * Reading only indexes the keys. Values are {@link LazyValue}s that decode (and check the crc) on first access. Plain files are memory
+ * mapped, encrypted files are decrypted into the heap.
+ *
+ * @author thomas
+ *
+ */
+public class BinarySnapshot {
+    private static final byte[] MAGIC   = new byte[] { 'A', 'W', 'B', 'S' };
+    private static final byte   VERSION = 1;
+    private static final byte   NULL    = 0;
+    private static final byte   BOOLEAN = 1;
+    private static final byte   BYTE    = 2;
+    private static final byte   SHORT   = 3;
+    private static final byte   INT     = 4;
+    private static final byte   LONG    = 5;
+    private static final byte   FLOAT   = 6;
+    private static final byte   DOUBLE  = 7;
+    private static final byte   STRING  = 8;
+    private static final byte   CHAR    = 9;
+    private static final byte   JSON    = 10;
+
+    public static class LazyValue {
+        private final ByteBuffer buffer;
+        private final int        offset;
+        private final int        length;
+        private final int        valueOffset;
+
+        private LazyValue(final ByteBuffer buffer, final int offset, final int length, final int valueOffset) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+            this.valueOffset = valueOffset;
+        }
+
+        /**
+         * @return the value
+         * @throws StorageException
+         *             if the record is corrupt
+         */
+        public Object decode() throws StorageException {
+            final ByteBuffer buf = this.buffer.duplicate();
+            final byte[] body = new byte[this.length];
+            buf.position(this.offset);
+            buf.get(body);
+            final CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != buf.getInt()) {
+                throw new StorageException("Checksum error in binary snapshot record at " + this.offset);
+            }
+            final ByteBuffer value = ByteBuffer.wrap(body);
+            value.position(this.valueOffset);
+            try {
+                switch (body[0]) {
+                case NULL:
+                    return null;
+                case BOOLEAN:
+                    return value.get() != 0;
+                case BYTE:
+                    return value.get();
+                case SHORT:
+                    return value.getShort();
+                case INT:
+                    return value.getInt();
+                case LONG:
+                    return value.getLong();
+                case FLOAT:
+                    return value.getFloat();
+                case DOUBLE:
+                    return value.getDouble();
+                case CHAR:
+                    return value.getChar();
+                case STRING:
+                    return new String(body, value.position(), value.remaining(), "UTF-8");
+                case JSON:
+                    return JSonStorage.restoreFromString(new String(body, value.position(), value.remaining(), "UTF-8"), TypeRef.OBJECT);
+                default:
+                    throw new StorageException("Unknown type " + body[0] + " in binary snapshot record at " + this.offset);
+                }
+            } catch (final IOException e) {
+                throw new StorageException(e);
+            }
+        }
+    }
+
+    /**
+     * @param map
+     *            values must not be {@link LazyValue}s
+     * @return the snapshot
+     */
+    public static byte[] write(final Map<String, Object> map) {
+        try {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bos);
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(map.size());
+            final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+            final DataOutputStream record = new DataOutputStream(recordBytes);
+            final CRC32 crc = new CRC32();
+            for (final Entry<String, Object> e : map.entrySet()) {
+                recordBytes.reset();
+                final Object value = e.getValue();
+                if (value instanceof LazyValue) {
+                    throw new IllegalArgumentException("Unresolved value for " + e.getKey());
+                }
+                final byte type = BinarySnapshot.getType(value);
+                record.writeByte(type);
+                record.writeUTF(e.getKey());
+                switch (type) {
+                case BOOLEAN:
+                    record.writeByte(((Boolean) value) ? 1 : 0);
+                    break;
+                case BYTE:
+                    record.writeByte((Byte) value);
+                    break;
+                case SHORT:
+                    record.writeShort((Short) value);
+                    break;
+                case INT:
+                    record.writeInt((Integer) value);
+                    break;
+                case LONG:
+                    record.writeLong((Long) value);
+                    break;
+                case FLOAT:
+                    record.writeFloat((Float) value);
+                    break;
+                case DOUBLE:
+                    record.writeDouble((Double) value);
+                    break;
+                case CHAR:
+                    record.writeChar((Character) value);
+                    break;
+                case STRING:
+                    record.write(((value instanceof Enum) ? ((Enum<?>) value).name() : (String) value).getBytes("UTF-8"));
+                    break;
+                case JSON:
+                    record.write(JSonStorage.getMapper().objectToString(value).getBytes("UTF-8"));
+                    break;
+                }
+                record.flush();
+                crc.reset();
+                crc.update(recordBytes.toByteArray(), 0, recordBytes.size());
+                out.writeInt(recordBytes.size());
+                recordBytes.writeTo(out);
+                out.writeInt((int) crc.getValue());
+            }
+            out.flush();
+            return bos.toByteArray();
+        } catch (final IOException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    private static byte getType(final Object value) {
+        if (value == null) {
+            return NULL;
+        } else if (value instanceof Boolean) {
+            return BOOLEAN;
+        } else if (value instanceof Byte) {
+            return BYTE;
+        } else if (value instanceof Short) {
+            return SHORT;
+        } else if (value instanceof Integer) {
+            return INT;
+        } else if (value instanceof Long) {
+            return LONG;
+        } else if (value instanceof Float) {
+            return FLOAT;
+        } else if (value instanceof Double) {
+            return DOUBLE;
+        } else if (value instanceof Character) {
+            return CHAR;
+        } else if (value instanceof String || value instanceof Enum) {
+            return STRING;
+        } else {
+            return JSON;
+        }
+    }
+
+    /**
+     * @param file
+     * @param plain
+     * @param key
+     * @param target
+     *            gets key -> {@link LazyValue}
+     * @return number of records
+     * @throws IOException
+     */
+    public static int read(final File file, final boolean plain, final byte[] key, final Map<String, Object> target) throws IOException {
+        final ByteBuffer buffer;
+        if (plain && !CrossSystem.isWindows()) {
+            // windows cannot replace/delete a file as long as it is mapped
+            final FileInputStream fis = new FileInputStream(file);
+            try {
+                final FileChannel channel = fis.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                fis.close();
+            }
+        } else if (plain) {
+            buffer = ByteBuffer.wrap(IO.readFile(file));
+        } else {
+            final InputStream is;
+            try {
+                is = JSonStorage.createCipherInputStream(new FileInputStream(file), key, key);
+            } catch (final Exception e) {
+                throw new IOException(e.getMessage());
+            }
+            buffer = ByteBuffer.wrap(IO.readStream(-1, is));
+        }
+        return BinarySnapshot.read(buffer, target);
+    }
+
+    /**
+     * @param buffer
+     * @param target
+     *            gets key -> {@link LazyValue}
+     * @return number of records
+     * @throws IOException
+     */
+    public static int read(final ByteBuffer buffer, final Map<String, Object> target) throws IOException {
+        final ByteBuffer buf = buffer.duplicate();
+        final byte[] magic = new byte[MAGIC.length];
+        if (buf.remaining() < MAGIC.length + 5) {
+            throw new IOException("No binary snapshot");
+        }
+        buf.get(magic);
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("No binary snapshot");
+            }
+        }
+        final byte version = buf.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary snapshot version " + version);
+        }
+        final int records = buf.getInt();
+        for (int i = 0; i < records; i++) {
+            final int length = buf.getInt();
+            final int offset = buf.position();
+            if (length < 3 || length > buf.remaining() - 4) {
+                throw new IOException("Broken binary snapshot record at " + offset);
+            }
+            // type, UTF key. the value is decoded on access
+            final int keyLength = buf.getShort(offset + 1) & 0xffff;
+            if (keyLength > length - 3) {
+                throw new IOException("Broken binary snapshot record at " + offset);
+            }
+            final byte[] keyBytes = new byte[keyLength];
+            buf.position(offset + 3);
+            buf.get(keyBytes);
+            target.put(BinarySnapshot.decodeUTF(keyBytes), new LazyValue(buffer, offset, length, 3 + keyLength));
+            buf.position(offset + length + 4);
+        }
+        return records;
+    }
+
+    /**
+     * modified UTF-8 as written by {@link DataOutputStream#writeUTF(String)}
+     */
+    private static String decodeUTF(final byte[] b) throws IOException {
+        final char[] chars = new char[b.length];
+        int count = 0;
+        int i = 0;
+        while (i < b.length) {
+            final int c = b[i] & 0xff;
+            if (c < 0x80) {
+                chars[count++] = (char) c;
+                i++;
+            } else if ((c & 0xe0) == 0xc0 && i + 1 < b.length) {
+                chars[count++] = (char) ((c & 0x1f) << 6 | b[i + 1] & 0x3f);
+                i += 2;
+            } else if ((c & 0xf0) == 0xe0 && i + 2 < b.length) {
+                chars[count++] = (char) ((c & 0x0f) << 12 | (b[i + 1] & 0x3f) << 6 | b[i + 2] & 0x3f);
+                i += 3;
+            } else {
+                throw new IOException("Malformed key in binary snapshot");
+            }
+        }
+        return new String(chars, 0, count);
+    }
+}
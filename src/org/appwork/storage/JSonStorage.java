@@ -37,6 +37,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Method;
@@ -53,11 +54,13 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
@@ -78,11 +81,12 @@ import com.fasterxml.jackson.databind.JsonMappingException;
 
 public class JSonStorage {
     /* hash map contains file location as string and the storage instance */
-    private static final HashMap<String, Storage>     MAP         = new HashMap<String, Storage>();
-    private static JSONMapper                         JSON_MAPPER = new SimpleMapper();
+    private static final ConcurrentHashMap<String, Storage>     MAP         = new ConcurrentHashMap<String, Storage>();
+    private static JSONMapper                                   JSON_MAPPER = new SimpleMapper();
     /* default key for encrypted json */
-    static public byte[]                              KEY         = new byte[] { 0x01, 0x02, 0x11, 0x01, 0x01, 0x54, 0x01, 0x01, 0x01, 0x01, 0x12, 0x01, 0x01, 0x01, 0x22, 0x01 };
-    private static final HashMap<File, AtomicInteger> LOCKS       = new HashMap<File, AtomicInteger>();
+    static public byte[]                                        KEY         = new byte[] { 0x01, 0x02, 0x11, 0x01, 0x01, 0x54, 0x01, 0x01, 0x01, 0x01, 0x12, 0x01, 0x01, 0x01, 0x22, 0x01 };
+    /* file -> lock object with reference count. a lock with count 0 is being removed and must not be used any more */
+    private static final ConcurrentHashMap<File, AtomicInteger> LOCKS       = new ConcurrentHashMap<File, AtomicInteger>();
     static {
         /* shutdown hook to save all open Storages */
         ShutdownController.getInstance().addShutdownEvent(new ShutdownEvent() {
@@ -273,52 +277,46 @@ public class JSonStorage {
      */
     public static Storage getPlainStorage(final String name) throws StorageException {
         final String id = name + "_plain";
-        Storage ret = null;
-        synchronized (JSonStorage.MAP) {
-            ret = JSonStorage.MAP.get(id);
-            if (ret != null) {
-                return ret;
-            }
-        }
-        ret = new JsonKeyValueStorage(name, true);
-        synchronized (JSonStorage.MAP) {
-            final Storage ret2 = JSonStorage.MAP.get(id);
-            if (ret2 != null) {
-                return ret2;
-            }
-            JSonStorage.MAP.put(id, ret);
+        final Storage ret = JSonStorage.MAP.get(id);
+        if (ret != null) {
+            return ret;
         }
-        return ret;
+        final Storage created = new JsonKeyValueStorage(name, true);
+        final Storage ret2 = JSonStorage.MAP.putIfAbsent(id, created);
+        return ret2 != null ? ret2 : created;
     }
 
     public static Storage getStorage(final String name) throws StorageException {
         final String id = name + "_crypted";
-        Storage ret = null;
-        synchronized (JSonStorage.MAP) {
-            ret = JSonStorage.MAP.get(id);
-            if (ret != null) {
-                return ret;
-            }
+        final Storage ret = JSonStorage.MAP.get(id);
+        if (ret != null) {
+            return ret;
         }
-        ret = new JsonKeyValueStorage(name);
-        synchronized (JSonStorage.MAP) {
-            final Storage ret2 = JSonStorage.MAP.get(id);
-            if (ret2 != null) {
-                return ret2;
+        final Storage created = new JsonKeyValueStorage(name);
+        final Storage ret2 = JSonStorage.MAP.putIfAbsent(id, created);
+        return ret2 != null ? ret2 : created;
+    }
+
+    private static Object requestLock(final File file) {
+        while (true) {
+            AtomicInteger lock = JSonStorage.LOCKS.get(file);
+            if (lock == null) {
+                lock = new AtomicInteger(1);
+                final AtomicInteger existing = JSonStorage.LOCKS.putIfAbsent(file, lock);
+                if (existing == null) {
+                    return lock;
+                }
+                lock = existing;
             }
-            JSonStorage.MAP.put(id, ret);
-        }
-        return ret;
-    }
-
-    private static synchronized Object requestLock(final File file) {
-        AtomicInteger lock = JSonStorage.LOCKS.get(file);
-        if (lock == null) {
-            lock = new AtomicInteger(0);
-            JSonStorage.LOCKS.put(file, lock);
+            int count;
+            while ((count = lock.get()) > 0) {
+                if (lock.compareAndSet(count, count + 1)) {
+                    return lock;
+                }
+            }
+            // the last user is just removing this lock
+            Thread.yield();
         }
-        lock.incrementAndGet();
-        return lock;
     }
 
     @Deprecated
@@ -450,6 +448,14 @@ public class JSonStorage {
         return new CipherInputStream(inputStream, cipher);
     }
 
+    public static CipherOutputStream createCipherOutputStream(final OutputStream outputStream, final byte[] key, final byte[] iv) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, InvalidAlgorithmParameterException {
+        final IvParameterSpec ivSpec = new IvParameterSpec(iv);
+        final SecretKeySpec skeySpec = new SecretKeySpec(key, "AES");
+        final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, skeySpec, ivSpec);
+        return new CipherOutputStream(outputStream, cipher);
+    }
+
     public static byte[] encryptByteArray(final byte[] data, final byte[] key, final byte[] iv) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
         final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
         final IvParameterSpec ivSpec = new IvParameterSpec(iv);
@@ -523,10 +529,7 @@ public class JSonStorage {
 
     private static void close() {
         org.appwork.loggingv3.LogV3.finer("Start Saving Storage");
-        final List<Storage> storages;
-        synchronized (JSonStorage.MAP) {
-            storages = new ArrayList<Storage>(JSonStorage.MAP.values());
-        }
+        final List<Storage> storages = new ArrayList<Storage>(JSonStorage.MAP.values());
         for (final Storage storage : storages) {
             try {
                 storage.save();
@@ -578,6 +581,48 @@ public class JSonStorage {
         }
     }
 
+    /**
+     * serializes the object and streams the (encrypted) utf8 json directly into the file. Unlike {@link #saveTo(File, boolean, byte[], byte[])}
+     * there is no complete json String or byte[] in memory
+     *
+     * @param file
+     * @param plain
+     * @param key
+     * @param object
+     * @throws StorageException
+     */
+    public static void serializeTo(final File file, final boolean plain, final byte[] key, final Object object) throws StorageException {
+        final Object lock = JSonStorage.requestLock(file);
+        synchronized (lock) {
+            try {
+                file.getParentFile().mkdirs();
+                IO.secureWrite(file, SYNC.NONE, new IO.WriteToFileCallback() {
+
+                    @Override
+                    public void writeTo(final OutputStream os) throws IOException {
+                        try {
+                            // closing the CipherOutputStream writes the final block
+                            JSonStorage.JSON_MAPPER.writeObject(plain ? os : createCipherOutputStream(os, key, key), object);
+                        } catch (final RuntimeException e) {
+                            throw e;
+                        } catch (final Exception e) {
+                            throw new IOException(e);
+                        }
+                    }
+
+                    @Override
+                    public byte[] getData() {
+                        return null;
+                    }
+                });
+            } catch (final Exception e) {
+                throw new StorageException("Can not write to " + file.getAbsolutePath(), e);
+            } finally {
+                JSonStorage.unLock(file);
+            }
+        }
+    }
+
     /**
      * @param list
      * @return
@@ -647,11 +692,11 @@ public class JSonStorage {
         return list.toString();
     }
 
-    private static synchronized void unLock(final File file) {
+    private static void unLock(final File file) {
         final AtomicInteger lock = JSonStorage.LOCKS.get(file);
         if (lock != null) {
             if (lock.decrementAndGet() == 0) {
-                JSonStorage.LOCKS.remove(file);
+                JSonStorage.LOCKS.remove(file, lock);
             }
         }
     }
@@ -33,7 +33,14 @@
  * ==================================================================================================================================================== */
 package org.appwork.storage;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Array;
 import java.net.URL;
@@ -46,10 +53,12 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 
 import org.appwork.exceptions.WTFException;
 import org.appwork.loggingv3.LogV3;
 import org.appwork.storage.config.handler.StorageHandler;
+import org.appwork.storage.config.handler.WriteBehindExecutor;
 import org.appwork.utils.Application;
 import org.appwork.utils.IO;
 import org.appwork.utils.ModifyLock;
@@ -67,6 +76,29 @@ public class JsonKeyValueStorage extends Storage {
     private final AtomicLong          writeMark     = new AtomicLong(0);
     private boolean                   enumCacheEnabled;
     private final ModifyLock          modifyLock    = new ModifyLock();
+    /**
+     * journal files smaller than this are never compacted
+     */
+    public static long                JOURNAL_MIN_COMPACTION_SIZE = 64 * 1024;
+    private final File                journalFile;
+    private volatile boolean          journalEnabled              = false;
+    /**
+     * keys changed since the last journal write. guarded by the write lock
+     */
+    private final HashSet<String>     journalKeys                 = new HashSet<String>();
+    /**
+     * the next journal write must be a full snapshot (clear, journal enabled later, failed write, torn journal). guarded by the write
+     * lock
+     */
+    private boolean                   journalRewrite              = false;
+    private final Object              journalLock                 = new Object();
+    private volatile long             writeLatency                = WriteBehindExecutor.DEFAULT_MAX_DELAY;
+    private final File                snapshotFile;
+    private volatile boolean          binarySnapshotEnabled       = false;
+    /**
+     * the map may contain BinarySnapshot.LazyValues
+     */
+    private volatile boolean          lazyValues                  = false;
 
     private final Map<String, Object> getMap() {
         return internalMap;
@@ -109,6 +141,8 @@ public class JsonKeyValueStorage extends Storage {
         this.file = file;
         this.name = file.getName();
         this.key = key;
+        this.journalFile = new File(file.getAbsolutePath() + ".journal");
+        this.snapshotFile = new File(file.getAbsolutePath() + ".snapshot");
         if (resource != null) {
             getDefaultLogger().info("Load JSon Storage from Classpath url: " + resource);
             try {
@@ -118,13 +152,16 @@ public class JsonKeyValueStorage extends Storage {
                 throw new WTFException(e);
             }
         }
-        if (file.exists()) {
+        if (this.loadBinarySnapshot()) {
+            getDefaultLogger().info("Prefer (merged) binary snapshot from File: " + snapshotFile);
+        } else if (file.exists()) {
             getDefaultLogger().info("Prefer (merged) JSon Storage from File: " + file);
             final HashMap<String, Object> load = JSonStorage.restoreFrom(file, plain, key, TypeRef.HASHMAP, new HashMap<String, Object>());
             this.putAll(load);
         } else {
             getDefaultLogger().info("CFG File does not exist: " + file);
         }
+        this.replayJournal();
     }
 
     /**
@@ -149,8 +186,13 @@ public class JsonKeyValueStorage extends Storage {
         this.file = Application.getResource("cfg/" + name + (plain ? ".json" : ".ejs"));
         getDefaultLogger().finer("Read Config: " + this.file.getAbsolutePath());
         this.key = key;
-        final HashMap<String, Object> load = JSonStorage.restoreFrom(this.file, plain, key, TypeRef.HASHMAP, new HashMap<String, Object>());
-        this.putAll(load);
+        this.journalFile = new File(this.file.getAbsolutePath() + ".journal");
+        this.snapshotFile = new File(this.file.getAbsolutePath() + ".snapshot");
+        if (!this.loadBinarySnapshot()) {
+            final HashMap<String, Object> load = JSonStorage.restoreFrom(this.file, plain, key, TypeRef.HASHMAP, new HashMap<String, Object>());
+            this.putAll(load);
+        }
+        this.replayJournal();
     }
 
     @Override
@@ -158,6 +200,8 @@ public class JsonKeyValueStorage extends Storage {
         getLock().writeLock();
         try {
             getMap().clear();
+            journalKeys.clear();
+            journalRewrite = true;
         } finally {
             getLock().writeUnlock();
             this.requestSave();
@@ -176,16 +220,23 @@ public class JsonKeyValueStorage extends Storage {
     @SuppressWarnings("unchecked")
     @Override
     public <E> E get(final String key, final E def, final Boolean autoPutValue) throws StorageException {
-        final boolean contains;
+        boolean contains;
         final boolean autoPutDefaultValue = autoPutValue == null ? isAutoPutValues() : Boolean.TRUE.equals(autoPutValue);
         Object ret = null;
         final boolean readL = getLock().readLock();
         try {
-            contains = getMap().containsKey(key);
-            ret = contains ? getMap().get(key) : null;
+            ret = getMap().get(key);
+            contains = ret != null || getMap().containsKey(key);
         } finally {
             getLock().readUnlock(readL);
         }
+        if (ret instanceof BinarySnapshot.LazyValue) {
+            ret = this.resolve(key, (BinarySnapshot.LazyValue) ret);
+            contains = ret != BROKEN;
+            if (!contains) {
+                ret = null;
+            }
+        }
         if (ret != null && def != null && ret.getClass() != def.getClass()) {
             /* ret class different from def class, so we have to convert */
             if (def instanceof Long) {
@@ -300,8 +351,14 @@ public class JsonKeyValueStorage extends Storage {
         boolean requestSave = true;
         getLock().writeLock();
         try {
-            final Object ret = getMap().put(key, value);
-            requestSave = !equals(ret, value);
+            Object ret = getMap().put(key, value);
+            if (ret instanceof BinarySnapshot.LazyValue) {
+                ret = decode(key, (BinarySnapshot.LazyValue) ret);
+            }
+            requestSave = ret == BROKEN || !equals(ret, value);
+            if (requestSave && isJournalEnabled()) {
+                journalKeys.add(key);
+            }
             return ret;
         } finally {
             getLock().writeUnlock();
@@ -500,7 +557,14 @@ public class JsonKeyValueStorage extends Storage {
         if (hasProperty(key)) {
             getLock().writeLock();
             try {
-                return getMap().remove(key);
+                if (isJournalEnabled()) {
+                    journalKeys.add(key);
+                }
+                final Object ret = getMap().remove(key);
+                if (ret instanceof BinarySnapshot.LazyValue) {
+                    return decode(key, (BinarySnapshot.LazyValue) ret);
+                }
+                return ret;
             } finally {
                 getLock().writeUnlock();
                 this.requestSave();
@@ -523,10 +587,26 @@ public class JsonKeyValueStorage extends Storage {
         }
         final long lastSetMark = this.setMark.get();
         if (this.writeMark.getAndSet(lastSetMark) != lastSetMark) {
+            if (isJournalEnabled()) {
+                // the runnable writes all changes up to its execution, so it does not matter if the delayed writer replaces it
+                final Runnable run = new Runnable() {
+                    @Override
+                    public void run() {
+                        writeJournal();
+                    }
+                };
+                StorageHandler.enqueueWrite(run, file.getAbsolutePath(), true, getWriteLatency());
+                return;
+            }
+            final boolean binary = isBinarySnapshotEnabled();
+            resolveAll();
             final boolean readL = getLock().readLock();
-            final byte[] jsonBytes;
+            final byte[] bytes;
+            final HashMap<String, Object> copy;
             try {
-                jsonBytes = JSonStorage.getMapper().objectToByteArray(getMap());
+                // the json file is streamed from a shallow copy later, the values are primitives, strings or enums
+                bytes = binary ? BinarySnapshot.write(getMap()) : null;
+                copy = binary ? null : new HashMap<String, Object>(getMap());
                 writeMark.set(setMark.get());
             } finally {
                 getLock().readUnlock(readL);
@@ -534,10 +614,343 @@ public class JsonKeyValueStorage extends Storage {
             final Runnable run = new Runnable() {
                 @Override
                 public void run() {
-                    JSonStorage.saveTo(file, plain, key, jsonBytes);
+                    synchronized (journalLock) {
+                        writeSnapshot(binary, bytes, copy);
+                    }
                 }
             };
-            StorageHandler.enqueueWrite(run, file.getAbsolutePath(), true);
+            StorageHandler.enqueueWrite(run, file.getAbsolutePath(), true, getWriteLatency());
+        }
+    }
+
+    /**
+     * writes the full map (binary bytes or streamed json) and removes the other format and the journal
+     */
+    private void writeSnapshot(final boolean binary, final byte[] bytes, final Map<String, Object> map) {
+        if (binary) {
+            JSonStorage.saveTo(snapshotFile, plain, key, bytes);
+        } else {
+            JSonStorage.serializeTo(file, plain, key, map);
+        }
+        final File other = binary ? file : snapshotFile;
+        if (other.exists() && !other.delete()) {
+            throw new StorageException("Could not delete " + other);
+        }
+        // the snapshot contains all journal changes
+        if (journalFile.exists() && !journalFile.delete()) {
+            throw new StorageException("Could not delete " + journalFile);
+        }
+    }
+
+    /**
+     * @return true if the binary snapshot is newer than the json file and could be read
+     */
+    private boolean loadBinarySnapshot() {
+        if (!snapshotFile.isFile() || file.exists() && file.lastModified() > snapshotFile.lastModified()) {
+            return false;
+        }
+        final HashMap<String, Object> load = new HashMap<String, Object>();
+        try {
+            BinarySnapshot.read(snapshotFile, plain, key, load);
+        } catch (final IOException e) {
+            getDefaultLogger().log(e);
+            return false;
+        }
+        getLock().writeLock();
+        try {
+            if (getMap().size() == 0) {
+                // no defaults from classpath
+                getMap().putAll(load);
+            } else {
+                this.putAll(load);
+            }
+            this.lazyValues = true;
+        } finally {
+            getLock().writeUnlock();
+        }
+        return true;
+    }
+
+    /**
+     * marker for a corrupt lazy value
+     */
+    private static final Object BROKEN = new Object();
+
+    private Object decode(final String key, final BinarySnapshot.LazyValue value) {
+        try {
+            return value.decode();
+        } catch (final StorageException e) {
+            getDefaultLogger().log(e);
+            getDefaultLogger().info("Drop " + key + " from " + snapshotFile);
+            return BROKEN;
+        }
+    }
+
+    private Object resolve(final String key, final BinarySnapshot.LazyValue value) {
+        final Object ret = decode(key, value);
+        getLock().writeLock();
+        try {
+            if (getMap().get(key) == value) {
+                if (ret == BROKEN) {
+                    getMap().remove(key);
+                } else {
+                    getMap().put(key, ret);
+                }
+            }
+        } finally {
+            getLock().writeUnlock();
+        }
+        return ret;
+    }
+
+    /**
+     * decodes all lazy values of the binary snapshot
+     */
+    private void resolveAll() {
+        if (!lazyValues) {
+            return;
+        }
+        getLock().writeLock();
+        try {
+            resolveAllLocked();
+        } finally {
+            getLock().writeUnlock();
+        }
+    }
+
+    private void resolveAllLocked() {
+        if (!lazyValues) {
+            return;
+        }
+        final Iterator<Entry<String, Object>> it = getMap().entrySet().iterator();
+        while (it.hasNext()) {
+            final Entry<String, Object> next = it.next();
+            if (next.getValue() instanceof BinarySnapshot.LazyValue) {
+                final Object value = decode(next.getKey(), (BinarySnapshot.LazyValue) next.getValue());
+                if (value == BROKEN) {
+                    it.remove();
+                } else {
+                    next.setValue(value);
+                }
+            }
+        }
+        lazyValues = false;
+    }
+
+    public boolean isBinarySnapshotEnabled() {
+        return this.binarySnapshotEnabled;
+    }
+
+    public File getSnapshotFile() {
+        return this.snapshotFile;
+    }
+
+    /**
+     * Writes full snapshots in the compact {@link BinarySnapshot} format to {@link #getSnapshotFile()} instead of json. Loading prefers
+     * the newer of both files, so switching the format is possible at any time.
+     *
+     * @param binarySnapshotEnabled
+     */
+    public void setBinarySnapshotEnabled(final boolean binarySnapshotEnabled) {
+        this.binarySnapshotEnabled = binarySnapshotEnabled;
+        if (binarySnapshotEnabled ? file.exists() : snapshotFile.exists()) {
+            // the file has the other format. convert on next save
+            getLock().writeLock();
+            try {
+                journalRewrite = true;
+            } finally {
+                getLock().writeUnlock();
+            }
+            this.requestSave();
+        }
+    }
+
+    public long getWriteLatency() {
+        return this.writeLatency;
+    }
+
+    /**
+     * @param writeLatency
+     *            maximum time in ms a delayed write of this storage may wait in the write behind queue
+     */
+    public void setWriteLatency(final long writeLatency) {
+        this.writeLatency = writeLatency;
+    }
+
+    public File getJournalFile() {
+        return this.journalFile;
+    }
+
+    public boolean isJournalEnabled() {
+        return this.journalEnabled;
+    }
+
+    /**
+     * Journal mode: {@link #save()} appends only the changed keys to {@link #getJournalFile()} instead of rewriting the whole file. The
+     * journal is replayed on load, and compacted into the storage file if it gets larger than the storage file (at least
+     * {@link #JOURNAL_MIN_COMPACTION_SIZE}).
+     *
+     * @param journalEnabled
+     */
+    public void setJournalEnabled(final boolean journalEnabled) {
+        getLock().writeLock();
+        try {
+            if (journalEnabled && !this.journalEnabled && setMark.get() != writeMark.get()) {
+                // unsaved changes before are not tracked
+                journalRewrite = true;
+            }
+            journalKeys.clear();
+            this.journalEnabled = journalEnabled;
+        } finally {
+            getLock().writeUnlock();
+        }
+    }
+
+    private void writeJournal() {
+        synchronized (journalLock) {
+            final boolean compact = journalFile.length() > Math.max(JOURNAL_MIN_COMPACTION_SIZE, file.length());
+            final HashMap<String, Object> set = new HashMap<String, Object>();
+            final ArrayList<String> removed = new ArrayList<String>();
+            HashMap<String, Object> snapshot = null;
+            getLock().writeLock();
+            try {
+                if (journalRewrite || compact) {
+                    // all journal records are older than this copy, so replaying them on top of the snapshot is harmless
+                    resolveAllLocked();
+                    snapshot = new HashMap<String, Object>(getMap());
+                    journalRewrite = false;
+                } else {
+                    for (final String key : journalKeys) {
+                        if (getMap().containsKey(key)) {
+                            set.put(key, getMap().get(key));
+                        } else {
+                            removed.add(key);
+                        }
+                    }
+                }
+                journalKeys.clear();
+            } finally {
+                getLock().writeUnlock();
+            }
+            try {
+                if (snapshot != null) {
+                    final boolean binary = isBinarySnapshotEnabled();
+                    writeSnapshot(binary, binary ? BinarySnapshot.write(snapshot) : null, snapshot);
+                } else if (set.size() > 0 || removed.size() > 0) {
+                    final HashMap<String, Object> record = new HashMap<String, Object>();
+                    record.put("set", set);
+                    record.put("removed", removed);
+                    appendJournalRecord(JSonStorage.getMapper().objectToByteArray(record));
+                }
+            } catch (final RuntimeException e) {
+                getLock().writeLock();
+                try {
+                    journalRewrite = true;
+                } finally {
+                    getLock().writeUnlock();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * record: int length, data (encrypted if !plain), int crc32(data)
+     */
+    private void appendJournalRecord(byte[] data) {
+        try {
+            if (!plain) {
+                data = JSonStorage.encryptByteArray(data, key, key);
+            }
+            final CRC32 crc = new CRC32();
+            crc.update(data);
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length + 8);
+            final DataOutputStream dos = new DataOutputStream(bos);
+            dos.writeInt(data.length);
+            dos.write(data);
+            dos.writeInt((int) crc.getValue());
+            dos.flush();
+            journalFile.getParentFile().mkdirs();
+            final FileOutputStream fos = new FileOutputStream(journalFile, true);
+            try {
+                // one write call. a crash may leave a torn record at the end, replayJournal ignores it
+                bos.writeTo(fos);
+                fos.flush();
+            } finally {
+                fos.close();
+            }
+        } catch (final StorageException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new StorageException("Can not write to " + journalFile.getAbsolutePath(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void replayJournal() {
+        if (!journalFile.isFile()) {
+            return;
+        }
+        int records = 0;
+        boolean torn = true;
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+            try {
+                final long fileLength = journalFile.length();
+                while (true) {
+                    final int length;
+                    try {
+                        length = in.readInt();
+                    } catch (final EOFException e) {
+                        torn = false;
+                        break;
+                    }
+                    if (length < 0 || length > fileLength) {
+                        break;
+                    }
+                    final byte[] data = new byte[length];
+                    in.readFully(data);
+                    final int checksum = in.readInt();
+                    final CRC32 crc = new CRC32();
+                    crc.update(data);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                    final HashMap<String, Object> record = JSonStorage.restoreFromByteArray(data, plain, key, TypeRef.HASHMAP, null);
+                    if (record == null) {
+                        break;
+                    }
+                    getLock().writeLock();
+                    try {
+                        final Object set = record.get("set");
+                        if (set instanceof Map) {
+                            for (final Entry<String, Object> e : ((Map<String, Object>) set).entrySet()) {
+                                getMap().put(e.getKey(), e.getValue());
+                            }
+                        }
+                        final Object removed = record.get("removed");
+                        if (removed instanceof List) {
+                            for (final Object e : (List<Object>) removed) {
+                                getMap().remove(e);
+                            }
+                        }
+                    } finally {
+                        getLock().writeUnlock();
+                    }
+                    records++;
+                }
+            } finally {
+                in.close();
+            }
+        } catch (final EOFException e) {
+            // torn record
+        } catch (final IOException e) {
+            getDefaultLogger().log(e);
+        }
+        getDefaultLogger().info("Replayed " + records + " journal records from " + journalFile + (torn ? " (ignored a broken record at the end)" : ""));
+        if (torn) {
+            // do not append behind the broken record
+            journalRewrite = true;
         }
     }
 
@@ -571,6 +984,7 @@ public class JsonKeyValueStorage extends Storage {
 
     @Override
     public String toString() {
+        resolveAll();
         final boolean readL = getLock().readLock();
         try {
             return JSonStorage.getMapper().objectToString(getMap());
@@ -33,20 +33,21 @@
  * ==================================================================================================================================================== */
 package org.appwork.storage;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.appwork.storage.simplejson.JSonFactory;
 import org.appwork.storage.simplejson.JSonNode;
+import org.appwork.storage.simplejson.JSonStreamParser;
+import org.appwork.storage.simplejson.JSonStreamWriter;
 import org.appwork.storage.simplejson.ParserException;
 import org.appwork.storage.simplejson.mapper.JSonMapper;
 import org.appwork.storage.simplejson.mapper.MapperException;
-import org.appwork.utils.IO;
 
 /**
  * @author thomas
@@ -73,6 +74,27 @@ public class SimpleMapper implements JSONMapper {
                 return super.jsonToObject(json, type);
             }
 
+            @Override
+            protected Object streamToObject(JSonStreamParser parser, Type type) throws MapperException, ParserException, IOException {
+                for (final JsonDeSerializerEntry se : deSerializer) {
+                    if (type instanceof Class && se.clazz.isAssignableFrom((Class) type)) {
+                        return se.deSerializer.toObject(parser.readNode().toString());
+                    }
+                }
+                return super.streamToObject(parser, type);
+            }
+
+            @Override
+            public void write(final Object obj, final JSonStreamWriter writer) throws MapperException, IOException {
+                for (final JsonSerializerEntry se : serializer) {
+                    if (obj != null && se.clazz.isAssignableFrom(obj.getClass())) {
+                        writer.rawValue(se.serializer.toJSonString(obj));
+                        return;
+                    }
+                }
+                super.write(obj, writer);
+            }
+
             @Override
             public JSonNode create(final Object obj) throws MapperException {
                 for (final JsonSerializerEntry se : serializer) {
@@ -143,7 +165,22 @@ public class SimpleMapper implements JSONMapper {
         serializer.add(new JsonSerializerEntry(clazz, jsonSerializer));
     }
 
-    private boolean prettyPrintEnabled = true;
+    private boolean prettyPrintEnabled   = true;
+    private boolean directBindingEnabled = true;
+
+    public boolean isDirectBindingEnabled() {
+        return directBindingEnabled;
+    }
+
+    /**
+     * if enabled (default), byte[] and InputStream sources are mapped in a single pass directly from the parser tokens without creating
+     * a JSonNode tree first. Disable this if your JSonMapper relies on {@link JSonMapper#jsonToObject(JSonNode, Type)}
+     *
+     * @param directBindingEnabled
+     */
+    public void setDirectBindingEnabled(boolean directBindingEnabled) {
+        this.directBindingEnabled = directBindingEnabled;
+    }
 
     public boolean isPrettyPrintEnabled() {
         return prettyPrintEnabled;
@@ -200,26 +237,23 @@ public class SimpleMapper implements JSONMapper {
 
     @Override
     public byte[] objectToByteArray(Object value) throws JSonMapperException {
-        final String ret = objectToString(value);
-        try {
-            if (ret == null) {
-                return "null".getBytes("UTF-8");
-            } else {
-                return ret.getBytes("UTF-8");
-            }
-        } catch (UnsupportedEncodingException e) {
-            throw new JSonMapperException(e);
-        }
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        writeObject(bos, value);
+        return bos.toByteArray();
     }
 
     /**
-     * closes outputStream
+     * closes outputStream. The json is written directly to the stream without creating a JSonNode tree or String first
      */
     @Override
     public void writeObject(OutputStream outputStream, Object value) throws JSonMapperException {
         try {
             try {
-                outputStream.write(objectToByteArray(value));
+                final JSonStreamWriter writer = new JSonStreamWriter(outputStream, isPrettyPrintEnabled());
+                mapper.write(value, writer);
+                writer.flush();
+            } catch (final MapperException e) {
+                throw new JSonMapperException(e);
             } finally {
                 if (outputStream != null) {
                     outputStream.close();
@@ -238,11 +272,12 @@ public class SimpleMapper implements JSONMapper {
      * @return
      * @throws JSonMapperException
      */
+    @SuppressWarnings("unchecked")
     @Override
     public <T> T inputStreamToObject(InputStream inputStream, TypeRef<T> type) throws JSonMapperException {
         try {
             try {
-                return byteArrayToObject(IO.readStream(-1, inputStream), type);
+                return (T) map(new JSonStreamParser(inputStream), type.getType());
             } finally {
                 if (inputStream != null) {
                     inputStream.close();
@@ -250,27 +285,53 @@ public class SimpleMapper implements JSONMapper {
             }
         } catch (IOException e) {
             throw new JSonMapperException(e);
+        } catch (final MapperException e) {
+            throw new JSonMapperException(e);
         }
     }
 
+    /**
+     * parses the utf-8 bytes directly without creating a String copy of the whole document
+     */
+    @SuppressWarnings("unchecked")
     @Override
     public <T> T byteArrayToObject(byte[] byteArray, TypeRef<T> type) throws JSonMapperException {
         try {
-            return stringToObject(new String(byteArray, "UTF-8"), type);
-        } catch (UnsupportedEncodingException e) {
+            return (T) map(new JSonStreamParser(byteArray), type.getType());
+        } catch (final MapperException e) {
             throw new JSonMapperException(e);
         }
     }
 
+    @SuppressWarnings("unchecked")
     @Override
     public <T> T byteArrayToObject(byte[] byteArray, Class<T> clazz) throws JSonMapperException {
         try {
-            return stringToObject(new String(byteArray, "UTF-8"), clazz);
-        } catch (UnsupportedEncodingException e) {
+            return (T) map(new JSonStreamParser(byteArray), clazz);
+        } catch (final MapperException e) {
             throw new JSonMapperException(e);
         }
     }
 
+    /**
+     * @param parser
+     * @param type
+     * @return
+     * @throws MapperException
+     */
+    protected Object map(final JSonStreamParser parser, final Type type) throws MapperException {
+        if (isDirectBindingEnabled()) {
+            return mapper.jsonToObject(parser, type);
+        }
+        try {
+            return mapper.jsonToObject(parser.parse(), type);
+        } catch (final ParserException e) {
+            throw new MapperException(e);
+        } catch (final IOException e) {
+            throw new MapperException(e);
+        }
+    }
+
     /**
      * closes inputStream
      *
@@ -279,11 +340,12 @@ public class SimpleMapper implements JSONMapper {
      * @return
      * @throws JSonMapperException
      */
+    @SuppressWarnings("unchecked")
     @Override
     public <T> T inputStreamToObject(InputStream inputStream, Class<T> clazz) throws JSonMapperException {
         try {
             try {
-                return byteArrayToObject(IO.readStream(-1, inputStream), clazz);
+                return (T) map(new JSonStreamParser(inputStream), clazz);
             } finally {
                 if (inputStream != null) {
                     inputStream.close();
@@ -291,6 +353,8 @@ public class SimpleMapper implements JSONMapper {
             }
         } catch (IOException e) {
             throw new JSonMapperException(e);
+        } catch (final MapperException e) {
+            throw new JSonMapperException(e);
         }
     }
 }
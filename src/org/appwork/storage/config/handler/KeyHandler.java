@@ -633,7 +633,7 @@ public abstract class KeyHandler<RawClass> {
      * @return
      */
     protected boolean isGetter(final Method m) {
-        return m != null && m.equals(getMethod);
+        return m != null && (m == getMethod || m.equals(getMethod));
     }
 
     protected boolean isPrimitive() {
@@ -42,8 +42,8 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map.Entry;
@@ -64,6 +64,7 @@ import org.appwork.storage.StorageException;
 import org.appwork.storage.config.ConfigInterface;
 import org.appwork.storage.config.InterfaceParseException;
 import org.appwork.storage.config.annotations.AllowStorage;
+import org.appwork.storage.config.annotations.BinarySnapshot;
 import org.appwork.storage.config.annotations.CryptedStorage;
 import org.appwork.storage.config.annotations.DefaultBooleanArrayValue;
 import org.appwork.storage.config.annotations.DefaultByteArrayValue;
@@ -71,13 +72,13 @@ import org.appwork.storage.config.annotations.DefaultDoubleArrayValue;
 import org.appwork.storage.config.annotations.DefaultFloatArrayValue;
 import org.appwork.storage.config.annotations.DefaultIntArrayValue;
 import org.appwork.storage.config.annotations.DefaultLongArrayValue;
+import org.appwork.storage.config.annotations.WriteLatency;
 import org.appwork.storage.config.events.ConfigEvent;
 import org.appwork.storage.config.events.ConfigEventSender;
 import org.appwork.utils.Application;
 import org.appwork.utils.Files;
 import org.appwork.utils.ReflectionUtils;
 import org.appwork.utils.StringUtils;
-import org.appwork.utils.logging2.LogInterface;
 import org.appwork.utils.reflection.Clazz;
 import org.appwork.utils.swing.dialog.Dialog;
 
@@ -87,7 +88,7 @@ import org.appwork.utils.swing.dialog.Dialog;
  *
  */
 public class StorageHandler<T extends ConfigInterface> implements InvocationHandler {
-    private final static LinkedHashMap<String, Runnable>    DELAYEDWRITES = new LinkedHashMap<String, Runnable>();
+    private final static WriteBehindExecutor                WRITE_BEHIND  = new WriteBehindExecutor(Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())));
     protected static final DelayedRunnable                  SAVEDELAYER   = new DelayedRunnable(5000, 30000) {
                                                                               @Override
                                                                               public void delayedrun() {
@@ -117,9 +118,7 @@ public class StorageHandler<T extends ConfigInterface> implements InvocationHand
 
             @Override
             public String toString() {
-                synchronized (DELAYEDWRITES) {
-                    return "ShutdownEvent: ProcessDelayedWrites num=" + DELAYEDWRITES.size();
-                }
+                return "ShutdownEvent: ProcessDelayedWrites num=" + WRITE_BEHIND.getQueueDepth();
             }
         });
         ShutdownController.getInstance().addShutdownEvent(new ShutdownEvent() {
@@ -171,28 +170,23 @@ public class StorageHandler<T extends ConfigInterface> implements InvocationHand
             }
             ret = new JsonKeyValueStorage(new File(filePath.getAbsolutePath() + ".json"), urlClassPath, true, null);
         }
+        ret.setWriteLatency(getWriteLatency(configInterface));
+        ret.setBinarySnapshotEnabled(configInterface.getAnnotation(BinarySnapshot.class) != null);
         return ret;
     }
 
+    /**
+     * executes all pending delayed writes in parallel and waits until they are done
+     */
     public static void flushWrites() {
-        final LogInterface logger = org.appwork.loggingv3.LogV3.I().getDefaultLogger();
-        while (true) {
-            synchronized (DELAYEDWRITES) {
-                final Iterator<Runnable> it = DELAYEDWRITES.values().iterator();
-                if (it.hasNext()) {
-                    final Runnable next = it.next();
-                    try {
-                        next.run();
-                    } catch (final Throwable th) {
-                        logger.log(th);
-                    } finally {
-                        it.remove();
-                    }
-                } else {
-                    return;
-                }
-            }
-        }
+        WRITE_BEHIND.flush();
+    }
+
+    /**
+     * @return the write behind queue for delayed writes. see the getters for metrics (queue depth, latency)
+     */
+    public static WriteBehindExecutor getWriteBehindExecutor() {
+        return WRITE_BEHIND;
     }
 
     private static final AtomicBoolean DELAYED_WRITES = new AtomicBoolean(false);
@@ -210,25 +204,42 @@ public class StorageHandler<T extends ConfigInterface> implements InvocationHand
     }
 
     public static void enqueueWrite(final Runnable run, final String ID, final boolean delayWrite) {
-        final boolean write;
-        synchronized (DELAYEDWRITES) {
-            final boolean isShuttingDown = ShutdownController.getInstance().isShuttingDown();
-            final boolean isDelayedWritesEnabled = isDelayedWritesEnabled();
-            if (isShuttingDown || !delayWrite || !isDelayedWritesEnabled) {
-                if (DELAYEDWRITES.size() > 0) {
-                    DELAYEDWRITES.remove(ID);
-                }
-                write = true;
-            } else {
-                DELAYEDWRITES.put(ID, run);
-                write = false;
-            }
-        }
-        if (write) {
-            run.run();
+        enqueueWrite(run, ID, delayWrite, WriteBehindExecutor.DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * @param run
+     * @param ID
+     *            writes with the same ID are coalesced
+     * @param delayWrite
+     * @param maxDelay
+     *            latency target in ms for delayed writes
+     */
+    public static void enqueueWrite(final Runnable run, final String ID, final boolean delayWrite, final long maxDelay) {
+        if (!isDelayedWrite(delayWrite)) {
+            WRITE_BEHIND.writeNow(ID, run);
+        } else {
+            WRITE_BEHIND.enqueue(ID, run, maxDelay);
         }
     }
 
+    /**
+     * @param delayWrite
+     * @return true if {@link #enqueueWrite(Runnable, String, boolean, long)} would hand the write to the delayed writer
+     */
+    private static boolean isDelayedWrite(final boolean delayWrite) {
+        return delayWrite && isDelayedWritesEnabled() && !ShutdownController.getInstance().isShuttingDown();
+    }
+
+    /**
+     * @param configInterface
+     * @return the {@link WriteLatency} of the interface or {@link WriteBehindExecutor#DEFAULT_MAX_DELAY}
+     */
+    public static long getWriteLatency(final Class<? extends ConfigInterface> configInterface) {
+        final WriteLatency latency = configInterface == null ? null : configInterface.getAnnotation(WriteLatency.class);
+        return latency == null ? WriteBehindExecutor.DEFAULT_MAX_DELAY : latency.value();
+    }
+
     /**
      * @param interfaceName
      * @param storage
@@ -266,6 +277,10 @@ public class StorageHandler<T extends ConfigInterface> implements InvocationHand
     private final Class<T>                         configInterface;
     protected final HashMap<Method, KeyHandler<?>> method2KeyHandlerMap      = new HashMap<Method, KeyHandler<?>>();
     protected final HashMap<String, KeyHandler<?>> key2KeyHandlerMap         = new HashMap<String, KeyHandler<?>>();
+    /**
+     * the Proxy passes the same Method instances on every call. identity lookups are much cheaper than Method.equals. copy on write
+     */
+    private volatile IdentityHashMap<Method, KeyHandler<?>> dispatchCache     = new IdentityHashMap<Method, KeyHandler<?>>();
     protected final Storage                        primitiveStorage;
     private final File                             path;
     private ConfigEventSender<Object>              eventSender               = null;
@@ -702,16 +717,28 @@ public class StorageHandler<T extends ConfigInterface> implements InvocationHand
     }
 
     protected void writeObject(final ListHandler<?> keyHandler, final Object object) {
-        final byte[] jsonBytes = JSonStorage.getMapper().objectToByteArray(object);
         final byte[] cryptKey = keyHandler.getCryptKey();
         final File path = keyHandler.getPath();
-        final Runnable run = new Runnable() {
-            @Override
-            public void run() {
-                JSonStorage.saveTo(path, cryptKey == null, cryptKey, jsonBytes);
-            }
-        };
-        StorageHandler.enqueueWrite(run, path.getAbsolutePath(), isDelayedWriteAllowed(keyHandler));
+        final boolean delayWrite = isDelayedWriteAllowed(keyHandler);
+        final Runnable run;
+        if (isDelayedWrite(delayWrite)) {
+            // the caller may modify the object before the delayed writer runs, so we have to take a snapshot now
+            final byte[] jsonBytes = JSonStorage.getMapper().objectToByteArray(object);
+            run = new Runnable() {
+                @Override
+                public void run() {
+                    JSonStorage.saveTo(path, cryptKey == null, cryptKey, jsonBytes);
+                }
+            };
+        } else {
+            run = new Runnable() {
+                @Override
+                public void run() {
+                    JSonStorage.serializeTo(path, cryptKey == null, cryptKey, object);
+                }
+            };
+        }
+        StorageHandler.enqueueWrite(run, path.getAbsolutePath(), delayWrite, getWriteLatency(configInterface));
     }
 
     protected Object readObject(final ListHandler<?> keyHandler, final AtomicBoolean readFlag) {
@@ -767,7 +794,7 @@ public class StorageHandler<T extends ConfigInterface> implements InvocationHand
         if (m != null) {
             final long t = StorageHandler.PROFILER_MAP == null ? 0 : System.nanoTime();
             try {
-                final KeyHandler<?> handler = this.method2KeyHandlerMap.get(m);
+                final KeyHandler<?> handler = this.getDispatchKeyHandler(m);
                 if (handler != null) {
                     if (handler.isGetter(m)) {
                         final Object ret = handler.getValue();
@@ -1024,6 +1051,27 @@ public class StorageHandler<T extends ConfigInterface> implements InvocationHand
         return new ArrayList<KeyHandler<?>>(key2KeyHandlerMap.values());
     }
 
+    private KeyHandler<?> getDispatchKeyHandler(final Method m) {
+        KeyHandler<?> ret = this.dispatchCache.get(m);
+        if (ret == null) {
+            synchronized (this.method2KeyHandlerMap) {
+                ret = this.method2KeyHandlerMap.get(m);
+                if (ret != null) {
+                    final IdentityHashMap<Method, KeyHandler<?>> cache = new IdentityHashMap<Method, KeyHandler<?>>(this.dispatchCache);
+                    cache.put(m, ret);
+                    this.dispatchCache = cache;
+                }
+            }
+        }
+        return ret;
+    }
+
+    private void clearDispatchCache() {
+        synchronized (this.method2KeyHandlerMap) {
+            this.dispatchCache = new IdentityHashMap<Method, KeyHandler<?>>();
+        }
+    }
+
     private void removeKeyHandler(KeyHandler<?> keyHandler) {
         final Method getMethod = keyHandler.getGetMethod();
         if (getMethod != null) {
@@ -1034,6 +1082,7 @@ public class StorageHandler<T extends ConfigInterface> implements InvocationHand
             this.method2KeyHandlerMap.remove(setMethod);
         }
         this.key2KeyHandlerMap.remove(keyHandler.getKey());
+        this.clearDispatchCache();
     }
 
     private void addKeyHandler(KeyHandler<?> keyHandler) {
@@ -1046,6 +1095,7 @@ public class StorageHandler<T extends ConfigInterface> implements InvocationHand
             this.method2KeyHandlerMap.put(setMethod, keyHandler);
         }
         this.key2KeyHandlerMap.put(keyHandler.getKey(), keyHandler);
+        this.clearDispatchCache();
     }
 
     public void setObjectCacheEnabled(final boolean objectCacheEnabled) {
@@ -0,0 +1,340 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage.config.handler;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.appwork.loggingv3.LogV3;
+
+/**
+ * Write behind queue for storage files. Writes are coalesced per ID (file path): only the latest runnable of an ID is executed. Each write
+ * is executed not later than its maximum delay, writes of different IDs run in parallel on a bounded worker pool, writes of the same ID
+ * never run concurrently.
+ *
+ * @author thomas
+ *
+ */
+public class WriteBehindExecutor {
+    /**
+     * default latency target for writes without {@link org.appwork.storage.config.annotations.WriteLatency}
+     */
+    public static final long DEFAULT_MAX_DELAY = 30000;
+
+    private static class Job {
+        private final String id;
+        private Runnable     run;
+        private final long   enqueued;
+        private long         due;
+
+        private Job(final String id, final Runnable run, final long enqueued, final long due) {
+            this.id = id;
+            this.run = run;
+            this.enqueued = enqueued;
+            this.due = due;
+        }
+    }
+
+    private final LinkedHashMap<String, Job>  pending        = new LinkedHashMap<String, Job>();
+    private final HashSet<String>             running        = new HashSet<String>();
+    private final ThreadPoolExecutor          workers;
+    private final ScheduledThreadPoolExecutor timer;
+    private ScheduledFuture<?>                timerTask      = null;
+    private long                              timerDue       = -1;
+    private int                               maxQueueDepth  = 0;
+    private final AtomicLong                  enqueuedWrites = new AtomicLong(0);
+    private final AtomicLong                  coalesced      = new AtomicLong(0);
+    private final AtomicLong                  executedWrites = new AtomicLong(0);
+    private final AtomicLong                  failedWrites   = new AtomicLong(0);
+    private final AtomicLong                  latencySum     = new AtomicLong(0);
+    private final AtomicLong                  latencyMax     = new AtomicLong(0);
+    private final AtomicLong                  durationSum    = new AtomicLong(0);
+    private final Runnable                    dispatcher     = new Runnable() {
+                                                                 @Override
+                                                                 public void run() {
+                                                                     WriteBehindExecutor.this.dispatch(false);
+                                                                 }
+                                                             };
+
+    /**
+     * @param threads
+     *            maximum number of parallel writes
+     */
+    public WriteBehindExecutor(final int threads) {
+        final AtomicInteger num = new AtomicInteger(0);
+        final ThreadFactory factory = new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "WriteBehind:" + num.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        this.workers = new ThreadPoolExecutor(threads, threads, 10000, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), factory);
+        this.workers.allowCoreThreadTimeOut(true);
+        this.timer = new ScheduledThreadPoolExecutor(1, factory);
+        this.timer.setKeepAliveTime(10000, TimeUnit.MILLISECONDS);
+        this.timer.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * enqueues a write. A pending write with the same id is replaced, but keeps its (earlier) due time
+     *
+     * @param id
+     * @param run
+     * @param maxDelay
+     *            latency target in ms
+     */
+    public void enqueue(final String id, final Runnable run, final long maxDelay) {
+        final long now = System.currentTimeMillis();
+        this.enqueuedWrites.incrementAndGet();
+        synchronized (this) {
+            Job job = this.pending.get(id);
+            if (job != null) {
+                job.run = run;
+                job.due = Math.min(job.due, now + Math.max(0, maxDelay));
+                this.coalesced.incrementAndGet();
+            } else {
+                job = new Job(id, run, now, now + Math.max(0, maxDelay));
+                this.pending.put(id, job);
+                this.maxQueueDepth = Math.max(this.maxQueueDepth, this.pending.size());
+            }
+            if (!this.running.contains(id)) {
+                this.schedule(job.due, now);
+            }
+        }
+    }
+
+    /**
+     * removes a pending write for id and executes run in the current thread. Waits for a running write of the same id first
+     *
+     * @param id
+     * @param run
+     */
+    public void writeNow(final String id, final Runnable run) {
+        final long now = System.currentTimeMillis();
+        this.enqueuedWrites.incrementAndGet();
+        final Job job;
+        synchronized (this) {
+            if (this.pending.remove(id) != null) {
+                this.coalesced.incrementAndGet();
+            }
+            boolean interrupted = false;
+            while (this.running.contains(id)) {
+                try {
+                    this.wait();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            this.running.add(id);
+            job = new Job(id, run, now, now);
+        }
+        this.execute(job, true);
+    }
+
+    /**
+     * executes all pending writes (in parallel) and waits until they are done
+     */
+    public void flush() {
+        synchronized (this) {
+            boolean interrupted = false;
+            while (this.pending.size() > 0 || this.running.size() > 0) {
+                this.dispatch(true);
+                try {
+                    this.wait(1000);
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void schedule(final long due, final long now) {
+        if (this.timerTask != null && this.timerDue <= due) {
+            return;
+        }
+        if (this.timerTask != null) {
+            this.timerTask.cancel(false);
+        }
+        this.timerDue = due;
+        this.timerTask = this.timer.schedule(this.dispatcher, Math.max(0, due - now), TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void dispatch(final boolean all) {
+        final long now = System.currentTimeMillis();
+        this.timerTask = null;
+        long next = Long.MAX_VALUE;
+        final Iterator<Job> it = this.pending.values().iterator();
+        while (it.hasNext()) {
+            final Job job = it.next();
+            if (this.running.contains(job.id)) {
+                // dispatched again when the running write is done
+                continue;
+            } else if (all || job.due <= now) {
+                it.remove();
+                this.running.add(job.id);
+                try {
+                    this.workers.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            WriteBehindExecutor.this.execute(job, false);
+                        }
+                    });
+                } catch (final RejectedExecutionException e) {
+                    this.running.remove(job.id);
+                    this.pending.put(job.id, job);
+                    throw e;
+                }
+            } else {
+                next = Math.min(next, job.due);
+            }
+        }
+        if (next != Long.MAX_VALUE) {
+            this.schedule(next, now);
+        }
+    }
+
+    private void execute(final Job job, final boolean inCaller) {
+        final long start = System.currentTimeMillis();
+        try {
+            job.run.run();
+        } catch (final Throwable e) {
+            this.failedWrites.incrementAndGet();
+            if (inCaller) {
+                if (e instanceof RuntimeException) {
+                    throw (RuntimeException) e;
+                } else if (e instanceof Error) {
+                    throw (Error) e;
+                }
+            }
+            LogV3.log(e);
+        } finally {
+            final long end = System.currentTimeMillis();
+            this.executedWrites.incrementAndGet();
+            this.durationSum.addAndGet(end - start);
+            final long latency = end - job.enqueued;
+            this.latencySum.addAndGet(latency);
+            long max;
+            while ((max = this.latencyMax.get()) < latency && !this.latencyMax.compareAndSet(max, latency)) {
+            }
+            synchronized (this) {
+                this.running.remove(job.id);
+                final Job next = this.pending.get(job.id);
+                if (next != null) {
+                    this.schedule(next.due, end);
+                }
+                this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return number of pending (not yet running) writes
+     */
+    public synchronized int getQueueDepth() {
+        return this.pending.size();
+    }
+
+    public synchronized int getMaxQueueDepth() {
+        return this.maxQueueDepth;
+    }
+
+    /**
+     * @return number of writes currently running
+     */
+    public synchronized int getRunningWrites() {
+        return this.running.size();
+    }
+
+    public long getEnqueuedWrites() {
+        return this.enqueuedWrites.get();
+    }
+
+    /**
+     * @return number of writes that have been replaced by a newer write of the same id before they ran
+     */
+    public long getCoalescedWrites() {
+        return this.coalesced.get();
+    }
+
+    public long getExecutedWrites() {
+        return this.executedWrites.get();
+    }
+
+    public long getFailedWrites() {
+        return this.failedWrites.get();
+    }
+
+    /**
+     * @return average time in ms from the first enqueue of a write until it finished
+     */
+    public long getAverageWriteLatency() {
+        final long executed = this.executedWrites.get();
+        return executed == 0 ? 0 : this.latencySum.get() / executed;
+    }
+
+    public long getMaxWriteLatency() {
+        return this.latencyMax.get();
+    }
+
+    /**
+     * @return average time in ms the write itself took
+     */
+    public long getAverageWriteDuration() {
+        final long executed = this.executedWrites.get();
+        return executed == 0 ? 0 : this.durationSum.get() / executed;
+    }
+
+    @Override
+    public String toString() {
+        return "WriteBehindExecutor: queue=" + this.getQueueDepth() + "(max " + this.getMaxQueueDepth() + ")|running=" + this.getRunningWrites() + "|enqueued=" + this.getEnqueuedWrites() + "|coalesced=" + this.getCoalescedWrites() + "|executed=" + this.getExecutedWrites() + "|failed=" + this.getFailedWrites() + "|latency avg=" + this.getAverageWriteLatency() + "ms max=" + this.getMaxWriteLatency() + "ms|duration avg=" + this.getAverageWriteDuration() + "ms";
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage.config.test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.appwork.storage.config.handler.WriteBehindExecutor;
+
+/**
+ * coalescing, latency target, parallel writes and flush of {@link WriteBehindExecutor}
+ *
+ * @author thomas
+ *
+ */
+public class WriteBehindTest {
+    public static void main(final String[] args) throws Exception {
+        final WriteBehindExecutor executor = new WriteBehindExecutor(4);
+        final AtomicInteger writes = new AtomicInteger(0);
+        final AtomicInteger concurrent = new AtomicInteger(0);
+        final AtomicInteger maxConcurrent = new AtomicInteger(0);
+        final int[] lastValue = new int[10];
+        final int[] perIdConcurrent = new int[10];
+        for (int round = 0; round < 100; round++) {
+            for (int id = 0; id < 10; id++) {
+                final int fId = id;
+                final int value = round;
+                executor.enqueue("file" + id, new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (perIdConcurrent) {
+                            if (++perIdConcurrent[fId] > 1) {
+                                throw new IllegalStateException("concurrent write of the same id");
+                            }
+                        }
+                        final int c = concurrent.incrementAndGet();
+                        int max;
+                        while ((max = maxConcurrent.get()) < c && !maxConcurrent.compareAndSet(max, c)) {
+                        }
+                        try {
+                            Thread.sleep(50);
+                        } catch (final InterruptedException e) {
+                        }
+                        lastValue[fId] = value;
+                        concurrent.decrementAndGet();
+                        writes.incrementAndGet();
+                        synchronized (perIdConcurrent) {
+                            perIdConcurrent[fId]--;
+                        }
+                    }
+                }, 200);
+            }
+        }
+        final long t = System.currentTimeMillis();
+        while (executor.getExecutedWrites() < 10 && System.currentTimeMillis() - t < 5000) {
+            Thread.sleep(10);
+        }
+        WriteBehindTest.assertTrue(System.currentTimeMillis() - t < 1000, "latency target missed");
+        executor.flush();
+        WriteBehindTest.assertTrue(executor.getQueueDepth() == 0 && executor.getRunningWrites() == 0, "flush");
+        for (int id = 0; id < 10; id++) {
+            WriteBehindTest.assertTrue(lastValue[id] == 99, "lost update for id " + id);
+        }
+        WriteBehindTest.assertTrue(writes.get() < 100, "no coalescing: " + writes.get());
+        WriteBehindTest.assertTrue(maxConcurrent.get() > 1, "no parallel writes");
+        WriteBehindTest.assertTrue(executor.getFailedWrites() == 0, "failed writes");
+        // writeNow replaces the pending write
+        final AtomicInteger value = new AtomicInteger(0);
+        executor.enqueue("now", new Runnable() {
+            @Override
+            public void run() {
+                value.set(1);
+            }
+        }, 100000);
+        executor.writeNow("now", new Runnable() {
+            @Override
+            public void run() {
+                value.set(2);
+            }
+        });
+        executor.flush();
+        WriteBehindTest.assertTrue(value.get() == 2, "writeNow");
+        System.out.println(executor);
+        System.out.println("SUCCESS");
+    }
+
+    private static void assertTrue(final boolean b, final String msg) throws Exception {
+        if (!b) {
+            throw new Exception(msg);
+        }
+    }
+}
@@ -0,0 +1,843 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage.simplejson;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Pull parser that reads UTF-8 encoded json directly from an {@link InputStream}, a {@link ByteBuffer} or a byte array. Unlike
+ * {@link JSonFactory} it does not need the whole document as String. Streams and direct/mapped ByteBuffers are read through a bounded
+ * buffer, so memory usage does not depend on the document size as long as the caller does not build a tree via {@link #parse()}.
+ *
+ * Usage:
+ *
+ * <pre>
+ * final JSonStreamParser parser = new JSonStreamParser(inputStream);
+ * JSonToken token;
+ * while ((token = parser.next()) != JSonToken.EOF) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @author thomas
+ *
+ */
+public class JSonStreamParser implements Closeable {
+    public static final int    DEFAULT_BUFFER_SIZE = 16 * 1024;
+    private static final byte  ROOT                = 0;
+    private static final byte  ROOT_DONE           = 1;
+    private static final byte  OBJECT_FIRST        = 2;
+    private static final byte  OBJECT_NEXT         = 3;
+    private static final byte  OBJECT_VALUE        = 4;
+    private static final byte  ARRAY_FIRST         = 5;
+    private static final byte  ARRAY_NEXT          = 6;
+    private static final int   EOS                 = -1;
+    private static final int   MAX_CACHED_KEY      = 64;
+    private final InputStream  in;
+    private final ByteBuffer   source;
+    private byte[]             buffer;
+    private int                pos;
+    private int                limit;
+    /* number of bytes that have been dropped from the buffer by refills */
+    private long               consumed            = 0;
+    private byte[]             stack               = new byte[32];
+    private int                depth               = 0;
+    private char[]             chars               = new char[256];
+    /* object keys repeat a lot (e.g. lists of Storables). we reuse the String instances */
+    private final String[]     keyCache            = new String[256];
+    private int                charsLength         = 0;
+    private JSonToken          token               = null;
+    private long               longValue;
+    private double             doubleValue;
+    private boolean            booleanValue;
+    private final boolean      naNAllowed;
+
+    public JSonStreamParser(final InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE, false);
+    }
+
+    public JSonStreamParser(final InputStream in, final int bufferSize, final boolean naNAllowed) {
+        if (in == null) {
+            throw new IllegalArgumentException("in is null");
+        }
+        this.in = in;
+        this.source = null;
+        this.buffer = new byte[Math.max(16, bufferSize)];
+        this.naNAllowed = naNAllowed;
+        this.stack[0] = ROOT;
+    }
+
+    /**
+     * parses the remaining bytes of the buffer. Heap buffers are parsed in place, direct (or memory mapped) buffers are copied chunk by
+     * chunk into a bounded buffer.
+     *
+     * @param source
+     */
+    public JSonStreamParser(final ByteBuffer source) {
+        this(source, DEFAULT_BUFFER_SIZE, false);
+    }
+
+    public JSonStreamParser(final ByteBuffer source, final int bufferSize, final boolean naNAllowed) {
+        if (source == null) {
+            throw new IllegalArgumentException("source is null");
+        }
+        this.in = null;
+        this.naNAllowed = naNAllowed;
+        this.stack[0] = ROOT;
+        if (source.hasArray()) {
+            this.source = null;
+            this.buffer = source.array();
+            this.pos = source.arrayOffset() + source.position();
+            this.limit = source.arrayOffset() + source.limit();
+            this.consumed = -this.pos;
+        } else {
+            this.source = source;
+            this.buffer = new byte[Math.max(16, Math.min(bufferSize, source.remaining()))];
+        }
+    }
+
+    public JSonStreamParser(final byte[] json) {
+        this(json, 0, json.length);
+    }
+
+    public JSonStreamParser(final byte[] json, final int offset, final int length) {
+        this(ByteBuffer.wrap(json, offset, length), DEFAULT_BUFFER_SIZE, false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the current token or null if {@link #next()} has not been called yet
+     */
+    public JSonToken getToken() {
+        return token;
+    }
+
+    /**
+     * @return the nesting depth of the current position. 0 means root level
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return byte offset of the current position
+     */
+    public long getPosition() {
+        return consumed + pos;
+    }
+
+    /**
+     * @return the value of a {@link JSonToken#STRING} or {@link JSonToken#KEY} token
+     */
+    public String getString() {
+        switch (token) {
+        case STRING:
+            return new String(chars, 0, charsLength);
+        case KEY:
+            return mapKey(getCachedKey());
+        case LONG:
+            return String.valueOf(longValue);
+        case DOUBLE:
+            return String.valueOf(doubleValue);
+        case BOOLEAN:
+            return String.valueOf(booleanValue);
+        default:
+            return null;
+        }
+    }
+
+    private String getCachedKey() {
+        if (charsLength > MAX_CACHED_KEY) {
+            return new String(chars, 0, charsLength);
+        }
+        int hash = 0;
+        for (int i = 0; i < charsLength; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        final int index = (hash ^ hash >>> 16) & keyCache.length - 1;
+        final String cached = keyCache[index];
+        if (cached != null && textEquals(cached)) {
+            return cached;
+        }
+        return keyCache[index] = new String(chars, 0, charsLength);
+    }
+
+    /**
+     * compares the current {@link JSonToken#STRING} or {@link JSonToken#KEY} with the given String without creating a String instance
+     *
+     * @param str
+     * @return
+     */
+    public boolean textEquals(final String str) {
+        if (str == null || str.length() != charsLength) {
+            return false;
+        }
+        for (int i = 0; i < charsLength; i++) {
+            if (chars[i] != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getLong() {
+        if (token == JSonToken.DOUBLE) {
+            return (long) doubleValue;
+        }
+        return longValue;
+    }
+
+    public double getDouble() {
+        if (token == JSonToken.LONG) {
+            return longValue;
+        }
+        return doubleValue;
+    }
+
+    public boolean getBoolean() {
+        return booleanValue;
+    }
+
+    /**
+     * @return the current scalar value as it would be stored in a {@link JSonValue}
+     */
+    public Object getValue() {
+        switch (token) {
+        case STRING:
+            return getString();
+        case LONG:
+            return longValue;
+        case DOUBLE:
+            return doubleValue;
+        case BOOLEAN:
+            return booleanValue;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Jump to the next token
+     *
+     * @return
+     * @throws ParserException
+     * @throws IOException
+     */
+    public JSonToken next() throws ParserException, IOException {
+        int c = skipWhiteSpace();
+        switch (stack[depth]) {
+        case ROOT:
+            if (c == EOS) {
+                throw bam("Ended unexpected");
+            }
+            stack[depth] = ROOT_DONE;
+            return readValue(c);
+        case ROOT_DONE:
+            if (c != EOS) {
+                throw bam("Unexpected End of JSonString");
+            }
+            return token = JSonToken.EOF;
+        case OBJECT_FIRST:
+            if (c == '}') {
+                return endStructure(JSonToken.END_OBJECT);
+            }
+            return readKey(c);
+        case OBJECT_NEXT:
+            if (c == '}') {
+                return endStructure(JSonToken.END_OBJECT);
+            } else if (c != ',') {
+                throw bam(", or }' expected");
+            }
+            pos++;
+            return readKey(skipWhiteSpace());
+        case OBJECT_VALUE:
+            if (c == EOS) {
+                throw bam("Ended unexpected");
+            }
+            stack[depth] = OBJECT_NEXT;
+            return readValue(c);
+        case ARRAY_FIRST:
+            if (c == ']') {
+                return endStructure(JSonToken.END_ARRAY);
+            } else if (c == ',') {
+                throw bam("Value missing");
+            } else if (c == EOS) {
+                throw bam("Ended unexpected");
+            }
+            stack[depth] = ARRAY_NEXT;
+            return readValue(c);
+        case ARRAY_NEXT:
+            if (c == ']') {
+                return endStructure(JSonToken.END_ARRAY);
+            } else if (c != ',') {
+                throw bam("']' or ',' expected");
+            }
+            pos++;
+            c = skipWhiteSpace();
+            if (c == ']') {
+                // like JSonFactory, we accept a trailing , in arrays
+                return endStructure(JSonToken.END_ARRAY);
+            } else if (c == ',') {
+                throw bam("Value missing");
+            } else if (c == EOS) {
+                throw bam("Ended unexpected");
+            }
+            return readValue(c);
+        default:
+            throw bam("Illegal parser state");
+        }
+    }
+
+    /**
+     * If the current token is {@link JSonToken#START_OBJECT} or {@link JSonToken#START_ARRAY}, this method skips all tokens up to and
+     * including the matching end token. For all other tokens, this method does nothing. If the current token is a {@link JSonToken#KEY},
+     * the value of this key gets skipped.
+     *
+     * @throws IOException
+     * @throws ParserException
+     */
+    public void skipValue() throws ParserException, IOException {
+        if (token == JSonToken.KEY) {
+            next();
+        }
+        if (token == JSonToken.START_OBJECT || token == JSonToken.START_ARRAY) {
+            final int targetDepth = depth - 1;
+            while (depth > targetDepth) {
+                next();
+            }
+        }
+    }
+
+    /**
+     * Reads the current value (including all children) and returns it as {@link JSonNode} tree. If the parser is positioned on a
+     * {@link JSonToken#KEY}, or has not been started yet, the next value is returned.
+     *
+     * @return
+     * @throws ParserException
+     * @throws IOException
+     */
+    public JSonNode readNode() throws ParserException, IOException {
+        if (token == null || token == JSonToken.KEY) {
+            next();
+        }
+        return currentNode();
+    }
+
+    /**
+     * Parses the whole document and makes sure that there is nothing but whitespace behind the root value. Equivalent to
+     * {@link JSonFactory#parse()}
+     *
+     * @return
+     * @throws ParserException
+     * @throws IOException
+     */
+    public JSonNode parse() throws ParserException, IOException {
+        final JSonNode ret = currentNode(next());
+        if (next() != JSonToken.EOF) {
+            throw bam("Unexpected End of JSonString");
+        }
+        return ret;
+    }
+
+    private JSonNode currentNode() throws ParserException, IOException {
+        return currentNode(token);
+    }
+
+    private JSonNode currentNode(final JSonToken current) throws ParserException, IOException {
+        switch (current) {
+        case START_OBJECT: {
+            final JSonObject ret = createJSonObject();
+            while (next() == JSonToken.KEY) {
+                final String key = getString();
+                ret.put(key, currentNode(next()));
+            }
+            return ret;
+        }
+        case START_ARRAY: {
+            final JSonArray ret = createJSonArray();
+            JSonToken t;
+            while ((t = next()) != JSonToken.END_ARRAY) {
+                ret.add(currentNode(t));
+            }
+            return ret;
+        }
+        case STRING:
+            return new JSonValue(getString());
+        case LONG:
+            return new JSonValue(longValue);
+        case DOUBLE:
+            return new JSonValue(doubleValue);
+        case BOOLEAN:
+            return new JSonValue(booleanValue);
+        case NULL:
+            return new JSonValue(null);
+        default:
+            throw bam("Value expected");
+        }
+    }
+
+    protected JSonObject createJSonObject() {
+        return new JSonObject();
+    }
+
+    protected JSonArray createJSonArray() {
+        return new JSonArray();
+    }
+
+    /**
+     * @param key
+     * @return
+     */
+    protected String mapKey(final String key) {
+        return key;
+    }
+
+    private JSonToken endStructure(final JSonToken end) {
+        pos++;
+        depth--;
+        return token = end;
+    }
+
+    private void push(final byte state) {
+        if (++depth == stack.length) {
+            final byte[] newStack = new byte[stack.length * 2];
+            System.arraycopy(stack, 0, newStack, 0, stack.length);
+            stack = newStack;
+        }
+        stack[depth] = state;
+    }
+
+    private JSonToken readKey(final int c) throws ParserException, IOException {
+        if (c != '"') {
+            throw bam("\" expected");
+        }
+        pos++;
+        readString();
+        if (skipWhiteSpace() != ':') {
+            throw bam("':' expected");
+        }
+        pos++;
+        stack[depth] = OBJECT_VALUE;
+        return token = JSonToken.KEY;
+    }
+
+    private JSonToken readValue(final int c) throws ParserException, IOException {
+        switch (c) {
+        case '{':
+            pos++;
+            push(OBJECT_FIRST);
+            return token = JSonToken.START_OBJECT;
+        case '[':
+            pos++;
+            push(ARRAY_FIRST);
+            return token = JSonToken.START_ARRAY;
+        case '"':
+            pos++;
+            readString();
+            return token = JSonToken.STRING;
+        case 't':
+            expectLiteral("true");
+            booleanValue = true;
+            return token = JSonToken.BOOLEAN;
+        case 'f':
+            expectLiteral("false");
+            booleanValue = false;
+            return token = JSonToken.BOOLEAN;
+        case 'n':
+            expectLiteral("null");
+            return token = JSonToken.NULL;
+        case 'N':
+            if (naNAllowed) {
+                expectLiteral("NaN");
+                doubleValue = Double.NaN;
+                return token = JSonToken.DOUBLE;
+            }
+            break;
+        case '-':
+        case '+':
+        case '0':
+        case '1':
+        case '2':
+        case '3':
+        case '4':
+        case '5':
+        case '6':
+        case '7':
+        case '8':
+        case '9':
+            return readNumber();
+        }
+        pos++;
+        throw bam("Illegal Char");
+    }
+
+    private void expectLiteral(final String literal) throws ParserException, IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (peek() != literal.charAt(i)) {
+                throw bam(literal + " expected");
+            }
+            pos++;
+        }
+    }
+
+    private JSonToken readNumber() throws ParserException, IOException {
+        charsLength = 0;
+        boolean floatingPoint = false;
+        int c;
+        while (true) {
+            c = peek();
+            switch (c) {
+            case '.':
+            case 'e':
+            case 'E':
+                floatingPoint = true;
+                appendChar((char) c);
+                pos++;
+                continue;
+            case '0':
+            case '1':
+            case '2':
+            case '3':
+            case '4':
+            case '5':
+            case '6':
+            case '7':
+            case '8':
+            case '9':
+            case '-':
+            case '+':
+                appendChar((char) c);
+                pos++;
+                continue;
+            }
+            break;
+        }
+        try {
+            if (!floatingPoint) {
+                if (parseLong()) {
+                    return token = JSonToken.LONG;
+                }
+            }
+            doubleValue = Double.parseDouble(new String(chars, 0, charsLength));
+            return token = JSonToken.DOUBLE;
+        } catch (final NumberFormatException e) {
+            throw bam("Illegal Number: " + new String(chars, 0, charsLength));
+        }
+    }
+
+    /**
+     * parses an integer from the char buffer without creating a String.
+     *
+     * @return false if the value does not fit into a long.
+     */
+    private boolean parseLong() {
+        int i = 0;
+        boolean negative = false;
+        if (charsLength > 0 && (chars[0] == '-' || chars[0] == '+')) {
+            negative = chars[0] == '-';
+            i++;
+        }
+        if (i == charsLength) {
+            throw new NumberFormatException();
+        }
+        long ret = 0;
+        for (; i < charsLength; i++) {
+            final int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException();
+            }
+            if (ret < (Long.MIN_VALUE + digit) / 10) {
+                // overflow
+                return false;
+            }
+            ret = ret * 10 - digit;
+        }
+        if (!negative) {
+            if (ret == Long.MIN_VALUE) {
+                return false;
+            }
+            ret = -ret;
+        }
+        longValue = ret;
+        return true;
+    }
+
+    private void readString() throws ParserException, IOException {
+        charsLength = 0;
+        int c;
+        while (true) {
+            if (pos >= limit && !fill()) {
+                throw bam("Unexpected End of String \"" + new String(chars, 0, charsLength));
+            }
+            c = buffer[pos++];
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                readEscape();
+            } else if (c >= 0) {
+                appendChar((char) c);
+            } else {
+                readMultiByteChar(c & 0xff);
+            }
+        }
+    }
+
+    private void readEscape() throws ParserException, IOException {
+        final int c = read();
+        switch (c) {
+        case '"':
+        case '/':
+        case '\\':
+            appendChar((char) c);
+            return;
+        case 'r':
+            appendChar('\r');
+            return;
+        case 'n':
+            appendChar('\n');
+            return;
+        case 't':
+            appendChar('\t');
+            return;
+        case 'f':
+            appendChar('\f');
+            return;
+        case 'b':
+            appendChar('\b');
+            return;
+        case 'u':
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                final int h = Character.digit(read(), 16);
+                if (h < 0) {
+                    throw bam("illegal unicode escape");
+                }
+                value = value << 4 | h;
+            }
+            appendChar((char) value);
+            return;
+        default:
+            throw bam("illegal escape char");
+        }
+    }
+
+    /**
+     * decodes a multi byte utf-8 sequence. Malformed sequences are replaced by \uFFFD like {@link String#String(byte[], String)} does
+     *
+     * @param first
+     * @throws IOException
+     * @throws ParserException
+     */
+    private void readMultiByteChar(final int first) throws ParserException, IOException {
+        final int following;
+        int codePoint;
+        if ((first & 0xE0) == 0xC0) {
+            following = 1;
+            codePoint = first & 0x1F;
+        } else if ((first & 0xF0) == 0xE0) {
+            following = 2;
+            codePoint = first & 0x0F;
+        } else if ((first & 0xF8) == 0xF0) {
+            following = 3;
+            codePoint = first & 0x07;
+        } else {
+            appendChar('\uFFFD');
+            return;
+        }
+        for (int i = 0; i < following; i++) {
+            final int c = peek();
+            if (c == EOS || (c & 0xC0) != 0x80) {
+                appendChar('\uFFFD');
+                return;
+            }
+            pos++;
+            codePoint = codePoint << 6 | c & 0x3F;
+        }
+        if (codePoint >= 0x10000) {
+            if (codePoint > Character.MAX_CODE_POINT) {
+                appendChar('\uFFFD');
+            } else {
+                // surrogate pair
+                appendChar((char) ((codePoint - 0x10000 >>> 10) + 0xD800));
+                appendChar((char) ((codePoint & 0x3FF) + 0xDC00));
+            }
+        } else {
+            appendChar((char) codePoint);
+        }
+    }
+
+    private void appendChar(final char c) {
+        if (charsLength == chars.length) {
+            final char[] newChars = new char[chars.length * 2];
+            System.arraycopy(chars, 0, newChars, 0, charsLength);
+            chars = newChars;
+        }
+        chars[charsLength++] = c;
+    }
+
+    private int read() throws ParserException, IOException {
+        if (pos >= limit && !fill()) {
+            throw bam("Ended unexpected");
+        }
+        return buffer[pos++] & 0xff;
+    }
+
+    private int peek() throws IOException {
+        if (pos >= limit && !fill()) {
+            return EOS;
+        }
+        return buffer[pos] & 0xff;
+    }
+
+    /**
+     * skips whitespace and returns the next byte without consuming it
+     *
+     * @return
+     * @throws IOException
+     */
+    private int skipWhiteSpace() throws IOException {
+        while (true) {
+            if (pos >= limit && !fill()) {
+                return EOS;
+            }
+            final int c = buffer[pos] & 0xff;
+            switch (c) {
+            case ' ':
+            case '\t':
+            case '\r':
+            case '\n':
+            case 0x0B:
+            case '\f':
+            case 0x1C:
+            case 0x1D:
+            case 0x1E:
+            case 0x1F:
+                pos++;
+                continue;
+            case 0xEF:
+                // utf-8 byte order mark
+                if (getPosition() == 0 && skipBOM()) {
+                    continue;
+                }
+            }
+            return c;
+        }
+    }
+
+    private boolean skipBOM() throws IOException {
+        if (limit - pos < 3) {
+            fill();
+        }
+        if (limit - pos >= 3 && (buffer[pos + 1] & 0xff) == 0xBB && (buffer[pos + 2] & 0xff) == 0xBF) {
+            pos += 3;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * moves the unread bytes to the beginning of the buffer and reads more data
+     *
+     * @return false if there is no more data
+     * @throws IOException
+     */
+    private boolean fill() throws IOException {
+        if (in == null && source == null) {
+            return false;
+        }
+        final int remaining = limit - pos;
+        if (remaining > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, remaining);
+        }
+        consumed += pos;
+        pos = 0;
+        limit = remaining;
+        if (in != null) {
+            while (limit < buffer.length) {
+                final int read = in.read(buffer, limit, buffer.length - limit);
+                if (read == -1) {
+                    break;
+                } else if (read > 0) {
+                    limit += read;
+                    if (limit > remaining) {
+                        break;
+                    }
+                }
+            }
+        } else {
+            final int read = Math.min(source.remaining(), buffer.length - limit);
+            source.get(buffer, limit, read);
+            limit += read;
+        }
+        return limit > remaining;
+    }
+
+    private ParserException bam(final String expected) {
+        final int from = Math.max(0, Math.min(pos, limit) - 20);
+        final int to = Math.min(limit, Math.max(pos, 0) + 20);
+        final int current = Math.min(pos, limit);
+        String pre;
+        String post;
+        try {
+            pre = new String(buffer, from, current - from, "UTF-8");
+            post = new String(buffer, current, to - current, "UTF-8");
+        } catch (final Throwable e) {
+            pre = "";
+            post = "";
+        }
+        pre = pre.replace("\r", "\\r").replace("\n", "\\n");
+        post = post.replace("\r", "\\r").replace("\n", "\\n");
+        final StringBuilder sb = new StringBuilder();
+        sb.append(expected);
+        sb.append(" at byte ").append(getPosition());
+        sb.append("\r\n\t");
+        sb.append(pre);
+        sb.append(post);
+        sb.append("\r\n\t");
+        for (int i = 1; i < pre.length(); i++) {
+            sb.append("-");
+        }
+        sb.append('|');
+        return new ParserException(sb.toString());
+    }
+}
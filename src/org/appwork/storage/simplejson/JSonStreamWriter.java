@@ -0,0 +1,422 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage.simplejson;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writes json as UTF-8 bytes directly to an {@link OutputStream} or {@link WritableByteChannel} through a small buffer, so there is no need
+ * to build a {@link JSonNode} tree and its String representation first. Escaping is the same as {@link JSonUtils#escape(String)}, the
+ * compact output is the same as the toString() output of {@link JSonObject}, {@link JSonArray} and {@link JSonValue}.
+ *
+ * @author thomas
+ *
+ */
+public class JSonStreamWriter implements Closeable, Flushable {
+    public static final int           DEFAULT_BUFFER_SIZE = 8 * 1024;
+    private static final byte[]       HEX                 = "0123456789ABCDEF".getBytes();
+    private final OutputStream        os;
+    private final WritableByteChannel channel;
+    private final byte[]              buffer;
+    private int                       pos                 = 0;
+    private final boolean             pretty;
+    /* per depth: does the current object/array already contain an element */
+    private boolean[]                 hasElements         = new boolean[32];
+    private int                       depth               = 0;
+    private boolean                   afterKey            = false;
+    private long                      written             = 0;
+
+    public JSonStreamWriter(final OutputStream os) {
+        this(os, false);
+    }
+
+    public JSonStreamWriter(final OutputStream os, final boolean pretty) {
+        if (os == null) {
+            throw new IllegalArgumentException("os is null");
+        }
+        this.os = os;
+        this.channel = null;
+        this.pretty = pretty;
+        this.buffer = new byte[DEFAULT_BUFFER_SIZE];
+    }
+
+    public JSonStreamWriter(final WritableByteChannel channel, final boolean pretty) {
+        if (channel == null) {
+            throw new IllegalArgumentException("channel is null");
+        }
+        this.os = null;
+        this.channel = channel;
+        this.pretty = pretty;
+        this.buffer = new byte[DEFAULT_BUFFER_SIZE];
+    }
+
+    public boolean isPretty() {
+        return pretty;
+    }
+
+    /**
+     * @return number of bytes written so far (including buffered bytes)
+     */
+    public long getWritten() {
+        return written + pos;
+    }
+
+    public JSonStreamWriter beginObject() throws IOException {
+        beforeValue();
+        writeByte('{');
+        push();
+        return this;
+    }
+
+    public JSonStreamWriter endObject() throws IOException {
+        return end('}');
+    }
+
+    public JSonStreamWriter beginArray() throws IOException {
+        beforeValue();
+        writeByte('[');
+        push();
+        return this;
+    }
+
+    public JSonStreamWriter endArray() throws IOException {
+        return end(']');
+    }
+
+    public JSonStreamWriter key(final String key) throws IOException {
+        if (afterKey) {
+            throw new IllegalStateException("value expected");
+        }
+        nextElement(",");
+        writeEscaped(key);
+        if (pretty) {
+            writeAscii(" : ");
+        } else {
+            writeByte(':');
+        }
+        afterKey = true;
+        return this;
+    }
+
+    public JSonStreamWriter value(final String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeEscaped(value);
+        return this;
+    }
+
+    public JSonStreamWriter value(final long value) throws IOException {
+        beforeValue();
+        writeAscii(Long.toString(value));
+        return this;
+    }
+
+    public JSonStreamWriter value(final double value) throws IOException {
+        beforeValue();
+        writeAscii(Double.toString(value));
+        return this;
+    }
+
+    public JSonStreamWriter value(final boolean value) throws IOException {
+        beforeValue();
+        writeAscii(value ? "true" : "false");
+        return this;
+    }
+
+    public JSonStreamWriter nullValue() throws IOException {
+        beforeValue();
+        writeAscii("null");
+        return this;
+    }
+
+    /**
+     * writes an already serialized json value as it is
+     *
+     * @param json
+     * @return
+     * @throws IOException
+     */
+    public JSonStreamWriter rawValue(final String json) throws IOException {
+        beforeValue();
+        writeUTF8(json);
+        return this;
+    }
+
+    /**
+     * writes a {@link JSonNode} tree. Unknown {@link JSonNode} implementations are written via their toString() method
+     *
+     * @param node
+     * @return
+     * @throws IOException
+     */
+    public JSonStreamWriter writeNode(final JSonNode node) throws IOException {
+        if (node == null) {
+            return nullValue();
+        } else if (node instanceof JSonObject) {
+            beginObject();
+            for (final Iterator<Map.Entry<String, JSonNode>> it = ((JSonObject) node).entrySet().iterator(); it.hasNext();) {
+                final Map.Entry<String, JSonNode> next = it.next();
+                key(next.getKey());
+                writeNode(next.getValue());
+            }
+            return endObject();
+        } else if (node instanceof JSonArray) {
+            beginArray();
+            for (final JSonNode n : (JSonArray) node) {
+                writeNode(n);
+            }
+            return endArray();
+        } else if (node instanceof JSonValue) {
+            final JSonValue value = (JSonValue) node;
+            switch (value.getType()) {
+            case BOOLEAN:
+                return value((Boolean) value.getValue());
+            case DOUBLE:
+                return value(((Number) value.getValue()).doubleValue());
+            case LONG:
+                return value(((Number) value.getValue()).longValue());
+            case STRING:
+                return value((String) value.getValue());
+            default:
+                return nullValue();
+            }
+        } else {
+            return rawValue(node.toString());
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        if (os != null) {
+            os.flush();
+        }
+    }
+
+    /**
+     * flushes and closes the underlying stream/channel
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            if (os != null) {
+                os.close();
+            } else {
+                channel.close();
+            }
+        }
+    }
+
+    private void push() {
+        if (++depth == hasElements.length) {
+            final boolean[] newHasElements = new boolean[hasElements.length * 2];
+            System.arraycopy(hasElements, 0, newHasElements, 0, hasElements.length);
+            hasElements = newHasElements;
+        }
+        hasElements[depth] = false;
+    }
+
+    private JSonStreamWriter end(final char c) throws IOException {
+        if (depth == 0 || afterKey) {
+            throw new IllegalStateException("Nothing to close");
+        }
+        if (pretty && hasElements[depth]) {
+            newLine(depth - 1);
+        }
+        depth--;
+        writeByte(c);
+        return this;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterKey) {
+            afterKey = false;
+        } else if (depth > 0) {
+            // array element. JSonArray.toString separates by ", "
+            nextElement(", ");
+        }
+    }
+
+    private void nextElement(final String compactSeparator) throws IOException {
+        if (depth == 0) {
+            throw new IllegalStateException("key outside of an object");
+        }
+        if (hasElements[depth]) {
+            if (pretty) {
+                writeByte(',');
+            } else {
+                writeAscii(compactSeparator);
+            }
+        }
+        hasElements[depth] = true;
+        if (pretty) {
+            newLine(depth);
+        }
+    }
+
+    private void newLine(final int level) throws IOException {
+        writeByte('\r');
+        writeByte('\n');
+        for (int i = 0; i < level; i++) {
+            writeAscii(JSonObject.PRETTY_PRINT_LAYER_INSET);
+        }
+    }
+
+    private void writeEscaped(final String s) throws IOException {
+        writeByte('"');
+        final int length = s.length();
+        for (int i = 0; i < length; i++) {
+            final char ch = s.charAt(i);
+            switch (ch) {
+            case '"':
+                writeByte('\\');
+                writeByte('"');
+                continue;
+            case '\\':
+                writeByte('\\');
+                writeByte('\\');
+                continue;
+            case '\b':
+                writeByte('\\');
+                writeByte('b');
+                continue;
+            case '\f':
+                writeByte('\\');
+                writeByte('f');
+                continue;
+            case '\n':
+                writeByte('\\');
+                writeByte('n');
+                continue;
+            case '\r':
+                writeByte('\\');
+                writeByte('r');
+                continue;
+            case '\t':
+                writeByte('\\');
+                writeByte('t');
+                continue;
+            }
+            // same control character ranges as JSonUtils.escape
+            if (ch <= '\u001F' || ch >= '\u007F' && ch <= '\u009F' || ch >= '\u2000' && ch <= '\u20FF') {
+                writeByte('\\');
+                writeByte('u');
+                writeByte(HEX[ch >> 12 & 0xF]);
+                writeByte(HEX[ch >> 8 & 0xF]);
+                writeByte(HEX[ch >> 4 & 0xF]);
+                writeByte(HEX[ch & 0xF]);
+                continue;
+            }
+            i = writeChar(s, i, ch);
+        }
+        writeByte('"');
+    }
+
+    private void writeUTF8(final String s) throws IOException {
+        final int length = s.length();
+        for (int i = 0; i < length; i++) {
+            i = writeChar(s, i, s.charAt(i));
+        }
+    }
+
+    /**
+     * utf-8 encodes the char at index. Returns the index of the last consumed char (surrogate pairs consume two chars). Unpaired surrogates
+     * are written as '?' like {@link String#getBytes(String)} does
+     */
+    private int writeChar(final String s, final int index, final char ch) throws IOException {
+        if (ch < 0x80) {
+            writeByte(ch);
+        } else if (ch < 0x800) {
+            writeByte(0xC0 | ch >> 6);
+            writeByte(0x80 | ch & 0x3F);
+        } else if (Character.isHighSurrogate(ch)) {
+            if (index + 1 < s.length() && Character.isLowSurrogate(s.charAt(index + 1))) {
+                final int codePoint = Character.toCodePoint(ch, s.charAt(index + 1));
+                writeByte(0xF0 | codePoint >> 18);
+                writeByte(0x80 | codePoint >> 12 & 0x3F);
+                writeByte(0x80 | codePoint >> 6 & 0x3F);
+                writeByte(0x80 | codePoint & 0x3F);
+                return index + 1;
+            }
+            writeByte('?');
+        } else if (Character.isLowSurrogate(ch)) {
+            writeByte('?');
+        } else {
+            writeByte(0xE0 | ch >> 12);
+            writeByte(0x80 | ch >> 6 & 0x3F);
+            writeByte(0x80 | ch & 0x3F);
+        }
+        return index;
+    }
+
+    private void writeAscii(final String s) throws IOException {
+        final int length = s.length();
+        for (int i = 0; i < length; i++) {
+            writeByte(s.charAt(i));
+        }
+    }
+
+    private void writeByte(final int b) throws IOException {
+        if (pos == buffer.length) {
+            flushBuffer();
+        }
+        buffer[pos++] = (byte) b;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (pos > 0) {
+            if (os != null) {
+                os.write(buffer, 0, pos);
+            } else {
+                final ByteBuffer bb = ByteBuffer.wrap(buffer, 0, pos);
+                while (bb.hasRemaining()) {
+                    channel.write(bb);
+                }
+            }
+            written += pos;
+            pos = 0;
+        }
+    }
+}
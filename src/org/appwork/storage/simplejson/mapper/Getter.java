@@ -35,6 +35,7 @@ package org.appwork.storage.simplejson.mapper;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.appwork.storage.config.annotations.JSonFieldName;
 
@@ -43,8 +44,11 @@ import org.appwork.storage.config.annotations.JSonFieldName;
  *
  */
 public class Getter {
-    private final String key;
-    private final Method method;
+    private final String            key;
+    private final Method            method;
+    private volatile MethodAccessor accessor;
+    /* only the thread that reaches the threshold generates the accessor */
+    private final AtomicInteger     invocations = new AtomicInteger();
 
     /**
      * @param substring
@@ -88,6 +92,17 @@ public class Getter {
      * @throws IllegalArgumentException
      */
     public Object getValue(final Object obj) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
+        final MethodAccessor accessor = this.accessor;
+        if (accessor != null && this.method.getDeclaringClass().isInstance(obj)) {
+            try {
+                return accessor.invoke(obj, null);
+            } catch (final Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+        if (this.invocations.get() < MethodAccessorGenerator.THRESHOLD && this.invocations.incrementAndGet() == MethodAccessorGenerator.THRESHOLD) {
+            this.accessor = MethodAccessorGenerator.create(this.method);
+        }
         return this.method.invoke(obj);
     }
 }
@@ -34,6 +34,7 @@
 package org.appwork.storage.simplejson.mapper;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Array;
 import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.InvocationTargetException;
@@ -55,7 +56,11 @@ import org.appwork.storage.TypeRef;
 import org.appwork.storage.simplejson.JSonArray;
 import org.appwork.storage.simplejson.JSonNode;
 import org.appwork.storage.simplejson.JSonObject;
+import org.appwork.storage.simplejson.JSonStreamParser;
+import org.appwork.storage.simplejson.JSonStreamWriter;
+import org.appwork.storage.simplejson.JSonToken;
 import org.appwork.storage.simplejson.JSonValue;
+import org.appwork.storage.simplejson.ParserException;
 import org.appwork.utils.StringUtils;
 import org.appwork.utils.reflection.Clazz;
 
@@ -238,6 +243,87 @@ public class JSonMapper {
         }
     }
 
+    /**
+     * Streaming counterpart of {@link #create(Object)}. Writes the object directly to the writer without building a {@link JSonNode} tree.
+     * Values handled by a {@link TypeMapper} are written via {@link JSonStreamWriter#writeNode(JSonNode)}
+     *
+     * @param obj
+     * @param writer
+     * @throws MapperException
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    public void write(final Object obj, final JSonStreamWriter writer) throws MapperException, IOException {
+        try {
+            if (obj == null) {
+                writer.nullValue();
+                return;
+            }
+            final Class<? extends Object> clazz = obj.getClass();
+            TypeMapper<?> mapper;
+            if (clazz.isEnum() || Enum.class.isAssignableFrom(clazz)) {
+                writer.value(obj + "");
+            } else if (obj instanceof Boolean) {
+                writer.value(((Boolean) obj).booleanValue());
+            } else if (obj instanceof Character) {
+                writer.value(0 + ((Character) obj).charValue());
+            } else if (obj instanceof Byte || obj instanceof Short || obj instanceof Integer || obj instanceof Long) {
+                writer.value(((Number) obj).longValue());
+            } else if (obj instanceof Float || obj instanceof Double) {
+                writer.value(((Number) obj).doubleValue());
+            } else if (obj instanceof String) {
+                writer.value((String) obj);
+            } else if (obj instanceof Map) {
+                writer.beginObject();
+                Entry<Object, Object> next;
+                for (final Iterator<Entry<Object, Object>> it = ((Map<Object, Object>) obj).entrySet().iterator(); it.hasNext();) {
+                    next = it.next();
+                    if (!(next.getKey() instanceof String)) {
+                        throw new MapperException("Map keys have to be Strings: " + clazz + " Keyclass:" + (next.getKey() == null ? "<null>" : next.getKey().getClass()));
+                    }
+                    writer.key(next.getKey().toString());
+                    write(next.getValue(), writer);
+                }
+                writer.endObject();
+            } else if (obj instanceof Collection) {
+                writer.beginArray();
+                for (final Object o : (Collection<?>) obj) {
+                    write(o, writer);
+                }
+                writer.endArray();
+            } else if (clazz.isArray()) {
+                writer.beginArray();
+                final int length = Array.getLength(obj);
+                for (int i = 0; i < length; i++) {
+                    write(Array.get(obj, i), writer);
+                }
+                writer.endArray();
+            } else if (obj instanceof Class) {
+                writer.value(((Class<?>) obj).getName());
+            } else if ((mapper = typeMapper.get(clazz)) != null) {
+                writer.writeNode(mapper.map(obj));
+            } else/* if (obj instanceof Storable) */ {
+                final ClassCache cc = getClassCache(clazz);
+                writer.beginObject();
+                for (final Getter g : cc.getGetter()) {
+                    writer.key(g.getKey());
+                    write(g.getValue(obj), writer);
+                }
+                writer.endObject();
+            }
+        } catch (final IllegalArgumentException e) {
+            throw new MapperException(e);
+        } catch (final IllegalAccessException e) {
+            throw new MapperException(e);
+        } catch (final InvocationTargetException e) {
+            throw new MapperException(e);
+        } catch (final SecurityException e) {
+            throw new MapperException(e);
+        } catch (final NoSuchMethodException e) {
+            throw new MapperException(e);
+        }
+    }
+
     public ClassCache getClassCache(final Class<? extends Object> clazz) throws NoSuchMethodException {
         return ClassCache.getClassCache(clazz);
     }
@@ -550,6 +636,249 @@ public class JSonMapper {
         return null;
     }
 
+    /**
+     * Single pass binding: creates the object directly from the parser tokens without building a {@link JSonNode} tree first. The mapping
+     * rules are the same as for {@link #jsonToObject(JSonNode, Type)}. Only values that are handled by a {@link TypeMapper} or that are
+     * passed to {@link #onClassFieldMissing(Object, String, JSonNode)} are read into a (small) tree.
+     *
+     * @param parser
+     *            a parser that has not been started yet
+     * @param type
+     * @return
+     * @throws MapperException
+     */
+    public Object jsonToObject(final JSonStreamParser parser, final Type type) throws MapperException {
+        try {
+            parser.next();
+            final Object ret = this.streamToObject(parser, type);
+            // throws a ParserException if there is anything but whitespace behind the root value
+            parser.next();
+            return ret;
+        } catch (final ParserException e) {
+            throw new MapperException(e);
+        } catch (final IOException e) {
+            throw new MapperException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T jsonToObject(final JSonStreamParser parser, final TypeRef<T> type) throws MapperException {
+        return (T) this.jsonToObject(parser, type.getType());
+    }
+
+    /**
+     * @param parser
+     *            positioned on the first token of the value to map
+     * @param type
+     * @return
+     * @throws MapperException
+     * @throws ParserException
+     * @throws IOException
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected Object streamToObject(final JSonStreamParser parser, Type type) throws MapperException, ParserException, IOException {
+        final JSonToken token = parser.getToken();
+        Class<?> clazz = null;
+        if (type instanceof ParameterizedType) {
+            final Type typ = ((ParameterizedType) type).getRawType();
+            if (typ instanceof Class) {
+                clazz = (Class<?>) typ;
+            }
+        } else if (type instanceof Class) {
+            clazz = (Class) type;
+        } else if (type instanceof GenericArrayType) {
+            type = clazz = Array.newInstance((Class<?>) ((GenericArrayType) type).getGenericComponentType(), 0).getClass();
+        }
+        if (clazz == null || clazz == Object.class) {
+            switch (token) {
+            case START_ARRAY:
+                type = clazz = LinkedList.class;
+                break;
+            case START_OBJECT:
+                type = clazz = HashMap.class;
+                break;
+            case BOOLEAN:
+                type = clazz = boolean.class;
+                break;
+            case DOUBLE:
+                type = clazz = double.class;
+                break;
+            case LONG:
+                type = clazz = long.class;
+                break;
+            default:
+                type = clazz = String.class;
+            }
+        }
+        final TypeMapper<?> tm = typeMapper.get(clazz);
+        if (tm != null) {
+            return tm.reverseMap(parser.readNode());
+        }
+        switch (token) {
+        case START_ARRAY:
+        case START_OBJECT:
+            break;
+        default:
+            if (!Clazz.isPrimitive(type) && !Clazz.isString(type) && type != Object.class && token != JSonToken.NULL && !Clazz.isEnum(type)) {
+                throw new IllegalArgumentException(parser.readNode() + " cannot be mapped to " + type);
+            }
+            switch (token) {
+            case BOOLEAN:
+            case DOUBLE:
+            case LONG:
+                if (type instanceof Class) {
+                    return JSonMapper.cast(parser.getValue(), (Class) type);
+                } else {
+                    return parser.getValue();
+                }
+            case STRING:
+                if (type instanceof Class && ((Class<?>) type).isEnum()) {
+                    try {
+                        return Enum.valueOf((Class<Enum>) type, parser.getString());
+                    } catch (final IllegalArgumentException e) {
+                        if (isIgnoreIllegalArgumentMappings() || isIgnoreIllegalEnumMappings()) {
+                            return null;
+                        }
+                        throw e;
+                    }
+                } else {
+                    return parser.getString();
+                }
+            default:
+                return null;
+            }
+        }
+        if (type instanceof ParameterizedType) {
+            final ParameterizedType pType = (ParameterizedType) type;
+            final Type raw = pType.getRawType();
+            if (raw instanceof Class && Collection.class.isAssignableFrom((Class) raw)) {
+                return this.streamToCollection(parser, (Class) raw, pType.getActualTypeArguments()[0]);
+            } else if (raw instanceof Class && Map.class.isAssignableFrom((Class) raw)) {
+                return this.streamToMap(parser, (Class) raw, pType.getActualTypeArguments()[1]);
+            }
+        }
+        if (Collection.class.isAssignableFrom(clazz)) {
+            final Type gs = clazz.getGenericSuperclass();
+            return this.streamToCollection(parser, clazz, gs instanceof ParameterizedType ? ((ParameterizedType) gs).getActualTypeArguments()[0] : void.class);
+        } else if (Map.class.isAssignableFrom(clazz)) {
+            final Type gs = clazz.getGenericSuperclass();
+            return this.streamToMap(parser, clazz, gs instanceof ParameterizedType ? ((ParameterizedType) gs).getActualTypeArguments()[1] : void.class);
+        } else if (clazz.isArray()) {
+            this.expect(parser, JSonToken.START_ARRAY, type);
+            final ArrayList<Object> list = new ArrayList<Object>();
+            while (parser.next() != JSonToken.END_ARRAY) {
+                list.add(this.streamToObject(parser, clazz.getComponentType()));
+            }
+            final Object arr = Array.newInstance(mapClasses(clazz.getComponentType()), list.size());
+            for (int i = 0; i < list.size(); i++) {
+                Array.set(arr, i, list.get(i));
+            }
+            return arr;
+        } else if (token == JSonToken.START_ARRAY) {
+            final Type gs = clazz.getGenericSuperclass();
+            final java.util.List<Object> inst = new ArrayList<Object>();
+            final Type gType = gs instanceof ParameterizedType ? ((ParameterizedType) gs).getActualTypeArguments()[0] : Object.class;
+            while (parser.next() != JSonToken.END_ARRAY) {
+                inst.add(this.streamToObject(parser, gType));
+            }
+            return inst;
+        }
+        if (Clazz.isPrimitive(clazz)) {
+            if (isIgnoreIllegalArgumentMappings()) {
+                parser.skipValue();
+                return null;
+            } else {
+                throw new IllegalArgumentException("Cannot Map " + parser.readNode() + " to " + clazz);
+            }
+        }
+        final ClassCache cc;
+        final Object inst;
+        try {
+            cc = ClassCache.getClassCache(clazz);
+            inst = cc.getInstance();
+        } catch (Exception e1) {
+            throw new MapperException("Could not create instance of " + clazz, e1);
+        }
+        Object v;
+        while (parser.next() == JSonToken.KEY) {
+            final String key = parser.getString();
+            final Setter s = getSetterByKey(cc, key);
+            if (s == null) {
+                onClassFieldMissing(inst, key, parser.readNode());
+                continue;
+            }
+            Type fieldType = s.getType();
+            // special handling for generic fields
+            if (fieldType instanceof TypeVariable) {
+                final Type[] actualTypes = ((ParameterizedType) type).getActualTypeArguments();
+                final TypeVariable<?>[] genericTypes = clazz.getTypeParameters();
+                for (int i = 0; i < genericTypes.length; i++) {
+                    if (StringUtils.equals(((TypeVariable) fieldType).getName(), genericTypes[i].getName())) {
+                        fieldType = actualTypes[i];
+                        break;
+                    }
+                }
+            }
+            parser.next();
+            try {
+                v = this.streamToObject(parser, fieldType);
+            } catch (IllegalArgumentException e) {
+                throw new MapperException("Cannot convert " + key + " to type " + fieldType, e);
+            }
+            try {
+                s.setValue(inst, v);
+            } catch (final IllegalArgumentException e) {
+                if (isIgnoreIllegalArgumentMappings()) {
+                    continue;
+                } else if (v == null && isIgnorePrimitiveNullMapping()) {
+                    continue;
+                }
+                throw e;
+            } catch (Exception e) {
+                throw new MapperException("Could not set value " + clazz + "." + s.getKey() + "=" + v, e);
+            }
+        }
+        return inst;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<Object> streamToCollection(final JSonStreamParser parser, final Class<?> clazz, final Type componentType) throws MapperException, ParserException, IOException {
+        this.expect(parser, JSonToken.START_ARRAY, clazz);
+        final Collection<Object> inst;
+        try {
+            inst = (Collection<Object>) mapClasses(clazz).newInstance();
+        } catch (Exception e) {
+            throw new MapperException("Could not create instance of " + clazz, e);
+        }
+        while (parser.next() != JSonToken.END_ARRAY) {
+            inst.add(this.streamToObject(parser, componentType));
+        }
+        return inst;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> streamToMap(final JSonStreamParser parser, final Class<?> clazz, final Type valueType) throws MapperException, ParserException, IOException {
+        this.expect(parser, JSonToken.START_OBJECT, clazz);
+        final Map<String, Object> inst;
+        try {
+            inst = (Map<String, Object>) mapClasses(clazz).newInstance();
+        } catch (Exception e) {
+            throw new MapperException("Could not create instance of " + clazz, e);
+        }
+        while (parser.next() == JSonToken.KEY) {
+            final String key = parser.getString();
+            parser.next();
+            inst.put(key, this.streamToObject(parser, valueType));
+        }
+        return inst;
+    }
+
+    private void expect(final JSonStreamParser parser, final JSonToken expected, final Type type) throws MapperException {
+        if (parser.getToken() != expected) {
+            throw new MapperException("Cannot map " + parser.getToken() + " to " + type + " at byte " + parser.getPosition());
+        }
+    }
+
     protected Setter getSetterByKey(final ClassCache cc, String key) {
         return cc.getSetter(key);
     }
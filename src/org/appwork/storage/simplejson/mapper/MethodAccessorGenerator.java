@@ -0,0 +1,360 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage.simplejson.mapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.appwork.loggingv3.LogV3;
+
+/**
+ * Generates tiny classes that call a getter (no parameter) or setter (one parameter) directly via invokevirtual/invokeinterface. This
+ * avoids the access checks, the parameter array and the accessor delegation of {@link Method#invoke(Object, Object...)}.
+ *
+ * Only public methods of public classes with public parameter types can be generated, because the generated classes live in their own
+ * classloader. {@link #create(Method)} returns null in all other cases and the caller has to use reflection.
+ *
+ * @author thomas
+ *
+ */
+public class MethodAccessorGenerator {
+    /**
+     * Getter and Setter use reflection for the first calls, and generate an accessor after this number of calls. Classes that are
+     * (de)serialized only once do not need a generated class. <=0 disables generation
+     */
+    public static int                                                                 THRESHOLD       = Integer.getInteger("org.appwork.storage.simplejson.mapper.MethodAccessorGenerator.THRESHOLD", 16);
+    private static final String                                                       ACCESSOR        = MethodAccessor.class.getName().replace('.', '/');
+    private static final String                                                       OBJECT          = "java/lang/Object";
+    private static final String                                                       INVOKE_DESC     = "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;";
+    private static final AtomicInteger                                                COUNTER         = new AtomicInteger(0);
+    /*
+     * the AccessorClassLoader has the key as parent, and its accessors reference classes of the key. a strong value would keep the key
+     * reachable forever. the accessors keep their loader alive
+     */
+    private static final WeakHashMap<ClassLoader, WeakReference<AccessorClassLoader>> LOADERS         = new WeakHashMap<ClassLoader, WeakReference<AccessorClassLoader>>();
+    private static final int                                                          ACC_PUBLIC      = 0x0001;
+    private static final int                                                          ACC_FINAL       = 0x0010;
+    private static final int                                                          ACC_SUPER       = 0x0020;
+    private static final int                                                          ALOAD_0         = 0x2a;
+    private static final int                                                          ALOAD_1         = 0x2b;
+    private static final int                                                          ALOAD_2         = 0x2c;
+    private static final int                                                          ACONST_NULL     = 0x01;
+    private static final int                                                          POP             = 0x57;
+    private static final int                                                          POP2            = 0x58;
+    private static final int                                                          RETURN          = 0xb1;
+    private static final int                                                          ARETURN         = 0xb0;
+    private static final int                                                          INVOKEVIRTUAL   = 0xb6;
+    private static final int                                                          INVOKESPECIAL   = 0xb7;
+    private static final int                                                          INVOKESTATIC    = 0xb8;
+    private static final int                                                          INVOKEINTERFACE = 0xb9;
+    private static final int                                                          CHECKCAST       = 0xc0;
+
+    private static class AccessorClassLoader extends ClassLoader {
+        private AccessorClassLoader(final ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(final String name, final byte[] b) {
+            return this.defineClass(name, b, 0, b.length);
+        }
+    }
+
+    /**
+     * @param method
+     *            a getter or setter
+     * @return the accessor or null if the method cannot be called directly
+     */
+    public static MethodAccessor create(final Method method) {
+        try {
+            final Class<?> declaringClass = method.getDeclaringClass();
+            final Class<?>[] params = method.getParameterTypes();
+            if (params.length > 1 || Modifier.isStatic(method.getModifiers()) || !Modifier.isPublic(method.getModifiers())) {
+                return null;
+            }
+            ClassLoader parent = declaringClass.getClassLoader();
+            if (parent == null) {
+                parent = MethodAccessor.class.getClassLoader();
+            }
+            // the return type is only part of the descriptor and needs no access check. the parameter is checkcasted
+            if (!isAccessible(declaringClass, parent) || params.length == 1 && !isAccessible(params[0], parent) || !isVisible(MethodAccessor.class, parent)) {
+                return null;
+            }
+            final String name = "org.appwork.storage.simplejson.mapper.generated.MethodAccessor" + COUNTER.incrementAndGet();
+            final byte[] bytes = generate(name.replace('.', '/'), method);
+            final Class<?> cls;
+            synchronized (LOADERS) {
+                final WeakReference<AccessorClassLoader> ref = LOADERS.get(parent);
+                AccessorClassLoader loader = ref == null ? null : ref.get();
+                if (loader == null) {
+                    loader = new AccessorClassLoader(parent);
+                    LOADERS.put(parent, new WeakReference<AccessorClassLoader>(loader));
+                }
+                cls = loader.define(name, bytes);
+            }
+            return (MethodAccessor) cls.getDeclaredConstructor().newInstance();
+        } catch (final Throwable e) {
+            // SecurityManager, VerifyError,... reflection still works
+            LogV3.logger(MethodAccessorGenerator.class).finer("Could not generate accessor for " + method + ": " + e);
+            return null;
+        }
+    }
+
+    private static boolean isAccessible(Class<?> cls, final ClassLoader loader) {
+        while (cls.isArray()) {
+            cls = cls.getComponentType();
+        }
+        if (cls.isPrimitive()) {
+            return true;
+        }
+        return Modifier.isPublic(cls.getModifiers()) && isVisible(cls, loader);
+    }
+
+    private static boolean isVisible(final Class<?> cls, final ClassLoader loader) {
+        try {
+            return Class.forName(cls.getName(), false, loader) == cls;
+        } catch (final ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static String internalName(final Class<?> cls) {
+        // arrays are referenced by their descriptor, which is the same as Class.getName() with slashes
+        return cls.getName().replace('.', '/');
+    }
+
+    private static String descriptor(final Class<?> cls) {
+        if (cls == void.class) {
+            return "V";
+        } else if (cls == boolean.class) {
+            return "Z";
+        } else if (cls == byte.class) {
+            return "B";
+        } else if (cls == char.class) {
+            return "C";
+        } else if (cls == short.class) {
+            return "S";
+        } else if (cls == int.class) {
+            return "I";
+        } else if (cls == long.class) {
+            return "J";
+        } else if (cls == float.class) {
+            return "F";
+        } else if (cls == double.class) {
+            return "D";
+        } else if (cls.isArray()) {
+            return cls.getName().replace('.', '/');
+        } else {
+            return "L" + cls.getName().replace('.', '/') + ";";
+        }
+    }
+
+    static Class<?> box(final Class<?> cls) {
+        if (cls == boolean.class) {
+            return Boolean.class;
+        } else if (cls == byte.class) {
+            return Byte.class;
+        } else if (cls == char.class) {
+            return Character.class;
+        } else if (cls == short.class) {
+            return Short.class;
+        } else if (cls == int.class) {
+            return Integer.class;
+        } else if (cls == long.class) {
+            return Long.class;
+        } else if (cls == float.class) {
+            return Float.class;
+        } else if (cls == double.class) {
+            return Double.class;
+        }
+        return cls;
+    }
+
+    private static byte[] generate(final String name, final Method method) throws IOException {
+        final ConstantPool cp = new ConstantPool();
+        final int thisClass = cp.classRef(name);
+        final int superClass = cp.classRef(ACCESSOR);
+        final int superInit = cp.methodRef(ACCESSOR, "<init>", "()V", false);
+        final int codeAttr = cp.utf8("Code");
+        final int initName = cp.utf8("<init>");
+        final int initDesc = cp.utf8("()V");
+        final int invokeName = cp.utf8("invoke");
+        final int invokeDesc = cp.utf8(INVOKE_DESC);
+        // invoke(Object instance, Object parameter)
+        final ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+        final DataOutputStream code = new DataOutputStream(codeBytes);
+        final Class<?> declaringClass = method.getDeclaringClass();
+        final Class<?>[] params = method.getParameterTypes();
+        final Class<?> returnType = method.getReturnType();
+        final StringBuilder desc = new StringBuilder("(");
+        code.writeByte(ALOAD_1);
+        code.writeByte(CHECKCAST);
+        code.writeShort(cp.classRef(internalName(declaringClass)));
+        if (params.length == 1) {
+            desc.append(descriptor(params[0]));
+            code.writeByte(ALOAD_2);
+            code.writeByte(CHECKCAST);
+            final Class<?> boxed = box(params[0]);
+            code.writeShort(cp.classRef(internalName(boxed)));
+            if (params[0].isPrimitive()) {
+                code.writeByte(INVOKEVIRTUAL);
+                code.writeShort(cp.methodRef(internalName(boxed), params[0].getName() + "Value", "()" + descriptor(params[0]), false));
+            }
+        }
+        desc.append(")").append(descriptor(returnType));
+        final boolean itf = declaringClass.isInterface();
+        code.writeByte(itf ? INVOKEINTERFACE : INVOKEVIRTUAL);
+        code.writeShort(cp.methodRef(internalName(declaringClass), method.getName(), desc.toString(), itf));
+        if (itf) {
+            code.writeByte(1 + (params.length == 0 ? 0 : params[0] == long.class || params[0] == double.class ? 2 : 1));
+            code.writeByte(0);
+        }
+        if (params.length == 1) {
+            // setter
+            if (returnType == long.class || returnType == double.class) {
+                code.writeByte(POP2);
+            } else if (returnType != void.class) {
+                code.writeByte(POP);
+            }
+            code.writeByte(ACONST_NULL);
+        } else if (returnType.isPrimitive()) {
+            final Class<?> boxed = box(returnType);
+            code.writeByte(INVOKESTATIC);
+            code.writeShort(cp.methodRef(internalName(boxed), "valueOf", "(" + descriptor(returnType) + ")" + descriptor(boxed), false));
+        }
+        code.writeByte(ARETURN);
+        code.flush();
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        // java 5 class files do not need StackMapTables
+        out.writeShort(49);
+        cp.write(out);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        // interfaces, fields
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(2);
+        // <init>: aload_0, invokespecial MethodAccessor.<init>, return
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(initName);
+        out.writeShort(initDesc);
+        writeCode(out, codeAttr, 1, 1, new byte[] { (byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (superInit >> 8), (byte) superInit, (byte) RETURN });
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(invokeName);
+        out.writeShort(invokeDesc);
+        writeCode(out, codeAttr, 4, 3, codeBytes.toByteArray());
+        // class attributes
+        out.writeShort(0);
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    private static void writeCode(final DataOutputStream out, final int codeAttr, final int maxStack, final int maxLocals, final byte[] code) throws IOException {
+        out.writeShort(1);
+        out.writeShort(codeAttr);
+        out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        // exception table, attributes
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    private static class ConstantPool {
+        private final ByteArrayOutputStream    bytes = new ByteArrayOutputStream();
+        private final DataOutputStream         out   = new DataOutputStream(this.bytes);
+        private final HashMap<String, Integer> map   = new HashMap<String, Integer>();
+        private int                            size  = 1;
+
+        private int utf8(final String s) throws IOException {
+            final String id = "U" + s;
+            Integer ret = this.map.get(id);
+            if (ret == null) {
+                this.out.writeByte(1);
+                this.out.writeUTF(s);
+                this.map.put(id, ret = this.size++);
+            }
+            return ret;
+        }
+
+        private int classRef(final String internalName) throws IOException {
+            final String id = "C" + internalName;
+            Integer ret = this.map.get(id);
+            if (ret == null) {
+                final int nameIndex = this.utf8(internalName);
+                this.out.writeByte(7);
+                this.out.writeShort(nameIndex);
+                this.map.put(id, ret = this.size++);
+            }
+            return ret;
+        }
+
+        private int methodRef(final String owner, final String name, final String desc, final boolean itf) throws IOException {
+            final String id = (itf ? "I" : "M") + owner + "." + name + desc;
+            Integer ret = this.map.get(id);
+            if (ret == null) {
+                final int classIndex = this.classRef(owner);
+                final int nameIndex = this.utf8(name);
+                final int descIndex = this.utf8(desc);
+                this.out.writeByte(12);
+                this.out.writeShort(nameIndex);
+                this.out.writeShort(descIndex);
+                final int nameAndType = this.size++;
+                this.out.writeByte(itf ? 11 : 10);
+                this.out.writeShort(classIndex);
+                this.out.writeShort(nameAndType);
+                this.map.put(id, ret = this.size++);
+            }
+            return ret;
+        }
+
+        private void write(final DataOutputStream os) throws IOException {
+            this.out.flush();
+            os.writeShort(this.size);
+            this.bytes.writeTo(os);
+        }
+    }
+}
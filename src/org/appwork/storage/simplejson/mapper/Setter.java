@@ -36,6 +36,7 @@ package org.appwork.storage.simplejson.mapper;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.appwork.exceptions.WTFException;
 import org.appwork.storage.config.annotations.ConvertValueFrom;
@@ -46,10 +47,15 @@ import org.appwork.storage.config.annotations.JSonFieldName;
  *
  */
 public class Setter {
-    private final String key;
-    private final Method method;
-    private final Type   type;
-    private Class<?>     convertFromClass;
+    private final String            key;
+    private final Method            method;
+    private final Type              type;
+    private Class<?>                convertFromClass;
+    private volatile MethodAccessor accessor;
+    /* only the thread that reaches the threshold generates the accessor */
+    private final AtomicInteger     invocations = new AtomicInteger();
+    private final Class<?>          parameterClass;
+    private final boolean           primitive;
 
     /**
      * @param substring
@@ -69,6 +75,8 @@ public class Setter {
         this.method = m;
         m.setAccessible(true);
         this.type = m.getGenericParameterTypes()[0];
+        this.primitive = m.getParameterTypes()[0].isPrimitive();
+        this.parameterClass = MethodAccessorGenerator.box(m.getParameterTypes()[0]);
     }
 
     /*
@@ -123,6 +131,19 @@ public class Setter {
             }
         }
         // System.out.println(this.key + " = " + parameter + " " + this.type);
+        final MethodAccessor accessor = this.accessor;
+        // reflection converts (e.g. Integer to long) or throws IllegalArgumentException for anything else
+        if (accessor != null && this.method.getDeclaringClass().isInstance(inst) && (parameter == null ? !this.primitive : this.parameterClass.isInstance(parameter))) {
+            try {
+                accessor.invoke(inst, parameter);
+                return;
+            } catch (final Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+        if (this.invocations.get() < MethodAccessorGenerator.THRESHOLD && this.invocations.incrementAndGet() == MethodAccessorGenerator.THRESHOLD) {
+            this.accessor = MethodAccessorGenerator.create(this.method);
+        }
         try {
             this.method.invoke(inst, parameter);
         } catch (final IllegalArgumentException e) {
@@ -0,0 +1,83 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage.simplejson.mapper.test;
+
+import java.util.ArrayList;
+
+import org.appwork.storage.TypeRef;
+import org.appwork.storage.simplejson.JSonFactory;
+import org.appwork.storage.simplejson.JSonStreamParser;
+import org.appwork.storage.simplejson.mapper.JSonMapper;
+
+/**
+ * Compares the single pass binding {@link JSonMapper#jsonToObject(JSonStreamParser, java.lang.reflect.Type)} with the tree based
+ * {@link JSonMapper#jsonToObject(org.appwork.storage.simplejson.JSonNode, java.lang.reflect.Type)}
+ *
+ * @author thomas
+ *
+ */
+public class DirectBindingTest {
+    public static void main(final String[] args) throws Exception {
+        final JSonMapper mapper = new JSonMapper();
+        final TestClass obj = TestClass.createObject();
+        obj.getList().add(1);
+        final String jsonString = mapper.create(obj).toString();
+        final byte[] bytes = jsonString.getBytes("UTF-8");
+        final TestClass tree = (TestClass) mapper.jsonToObject(new JSonFactory(jsonString).parse(), TestClass.class);
+        final TestClass direct = (TestClass) mapper.jsonToObject(new JSonStreamParser(bytes), TestClass.class);
+        if (!mapper.create(tree).toString().equals(mapper.create(direct).toString())) {
+            throw new Exception("Mismatch:\r\n" + mapper.create(tree) + "\r\n" + mapper.create(direct));
+        }
+        System.out.println("SUCCESS");
+        final ArrayList<TestClass> list = new ArrayList<TestClass>();
+        for (int i = 0; i < 10000; i++) {
+            list.add(TestClass.createObject());
+        }
+        final byte[] listBytes = mapper.create(list).toString().getBytes("UTF-8");
+        final TypeRef<ArrayList<TestClass>> type = new TypeRef<ArrayList<TestClass>>() {
+        };
+        for (int round = 0; round < 5; round++) {
+            long t = System.currentTimeMillis();
+            final ArrayList<TestClass> treeList = mapper.jsonToObject(new JSonFactory(new String(listBytes, "UTF-8")).parse(), type);
+            final long treeDuration = System.currentTimeMillis() - t;
+            t = System.currentTimeMillis();
+            final ArrayList<TestClass> directList = mapper.jsonToObject(new JSonStreamParser(listBytes), type);
+            final long directDuration = System.currentTimeMillis() - t;
+            if (treeList.size() != directList.size()) {
+                throw new Exception("Size mismatch");
+            }
+            System.out.println("10k list: tree " + treeDuration + "ms | direct " + directDuration + "ms");
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage.simplejson.mapper.test;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.appwork.storage.simplejson.mapper.MethodAccessor;
+import org.appwork.storage.simplejson.mapper.MethodAccessorGenerator;
+
+/**
+ * generates an accessor for a class of a plugin classloader, drops the classloader and checks that it gets collected
+ *
+ * @author thomas
+ *
+ */
+public class MethodAccessorLeakTest {
+    public static class Bean {
+        public String getValue() {
+            return "plugin";
+        }
+    }
+
+    /**
+     * loads {@link Bean} itself and delegates everything else
+     */
+    private static class PluginClassLoader extends URLClassLoader {
+        private PluginClassLoader() {
+            super(new URL[] { MethodAccessorLeakTest.class.getProtectionDomain().getCodeSource().getLocation() }, MethodAccessorLeakTest.class.getClassLoader());
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(Bean.class.getName())) {
+                return super.loadClass(name, resolve);
+            }
+            Class<?> ret = this.findLoadedClass(name);
+            if (ret == null) {
+                ret = this.findClass(name);
+            }
+            return ret;
+        }
+    }
+
+    private static WeakReference<ClassLoader> usePlugin() throws Exception {
+        final PluginClassLoader loader = new PluginClassLoader();
+        final Class<?> bean = loader.loadClass(Bean.class.getName());
+        if (bean == Bean.class) {
+            throw new Exception("Bean not loaded by plugin classloader");
+        }
+        final Method getter = bean.getMethod("getValue");
+        final MethodAccessor accessor = MethodAccessorGenerator.create(getter);
+        if (accessor == null) {
+            throw new Exception("No accessor for " + getter);
+        }
+        if (!"plugin".equals(accessor.invoke(bean.newInstance(), null))) {
+            throw new Exception("accessor failed");
+        }
+        loader.close();
+        return new WeakReference<ClassLoader>(loader);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final WeakReference<ClassLoader> loader = usePlugin();
+        for (int i = 0; i < 100 && loader.get() != null; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        if (loader.get() != null) {
+            throw new Exception("plugin classloader has not been collected");
+        }
+        System.out.println("SUCCESS");
+    }
+}
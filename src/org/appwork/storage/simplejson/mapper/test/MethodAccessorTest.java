@@ -0,0 +1,91 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage.simplejson.mapper.test;
+
+import org.appwork.storage.simplejson.mapper.ClassCache;
+import org.appwork.storage.simplejson.mapper.Getter;
+import org.appwork.storage.simplejson.mapper.MethodAccessor;
+import org.appwork.storage.simplejson.mapper.MethodAccessorGenerator;
+import org.appwork.storage.simplejson.mapper.Setter;
+
+/**
+ * Generates accessors for all getters and setters of {@link TestClass} and compares them with reflection
+ *
+ * @author thomas
+ *
+ */
+public class MethodAccessorTest {
+    public static void main(final String[] args) throws Exception {
+        final ClassCache cc = ClassCache.getClassCache(TestClass.class);
+        final TestClass source = TestClass.createObject();
+        final TestClass target = new TestClass();
+        for (final Getter g : cc.getGetter()) {
+            final MethodAccessor accessor = MethodAccessorGenerator.create(g.getMethod());
+            if (accessor == null) {
+                throw new Exception("No accessor for " + g);
+            }
+            final Object value = accessor.invoke(source, null);
+            final Object expected = g.getMethod().invoke(source);
+            if (value == null ? expected != null : !value.equals(expected)) {
+                throw new Exception(g + ": " + value + "!=" + expected);
+            }
+            final Setter s = cc.getSetter(g.getKey());
+            if (s != null) {
+                final MethodAccessor setAccessor = MethodAccessorGenerator.create(s.getMethod());
+                if (setAccessor == null) {
+                    // non public parameter type
+                    continue;
+                }
+                setAccessor.invoke(target, value);
+                if (value != expected && !String.valueOf(g.getValue(target)).equals(String.valueOf(expected))) {
+                    throw new Exception(s + " failed");
+                }
+            }
+        }
+        final Getter getter = cc.getGetter("pLong");
+        for (int round = 0; round < 5; round++) {
+            long t = System.nanoTime();
+            for (int i = 0; i < 1000000; i++) {
+                getter.getMethod().invoke(source);
+            }
+            final long reflection = System.nanoTime() - t;
+            t = System.nanoTime();
+            for (int i = 0; i < 1000000; i++) {
+                getter.getValue(source);
+            }
+            System.out.println("1M getter calls: reflection " + reflection / 1000000 + "ms | Getter " + (System.nanoTime() - t) / 1000000 + "ms");
+        }
+        System.out.println("SUCCESS");
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage.simplejson.mapper.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import org.appwork.storage.JSonStorage;
+import org.appwork.storage.TypeRef;
+import org.appwork.storage.simplejson.JSonFactory;
+import org.appwork.storage.simplejson.JSonStreamWriter;
+import org.appwork.storage.simplejson.mapper.JSonMapper;
+
+/**
+ * Compares the streamed output of {@link JSonMapper#write(Object, JSonStreamWriter)} with the tree based
+ * {@link JSonMapper#create(Object)} and writes/reads an encrypted file via {@link JSonStorage#serializeTo(File, boolean, byte[], Object)}
+ *
+ * @author thomas
+ *
+ */
+public class StreamWriterTest {
+    public static void main(final String[] args) throws Exception {
+        final JSonMapper mapper = new JSonMapper();
+        final TestClass obj = TestClass.createObject();
+        obj.getList().add(1);
+        obj.setString("Unicode äöü € 😀   \r\n\t\"\\/");
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final JSonStreamWriter writer = new JSonStreamWriter(bos);
+        mapper.write(obj, writer);
+        writer.close();
+        final String streamed = new String(bos.toByteArray(), "UTF-8");
+        final String tree = mapper.create(obj).toString();
+        // the writer keeps the getter order, JSonObject is a HashMap. Compare the parsed trees
+        if (!tree.equals(new JSonFactory(streamed).parse().toString())) {
+            throw new Exception("Mismatch:\r\n" + tree + "\r\n" + streamed);
+        }
+        final byte[] key = new byte[] { 0x01, 0x02, 0x11, 0x01, 0x01, 0x54, 0x01, 0x01, 0x01, 0x01, 0x12, 0x01, 0x01, 0x01, 0x22, 0x01 };
+        final File file = File.createTempFile("streamwriter", ".json");
+        try {
+            JSonStorage.serializeTo(file, false, key, obj);
+            final TestClass restored = JSonStorage.restoreFrom(file, false, key, new TypeRef<TestClass>() {
+            }, null);
+            if (restored == null || !tree.equals(mapper.create(restored).toString())) {
+                throw new Exception("Encrypted roundtrip failed");
+            }
+        } finally {
+            file.delete();
+        }
+        System.out.println("SUCCESS");
+    }
+}
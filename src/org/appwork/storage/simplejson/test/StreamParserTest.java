@@ -0,0 +1,110 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage.simplejson.test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+
+import org.appwork.storage.simplejson.JSonFactory;
+import org.appwork.storage.simplejson.JSonNode;
+import org.appwork.storage.simplejson.JSonStreamParser;
+import org.appwork.storage.simplejson.JSonToken;
+import org.appwork.storage.simplejson.ParserException;
+
+/**
+ * Compares the byte level {@link JSonStreamParser} with {@link JSonFactory}. A tiny buffer is used to make sure that tokens spanning
+ * buffer refills work.
+ *
+ * @author thomas
+ *
+ */
+public class StreamParserTest {
+    public static void main(final String[] args) throws Exception {
+        StreamParserTest.parseValid("{\"oBoolean\" : false, \"pChar\" : 19, \"pDouble\" : 0.3, \"oLong\" : 5435443543, \"list\" : [1,2,3], \"map\" : {\"a\" : {\"b\" : [true,null,\"x\"]}}, \"objArray\" : [{},[]]}");
+        StreamParserTest.parseValid("[1,2,\"23\",4,5,[true,false]]");
+        StreamParserTest.parseValid("\"Unicode pattern testblabla\\u003ebl\\r\\na\"");
+        StreamParserTest.parseValid("23.432e-4");
+        StreamParserTest.parseValid("[23.432e-4, -9223372036854775808, 9223372036854775807]");
+        StreamParserTest.parseValid("{\"defaultdownloadfolder\":\"C:\\\\Users\\\\thomas\\\\down\\rloads\"}");
+        StreamParserTest.parseValid("[\"Z:\\\\\"]");
+        StreamParserTest.parseValid("{\"umlauts\":\"\u00e4\u00f6\u00fc\u00df \u20ac \ud83d\ude00\"}");
+        StreamParserTest.parseValid("\ufeff{ \"bom\" : 1 }");
+        StreamParserTest.parseValid("{}");
+        StreamParserTest.parseValid("{  }");
+        StreamParserTest.parseInvalid("{\"oBoolean\" : false,}");
+        StreamParserTest.parseInvalid("[1,,2]");
+        StreamParserTest.parseInvalid("{\"a\":1} 2");
+        StreamParserTest.parseInvalid("{\"a\" 1}");
+        StreamParserTest.parseInvalid("[tru]");
+        StreamParserTest.parseInvalid("\"unterminated");
+        // skipping
+        final JSonStreamParser parser = new JSonStreamParser("{\"skip\":{\"a\":[1,2,{\"b\":3}]},\"keep\":42}".getBytes("UTF-8"));
+        parser.next();
+        parser.next();
+        if (!parser.textEquals("skip")) {
+            throw new Exception("key expected");
+        }
+        parser.skipValue();
+        if (parser.next() != JSonToken.KEY || !"keep".equals(parser.getString()) || parser.next() != JSonToken.LONG || parser.getLong() != 42) {
+            throw new Exception("skipValue failed");
+        }
+        System.out.println("TEST OK");
+    }
+
+    private static void parseValid(final String string) throws Exception {
+        System.out.println("TEST: " + string);
+        final JSonNode expected = new JSonFactory(string.startsWith("\ufeff") ? string.substring(1) : string).parse();
+        final byte[] bytes = string.getBytes("UTF-8");
+        final JSonNode fromBytes = new JSonStreamParser(bytes).parse();
+        final JSonNode fromStream = new JSonStreamParser(new ByteArrayInputStream(bytes), 16, false).parse();
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        direct.flip();
+        final JSonNode fromDirect = new JSonStreamParser(direct, 16, false).parse();
+        if (!expected.toString().equals(fromBytes.toString()) || !expected.toString().equals(fromStream.toString()) || !expected.toString().equals(fromDirect.toString())) {
+            throw new Exception("Mismatch: " + expected + " <-> " + fromBytes + " | " + fromStream + " | " + fromDirect);
+        }
+        System.out.println("SUCCESS " + fromStream);
+    }
+
+    private static void parseInvalid(final String string) throws Exception {
+        try {
+            new JSonStreamParser(new ByteArrayInputStream(string.getBytes("UTF-8")), 16, false).parse();
+        } catch (final ParserException e) {
+            System.out.println("SUCCESS (expected) " + e.getMessage());
+            return;
+        }
+        throw new Exception(string + " is invalid and should throw an exception");
+    }
+}
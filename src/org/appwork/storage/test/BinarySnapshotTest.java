@@ -0,0 +1,128 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage.test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.appwork.storage.JsonKeyValueStorage;
+import org.appwork.utils.Application;
+
+/**
+ * binary snapshot format of {@link JsonKeyValueStorage}: roundtrip (plain and encrypted), format switch, corrupt records and load time
+ * compared with json
+ *
+ * @author thomas
+ *
+ */
+public class BinarySnapshotTest {
+    public static void main(final String[] args) throws Exception {
+        Application.setApplication(".appwork-test");
+        for (final boolean plain : new boolean[] { true, false }) {
+            final File file = File.createTempFile("binarysnapshot", plain ? ".json" : ".ejs");
+            file.delete();
+            try {
+                JsonKeyValueStorage storage = new JsonKeyValueStorage(file, plain);
+                for (int i = 0; i < 100000; i++) {
+                    storage.put("key" + i, i);
+                }
+                storage.put("long", Long.MAX_VALUE);
+                storage.put("double", 0.5d);
+                storage.put("boolean", true);
+                storage.put("string", "äöü € 😀");
+                storage.put("null", (String) null);
+                storage.put("äkey", 1);
+                storage.save();
+                long t = System.currentTimeMillis();
+                storage = new JsonKeyValueStorage(file, plain);
+                BinarySnapshotTest.check(storage);
+                final long json = System.currentTimeMillis() - t;
+                // convert
+                storage.setBinarySnapshotEnabled(true);
+                storage.save();
+                BinarySnapshotTest.assertTrue(!file.exists() && storage.getSnapshotFile().exists(), "converted");
+                t = System.currentTimeMillis();
+                storage = new JsonKeyValueStorage(file, plain);
+                final long binary = System.currentTimeMillis() - t;
+                BinarySnapshotTest.check(storage);
+                System.out.println((plain ? "plain" : "encrypted") + " load 100k keys: json " + json + "ms | binary " + binary + "ms");
+                storage.setBinarySnapshotEnabled(true);
+                storage.put("key1", -1);
+                storage.save();
+                storage = new JsonKeyValueStorage(file, plain);
+                BinarySnapshotTest.assertTrue(storage.get("key1", 0) == -1, "key1 after binary save");
+                if (plain) {
+                    // break the last byte of the key0 value
+                    final byte[] content = org.appwork.utils.IO.readFile(storage.getSnapshotFile());
+                    final int index = new String(content, "ISO-8859-1").indexOf("key0") + 4 + 3;
+                    final RandomAccessFile raf = new RandomAccessFile(storage.getSnapshotFile(), "rw");
+                    raf.seek(index);
+                    raf.write(content[index] + 1);
+                    raf.close();
+                    storage = new JsonKeyValueStorage(file, plain);
+                    BinarySnapshotTest.assertTrue(storage.get("key0", -5, false) == -5, "corrupt record not dropped");
+                    BinarySnapshotTest.assertTrue(storage.get("key2", 0) == 2, "key2");
+                }
+                // back to json
+                storage.setBinarySnapshotEnabled(false);
+                storage.save();
+                BinarySnapshotTest.assertTrue(file.exists() && !storage.getSnapshotFile().exists(), "converted back");
+                storage = new JsonKeyValueStorage(file, plain);
+                BinarySnapshotTest.assertTrue(storage.get("key99999", 0) == 99999, "json after binary");
+            } finally {
+                file.delete();
+                new File(file.getAbsolutePath() + ".snapshot").delete();
+            }
+        }
+        System.out.println("SUCCESS");
+    }
+
+    private static void check(final JsonKeyValueStorage storage) throws Exception {
+        BinarySnapshotTest.assertTrue(storage.size() == 100006, "size " + storage.size());
+        BinarySnapshotTest.assertTrue(storage.get("key0", -1) == 0, "key0");
+        BinarySnapshotTest.assertTrue(storage.get("key99999", -1) == 99999, "key99999");
+        BinarySnapshotTest.assertTrue(storage.get("long", 0l) == Long.MAX_VALUE, "long");
+        BinarySnapshotTest.assertTrue(storage.get("double", 0d) == 0.5d, "double");
+        BinarySnapshotTest.assertTrue(storage.get("boolean", false), "boolean");
+        BinarySnapshotTest.assertTrue("äöü € 😀".equals(storage.get("string", "")), "string");
+        BinarySnapshotTest.assertTrue(storage.hasProperty("null") && storage.get("null", "def") == null, "null");
+        BinarySnapshotTest.assertTrue(storage.get("äkey", 0) == 1, "utf key");
+    }
+
+    private static void assertTrue(final boolean b, final String msg) throws Exception {
+        if (!b) {
+            throw new Exception(msg);
+        }
+    }
+}
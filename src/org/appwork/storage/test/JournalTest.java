@@ -0,0 +1,119 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.appwork.storage.JsonKeyValueStorage;
+import org.appwork.utils.Application;
+
+/**
+ * Journal mode of {@link JsonKeyValueStorage}: append, replay, torn records and compaction
+ *
+ * @author thomas
+ *
+ */
+public class JournalTest {
+    public static void main(final String[] args) throws Exception {
+        Application.setApplication(".appwork-test");
+        final File file = File.createTempFile("journaltest", ".ejs");
+        file.delete();
+        try {
+            JsonKeyValueStorage storage = JournalTest.open(file);
+            for (int i = 0; i < 1000; i++) {
+                storage.put("key" + i, i);
+            }
+            storage.put("string", "äöü");
+            storage.save();
+            JournalTest.assertTrue(!file.exists() && storage.getJournalFile().exists(), "journal expected");
+            storage.put("key1", 2);
+            storage.remove("key2");
+            storage.save();
+            final long journalLength = storage.getJournalFile().length();
+            storage.put("key3", 4);
+            storage.save();
+            JournalTest.assertTrue(storage.getJournalFile().length() - journalLength < 200, "journal record should only contain key3");
+            storage = JournalTest.open(file);
+            JournalTest.check(storage);
+            // torn record at the end
+            final FileOutputStream fos = new FileOutputStream(storage.getJournalFile(), true);
+            fos.write(new byte[] { 0, 0, 1, 0, 1, 2, 3 });
+            fos.close();
+            storage = JournalTest.open(file);
+            JournalTest.check(storage);
+            storage.put("key4", 5);
+            storage.save();
+            JournalTest.assertTrue(file.exists() && !storage.getJournalFile().exists(), "torn journal should be compacted");
+            storage = JournalTest.open(file);
+            JournalTest.check(storage);
+            JournalTest.assertTrue(storage.get("key4", 0) == 5, "key4");
+            // compaction
+            JsonKeyValueStorage.JOURNAL_MIN_COMPACTION_SIZE = 0;
+            for (int i = 0; i < 100; i++) {
+                storage.put("loop", i);
+                storage.save();
+            }
+            JournalTest.assertTrue(storage.getJournalFile().length() <= file.length(), "journal should be compacted");
+            storage = JournalTest.open(file);
+            JournalTest.check(storage);
+            JournalTest.assertTrue(storage.get("loop", 0) == 99, "loop");
+            System.out.println("SUCCESS");
+        } finally {
+            file.delete();
+            new File(file.getAbsolutePath() + ".journal").delete();
+        }
+    }
+
+    private static JsonKeyValueStorage open(final File file) {
+        final JsonKeyValueStorage ret = new JsonKeyValueStorage(file, false);
+        ret.setJournalEnabled(true);
+        return ret;
+    }
+
+    private static void check(final JsonKeyValueStorage storage) throws Exception {
+        JournalTest.assertTrue(storage.get("key0", -1) == 0, "key0");
+        JournalTest.assertTrue(storage.get("key1", -1) == 2, "key1");
+        JournalTest.assertTrue(!storage.hasProperty("key2"), "key2");
+        JournalTest.assertTrue(storage.get("key3", -1) == 4, "key3");
+        JournalTest.assertTrue(storage.get("key999", -1) == 999, "key999");
+        JournalTest.assertTrue("äöü".equals(storage.get("string", "")), "string");
+    }
+
+    private static void assertTrue(final boolean b, final String msg) throws Exception {
+        if (!b) {
+            throw new Exception(msg);
+        }
+    }
+}
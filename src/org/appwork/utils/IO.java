@@ -593,6 +593,29 @@ public class IO {
     }
 
     public static void secureWrite(final File file, final byte[] bytes, final SYNC sync) throws IOException {
+        IO.secureWrite(file, sync, new WriteToFileCallback() {
+            @Override
+            public void writeTo(final OutputStream os) throws IOException {
+                os.write(bytes);
+            }
+
+            @Override
+            public byte[] getData() {
+                return bytes;
+            }
+        });
+    }
+
+    /**
+     * Like {@link #secureWrite(File, byte[], SYNC)}, but the content is streamed by the callback. Use this to write large content without
+     * creating a byte[] copy first.
+     *
+     * @param file
+     * @param sync
+     * @param callback
+     * @throws IOException
+     */
+    public static void secureWrite(final File file, final SYNC sync, final WriteToFileCallback callback) throws IOException {
         // System.out.println("DO");
         final File bac = new File(file.getAbsolutePath() + ".bac");
         if (file.getParentFile().exists() == false) {
@@ -603,7 +626,7 @@ public class IO {
         }
         boolean deleteFile = true;
         try {
-            IO.writeToFile(bac, bytes, sync);
+            IO.writeToFile(bac, sync, callback);
             if (file.exists() && file.delete() == false) {
                 throw new IOException("could not remove " + file);
             }
@@ -734,6 +757,36 @@ public class IO {
     }
 
     public static void writeToFile(final File file, final byte[] data, final SYNC sync) throws IOException {
+        IO.writeToFile(file, sync, new WriteToFileCallback() {
+            @Override
+            public void writeTo(final OutputStream os) throws IOException {
+                os.write(data);
+            }
+
+            @Override
+            public byte[] getData() {
+                return data;
+            }
+        });
+    }
+
+    public static interface WriteToFileCallback {
+        /**
+         * writes the content. Closing the stream is allowed (e.g. to finish a CipherOutputStream), but does not close the file. The file
+         * gets synced and closed after this method returned
+         *
+         * @param os
+         * @throws IOException
+         */
+        public void writeTo(OutputStream os) throws IOException;
+
+        /**
+         * @return the data for {@link IOErrorHandler#onWriteException(Throwable, File, byte[])}. may be null
+         */
+        public byte[] getData();
+    }
+
+    public static void writeToFile(final File file, final SYNC sync, final WriteToFileCallback callback) throws IOException {
         try {
             if (file == null) {
                 throw new IllegalArgumentException("File is null.");
@@ -756,7 +809,29 @@ public class IO {
             boolean deleteFile = true;
             try {
                 out = new FileOutputStream(file);
-                out.write(data);
+                final FileOutputStream fos = out;
+                callback.writeTo(new OutputStream() {
+                    @Override
+                    public void write(final int b) throws IOException {
+                        fos.write(b);
+                    }
+
+                    @Override
+                    public void write(final byte[] b, final int off, final int len) throws IOException {
+                        fos.write(b, off, len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        fos.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        // the file is closed after sync
+                        fos.flush();
+                    }
+                });
                 out.flush();
                 if (sync != null) {
                     switch (sync) {
@@ -782,17 +857,17 @@ public class IO {
             }
         } catch (final IOException e) {
             if (IO.ERROR_HANDLER != null) {
-                IO.ERROR_HANDLER.onWriteException(e, file, data);
+                IO.ERROR_HANDLER.onWriteException(e, file, callback.getData());
             }
             throw e;
         } catch (final RuntimeException e) {
             if (IO.ERROR_HANDLER != null) {
-                IO.ERROR_HANDLER.onWriteException(e, file, data);
+                IO.ERROR_HANDLER.onWriteException(e, file, callback.getData());
             }
             throw e;
         } catch (final Error e) {
             if (IO.ERROR_HANDLER != null) {
-                IO.ERROR_HANDLER.onWriteException(e, file, data);
+                IO.ERROR_HANDLER.onWriteException(e, file, callback.getData());
             }
             throw e;
         }
@@ -40,6 +40,7 @@ import java.net.Socket;
 import java.nio.channels.SocketChannel;
 
 import org.appwork.utils.net.httpconnection.HTTPConnection;
+import org.appwork.utils.net.httpconnection.HTTPConnectionImpl;
 import org.appwork.utils.net.socketconnection.SocketConnection;
 import org.appwork.utils.os.CrossSystem;
 import org.appwork.utils.os.CrossSystem.OperatingSystem;
@@ -58,7 +59,7 @@ public class DefaultSocketFactory extends SocketFactory {
 
     @Override
     public Socket createSocket(HTTPConnection connection, InetAddress bindInetAddress) {
-        if (preferSocket()) {
+        if (preferSocket() && !(connection instanceof HTTPConnectionImpl && ((HTTPConnectionImpl) connection).isPreferSocketChannel())) {
             return new Socket(Proxy.NO_PROXY);
         } else {
             try {
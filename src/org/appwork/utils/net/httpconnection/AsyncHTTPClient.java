@@ -0,0 +1,484 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpconnection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.appwork.net.protocol.http.HTTPConstants;
+import org.appwork.utils.IO;
+import org.appwork.utils.net.httpconnection.HTTPConnectionImpl.KEEPALIVE;
+import org.appwork.utils.net.httpconnection.http2.HTTP2Stream;
+
+/**
+ * asynchronous http client on top of {@link HTTPConnectionFactory}, so proxy selection, socks/http tunneling and the keep-alive pool work
+ * as usual.
+ *
+ * worker threads only send the request and read the response. while waiting for the response, plain (http proxy) connections are parked
+ * in a Selector and HTTP/2 streams wait for their headers, so many slow requests only need a few threads. TLS and socks connections have
+ * no usable channel and wait on their worker.
+ *
+ * @author thomas
+ *
+ */
+public class AsyncHTTPClient implements Runnable {
+    private class Exchange implements Runnable {
+        private final AsyncHTTPRequest  request;
+        private final AsyncHTTPFuture   future;
+        private final AtomicBoolean     parked   = new AtomicBoolean(false);
+        private volatile HTTPConnection connection;
+        private volatile boolean        sent     = false;
+        private SocketChannel           channel  = null;
+        private long                    deadline = 0;
+        private int                     attempt  = 0;
+
+        private Exchange(final AsyncHTTPRequest request) {
+            this.request = request;
+            this.future = new AsyncHTTPFuture(request);
+            this.future.setCanceller(new Runnable() {
+                public void run() {
+                    Exchange.this.resume();
+                    Exchange.this.disconnect();
+                }
+            });
+            this.future.addCallback(new AsyncHTTPCallback() {
+                public void onCompleted(final AsyncHTTPResponse response) {
+                    AsyncHTTPClient.this.inFlight.decrementAndGet();
+                    AsyncHTTPClient.this.completed.incrementAndGet();
+                }
+
+                public void onFailed(final AsyncHTTPRequest request, final Throwable e) {
+                    AsyncHTTPClient.this.inFlight.decrementAndGet();
+                    AsyncHTTPClient.this.failed.incrementAndGet();
+                }
+            });
+        }
+
+        public void run() {
+            if (this.future.isDone()) {
+                this.disconnect();
+                return;
+            }
+            try {
+                if (!this.sent) {
+                    this.send();
+                    if (this.park()) {
+                        return;
+                    }
+                }
+                this.read();
+            } catch (final Throwable e) {
+                this.failed(e);
+            }
+        }
+
+        private void send() throws IOException {
+            final HTTPConnection connection = AsyncHTTPClient.this.createConnection(this.request);
+            this.connection = connection;
+            connection.connect();
+            final byte[] body = this.request.getBody();
+            if (this.request.getMethod().requiresOutputStream) {
+                final OutputStream os = connection.getOutputStream();
+                if (body != null) {
+                    os.write(body);
+                }
+                if (this.isHTTP2()) {
+                    /* ends the request stream, so the server can answer while we are parked */
+                    os.close();
+                } else {
+                    os.flush();
+                }
+            }
+            this.sent = true;
+        }
+
+        private boolean isExpired(final long now) {
+            return this.deadline != Long.MAX_VALUE && now > this.deadline;
+        }
+
+        private boolean isHTTP2() {
+            return this.connection instanceof HTTP2ConnectionImpl && ((HTTP2ConnectionImpl) this.connection).isHTTP2();
+        }
+
+        /**
+         * @return true if the exchange continues once the response is available
+         */
+        private boolean park() throws IOException {
+            final int readTimeout = this.request.getReadTimeout();
+            /* like HTTPConnection, <=0 means no read timeout */
+            this.deadline = readTimeout <= 0 ? Long.MAX_VALUE : System.currentTimeMillis() + readTimeout;
+            if (this.isHTTP2()) {
+                final HTTP2Stream stream = ((HTTP2ConnectionImpl) this.connection).stream;
+                if (stream == null) {
+                    return false;
+                }
+                this.parked.set(true);
+                AsyncHTTPClient.this.waiting.add(this);
+                stream.setResponseListener(new Runnable() {
+                    public void run() {
+                        if (Exchange.this.resume()) {
+                            AsyncHTTPClient.this.dispatch(Exchange.this);
+                        }
+                    }
+                });
+                return true;
+            }
+            if (!(this.connection instanceof HTTPConnectionImpl) || !AsyncHTTPClient.this.selector.isOpen()) {
+                return false;
+            }
+            final SocketStreamInterface socketStream = ((HTTPConnectionImpl) this.connection).getConnectionSocket();
+            final Socket socket = socketStream != null ? socketStream.getSocket() : null;
+            if (socketStream instanceof SSLSocketStreamInterface || socket == null || socket.getChannel() == null) {
+                return false;
+            }
+            this.channel = socket.getChannel();
+            this.parked.set(true);
+            AsyncHTTPClient.this.parkQueue.add(this);
+            AsyncHTTPClient.this.selector.wakeup();
+            return true;
+        }
+
+        private boolean resume() {
+            if (this.parked.compareAndSet(true, false)) {
+                AsyncHTTPClient.this.waiting.remove(this);
+                return true;
+            }
+            return false;
+        }
+
+        private void read() throws IOException {
+            final HTTPConnectionImpl connection = (HTTPConnectionImpl) this.connection;
+            try {
+                connection.finalizeConnect();
+                final InputStream is;
+                if (connection.isOK() || connection.getResponseCode() == 404 || connection.getResponseCode() == 403 || connection.getResponseCode() == 416 || connection.getResponseCode() == 401) {
+                    is = connection.getInputStream();
+                } else {
+                    /* getInputStream throws for all other response codes */
+                    is = connection.getRawInputStream();
+                }
+                final int maxSize = this.request.getMaxResponseSize();
+                final byte[] body = IO.readStream(maxSize > 0 ? (int) Math.min(Integer.MAX_VALUE, maxSize + 1l) : -1, is, new ByteArrayOutputStream(), false);
+                if (maxSize > 0 && body.length > maxSize) {
+                    throw new IOException("response exceeds " + maxSize + " bytes: " + this.request);
+                }
+                final AsyncHTTPResponse response = new AsyncHTTPResponse(this.request, connection, body);
+                /* returns the socket to the keep-alive pool */
+                this.disconnect();
+                this.future.complete(response);
+            } catch (final KeepAliveSocketStreamException e) {
+                /* pooled connection got closed by the server in the meantime */
+                this.disconnect();
+                if (this.attempt++ < 3 && !this.future.isDone()) {
+                    this.sent = false;
+                    this.run();
+                } else {
+                    throw e;
+                }
+            }
+        }
+
+        private void disconnect() {
+            final HTTPConnection connection = this.connection;
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+
+        private void failed(final Throwable e) {
+            this.disconnect();
+            this.future.fail(e);
+        }
+    }
+
+    private final ThreadPoolExecutor              workers;
+    private final Selector                        selector;
+    private final ConcurrentLinkedQueue<Exchange> parkQueue   = new ConcurrentLinkedQueue<Exchange>();
+    /* HTTP/2 exchanges waiting for their response headers */
+    private final Set<Exchange>                   waiting     = Collections.newSetFromMap(new ConcurrentHashMap<Exchange, Boolean>());
+    private final AtomicInteger                   inFlight    = new AtomicInteger(0);
+    private final AtomicLong                      completed   = new AtomicLong(0);
+    private final AtomicLong                      failed      = new AtomicLong(0);
+    private final AtomicLong                      parkedTotal = new AtomicLong(0);
+    private volatile boolean                      http2       = false;
+    private volatile boolean                      running     = true;
+
+    public AsyncHTTPClient(final int maxWorkers) throws IOException {
+        final int workers = Math.max(1, maxWorkers);
+        this.workers = new ThreadPoolExecutor(workers, workers, 10000l, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger(0);
+
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "AsyncHTTPClient:Worker:" + this.counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.workers.allowCoreThreadTimeOut(true);
+        this.selector = Selector.open();
+        final Thread thread = new Thread(this, "AsyncHTTPClient:Selector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @param http2
+     *            direct connections use {@link HTTP2ConnectionImpl} and multiplex requests to the same host
+     */
+    public void setHTTP2Enabled(final boolean http2) {
+        this.http2 = http2;
+    }
+
+    public boolean isHTTP2Enabled() {
+        return this.http2;
+    }
+
+    public AsyncHTTPFuture execute(final AsyncHTTPRequest request) {
+        final Exchange exchange = new Exchange(request);
+        this.inFlight.incrementAndGet();
+        if (!this.running) {
+            exchange.future.fail(new RejectedExecutionException("AsyncHTTPClient is shut down"));
+        } else {
+            this.dispatch(exchange);
+        }
+        return exchange.future;
+    }
+
+    public AsyncHTTPFuture execute(final AsyncHTTPRequest request, final AsyncHTTPCallback callback) {
+        final AsyncHTTPFuture ret = this.execute(request);
+        ret.addCallback(callback);
+        return ret;
+    }
+
+    protected HTTPConnection createConnection(final AsyncHTTPRequest request) throws IOException {
+        final HTTPProxy proxy = request.getProxy();
+        final HTTPConnection connection;
+        if (this.isHTTP2Enabled() && (proxy == null || proxy.isNone() || proxy.isDirect())) {
+            connection = new HTTP2ConnectionImpl(request.getURL(), proxy);
+        } else {
+            connection = HTTPConnectionFactory.createHTTPConnection(request.getURL(), proxy);
+        }
+        if (!(connection instanceof HTTPConnectionImpl)) {
+            throw new IOException("unsupported connection: " + connection.getClass().getName());
+        }
+        final HTTPConnectionImpl impl = (HTTPConnectionImpl) connection;
+        impl.setReadResponseOnConnect(false);
+        impl.setPreferSocketChannel(true);
+        if (request.isKeepAlive()) {
+            impl.setKeepAlive(KEEPALIVE.EXTERNAL_EXCEPTION);
+        }
+        connection.setConnectTimeout(request.getConnectTimeout());
+        connection.setReadTimeout(request.getReadTimeout());
+        connection.setRequestMethod(request.getMethod());
+        /* the caller gets every response code */
+        connection.setAllowedResponseCodes(new int[] { -1 });
+        for (final Entry<String, String> header : request.getHeaders().entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        if (request.getMethod().requiresOutputStream) {
+            final byte[] body = request.getBody();
+            connection.setRequestProperty(HTTPConstants.HEADER_RESPONSE_CONTENT_LENGTH, String.valueOf(body != null ? body.length : 0));
+        }
+        return connection;
+    }
+
+    private void dispatch(final Exchange exchange) {
+        try {
+            this.workers.execute(exchange);
+        } catch (final RejectedExecutionException e) {
+            exchange.failed(e);
+        }
+    }
+
+    /**
+     * @return requests that are not completed yet
+     */
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * @return requests that currently wait for their response without blocking a worker
+     */
+    public int getParkedCount() {
+        return this.selector.keys().size() + this.waiting.size();
+    }
+
+    /**
+     * @return number of requests that got parked since creation
+     */
+    public long getParkedTotal() {
+        return this.parkedTotal.get();
+    }
+
+    public long getCompletedCount() {
+        return this.completed.get();
+    }
+
+    public long getFailedCount() {
+        return this.failed.get();
+    }
+
+    public void run() {
+        try {
+            final List<SelectionKey> readable = new ArrayList<SelectionKey>();
+            long nextExpire = System.currentTimeMillis() + 1000;
+            while (this.running) {
+                this.selector.select(1000);
+                this.registerParked();
+                final Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    final SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        key.cancel();
+                        readable.add(key);
+                    }
+                }
+                if (readable.size() > 0) {
+                    /* deregister the canceled keys, the channels can then be switched back to blocking mode */
+                    this.selector.selectNow();
+                    for (final SelectionKey key : readable) {
+                        this.resume((Exchange) key.attachment());
+                    }
+                    readable.clear();
+                }
+                final long now = System.currentTimeMillis();
+                if (now >= nextExpire) {
+                    nextExpire = now + 1000;
+                    this.expire(now);
+                }
+            }
+        } catch (final IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (final SelectionKey key : this.selector.keys()) {
+                ((Exchange) key.attachment()).failed(new IOException("AsyncHTTPClient is shut down"));
+            }
+            try {
+                this.selector.close();
+            } catch (final IOException ignore) {
+            }
+            Exchange exchange;
+            while ((exchange = this.parkQueue.poll()) != null) {
+                exchange.failed(new IOException("AsyncHTTPClient is shut down"));
+            }
+        }
+    }
+
+    private void registerParked() {
+        Exchange exchange;
+        while ((exchange = this.parkQueue.poll()) != null) {
+            try {
+                exchange.channel.configureBlocking(false);
+                exchange.channel.register(this.selector, SelectionKey.OP_READ, exchange);
+                this.parkedTotal.incrementAndGet();
+            } catch (final Throwable e) {
+                if (exchange.resume()) {
+                    exchange.failed(e);
+                }
+            }
+        }
+    }
+
+    private void resume(final Exchange exchange) {
+        if (exchange.resume()) {
+            try {
+                exchange.channel.configureBlocking(true);
+                this.dispatch(exchange);
+            } catch (final Throwable e) {
+                exchange.failed(e);
+            }
+        }
+    }
+
+    private void expire(final long now) {
+        for (final SelectionKey key : this.selector.keys()) {
+            final Exchange exchange = (Exchange) key.attachment();
+            if (!key.isValid() || !exchange.channel.isOpen()) {
+                key.cancel();
+                if (exchange.resume()) {
+                    exchange.failed(new IOException("connection closed: " + exchange.request));
+                }
+            } else if (exchange.isExpired(now)) {
+                key.cancel();
+                if (exchange.resume()) {
+                    exchange.failed(new SocketTimeoutException("read timed out: " + exchange.request));
+                }
+            }
+        }
+        for (final Exchange exchange : this.waiting) {
+            if (exchange.isExpired(now) && exchange.resume()) {
+                exchange.failed(new SocketTimeoutException("read timed out: " + exchange.request));
+            }
+        }
+    }
+
+    /**
+     * fails all pending requests and stops the worker threads
+     */
+    public void shutdown() {
+        this.running = false;
+        this.selector.wakeup();
+        this.workers.shutdown();
+        for (final Exchange exchange : this.waiting) {
+            if (exchange.resume()) {
+                exchange.failed(new IOException("AsyncHTTPClient is shut down"));
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpconnection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.appwork.loggingv3.LogV3;
+
+/**
+ * result of {@link AsyncHTTPClient#execute(AsyncHTTPRequest)}. callbacks added after completion run immediately on the calling thread
+ *
+ * @author thomas
+ *
+ */
+public class AsyncHTTPFuture implements Future<AsyncHTTPResponse> {
+    private final AsyncHTTPRequest        request;
+    private final List<AsyncHTTPCallback> callbacks = new ArrayList<AsyncHTTPCallback>();
+    private AsyncHTTPResponse             response  = null;
+    private Throwable                     exception = null;
+    private boolean                       done      = false;
+    private volatile Runnable             canceller = null;
+
+    AsyncHTTPFuture(final AsyncHTTPRequest request) {
+        this.request = request;
+    }
+
+    public AsyncHTTPRequest getRequest() {
+        return this.request;
+    }
+
+    public void addCallback(final AsyncHTTPCallback callback) {
+        synchronized (this) {
+            if (!this.done) {
+                this.callbacks.add(callback);
+                return;
+            }
+        }
+        this.notify(callback);
+    }
+
+    void setCanceller(final Runnable canceller) {
+        this.canceller = canceller;
+    }
+
+    boolean complete(final AsyncHTTPResponse response) {
+        return this.finish(response, null);
+    }
+
+    boolean fail(final Throwable e) {
+        return this.finish(null, e);
+    }
+
+    private boolean finish(final AsyncHTTPResponse response, final Throwable e) {
+        final List<AsyncHTTPCallback> callbacks;
+        synchronized (this) {
+            if (this.done) {
+                return false;
+            }
+            this.response = response;
+            this.exception = e;
+            this.done = true;
+            this.notifyAll();
+            callbacks = new ArrayList<AsyncHTTPCallback>(this.callbacks);
+            this.callbacks.clear();
+        }
+        for (final AsyncHTTPCallback callback : callbacks) {
+            this.notify(callback);
+        }
+        return true;
+    }
+
+    private void notify(final AsyncHTTPCallback callback) {
+        try {
+            if (this.exception != null) {
+                callback.onFailed(this.request, this.exception);
+            } else {
+                callback.onCompleted(this.response);
+            }
+        } catch (final Throwable e) {
+            LogV3.log(e);
+        }
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        if (this.fail(new CancellationException(this.request.toString()))) {
+            final Runnable canceller = this.canceller;
+            if (canceller != null) {
+                canceller.run();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return this.exception instanceof CancellationException;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return this.done;
+    }
+
+    @Override
+    public synchronized AsyncHTTPResponse get() throws InterruptedException, ExecutionException {
+        while (!this.done) {
+            this.wait();
+        }
+        return this.getResult();
+    }
+
+    @Override
+    public synchronized AsyncHTTPResponse get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        final long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        while (!this.done) {
+            final long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                throw new TimeoutException(this.request.toString());
+            }
+            this.wait(wait);
+        }
+        return this.getResult();
+    }
+
+    private AsyncHTTPResponse getResult() throws ExecutionException {
+        if (this.exception instanceof CancellationException) {
+            throw (CancellationException) this.exception;
+        } else if (this.exception != null) {
+            throw new ExecutionException(this.exception);
+        }
+        return this.response;
+    }
+}
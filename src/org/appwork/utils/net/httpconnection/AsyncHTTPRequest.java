@@ -0,0 +1,146 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpconnection;
+
+import java.net.URL;
+import java.util.Map;
+
+import org.appwork.utils.net.httpconnection.HTTPConnection.RequestMethod;
+
+/**
+ * request for {@link AsyncHTTPClient}
+ *
+ * @author thomas
+ *
+ */
+public class AsyncHTTPRequest {
+    private final URL                   url;
+    private HTTPProxy                   proxy           = HTTPProxy.NONE;
+    private RequestMethod               method          = RequestMethod.GET;
+    private final HTTPHeaderMap<String> headers         = new HTTPHeaderMap<String>();
+    private byte[]                      body            = null;
+    private int                         connectTimeout  = 30000;
+    private int                         readTimeout     = 30000;
+    private int                         maxResponseSize = 16 * 1024 * 1024;
+    private boolean                     keepAlive       = true;
+
+    public AsyncHTTPRequest(final URL url) {
+        this.url = url;
+    }
+
+    public URL getURL() {
+        return this.url;
+    }
+
+    public HTTPProxy getProxy() {
+        return this.proxy;
+    }
+
+    public void setProxy(final HTTPProxy proxy) {
+        this.proxy = proxy;
+    }
+
+    public RequestMethod getMethod() {
+        return this.method;
+    }
+
+    public void setMethod(final RequestMethod method) {
+        this.method = method;
+    }
+
+    public Map<String, String> getHeaders() {
+        return this.headers;
+    }
+
+    public void setHeader(final String key, final String value) {
+        this.headers.put(key, value);
+    }
+
+    public byte[] getBody() {
+        return this.body;
+    }
+
+    /**
+     * @param body
+     *            request body for POST/PUT, Content-Length is set automatically
+     */
+    public void setBody(final byte[] body) {
+        this.body = body;
+    }
+
+    public int getConnectTimeout() {
+        return this.connectTimeout;
+    }
+
+    public void setConnectTimeout(final int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return this.readTimeout;
+    }
+
+    /**
+     * @param readTimeout
+     *            max time to wait for the response, also while the request is parked. <=0 waits forever
+     */
+    public void setReadTimeout(final int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public int getMaxResponseSize() {
+        return this.maxResponseSize;
+    }
+
+    /**
+     * @param maxResponseSize
+     *            the response body is buffered in memory, larger responses fail
+     */
+    public void setMaxResponseSize(final int maxResponseSize) {
+        this.maxResponseSize = maxResponseSize;
+    }
+
+    public boolean isKeepAlive() {
+        return this.keepAlive;
+    }
+
+    public void setKeepAlive(final boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    @Override
+    public String toString() {
+        return this.method + " " + this.url;
+    }
+}
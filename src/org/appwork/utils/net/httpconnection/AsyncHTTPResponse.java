@@ -0,0 +1,105 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpconnection;
+
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+import java.util.Map;
+
+import org.appwork.utils.StringUtils;
+
+/**
+ * completely received response of an {@link AsyncHTTPRequest}
+ *
+ * @author thomas
+ *
+ */
+public class AsyncHTTPResponse {
+    private final AsyncHTTPRequest          request;
+    private final int                       responseCode;
+    private final String                    responseMessage;
+    private final Map<String, List<String>> headers;
+    private final String                    charset;
+    private final byte[]                    body;
+
+    AsyncHTTPResponse(final AsyncHTTPRequest request, final HTTPConnection connection, final byte[] body) {
+        this.request = request;
+        this.responseCode = connection.getResponseCode();
+        this.responseMessage = connection.getResponseMessage();
+        this.headers = connection.getHeaderFields();
+        this.charset = connection.getCharset();
+        this.body = body;
+    }
+
+    public AsyncHTTPRequest getRequest() {
+        return this.request;
+    }
+
+    public int getResponseCode() {
+        return this.responseCode;
+    }
+
+    public String getResponseMessage() {
+        return this.responseMessage;
+    }
+
+    public Map<String, List<String>> getHeaders() {
+        return this.headers;
+    }
+
+    public String getHeaderField(final String key) {
+        final List<String> ret = this.headers.get(key);
+        if (ret == null || ret.size() == 0) {
+            return null;
+        } else {
+            return ret.get(0);
+        }
+    }
+
+    public byte[] getBody() {
+        return this.body;
+    }
+
+    /**
+     * @return body decoded with the charset of the Content-Type, UTF-8 if none
+     */
+    public String getBodyAsString() throws UnsupportedEncodingException {
+        return new String(this.body, StringUtils.isEmpty(this.charset) ? "UTF-8" : this.charset);
+    }
+
+    @Override
+    public String toString() {
+        return this.request + " -> " + this.responseCode + " " + this.responseMessage + " (" + this.body.length + " bytes)";
+    }
+}
@@ -0,0 +1,398 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpconnection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.net.ssl.SSLSocket;
+
+import org.appwork.net.protocol.http.HTTPConstants;
+import org.appwork.net.protocol.http.HTTPConstants.ResponseCode;
+import org.appwork.utils.KeyValueStringEntry;
+import org.appwork.utils.StringUtils;
+import org.appwork.utils.net.CountingOutputStream;
+import org.appwork.utils.net.EmptyInputStream;
+import org.appwork.utils.net.httpconnection.http2.HTTP2Exception;
+import org.appwork.utils.net.httpconnection.http2.HTTP2Session;
+import org.appwork.utils.net.httpconnection.http2.HTTP2Stream;
+
+/**
+ * HTTPConnection that uses HTTP/2 if the server negotiates h2 via ALPN (or for http:// urls with prior knowledge). concurrent connections
+ * to the same host share one {@link HTTP2Session}, otherwise it behaves like {@link HTTPConnectionImpl}
+ *
+ * @author thomas
+ *
+ */
+public class HTTP2ConnectionImpl extends HTTPConnectionImpl {
+    private static final String[]                                ALPN_PROTOCOLS = new String[] { "h2", "http/1.1" };
+    private static final ConcurrentHashMap<String, HTTP2Session> SESSIONS       = new ConcurrentHashMap<String, HTTP2Session>();
+    private static final ConcurrentHashMap<String, Object>       CONNECT_LOCKS  = new ConcurrentHashMap<String, Object>();
+    /**
+     * routes that answered ALPN without h2
+     */
+    private static final ConcurrentHashMap<String, Boolean>      HTTP1_ONLY     = new ConcurrentHashMap<String, Boolean>();
+    private static final List<String>                            SKIP_HEADERS   = new ArrayList<String>();
+    static {
+        SKIP_HEADERS.add("host");
+        SKIP_HEADERS.add("connection");
+        SKIP_HEADERS.add("keep-alive");
+        SKIP_HEADERS.add("proxy-connection");
+        SKIP_HEADERS.add("transfer-encoding");
+        SKIP_HEADERS.add("upgrade");
+    }
+    protected volatile HTTP2Stream                               stream         = null;
+    protected boolean                                            priorKnowledge = false;
+    private HTTP2Session                                         newSession     = null;
+
+    public HTTP2ConnectionImpl(final URL url) {
+        this(url, null);
+    }
+
+    public HTTP2ConnectionImpl(final URL url, final HTTPProxy p) {
+        super(url, p);
+    }
+
+    /**
+     * @return all open HTTP/2 sessions
+     */
+    public static List<HTTP2Session> getSessions() {
+        return new ArrayList<HTTP2Session>(SESSIONS.values());
+    }
+
+    /**
+     * closes all idle HTTP/2 sessions
+     */
+    public static void closeIdleSessions() {
+        for (final Entry<String, HTTP2Session> entry : SESSIONS.entrySet()) {
+            final HTTP2Session session = entry.getValue();
+            if (session.getActiveStreams() == 0 && SESSIONS.remove(entry.getKey(), session)) {
+                session.shutdown();
+            }
+        }
+    }
+
+    /**
+     * use HTTP/2 for http:// urls without upgrade negotiation (RFC 7540 3.4)
+     */
+    public void setPriorKnowledge(final boolean priorKnowledge) {
+        this.priorKnowledge = priorKnowledge;
+    }
+
+    public boolean isPriorKnowledge() {
+        return this.priorKnowledge;
+    }
+
+    /**
+     * @return true if the current request uses HTTP/2
+     */
+    public boolean isHTTP2() {
+        return this.stream != null;
+    }
+
+    protected boolean isSSL() {
+        return StringUtils.equalsIgnoreCase("https", this.httpURL.getProtocol());
+    }
+
+    protected boolean isHTTP2Possible() {
+        final HTTPProxy proxy = this.getProxy();
+        if (proxy != null && !proxy.isNone() && !proxy.isDirect()) {
+            return false;
+        } else if (this.isSSL()) {
+            return this.getSSLSocketStreamFactory() instanceof JavaSSLSocketStreamFactory && !HTTP1_ONLY.containsKey(this.getSessionKey());
+        } else {
+            return this.isPriorKnowledge();
+        }
+    }
+
+    protected String getSessionKey() {
+        int port = this.httpURL.getPort();
+        if (port == -1) {
+            port = this.httpURL.getDefaultPort();
+        }
+        final StringBuilder sb = new StringBuilder();
+        sb.append(this.httpURL.getProtocol()).append("://").append(this.getHostname()).append(":").append(port);
+        final HTTPProxy proxy = this.getProxy();
+        if (proxy != null && proxy.isDirect()) {
+            sb.append("|").append(proxy.getLocal());
+        }
+        if (this.isSSL()) {
+            sb.append("|").append(this.isSSLTrustALL());
+        }
+        return sb.toString();
+    }
+
+    protected HTTP2Session getSession(final String key) {
+        final HTTP2Session session = SESSIONS.get(key);
+        if (session != null && !session.isUsable()) {
+            SESSIONS.remove(key, session);
+            return null;
+        }
+        return session;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        if (this.stream != null) {
+            return;
+        }
+        if (!this.isHostnameResolved()) {
+            this.setHostname(this.resolveHostname(this.httpURL.getHost()));
+        }
+        if (!this.isHTTP2Possible()) {
+            super.connect();
+            return;
+        }
+        final String key = this.getSessionKey();
+        for (int attempt = 0;; attempt++) {
+            HTTP2Session session = this.getSession(key);
+            if (session == null) {
+                Object lock = new Object();
+                final Object existing = CONNECT_LOCKS.putIfAbsent(key, lock);
+                if (existing != null) {
+                    lock = existing;
+                }
+                /* only one thread per route connects, the others wait and share the new session */
+                synchronized (lock) {
+                    session = this.getSession(key);
+                    if (session == null) {
+                        super.connect();
+                        session = this.newSession;
+                        this.newSession = null;
+                        if (session == null) {
+                            /* server does not speak h2, request got sent via HTTP/1.1 */
+                            return;
+                        }
+                    }
+                }
+            }
+            try {
+                this.sendHTTP2Request(session);
+                return;
+            } catch (final HTTP2Exception e) {
+                SESSIONS.remove(key, session);
+                if (!e.isRetryable() || attempt > 0) {
+                    throw e;
+                }
+                this.connectExceptions.add(session.getName() + "|" + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    protected SSLSocketStreamInterface createSSLSocketStream(final SocketStreamInterface socketStream, final String host, final int port, final String[] cipherBlackList) throws IOException {
+        final SSLSocketStreamFactory factory = this.getSSLSocketStreamFactory();
+        if (factory instanceof JavaSSLSocketStreamFactory && this.isHTTP2Possible()) {
+            return ((JavaSSLSocketStreamFactory) factory).create(socketStream, host, port, true, this.isSSLTrustALL(), cipherBlackList, ALPN_PROTOCOLS);
+        } else {
+            return super.createSSLSocketStream(socketStream, host, port, cipherBlackList);
+        }
+    }
+
+    @Override
+    protected void sendRequest() throws IOException {
+        final SocketStreamInterface socketStream = this.getConnectionSocket();
+        if (socketStream == null || socketStream instanceof KeepAliveSocketStream || !this.isHTTP2Possible()) {
+            super.sendRequest();
+            return;
+        }
+        final Socket socket = socketStream.getSocket();
+        final String key = this.getSessionKey();
+        if (socket instanceof SSLSocket) {
+            ((SSLSocket) socket).startHandshake();
+            if (!"h2".equals(JavaSSLSocketStreamFactory.getApplicationProtocol(socket))) {
+                HTTP1_ONLY.put(key, Boolean.TRUE);
+                super.sendRequest();
+                return;
+            }
+        }
+        /* the session owns the socket from now on */
+        final HTTP2Session session = new HTTP2Session(socketStream, key);
+        this.connectionSocket = null;
+        try {
+            session.start();
+        } catch (final IOException e) {
+            session.shutdown();
+            throw e;
+        }
+        final HTTP2Session old = SESSIONS.put(key, session);
+        if (old != null && old.getActiveStreams() == 0) {
+            old.shutdown();
+        }
+        /* the request is sent by connect, outside of the connect lock */
+        this.newSession = session;
+    }
+
+    protected void sendHTTP2Request(final HTTP2Session session) throws IOException {
+        this.resetConnection();
+        final List<KeyValueStringEntry> headers = new ArrayList<KeyValueStringEntry>();
+        headers.add(new KeyValueStringEntry(":method", this.httpMethod.name()));
+        headers.add(new KeyValueStringEntry(":scheme", this.httpURL.getProtocol()));
+        String authority = this.getRequestProperty(HTTPConstants.HEADER_REQUEST_HOST);
+        if (authority == null) {
+            this.addHostHeader();
+            authority = this.getRequestProperty(HTTPConstants.HEADER_REQUEST_HOST);
+        }
+        headers.add(new KeyValueStringEntry(":authority", authority));
+        headers.add(new KeyValueStringEntry(":path", this.httpPath));
+        for (final Entry<String, String> next : this.requestProperties.entrySet()) {
+            if (next.getValue() == null) {
+                continue;
+            }
+            final String name = next.getKey().toLowerCase(Locale.ENGLISH);
+            if (SKIP_HEADERS.contains(name) || ("te".equals(name) && !"trailers".equalsIgnoreCase(next.getValue().trim()))) {
+                continue;
+            }
+            if ("content-length".equals(name)) {
+                /* content length to check if we send out all data */
+                this.postTodoLength = Long.parseLong(next.getValue().trim());
+            }
+            headers.add(new KeyValueStringEntry(name, next.getValue()));
+        }
+        final boolean endStream = !this.isRequiresOutputStream();
+        final HTTP2Stream stream = session.openStream(headers, endStream, this.getConnectTimeout());
+        stream.setReadTimeout(this.getReadTimeout());
+        this.stream = stream;
+        this.lastConnection = session.getSocketStream().getSocket().getInetAddress();
+        this.lastConnectionPort = session.getSocketStream().getSocket().getPort();
+        if (endStream) {
+            if (this.isReadResponseOnConnect()) {
+                this.connectInputStream();
+            }
+        } else {
+            this.outputStream = new CountingOutputStream(stream.getOutputStream());
+        }
+    }
+
+    @Override
+    protected synchronized void connectInputStream() throws IOException {
+        final HTTP2Stream stream = this.stream;
+        if (stream == null) {
+            super.connectInputStream();
+            return;
+        }
+        try {
+            if (this.isRequiresOutputStream() && this.postTodoLength >= 0) {
+                final long done = ((CountingOutputStream) this.outputStream).transferedBytes();
+                if (done != this.postTodoLength) {
+                    throw new IllegalStateException("Content-Length " + this.postTodoLength + " does not match send " + done + " bytes");
+                }
+            }
+            if (this.inputStreamConnected) {
+                return;
+            }
+            if (this.isRequiresOutputStream()) {
+                /* ends the request stream */
+                this.outputStream.close();
+            }
+            final long startTime = System.currentTimeMillis();
+            this.inputStreamConnected = true;
+            final List<KeyValueStringEntry> responseHeaders = stream.getResponseHeaders();
+            this.requestTime = System.currentTimeMillis() - startTime;
+            for (final KeyValueStringEntry header : responseHeaders) {
+                if (":status".equals(header.getKey())) {
+                    this.httpResponseCode = Integer.parseInt(header.getValue().trim());
+                } else if (!header.getKey().startsWith(":")) {
+                    List<String> list = this.headers.get(header.getKey());
+                    if (list == null) {
+                        list = new ArrayList<String>();
+                        this.headers.put(header.getKey(), list);
+                    }
+                    list.add(header.getValue());
+                }
+            }
+            if (this.httpResponseCode == -1) {
+                throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "missing :status");
+            }
+            final ResponseCode responseCode = ResponseCode.get(this.httpResponseCode);
+            this.httpResponseMessage = responseCode != null ? responseCode.getDescription() : "";
+            this.httpHeader = "HTTP/2 " + this.httpResponseCode + " " + this.httpResponseMessage;
+            if (RequestMethod.HEAD.equals(this.getRequestMethod())) {
+                this.inputStream = new EmptyInputStream();
+            } else {
+                this.inputStream = stream.getInputStream();
+            }
+        } catch (final IOException e) {
+            this.disconnect();
+            throw e;
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        final HTTP2Stream stream = this.stream;
+        if (stream != null) {
+            /* resets the stream if the response was not read completely */
+            stream.cancel();
+            this.stream = null;
+        } else {
+            super.disconnect();
+        }
+    }
+
+    @Override
+    protected InputStream getRawInputStream() {
+        return this.inputStream;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return this.stream != null || super.isConnected();
+    }
+
+    @Override
+    protected boolean isConnectionSocketValid() {
+        final HTTP2Stream stream = this.stream;
+        if (stream != null) {
+            return !stream.getSession().isClosed();
+        }
+        return super.isConnectionSocketValid();
+    }
+
+    @Override
+    public void setReadTimeout(final int readTimeout) {
+        super.setReadTimeout(readTimeout);
+        final HTTP2Stream stream = this.stream;
+        if (stream != null) {
+            stream.setReadTimeout(readTimeout);
+        }
+    }
+}
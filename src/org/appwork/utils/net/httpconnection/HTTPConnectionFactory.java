@@ -36,14 +36,33 @@ package org.appwork.utils.net.httpconnection;
 import java.net.URL;
 
 public class HTTPConnectionFactory {
+    private static volatile boolean HTTP2_ENABLED = false;
+
+    /**
+     * direct https connections negotiate HTTP/2 via ALPN and share one connection per host, see {@link HTTP2ConnectionImpl}
+     */
+    public static void setHTTP2Enabled(final boolean enabled) {
+        HTTP2_ENABLED = enabled;
+    }
+
+    public static boolean isHTTP2Enabled() {
+        return HTTP2_ENABLED;
+    }
+
     public static HTTPConnection createHTTPConnection(final URL url, final HTTPProxy proxy) {
         if (proxy == null) {
+            if (isHTTP2Enabled()) {
+                return new HTTP2ConnectionImpl(url);
+            }
             return new HTTPConnectionImpl(url);
         }
         if (proxy.isPreferNativeImplementation()) {
             return new NativeHTTPConnectionImpl(url, proxy);
         }
         if (proxy.isNone() || proxy.isDirect()) {
+            if (isHTTP2Enabled()) {
+                return new HTTP2ConnectionImpl(url, proxy);
+            }
             return new HTTPConnectionImpl(url, proxy);
         }
         if (proxy.getType().equals(HTTPProxy.TYPE.SOCKS5)) {
@@ -54,10 +54,8 @@ import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -67,7 +65,6 @@ import java.util.zip.GZIPInputStream;
 
 import org.appwork.loggingv3.LogV3;
 import org.appwork.net.protocol.http.HTTPConstants;
-import org.appwork.scheduler.DelayedRunnable;
 import org.appwork.utils.Application;
 import org.appwork.utils.KeyValueStringEntry;
 import org.appwork.utils.Regex;
@@ -161,26 +158,28 @@ public class HTTPConnectionImpl implements HTTPConnection {
         return this.connectTimeout;
     }
 
-    protected volatile long                      connectTime          = -1;
-    protected volatile long                      requestTime          = -1;
-    protected OutputStream                       outputStream         = null;
-    protected InputStream                        inputStream          = null;
-    protected InputStream                        convertedInputStream = null;
-    protected volatile boolean                   inputStreamConnected = false;
-    protected String                             httpHeader           = null;
-    protected String                             invalidHttpHeader    = null;
-    protected boolean                            contentDecoded       = true;
-    protected long                               postTodoLength       = -1;
-    private int[]                                allowedResponseCodes = new int[0];
-    protected final CopyOnWriteArrayList<String> connectExceptions    = new CopyOnWriteArrayList<String>();
-    protected volatile KEEPALIVE                 keepAlive            = KEEPALIVE.DISABLED;
+    protected volatile long                      connectTime           = -1;
+    protected volatile long                      requestTime           = -1;
+    protected OutputStream                       outputStream          = null;
+    protected InputStream                        inputStream           = null;
+    protected InputStream                        convertedInputStream  = null;
+    protected volatile boolean                   inputStreamConnected  = false;
+    protected String                             httpHeader            = null;
+    protected String                             invalidHttpHeader     = null;
+    protected boolean                            contentDecoded        = true;
+    protected long                               postTodoLength        = -1;
+    private int[]                                allowedResponseCodes  = new int[0];
+    protected final CopyOnWriteArrayList<String> connectExceptions     = new CopyOnWriteArrayList<String>();
+    protected volatile KEEPALIVE                 keepAlive             = KEEPALIVE.DISABLED;
     protected volatile InetAddress               remoteIPs[]          = null;
-    protected boolean                            sslTrustALL          = true;
-    protected InetAddress                        lastConnection       = null;
-    protected int                                lastConnectionPort   = -1;
+    protected boolean                            sslTrustALL           = true;
+    protected InetAddress                        lastConnection        = null;
+    protected int                                lastConnectionPort    = -1;
     protected String                             hostName;
-    private boolean                              legacyConnectFlag    = true;
-    private final static PublicSuffixList        PSL                  = PublicSuffixList.getInstance();
+    private boolean                              legacyConnectFlag     = true;
+    protected volatile boolean                   readResponseOnConnect = true;
+    protected volatile boolean                   preferSocketChannel   = false;
+    private final static PublicSuffixList        PSL                   = PublicSuffixList.getInstance();
 
     public KEEPALIVE getKeepAlive() {
         return this.keepAlive;
@@ -197,68 +196,13 @@ public class HTTPConnectionImpl implements HTTPConnection {
     /**
      * Keep-Alive stuff
      */
-    protected static final HashMap<String, LinkedList<KeepAliveSocketStream>> KEEPALIVEPOOL         = new HashMap<String, LinkedList<KeepAliveSocketStream>>();
-    protected static final Object                                             LOCK                  = new Object();
-    protected static final DelayedRunnable                                    KEEPALIVECLEANUPTIMER = new DelayedRunnable(10000, 30000) {
-        @Override
-        public void delayedrun() {
-            cleanupKeepAlivePools();
-        }
-    };
+    protected static final KeepAliveSocketPool KEEPALIVEPOOL = new KeepAliveSocketPool();
 
-    private static final void cleanupKeepAlivePools() {
-        synchronized (HTTPConnectionImpl.LOCK) {
-            try {
-                final Iterator<Entry<String, LinkedList<KeepAliveSocketStream>>> hostIterator = HTTPConnectionImpl.KEEPALIVEPOOL.entrySet().iterator();
-                while (hostIterator.hasNext()) {
-                    final Entry<String, LinkedList<KeepAliveSocketStream>> next = hostIterator.next();
-                    final LinkedList<KeepAliveSocketStream> keepAliveSockets = next.getValue();
-                    if (keepAliveSockets != null) {
-                        final Iterator<KeepAliveSocketStream> keepAliveIterator = keepAliveSockets.iterator();
-                        while (keepAliveIterator.hasNext()) {
-                            final KeepAliveSocketStream socketStream = keepAliveIterator.next();
-                            final Socket socket = socketStream.getSocket();
-                            if (socket.isClosed() || socketStream.getKeepAliveTimestamp() <= System.currentTimeMillis()) {
-                                try {
-                                    socket.close();
-                                } catch (final Throwable ignore) {
-                                }
-                                keepAliveIterator.remove();
-                                continue;
-                            }
-                            try {
-                                if (socket.getChannel() != null) {
-                                    final SocketChannel channel = socket.getChannel();
-                                    channel.configureBlocking(false);
-                                    final ByteBuffer check = ByteBuffer.wrap(new byte[1]);
-                                    final int read = channel.read(check);
-                                    if (read == -1) {
-                                        throw new AsynchronousCloseException();
-                                    } else if (read != 0) {
-                                        throw new IOException("Unexpected data received");
-                                    }
-                                    channel.configureBlocking(true);
-                                }
-                            } catch (IOException e) {
-                                try {
-                                    socket.close();
-                                } catch (final Throwable ignore) {
-                                }
-                                keepAliveIterator.remove();
-                                continue;
-                            }
-                        }
-                    }
-                    if (keepAliveSockets == null || keepAliveSockets.size() == 0) {
-                        hostIterator.remove();
-                    }
-                }
-            } finally {
-                if (HTTPConnectionImpl.KEEPALIVEPOOL.size() > 0) {
-                    HTTPConnectionImpl.KEEPALIVECLEANUPTIMER.resetAndStart();
-                }
-            }
-        }
+    /**
+     * @return the shared pool of idle keep-alive sockets, for limits and hit/miss/eviction metrics
+     */
+    public static KeepAliveSocketPool getKeepAliveSocketPool() {
+        return HTTPConnectionImpl.KEEPALIVEPOOL;
     }
 
     public HTTPConnectionImpl(final URL url) {
@@ -352,74 +296,54 @@ public class HTTPConnectionImpl implements HTTPConnection {
                 if (rawInputStream != null && rawInputStream instanceof StreamValidEOF && ((StreamValidEOF) rawInputStream).isValidEOF()) {
                     if (!this.isRequiresOutputStream() || ((CountingOutputStream) this.outputStream).transferedBytes() == this.postTodoLength) {
                         socket.setKeepAlive(true);
-                        synchronized (HTTPConnectionImpl.LOCK) {
-                            final KeepAliveSocketStream keepAliveSocketStream;
-                            if (socketStream instanceof KeepAliveSocketStream) {
-                                keepAliveSocketStream = (KeepAliveSocketStream) socketStream;
+                        final KeepAliveSocketStream keepAliveSocketStream;
+                        if (socketStream instanceof KeepAliveSocketStream) {
+                            keepAliveSocketStream = (KeepAliveSocketStream) socketStream;
+                        } else {
+                            final String connectionResponse = this.getHeaderField(HTTPConstants.HTTP_KEEP_ALIVE);
+                            final String server = this.getHeaderField(HTTPConstants.HEADER_RESPONSE_SERVER);
+                            final String maxKeepAliveTimeoutString = new Regex(connectionResponse, "timeout\\s*=\\s*(\\d+)").getMatch(0);
+                            final String maxKeepAliveRequestsString = new Regex(connectionResponse, "max\\s*=\\s*(\\d+)").getMatch(0);
+                            final long maxKeepAliveTimeout;
+                            if (maxKeepAliveTimeoutString != null) {
+                                maxKeepAliveTimeout = Long.parseLong(maxKeepAliveTimeoutString) * 1000l;
                             } else {
-                                final String connectionResponse = this.getHeaderField(HTTPConstants.HTTP_KEEP_ALIVE);
-                                final String server = this.getHeaderField(HTTPConstants.HEADER_RESPONSE_SERVER);
-                                final String maxKeepAliveTimeoutString = new Regex(connectionResponse, "timeout\\s*=\\s*(\\d+)").getMatch(0);
-                                final String maxKeepAliveRequestsString = new Regex(connectionResponse, "max\\s*=\\s*(\\d+)").getMatch(0);
-                                final long maxKeepAliveTimeout;
-                                if (maxKeepAliveTimeoutString != null) {
-                                    maxKeepAliveTimeout = Long.parseLong(maxKeepAliveTimeoutString) * 1000l;
-                                } else {
-                                    maxKeepAliveTimeout = this.getDefaultKeepAliveTimeout(server);
-                                }
-                                final long maxKeepAliveRequests;
-                                if (maxKeepAliveRequestsString != null) {
-                                    maxKeepAliveRequests = Long.parseLong(maxKeepAliveRequestsString);
-                                } else {
-                                    maxKeepAliveRequests = this.getDefaultKeepAliveMaxRequests(server);
-                                }
-                                final InetAddress localIP;
-                                if (this.proxy != null && this.proxy.isDirect()) {
-                                    localIP = socket.getLocalAddress();
-                                } else {
-                                    localIP = null;
-                                }
-                                final InetAddress[] remoteIPs;
-                                if (this.remoteIPs != null) {
-                                    remoteIPs = this.remoteIPs;
-                                } else {
-                                    remoteIPs = new InetAddress[] { ((InetSocketAddress) socket.getRemoteSocketAddress()).getAddress() };
-                                }
-                                if (StringUtils.equalsIgnoreCase("https", this.httpURL.getProtocol())) {
-                                    keepAliveSocketStream = new KeepAliveSSLSocketStream(getHostname(), socketStream, maxKeepAliveTimeout, maxKeepAliveRequests, localIP, remoteIPs);
-                                } else {
-                                    keepAliveSocketStream = new KeepAliveSocketStream(getHostname(), socketStream, maxKeepAliveTimeout, maxKeepAliveRequests, localIP, remoteIPs);
-                                }
+                                maxKeepAliveTimeout = this.getDefaultKeepAliveTimeout(server);
                             }
-                            keepAliveSocketStream.increaseRequests();
-                            if (keepAliveSocketStream.getRequestsLeft() > 0) {
-                                String domain = null;
-                                if (HTTPConnectionImpl.PSL != null) {
-                                    domain = HTTPConnectionImpl.PSL.getDomain(keepAliveSocketStream.getHost());
-                                }
-                                if (StringUtils.isEmpty(domain)) {
-                                    domain = "FALLBACK";
-                                }
-                                LinkedList<KeepAliveSocketStream> keepAlivePool = HTTPConnectionImpl.KEEPALIVEPOOL.get(domain);
-                                if (keepAlivePool == null) {
-                                    keepAlivePool = new LinkedList<KeepAliveSocketStream>();
-                                    HTTPConnectionImpl.KEEPALIVEPOOL.put(domain, keepAlivePool);
-                                }
-                                keepAlivePool.add(keepAliveSocketStream);
-                                keepAliveSocketStream.keepAlive();
-                                final long maxKeepAlive = this.getMaxKeepAliveSockets();
-                                if (keepAlivePool.size() > maxKeepAlive) {
-                                    final Iterator<KeepAliveSocketStream> it = keepAlivePool.iterator();
-                                    while (it.hasNext() && keepAlivePool.size() > maxKeepAlive) {
-                                        final KeepAliveSocketStream next = it.next();
-                                        try {
-                                            next.close();
-                                        } catch (final Throwable ignore) {
-                                        }
-                                        it.remove();
-                                    }
-                                }
-                                HTTPConnectionImpl.KEEPALIVECLEANUPTIMER.resetAndStart();
+                            final long maxKeepAliveRequests;
+                            if (maxKeepAliveRequestsString != null) {
+                                maxKeepAliveRequests = Long.parseLong(maxKeepAliveRequestsString);
+                            } else {
+                                maxKeepAliveRequests = this.getDefaultKeepAliveMaxRequests(server);
+                            }
+                            final InetAddress localIP;
+                            if (this.proxy != null && this.proxy.isDirect()) {
+                                localIP = socket.getLocalAddress();
+                            } else {
+                                localIP = null;
+                            }
+                            final InetAddress[] remoteIPs;
+                            if (this.remoteIPs != null) {
+                                remoteIPs = this.remoteIPs;
+                            } else {
+                                remoteIPs = new InetAddress[] { ((InetSocketAddress) socket.getRemoteSocketAddress()).getAddress() };
+                            }
+                            if (StringUtils.equalsIgnoreCase("https", this.httpURL.getProtocol())) {
+                                keepAliveSocketStream = new KeepAliveSSLSocketStream(getHostname(), socketStream, maxKeepAliveTimeout, maxKeepAliveRequests, localIP, remoteIPs);
+                            } else {
+                                keepAliveSocketStream = new KeepAliveSocketStream(getHostname(), socketStream, maxKeepAliveTimeout, maxKeepAliveRequests, localIP, remoteIPs);
+                            }
+                        }
+                        keepAliveSocketStream.increaseRequests();
+                        if (keepAliveSocketStream.getRequestsLeft() > 0) {
+                            String domain = null;
+                            if (HTTPConnectionImpl.PSL != null) {
+                                domain = HTTPConnectionImpl.PSL.getDomain(keepAliveSocketStream.getHost());
+                            }
+                            if (StringUtils.isEmpty(domain)) {
+                                domain = "FALLBACK";
+                            }
+                            if (HTTPConnectionImpl.KEEPALIVEPOOL.release(domain, keepAliveSocketStream, this.getMaxKeepAliveSockets())) {
                                 return true;
                             }
                         }
@@ -431,6 +355,13 @@ public class HTTPConnectionImpl implements HTTPConnection {
     }
 
     protected boolean checkSocketChannel(Socket socket) {
+        return HTTPConnectionImpl.isSocketChannelUsable(socket);
+    }
+
+    /**
+     * non blocking check if an idle socket got closed by the remote side or received unexpected data. unusable sockets get closed
+     */
+    static boolean isSocketChannelUsable(final Socket socket) {
         if (socket != null) {
             try {
                 if (socket.getChannel() != null) {
@@ -475,53 +406,46 @@ public class HTTPConnectionImpl implements HTTPConnection {
         if (StringUtils.isEmpty(domain)) {
             domain = "FALLBACK";
         }
-        synchronized (HTTPConnectionImpl.LOCK) {
-            final LinkedList<KeepAliveSocketStream> socketPool = HTTPConnectionImpl.KEEPALIVEPOOL.get(domain);
-            if (socketPool != null) {
-                final Iterator<KeepAliveSocketStream> socketPoolIterator = socketPool.descendingIterator();
-                while (socketPoolIterator.hasNext()) {
-                    final KeepAliveSocketStream socketStream = socketPoolIterator.next();
-                    final Socket socket = socketStream.getSocket();
-                    if (socket.isClosed() || socketStream.getKeepAliveTimestamp() <= System.currentTimeMillis()) {
+        final IOException[] remoteIPsException = new IOException[1];
+        final KeepAliveSocketStream ret = HTTPConnectionImpl.KEEPALIVEPOOL.borrow(domain, new KeepAliveSocketPool.Matcher() {
+            @Override
+            public boolean matches(final KeepAliveSocketStream socketStream) {
+                if (remoteIPsException[0] != null || socketStream.getSocket().getPort() != port || !socketStream.sameBoundIP(localIP)) {
+                    return false;
+                } else if (socketStream.isSsl() && ssl && socketStream.sameHost(host)) {
+                    /**
+                     * ssl needs to have same hostname to avoid (SNI)
+                     *
+                     * <p>
+                     * Your browser sent a request that this server could not understand.<br />
+                     * Host name provided via SNI and via HTTP are different
+                     * </p>
+                     */
+                    return true;
+                } else if (socketStream.isSsl() == false && ssl == false) {
+                    // same hostname or same ip
+                    if (socketStream.sameHost(host)) {
+                        return true;
+                    } else if (dnsLookup) {
                         try {
-                            socket.close();
-                        } catch (final Throwable ignore) {
-                        }
-                        socketPoolIterator.remove();
-                        continue;
-                    } else if (socket.getPort() != port || !socketStream.sameBoundIP(localIP)) {
-                        continue;
-                    } else if (socketStream.isSsl() && ssl && socketStream.sameHost(host)) {
-                        /**
-                         * ssl needs to have same hostname to avoid (SNI)
-                         *
-                         * <p>
-                         * Your browser sent a request that this server could not understand.<br />
-                         * Host name provided via SNI and via HTTP are different
-                         * </p>
-                         */
-                        socketPoolIterator.remove();
-                        if (checkSocketChannel(socket)) {
-                            return socketStream;
-                        } else {
-                            continue;
-                        }
-                    } else if (socketStream.isSsl() == false && ssl == false && (socketStream.sameHost(host) || (dnsLookup && socketStream.sameRemoteIPs(getRemoteIPs())))) {
-                        // same hostname or same ip
-                        socketPoolIterator.remove();
-                        if (checkSocketChannel(socket)) {
-                            return socketStream;
-                        } else {
-                            continue;
+                            return socketStream.sameRemoteIPs(HTTPConnectionImpl.this.getRemoteIPs());
+                        } catch (final IOException e) {
+                            remoteIPsException[0] = e;
                         }
                     }
                 }
-                if (socketPool.isEmpty()) {
-                    HTTPConnectionImpl.KEEPALIVEPOOL.remove(domain);
-                }
+                return false;
             }
+
+            @Override
+            public boolean validate(final KeepAliveSocketStream socketStream) {
+                return HTTPConnectionImpl.this.checkSocketChannel(socketStream.getSocket());
+            }
+        });
+        if (ret == null && remoteIPsException[0] != null) {
+            throw remoteIPsException[0];
         }
-        return null;
+        return ret;
     }
 
     /* this will add Host header at the beginning */
@@ -862,12 +786,11 @@ public class HTTPConnectionImpl implements HTTPConnection {
                             }
                         }
                         if (this.httpURL.getProtocol().startsWith("https")) {
-                            final SSLSocketStreamFactory factory = getSSLSocketStreamFactory();
                             if (sslSNIWorkAround) {
                                 /* wrong configured SNI at serverSide */
-                                this.connectionSocket = factory.create(connectionSocket, "", port, true, isSSLTrustALL(), cipherBlackList);
+                                this.connectionSocket = createSSLSocketStream(connectionSocket, "", port, cipherBlackList);
                             } else {
-                                this.connectionSocket = factory.create(connectionSocket, getHostname(), port, true, isSSLTrustALL(), cipherBlackList);
+                                this.connectionSocket = createSSLSocketStream(connectionSocket, getHostname(), port, cipherBlackList);
                             }
                         }
                         this.connectTime = System.currentTimeMillis() - startTime;
@@ -926,6 +849,10 @@ public class HTTPConnectionImpl implements HTTPConnection {
         return getDefaultSSLSocketStreamFactory();
     }
 
+    protected SSLSocketStreamInterface createSSLSocketStream(final SocketStreamInterface socketStream, final String host, final int port, final String[] cipherBlackList) throws IOException {
+        return getSSLSocketStreamFactory().create(socketStream, host, port, true, isSSLTrustALL(), cipherBlackList);
+    }
+
     protected boolean isKeepAlivedEnabled() {
         final KEEPALIVE keepAlive = this.getKeepAlive();
         if (!KEEPALIVE.DISABLED.equals(keepAlive)) {
@@ -1566,7 +1493,7 @@ public class HTTPConnectionImpl implements HTTPConnection {
             outputStream.flush();
             if (this.isRequiresOutputStream()) {
                 this.outputStream = new CountingOutputStream(outputStream);
-            } else {
+            } else if (this.isReadResponseOnConnect()) {
                 this.connectInputStream();
             }
         } catch (final IOException e) {
@@ -1646,4 +1573,28 @@ public class HTTPConnectionImpl implements HTTPConnection {
     public boolean isLegacyConnectEnabled() {
         return legacyConnectFlag;
     }
+
+    public boolean isReadResponseOnConnect() {
+        return this.readResponseOnConnect;
+    }
+
+    /**
+     * @param readResponseOnConnect
+     *            false: connect only sends the request, the response is read by finalizeConnect/getInputStream
+     */
+    public void setReadResponseOnConnect(boolean readResponseOnConnect) {
+        this.readResponseOnConnect = readResponseOnConnect;
+    }
+
+    public boolean isPreferSocketChannel() {
+        return this.preferSocketChannel;
+    }
+
+    /**
+     * @param preferSocketChannel
+     *            true: ask the {@link SocketFactory} for a SocketChannel backed socket, so the connection can be used with a Selector
+     */
+    public void setPreferSocketChannel(boolean preferSocketChannel) {
+        this.preferSocketChannel = preferSocketChannel;
+    }
 }
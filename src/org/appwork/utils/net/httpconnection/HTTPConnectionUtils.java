@@ -302,6 +302,65 @@ public class HTTPConnectionUtils {
         return ret;
     }
 
+    /**
+     * parses a Range request header (RFC 7233) against a resource of the given length
+     *
+     * @return null if the header is missing or invalid and the complete resource should be sent, an empty list if no range is satisfiable
+     *         (416), otherwise the satisfiable ranges as {start, end} with inclusive end
+     */
+    public static List<long[]> parseRequestRange(final String requestRange, final long length) {
+        if (requestRange == null || !requestRange.trim().regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+        final String[] specs = requestRange.trim().substring(6).split(",");
+        if (specs.length > 16) {
+            /* too many ranges, ignore them */
+            return null;
+        }
+        final List<long[]> ret = new ArrayList<long[]>();
+        try {
+            for (final String spec : specs) {
+                final int index = spec.indexOf('-');
+                if (index < 0) {
+                    return null;
+                }
+                final String from = spec.substring(0, index).trim();
+                final String to = spec.substring(index + 1).trim();
+                final long start;
+                final long end;
+                if (from.length() == 0) {
+                    /* suffix range, the last n bytes */
+                    if (to.length() == 0) {
+                        return null;
+                    }
+                    final long suffix = Long.parseLong(to);
+                    if (suffix == 0) {
+                        continue;
+                    }
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(from);
+                    if (to.length() == 0) {
+                        end = length - 1;
+                    } else {
+                        final long last = Long.parseLong(to);
+                        if (last < start) {
+                            return null;
+                        }
+                        end = Math.min(last, length - 1);
+                    }
+                }
+                if (start < length) {
+                    ret.add(new long[] { start, end });
+                }
+            }
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+        return ret;
+    }
+
     public static long[] parseContentRange(final HTTPConnection httpConnection) {
         final String contentRange = httpConnection != null ? httpConnection.getHeaderField(HTTPConstants.HEADER_RESPONSE_CONTENT_RANGE) : null;
         if (contentRange != null) {
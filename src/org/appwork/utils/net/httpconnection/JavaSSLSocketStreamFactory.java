@@ -50,10 +50,12 @@ import java.util.List;
 import java.util.Locale;
 
 import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
+import org.appwork.loggingv3.LogV3;
 import org.appwork.utils.Application;
 import org.appwork.utils.Regex;
 import org.appwork.utils.StringUtils;
@@ -74,6 +76,14 @@ public class JavaSSLSocketStreamFactory implements SSLSocketStreamFactory {
     }
 
     public static SSLSocketFactory getSSLSocketFactory(final boolean useSSLTrustAll, final String[] cipherBlacklist) throws IOException {
+        return getSSLSocketFactory(useSSLTrustAll, cipherBlacklist, true);
+    }
+
+    /**
+     * @param gcmWorkaround
+     *            disable GCM cipher suites, must be false for HTTP/2 as it requires AEAD cipher suites
+     */
+    public static SSLSocketFactory getSSLSocketFactory(final boolean useSSLTrustAll, final String[] cipherBlacklist, final boolean gcmWorkaround) throws IOException {
         final SSLSocketFactory factory;
         if (useSSLTrustAll) {
             factory = TrustALLSSLFactory.getSSLFactoryTrustALL();
@@ -107,7 +117,6 @@ public class JavaSSLSocketStreamFactory implements SSLSocketStreamFactory {
                 if (socket != null && socket instanceof SSLSocket) {
                     // final long javaVersion = Application.getJavaVersion();
                     // https://stackoverflow.com/questions/25992131/slow-aes-gcm-encryption-and-decryption-with-java-8u20/27028067#27028067
-                    final boolean gcmWorkaround = true;
                     if (gcmWorkaround || cipherBlacklist != null) {
                         final SSLSocket sslSocket = (SSLSocket) socket;
                         final ArrayList<String> cipherSuits = new ArrayList<String>(Arrays.asList(sslSocket.getEnabledCipherSuites()));
@@ -219,9 +228,57 @@ public class JavaSSLSocketStreamFactory implements SSLSocketStreamFactory {
         }
     }
 
+    /**
+     * sets the ALPN protocols (RFC 7301) via reflection, available since java 9 and 8u252
+     *
+     * @return false if ALPN is not supported by this JRE
+     */
+    public static boolean setApplicationProtocols(final SSLSocket sslSocket, final String[] applicationProtocols) {
+        try {
+            final SSLParameters parameters = sslSocket.getSSLParameters();
+            SSLParameters.class.getMethod("setApplicationProtocols", String[].class).invoke(parameters, new Object[] { applicationProtocols });
+            sslSocket.setSSLParameters(parameters);
+            return true;
+        } catch (final NoSuchMethodException e) {
+            return false;
+        } catch (final Exception e) {
+            LogV3.log(e);
+            return false;
+        }
+    }
+
+    /**
+     * @return the ALPN protocol negotiated during the handshake, null if none or not supported by this JRE
+     */
+    public static String getApplicationProtocol(final Socket socket) {
+        if (socket instanceof SSLSocket) {
+            try {
+                final String ret = (String) SSLSocket.class.getMethod("getApplicationProtocol").invoke(socket);
+                return StringUtils.isEmpty(ret) ? null : ret;
+            } catch (final NoSuchMethodException e) {
+                return null;
+            } catch (final Exception e) {
+                LogV3.log(e);
+                return null;
+            }
+        }
+        return null;
+    }
+
     @Override
     public SSLSocketStreamInterface create(final SocketStreamInterface socketStream, final String host, final int port, final boolean autoClose, final boolean trustAll, final String[] cipherBlacklist) throws IOException {
-        final SSLSocket sslSocket = (SSLSocket) getSSLSocketFactory(trustAll, cipherBlacklist).createSocket(socketStream.getSocket(), host, port, autoClose);
+        return this.create(socketStream, host, port, autoClose, trustAll, cipherBlacklist, null);
+    }
+
+    /**
+     * @param applicationProtocols
+     *            protocols to offer via ALPN, eg h2 and http/1.1, or null
+     */
+    public SSLSocketStreamInterface create(final SocketStreamInterface socketStream, final String host, final int port, final boolean autoClose, final boolean trustAll, final String[] cipherBlacklist, final String[] applicationProtocols) throws IOException {
+        final SSLSocket sslSocket = (SSLSocket) getSSLSocketFactory(trustAll, cipherBlacklist, applicationProtocols == null).createSocket(socketStream.getSocket(), host, port, autoClose);
+        if (applicationProtocols != null) {
+            setApplicationProtocols(sslSocket, applicationProtocols);
+        }
         // sslSocket.startHandshake();
         // verifySSLHostname(sslSocket, host, trustAll);
         return new SSLSocketStreamInterface() {
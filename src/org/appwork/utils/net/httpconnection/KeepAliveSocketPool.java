@@ -0,0 +1,316 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpconnection;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.appwork.scheduler.DelayedRunnable;
+
+/**
+ * pool of idle keep-alive sockets. every route (domain) has its own concurrent deque, so parallel connections to different hosts do not
+ * share a lock. newest sockets are reused first, the oldest are evicted first.
+ *
+ * @author thomas
+ *
+ */
+public class KeepAliveSocketPool {
+    public static interface Matcher {
+        /**
+         * @return true if the pooled socket can be used for the request (host, port, bound ip...)
+         */
+        boolean matches(KeepAliveSocketStream socketStream);
+
+        /**
+         * called after the socket was taken from the pool
+         *
+         * @return false if the socket is broken, it will be closed and evicted
+         */
+        boolean validate(KeepAliveSocketStream socketStream);
+    }
+
+    private final ConcurrentHashMap<String, LinkedBlockingDeque<KeepAliveSocketStream>> routes      = new ConcurrentHashMap<String, LinkedBlockingDeque<KeepAliveSocketStream>>();
+    private final AtomicInteger                                                         idle        = new AtomicInteger(0);
+    private final AtomicLong                                                            hits        = new AtomicLong(0);
+    private final AtomicLong                                                            misses      = new AtomicLong(0);
+    private final AtomicLong                                                            evictions   = new AtomicLong(0);
+    private final AtomicLong                                                            releases    = new AtomicLong(0);
+    private volatile int                                                                maxTotal    = 64;
+    private final DelayedRunnable                                                       cleanupTask = new DelayedRunnable(10000, 30000) {
+        @Override
+        public void delayedrun() {
+            KeepAliveSocketPool.this.evictIdle();
+        }
+    };
+
+    /**
+     * takes the newest matching socket of the route out of the pool
+     *
+     * @return null if no socket matches
+     */
+    public KeepAliveSocketStream borrow(final String route, final Matcher matcher) {
+        final LinkedBlockingDeque<KeepAliveSocketStream> deque = this.routes.get(route);
+        if (deque != null) {
+            final long now = System.currentTimeMillis();
+            final Iterator<KeepAliveSocketStream> it = deque.descendingIterator();
+            while (it.hasNext()) {
+                final KeepAliveSocketStream socketStream = it.next();
+                if (this.isExpired(socketStream, now)) {
+                    this.evict(deque, socketStream);
+                } else if (matcher.matches(socketStream) && this.remove(deque, socketStream)) {
+                    /* only the thread that removed it from the deque owns the socket */
+                    if (matcher.validate(socketStream)) {
+                        this.hits.incrementAndGet();
+                        return socketStream;
+                    } else {
+                        this.close(socketStream);
+                        this.evictions.incrementAndGet();
+                    }
+                }
+            }
+        }
+        this.misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * returns a socket to the pool. the oldest sockets of the route are evicted when the route has more than maxPerRoute sockets
+     *
+     * @return false if the pool is full and the socket was closed
+     */
+    public boolean release(final String route, final KeepAliveSocketStream socketStream, final long maxPerRoute) {
+        if (this.idle.get() >= this.maxTotal) {
+            this.evictIdle(false);
+            if (this.idle.get() >= this.maxTotal) {
+                this.close(socketStream);
+                this.evictions.incrementAndGet();
+                return false;
+            }
+        }
+        socketStream.keepAlive();
+        this.releases.incrementAndGet();
+        final LinkedBlockingDeque<KeepAliveSocketStream> deque = this.add(route, socketStream);
+        while (deque != null && deque.size() > maxPerRoute) {
+            final KeepAliveSocketStream oldest = deque.pollFirst();
+            if (oldest == null) {
+                break;
+            }
+            this.idle.decrementAndGet();
+            this.close(oldest);
+            this.evictions.incrementAndGet();
+        }
+        this.cleanupTask.resetAndStart();
+        return true;
+    }
+
+    /**
+     * adds the socket to the deque of the route. evictIdle may remove an empty deque at the same time, so the deque is checked again after
+     * the socket has been added.
+     *
+     * @return the deque, or null if a concurrent evictIdle took the socket out of a removed deque. evictIdle adds it again
+     */
+    private LinkedBlockingDeque<KeepAliveSocketStream> add(final String route, final KeepAliveSocketStream socketStream) {
+        while (true) {
+            LinkedBlockingDeque<KeepAliveSocketStream> deque = this.routes.get(route);
+            if (deque == null) {
+                final LinkedBlockingDeque<KeepAliveSocketStream> newDeque = new LinkedBlockingDeque<KeepAliveSocketStream>();
+                deque = this.routes.putIfAbsent(route, newDeque);
+                if (deque == null) {
+                    deque = newDeque;
+                }
+            }
+            deque.offerLast(socketStream);
+            this.idle.incrementAndGet();
+            if (this.routes.get(route) == deque) {
+                return deque;
+            } else if (!this.remove(deque, socketStream)) {
+                return null;
+            }
+            /* the deque got removed before evictIdle drained it, retry with a new deque */
+        }
+    }
+
+    /**
+     * closes expired, closed and broken idle sockets
+     */
+    public void evictIdle() {
+        this.evictIdle(true);
+    }
+
+    private void evictIdle(final boolean checkChannels) {
+        final long now = System.currentTimeMillis();
+        final Iterator<Entry<String, LinkedBlockingDeque<KeepAliveSocketStream>>> routeIterator = this.routes.entrySet().iterator();
+        while (routeIterator.hasNext()) {
+            final Entry<String, LinkedBlockingDeque<KeepAliveSocketStream>> route = routeIterator.next();
+            final LinkedBlockingDeque<KeepAliveSocketStream> deque = route.getValue();
+            for (final KeepAliveSocketStream socketStream : deque) {
+                if (this.isExpired(socketStream, now)) {
+                    this.evict(deque, socketStream);
+                } else if (checkChannels && socketStream.getSocket().getChannel() != null && this.remove(deque, socketStream)) {
+                    if (HTTPConnectionImpl.isSocketChannelUsable(socketStream.getSocket())) {
+                        /* still usable, back to the old end of the deque */
+                        deque.offerFirst(socketStream);
+                        this.idle.incrementAndGet();
+                    } else {
+                        this.close(socketStream);
+                        this.evictions.incrementAndGet();
+                    }
+                }
+            }
+            if (deque.isEmpty() && this.routes.remove(route.getKey(), deque)) {
+                /* a concurrent release may have used the removed deque. no release: neither a new keep-alive timestamp nor a metric */
+                KeepAliveSocketStream socketStream;
+                while ((socketStream = deque.pollFirst()) != null) {
+                    this.idle.decrementAndGet();
+                    this.add(route.getKey(), socketStream);
+                }
+            }
+        }
+        if (checkChannels && this.idle.get() > 0) {
+            this.cleanupTask.resetAndStart();
+        }
+    }
+
+    /**
+     * closes all idle sockets
+     */
+    public void clear() {
+        for (final LinkedBlockingDeque<KeepAliveSocketStream> deque : this.routes.values()) {
+            KeepAliveSocketStream socketStream;
+            while ((socketStream = deque.pollFirst()) != null) {
+                this.idle.decrementAndGet();
+                this.close(socketStream);
+            }
+        }
+    }
+
+    private boolean isExpired(final KeepAliveSocketStream socketStream, final long now) {
+        final Socket socket = socketStream.getSocket();
+        return socket.isClosed() || socketStream.getKeepAliveTimestamp() <= now;
+    }
+
+    private boolean remove(final LinkedBlockingDeque<KeepAliveSocketStream> deque, final KeepAliveSocketStream socketStream) {
+        if (deque.removeFirstOccurrence(socketStream)) {
+            this.idle.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private void evict(final LinkedBlockingDeque<KeepAliveSocketStream> deque, final KeepAliveSocketStream socketStream) {
+        if (this.remove(deque, socketStream)) {
+            this.close(socketStream);
+            this.evictions.incrementAndGet();
+        }
+    }
+
+    private void close(final KeepAliveSocketStream socketStream) {
+        try {
+            socketStream.close();
+        } catch (final Throwable ignore) {
+        }
+    }
+
+    public int getMaxTotal() {
+        return this.maxTotal;
+    }
+
+    /**
+     * @param maxTotal
+     *            max number of idle sockets over all routes
+     */
+    public void setMaxTotal(final int maxTotal) {
+        this.maxTotal = Math.max(0, maxTotal);
+    }
+
+    /**
+     * @return number of idle sockets in the pool
+     */
+    public int getIdleCount() {
+        return Math.max(0, this.idle.get());
+    }
+
+    /**
+     * @return routes that currently have idle sockets
+     */
+    public List<String> getRoutes() {
+        final List<String> ret = new ArrayList<String>();
+        for (final Entry<String, LinkedBlockingDeque<KeepAliveSocketStream>> route : this.routes.entrySet()) {
+            if (!route.getValue().isEmpty()) {
+                ret.add(route.getKey());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return number of borrow calls that got a pooled socket
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return number of borrow calls that had to open a new connection
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return number of sockets closed because they expired, broke or exceeded a limit
+     */
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * @return number of sockets returned to the pool
+     */
+    public long getReleases() {
+        return this.releases.get();
+    }
+
+    @Override
+    public String toString() {
+        return "KeepAliveSocketPool[idle=" + this.getIdleCount() + ",hits=" + this.getHits() + ",misses=" + this.getMisses() + ",evictions=" + this.getEvictions() + "]";
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpconnection.http2;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.appwork.utils.KeyValueStringEntry;
+
+/**
+ * HPACK header block decoder. not threadsafe, header blocks must be decoded in the order they are received
+ *
+ * @author thomas
+ *
+ */
+public class HPACKDecoder {
+    private final HPACKTable table;
+    private final int        maxTableSize;
+
+    /**
+     * @param maxTableSize
+     *            our SETTINGS_HEADER_TABLE_SIZE
+     */
+    public HPACKDecoder(final int maxTableSize) {
+        this.maxTableSize = maxTableSize;
+        this.table = new HPACKTable();
+        this.table.setMaxSize(maxTableSize);
+    }
+
+    public HPACKDecoder() {
+        this(HPACK.DEFAULT_TABLE_SIZE);
+    }
+
+    public List<KeyValueStringEntry> decode(final byte[] block, final int offset, final int length) throws HTTP2Exception {
+        final ArrayList<KeyValueStringEntry> ret = new ArrayList<KeyValueStringEntry>();
+        final ByteBuffer in = ByteBuffer.wrap(block, offset, length);
+        try {
+            boolean sizeUpdateAllowed = true;
+            while (in.hasRemaining()) {
+                final int b = in.get(in.position()) & 0xff;
+                if ((b & 0x80) != 0) {
+                    /* indexed header field */
+                    final int index = HPACK.readInteger(in, 7);
+                    if (index == 0) {
+                        throw new HTTP2Exception(HTTP2Exception.COMPRESSION_ERROR, "invalid index 0");
+                    }
+                    ret.add(this.table.get(index));
+                } else if ((b & 0x40) != 0) {
+                    /* literal with incremental indexing */
+                    final KeyValueStringEntry header = this.readLiteral(in, 6);
+                    this.table.add(header.getKey(), header.getValue());
+                    ret.add(header);
+                } else if ((b & 0x20) != 0) {
+                    /* dynamic table size update */
+                    if (!sizeUpdateAllowed) {
+                        throw new HTTP2Exception(HTTP2Exception.COMPRESSION_ERROR, "table size update after header field");
+                    }
+                    final int size = HPACK.readInteger(in, 5);
+                    if (size > this.maxTableSize) {
+                        throw new HTTP2Exception(HTTP2Exception.COMPRESSION_ERROR, "table size " + size + " > " + this.maxTableSize);
+                    }
+                    this.table.setMaxSize(size);
+                    continue;
+                } else {
+                    /* literal without indexing or never indexed */
+                    ret.add(this.readLiteral(in, 4));
+                }
+                sizeUpdateAllowed = false;
+            }
+        } catch (final BufferUnderflowException e) {
+            throw new HTTP2Exception(HTTP2Exception.COMPRESSION_ERROR, "truncated header block");
+        }
+        return ret;
+    }
+
+    private KeyValueStringEntry readLiteral(final ByteBuffer in, final int prefixBits) throws HTTP2Exception {
+        final int nameIndex = HPACK.readInteger(in, prefixBits);
+        final String name;
+        if (nameIndex == 0) {
+            name = HPACK.readString(in);
+        } else {
+            name = this.table.get(nameIndex).getKey();
+        }
+        return new KeyValueStringEntry(name, HPACK.readString(in));
+    }
+}
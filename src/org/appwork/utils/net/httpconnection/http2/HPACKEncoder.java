@@ -0,0 +1,104 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpconnection.http2;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.appwork.utils.KeyValueStringEntry;
+
+/**
+ * HPACK header block encoder. not threadsafe, header blocks must be encoded in the order they are sent
+ *
+ * @author thomas
+ *
+ */
+public class HPACKEncoder {
+    private final HPACKTable table            = new HPACKTable();
+    private int              pendingTableSize = -1;
+
+    /**
+     * the peer announced SETTINGS_HEADER_TABLE_SIZE, the encoder never uses more than the default size
+     */
+    public void setMaxTableSize(final int maxTableSize) {
+        final int newSize = Math.min(maxTableSize, HPACK.DEFAULT_TABLE_SIZE);
+        if (newSize != this.table.getMaxSize()) {
+            this.table.setMaxSize(newSize);
+            this.pendingTableSize = newSize;
+        }
+    }
+
+    /**
+     * @param headers
+     *            lowercase names, pseudo headers first
+     */
+    public void encode(final List<KeyValueStringEntry> headers, final ByteArrayOutputStream out) {
+        if (this.pendingTableSize >= 0) {
+            HPACK.writeInteger(out, 0x20, 5, this.pendingTableSize);
+            this.pendingTableSize = -1;
+        }
+        for (final KeyValueStringEntry header : headers) {
+            final String name = header.getKey();
+            final String value = header.getValue() == null ? "" : header.getValue();
+            final int index = this.table.find(name, value);
+            if (index > 0) {
+                HPACK.writeInteger(out, 0x80, 7, index);
+                continue;
+            }
+            if (this.isSensitive(name, value)) {
+                HPACK.writeInteger(out, 0x10, 4, -index);
+            } else {
+                HPACK.writeInteger(out, 0x40, 6, -index);
+                this.table.add(name, value);
+            }
+            if (index == 0) {
+                HPACK.writeString(out, name);
+            }
+            HPACK.writeString(out, value);
+        }
+    }
+
+    /**
+     * credentials and short cookies are never indexed, see RFC 7541 7.1.3
+     */
+    protected boolean isSensitive(final String name, final String value) {
+        if ("authorization".equals(name) || "proxy-authorization".equals(name)) {
+            return true;
+        } else if ("cookie".equals(name)) {
+            return value.length() < 20;
+        } else {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpconnection.http2;
+
+import java.util.ArrayList;
+
+import org.appwork.utils.KeyValueStringEntry;
+
+/**
+ * HPACK dynamic table, the newest entry has the lowest index
+ *
+ * @author thomas
+ *
+ */
+class HPACKTable {
+    private final ArrayList<KeyValueStringEntry> entries = new ArrayList<KeyValueStringEntry>();
+    private int                                  size    = 0;
+    private int                                  maxSize = HPACK.DEFAULT_TABLE_SIZE;
+
+    static int sizeOf(final String name, final String value) {
+        return name.length() + value.length() + 32;
+    }
+
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    public void setMaxSize(final int maxSize) {
+        this.maxSize = maxSize;
+        this.evict(0);
+    }
+
+    public int length() {
+        return this.entries.size();
+    }
+
+    public void add(final String name, final String value) {
+        final int entrySize = sizeOf(name, value);
+        this.evict(entrySize);
+        if (entrySize <= this.maxSize) {
+            this.entries.add(0, new KeyValueStringEntry(name, value));
+            this.size += entrySize;
+        }
+    }
+
+    private void evict(final int required) {
+        while (this.size + required > this.maxSize && this.entries.size() > 0) {
+            final KeyValueStringEntry removed = this.entries.remove(this.entries.size() - 1);
+            this.size -= sizeOf(removed.getKey(), removed.getValue());
+        }
+    }
+
+    /**
+     * @param index
+     *            HPACK index, static and dynamic table combined
+     */
+    public KeyValueStringEntry get(final int index) throws HTTP2Exception {
+        if (index > 0 && index <= HPACK.STATIC_TABLE.length) {
+            return new KeyValueStringEntry(HPACK.STATIC_TABLE[index - 1][0], HPACK.STATIC_TABLE[index - 1][1]);
+        }
+        final int dynamicIndex = index - HPACK.STATIC_TABLE.length - 1;
+        if (dynamicIndex >= 0 && dynamicIndex < this.entries.size()) {
+            return this.entries.get(dynamicIndex);
+        }
+        throw new HTTP2Exception(HTTP2Exception.COMPRESSION_ERROR, "invalid table index " + index);
+    }
+
+    /**
+     * @return HPACK index of name:value, negative index if only the name matches, 0 if not found
+     */
+    public int find(final String name, final String value) {
+        final int staticIndex = HPACK.getStaticIndex(name, value);
+        if (staticIndex > 0) {
+            return staticIndex;
+        }
+        int nameIndex = -HPACK.getStaticNameIndex(name);
+        for (int index = 0; index < this.entries.size(); index++) {
+            final KeyValueStringEntry entry = this.entries.get(index);
+            if (entry.getKey().equals(name)) {
+                if (entry.getValue().equals(value)) {
+                    return index + HPACK.STATIC_TABLE.length + 1;
+                } else if (nameIndex == 0) {
+                    nameIndex = -(index + HPACK.STATIC_TABLE.length + 1);
+                }
+            }
+        }
+        return nameIndex;
+    }
+}
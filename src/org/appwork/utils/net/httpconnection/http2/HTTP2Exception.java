@@ -0,0 +1,119 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpconnection.http2;
+
+import java.io.IOException;
+
+/**
+ * connection or stream error with an HTTP/2 error code (RFC 7540 7)
+ *
+ * @author thomas
+ *
+ */
+public class HTTP2Exception extends IOException {
+    private static final long serialVersionUID    = -3019873423577862213L;
+    public static final int   NO_ERROR            = 0x0;
+    public static final int   PROTOCOL_ERROR      = 0x1;
+    public static final int   INTERNAL_ERROR      = 0x2;
+    public static final int   FLOW_CONTROL_ERROR  = 0x3;
+    public static final int   SETTINGS_TIMEOUT    = 0x4;
+    public static final int   STREAM_CLOSED       = 0x5;
+    public static final int   FRAME_SIZE_ERROR    = 0x6;
+    public static final int   REFUSED_STREAM      = 0x7;
+    public static final int   CANCEL              = 0x8;
+    public static final int   COMPRESSION_ERROR   = 0x9;
+    public static final int   CONNECT_ERROR       = 0xa;
+    public static final int   ENHANCE_YOUR_CALM   = 0xb;
+    public static final int   INADEQUATE_SECURITY = 0xc;
+    public static final int   HTTP_1_1_REQUIRED   = 0xd;
+    private final int         errorCode;
+    private final boolean     retryable;
+
+    public HTTP2Exception(final int errorCode, final String message) {
+        this(errorCode, message, false);
+    }
+
+    /**
+     * @param retryable
+     *            true if the server did not process the stream, so the request can be sent again on another connection
+     */
+    public HTTP2Exception(final int errorCode, final String message, final boolean retryable) {
+        super(message + " (" + getErrorName(errorCode) + ")");
+        this.errorCode = errorCode;
+        this.retryable = retryable || errorCode == REFUSED_STREAM;
+    }
+
+    public int getErrorCode() {
+        return this.errorCode;
+    }
+
+    public boolean isRetryable() {
+        return this.retryable;
+    }
+
+    public static String getErrorName(final int errorCode) {
+        switch (errorCode) {
+        case NO_ERROR:
+            return "NO_ERROR";
+        case PROTOCOL_ERROR:
+            return "PROTOCOL_ERROR";
+        case INTERNAL_ERROR:
+            return "INTERNAL_ERROR";
+        case FLOW_CONTROL_ERROR:
+            return "FLOW_CONTROL_ERROR";
+        case SETTINGS_TIMEOUT:
+            return "SETTINGS_TIMEOUT";
+        case STREAM_CLOSED:
+            return "STREAM_CLOSED";
+        case FRAME_SIZE_ERROR:
+            return "FRAME_SIZE_ERROR";
+        case REFUSED_STREAM:
+            return "REFUSED_STREAM";
+        case CANCEL:
+            return "CANCEL";
+        case COMPRESSION_ERROR:
+            return "COMPRESSION_ERROR";
+        case CONNECT_ERROR:
+            return "CONNECT_ERROR";
+        case ENHANCE_YOUR_CALM:
+            return "ENHANCE_YOUR_CALM";
+        case INADEQUATE_SECURITY:
+            return "INADEQUATE_SECURITY";
+        case HTTP_1_1_REQUIRED:
+            return "HTTP_1_1_REQUIRED";
+        default:
+            return "0x" + Integer.toHexString(errorCode);
+        }
+    }
+}
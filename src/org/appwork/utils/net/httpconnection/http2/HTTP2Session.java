@@ -0,0 +1,694 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpconnection.http2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.appwork.utils.KeyValueStringEntry;
+import org.appwork.utils.net.httpconnection.SocketStreamInterface;
+
+/**
+ * client side HTTP/2 connection (RFC 7540) that multiplexes concurrent {@link HTTP2Stream}s over one socket. a daemon thread reads and
+ * dispatches all incoming frames, writers share the socket under a write lock.
+ *
+ * @author thomas
+ *
+ */
+public class HTTP2Session implements Runnable {
+    public static final byte[]                            PREFACE                         = new byte[] { 'P', 'R', 'I', ' ', '*', ' ', 'H', 'T', 'T', 'P', '/', '2', '.', '0', '\r', '\n', '\r', '\n', 'S', 'M', '\r', '\n', '\r', '\n' };
+    public static final int                               DATA                            = 0x0;
+    public static final int                               HEADERS                         = 0x1;
+    public static final int                               PRIORITY                        = 0x2;
+    public static final int                               RST_STREAM                      = 0x3;
+    public static final int                               SETTINGS                        = 0x4;
+    public static final int                               PUSH_PROMISE                    = 0x5;
+    public static final int                               PING                            = 0x6;
+    public static final int                               GOAWAY                          = 0x7;
+    public static final int                               WINDOW_UPDATE                   = 0x8;
+    public static final int                               CONTINUATION                    = 0x9;
+    public static final int                               FLAG_END_STREAM                 = 0x1;
+    public static final int                               FLAG_ACK                        = 0x1;
+    public static final int                               FLAG_END_HEADERS                = 0x4;
+    public static final int                               FLAG_PADDED                     = 0x8;
+    public static final int                               FLAG_PRIORITY                   = 0x20;
+    public static final int                               SETTINGS_HEADER_TABLE_SIZE      = 0x1;
+    public static final int                               SETTINGS_ENABLE_PUSH            = 0x2;
+    public static final int                               SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    public static final int                               SETTINGS_INITIAL_WINDOW_SIZE    = 0x4;
+    public static final int                               SETTINGS_MAX_FRAME_SIZE         = 0x5;
+    public static final int                               SETTINGS_MAX_HEADER_LIST_SIZE   = 0x6;
+    public static final int                               DEFAULT_WINDOW_SIZE             = 65535;
+    public static final int                               DEFAULT_MAX_FRAME_SIZE          = 16384;
+    /**
+     * receive window of every stream, announced via SETTINGS_INITIAL_WINDOW_SIZE
+     */
+    public static final int                               STREAM_WINDOW_SIZE              = 1024 * 1024;
+    /**
+     * receive window of the connection, data is credited on arrival, streams limit the buffered amount
+     */
+    public static final int                               CONNECTION_WINDOW_SIZE          = 16 * 1024 * 1024;
+    private static final int                              MAX_HEADER_BLOCK_SIZE           = 1024 * 1024;
+    private final SocketStreamInterface                   socketStream;
+    private final String                                  name;
+    private final DataInputStream                         in;
+    private final OutputStream                            out;
+    private final Object                                  writeLock                       = new Object();
+    private final Object                                  flowLock                        = new Object();
+    private final Object                                  streamLock                      = new Object();
+    private final HPACKEncoder                            encoder                         = new HPACKEncoder();
+    private final HPACKDecoder                            decoder                         = new HPACKDecoder();
+    private final ConcurrentHashMap<Integer, HTTP2Stream> streams                         = new ConcurrentHashMap<Integer, HTTP2Stream>();
+    private final AtomicLong                              openedStreams                   = new AtomicLong(0);
+    private int                                           nextStreamID                    = 1;
+    private long                                          connectionSendWindow            = DEFAULT_WINDOW_SIZE;
+    private int                                           connectionReceived              = 0;
+    private volatile int                                  remoteMaxConcurrentStreams      = Integer.MAX_VALUE;
+    private volatile int                                  remoteInitialWindowSize         = DEFAULT_WINDOW_SIZE;
+    private volatile int                                  remoteMaxFrameSize              = DEFAULT_MAX_FRAME_SIZE;
+    private volatile boolean                              goAway                          = false;
+    private volatile IOException                          closedReason                    = null;
+    private volatile long                                 lastActivity                    = System.currentTimeMillis();
+    private volatile long                                 idleTimeout                     = 60 * 1000l;
+    private Thread                                        reader                          = null;
+
+    /**
+     * @param socketStream
+     *            connected socket, TLS with negotiated h2 or plain text with prior knowledge
+     */
+    public HTTP2Session(final SocketStreamInterface socketStream, final String name) throws IOException {
+        this.socketStream = socketStream;
+        this.name = name;
+        this.in = new DataInputStream(new BufferedInputStream(socketStream.getInputStream(), DEFAULT_MAX_FRAME_SIZE));
+        this.out = new BufferedOutputStream(socketStream.getOutputStream(), DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * sends the connection preface and starts the reader thread
+     */
+    public synchronized void start() throws IOException {
+        if (this.reader != null) {
+            return;
+        }
+        synchronized (this.writeLock) {
+            this.out.write(PREFACE);
+            final byte[] settings = new byte[18];
+            putSetting(settings, 0, SETTINGS_ENABLE_PUSH, 0);
+            putSetting(settings, 6, SETTINGS_INITIAL_WINDOW_SIZE, STREAM_WINDOW_SIZE);
+            putSetting(settings, 12, SETTINGS_MAX_FRAME_SIZE, DEFAULT_MAX_FRAME_SIZE);
+            this.writeFrame(SETTINGS, 0, 0, settings, 0, settings.length);
+            this.writeFrame(WINDOW_UPDATE, 0, 0, toBytes(CONNECTION_WINDOW_SIZE - DEFAULT_WINDOW_SIZE), 0, 4);
+            this.out.flush();
+        }
+        this.socketStream.getSocket().setSoTimeout((int) Math.min(Integer.MAX_VALUE, this.idleTimeout));
+        this.reader = new Thread(this, "HTTP2Session:" + this.name);
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    private static void putSetting(final byte[] buffer, final int offset, final int id, final int value) {
+        buffer[offset] = (byte) (id >>> 8);
+        buffer[offset + 1] = (byte) id;
+        buffer[offset + 2] = (byte) (value >>> 24);
+        buffer[offset + 3] = (byte) (value >>> 16);
+        buffer[offset + 4] = (byte) (value >>> 8);
+        buffer[offset + 5] = (byte) value;
+    }
+
+    private static byte[] toBytes(final int value) {
+        return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value };
+    }
+
+    private static int toInt(final byte[] buffer, final int offset) {
+        return (buffer[offset] & 0xff) << 24 | (buffer[offset + 1] & 0xff) << 16 | (buffer[offset + 2] & 0xff) << 8 | buffer[offset + 3] & 0xff;
+    }
+
+    public static String getHeader(final List<KeyValueStringEntry> headers, final String name) {
+        for (final KeyValueStringEntry header : headers) {
+            if (name.equals(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public SocketStreamInterface getSocketStream() {
+        return this.socketStream;
+    }
+
+    /**
+     * @param idleTimeout
+     *            the session is closed after idleTimeout ms without open streams
+     */
+    public void setIdleTimeout(final long idleTimeout) {
+        this.idleTimeout = Math.max(1000, idleTimeout);
+    }
+
+    /**
+     * @return true if new streams can be opened on this session
+     */
+    public boolean isUsable() {
+        return this.closedReason == null && !this.goAway && this.nextStreamID > 0;
+    }
+
+    public boolean isClosed() {
+        return this.closedReason != null;
+    }
+
+    /**
+     * @return number of currently open streams
+     */
+    public int getActiveStreams() {
+        return this.streams.size();
+    }
+
+    /**
+     * @return number of streams opened over the lifetime of the session
+     */
+    public long getOpenedStreams() {
+        return this.openedStreams.get();
+    }
+
+    public int getRemoteMaxConcurrentStreams() {
+        return this.remoteMaxConcurrentStreams;
+    }
+
+    private void ensureOpen() throws IOException {
+        final IOException closedReason = this.closedReason;
+        if (closedReason != null) {
+            throw new HTTP2Exception(HTTP2Exception.CONNECT_ERROR, "HTTP/2 session closed: " + closedReason.getMessage(), true);
+        }
+    }
+
+    /**
+     * opens a new stream and sends the request header block. waits while the peer's SETTINGS_MAX_CONCURRENT_STREAMS are in use
+     *
+     * @param headers
+     *            lowercase names, pseudo headers first
+     * @param endStream
+     *            true if the request has no body
+     */
+    public HTTP2Stream openStream(final List<KeyValueStringEntry> headers, final boolean endStream, final int timeout) throws IOException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        synchronized (this.streamLock) {
+            while (this.closedReason == null && !this.goAway && this.streams.size() >= this.remoteMaxConcurrentStreams) {
+                try {
+                    if (timeout == 0) {
+                        this.streamLock.wait();
+                    } else {
+                        final long wait = deadline - System.currentTimeMillis();
+                        if (wait <= 0) {
+                            throw new SocketTimeoutException("HTTP/2 session " + this.name + ": no stream available");
+                        }
+                        this.streamLock.wait(wait);
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+        }
+        final ByteArrayOutputStream block = new ByteArrayOutputStream();
+        final HTTP2Stream stream;
+        synchronized (this.writeLock) {
+            this.ensureOpen();
+            if (this.goAway || this.nextStreamID <= 0) {
+                throw new HTTP2Exception(HTTP2Exception.REFUSED_STREAM, "HTTP/2 session " + this.name + " is going away", true);
+            }
+            final int id = this.nextStreamID;
+            this.nextStreamID += 2;
+            synchronized (this.flowLock) {
+                stream = new HTTP2Stream(this, id, this.remoteInitialWindowSize, STREAM_WINDOW_SIZE);
+                this.streams.put(id, stream);
+            }
+            this.openedStreams.incrementAndGet();
+            this.encoder.encode(headers, block);
+            final byte[] bytes = block.toByteArray();
+            int offset = 0;
+            int type = HEADERS;
+            do {
+                final int length = Math.min(bytes.length - offset, this.remoteMaxFrameSize);
+                int flags = offset + length == bytes.length ? FLAG_END_HEADERS : 0;
+                if (endStream && type == HEADERS) {
+                    flags |= FLAG_END_STREAM;
+                }
+                this.writeFrame(type, flags, id, bytes, offset, length);
+                offset += length;
+                type = CONTINUATION;
+            } while (offset < bytes.length);
+            this.flush();
+        }
+        if (endStream) {
+            stream.onLocalClosed();
+        }
+        return stream;
+    }
+
+    /**
+     * sends DATA frames within the flow control windows of stream and connection
+     */
+    void writeData(final HTTP2Stream stream, final byte[] b, int off, int len, final boolean endStream) throws IOException {
+        if (len == 0 && !endStream) {
+            return;
+        }
+        do {
+            int chunk = 0;
+            synchronized (this.flowLock) {
+                while (true) {
+                    this.ensureOpen();
+                    stream.ensureWritable();
+                    if (len == 0) {
+                        break;
+                    }
+                    final long available = Math.min(Math.min(this.connectionSendWindow, stream.sendWindow), this.remoteMaxFrameSize);
+                    if (available > 0) {
+                        chunk = (int) Math.min(len, available);
+                        this.connectionSendWindow -= chunk;
+                        stream.sendWindow -= chunk;
+                        break;
+                    }
+                    try {
+                        this.flowLock.wait(1000);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException(e);
+                    }
+                }
+            }
+            final boolean last = endStream && chunk == len;
+            synchronized (this.writeLock) {
+                this.ensureOpen();
+                this.writeFrame(DATA, last ? FLAG_END_STREAM : 0, stream.getId(), b, off, chunk);
+                this.flush();
+            }
+            if (last) {
+                stream.onLocalClosed();
+            }
+            off += chunk;
+            len -= chunk;
+        } while (len > 0);
+    }
+
+    void sendWindowUpdate(final int streamID, final int increment) {
+        this.sendFrame(WINDOW_UPDATE, 0, streamID, toBytes(increment));
+    }
+
+    void sendReset(final int streamID, final int errorCode) {
+        this.sendFrame(RST_STREAM, 0, streamID, toBytes(errorCode));
+    }
+
+    private void sendFrame(final int type, final int flags, final int streamID, final byte[] payload) {
+        if (this.closedReason == null) {
+            try {
+                synchronized (this.writeLock) {
+                    this.writeFrame(type, flags, streamID, payload, 0, payload.length);
+                    this.flush();
+                }
+            } catch (final IOException e) {
+                this.close(e);
+            }
+        }
+    }
+
+    /**
+     * caller must hold the write lock
+     */
+    private void writeFrame(final int type, final int flags, final int streamID, final byte[] payload, final int offset, final int length) throws IOException {
+        try {
+            this.out.write(length >>> 16);
+            this.out.write(length >>> 8);
+            this.out.write(length);
+            this.out.write(type);
+            this.out.write(flags);
+            this.out.write(toBytes(streamID & 0x7fffffff));
+            if (length > 0) {
+                this.out.write(payload, offset, length);
+            }
+        } catch (final IOException e) {
+            this.close(e);
+            throw e;
+        }
+    }
+
+    private void flush() throws IOException {
+        try {
+            this.out.flush();
+        } catch (final IOException e) {
+            this.close(e);
+            throw e;
+        }
+    }
+
+    void onStreamClosed(final HTTP2Stream stream) {
+        if (this.streams.remove(stream.getId(), stream)) {
+            this.lastActivity = System.currentTimeMillis();
+            synchronized (this.streamLock) {
+                this.streamLock.notifyAll();
+            }
+            if (this.goAway && this.streams.isEmpty()) {
+                this.close(new HTTP2Exception(HTTP2Exception.NO_ERROR, "GOAWAY"));
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            final ByteArrayOutputStream headerBlock = new ByteArrayOutputStream();
+            int headerStreamID = 0;
+            boolean headerEndStream = false;
+            while (true) {
+                final int first;
+                try {
+                    first = this.in.read();
+                } catch (final SocketTimeoutException e) {
+                    /* only safe at frame boundary, a timeout within a frame is fatal */
+                    if (this.streams.isEmpty() && System.currentTimeMillis() - this.lastActivity >= this.idleTimeout) {
+                        this.shutdown();
+                        return;
+                    }
+                    continue;
+                }
+                if (first == -1) {
+                    throw new EOFException("HTTP/2 session closed by peer");
+                }
+                final int length = first << 16 | this.in.readUnsignedShort();
+                final int type = this.in.readUnsignedByte();
+                final int flags = this.in.readUnsignedByte();
+                final int streamID = this.in.readInt() & 0x7fffffff;
+                if (length > DEFAULT_MAX_FRAME_SIZE) {
+                    throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, "frame size " + length);
+                }
+                final byte[] payload = new byte[length];
+                this.in.readFully(payload);
+                this.lastActivity = System.currentTimeMillis();
+                if (headerStreamID != 0 && (type != CONTINUATION || streamID != headerStreamID)) {
+                    throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "expected CONTINUATION");
+                }
+                switch (type) {
+                case DATA:
+                    this.onData(streamID, flags, payload);
+                    break;
+                case HEADERS:
+                case CONTINUATION: {
+                    if (streamID == 0 || (type == CONTINUATION && headerStreamID == 0)) {
+                        throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "unexpected header frame");
+                    }
+                    int offset = 0;
+                    int end = length;
+                    if (type == HEADERS) {
+                        if ((flags & FLAG_PADDED) != 0) {
+                            end -= payload[offset++] & 0xff;
+                        }
+                        if ((flags & FLAG_PRIORITY) != 0) {
+                            offset += 5;
+                        }
+                        if (offset > end) {
+                            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "invalid HEADERS padding");
+                        }
+                        headerStreamID = streamID;
+                        headerEndStream = (flags & FLAG_END_STREAM) != 0;
+                        headerBlock.reset();
+                    }
+                    headerBlock.write(payload, offset, end - offset);
+                    if (headerBlock.size() > MAX_HEADER_BLOCK_SIZE) {
+                        throw new HTTP2Exception(HTTP2Exception.ENHANCE_YOUR_CALM, "header block too large");
+                    }
+                    if ((flags & FLAG_END_HEADERS) != 0) {
+                        final byte[] block = headerBlock.toByteArray();
+                        /* always decode to keep the HPACK state in sync */
+                        final List<KeyValueStringEntry> headers = this.decoder.decode(block, 0, block.length);
+                        final HTTP2Stream stream = this.streams.get(headerStreamID);
+                        if (stream != null) {
+                            stream.onHeaders(headers, headerEndStream);
+                        }
+                        headerStreamID = 0;
+                    }
+                    break;
+                }
+                case RST_STREAM: {
+                    if (streamID == 0 || length != 4) {
+                        throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "invalid RST_STREAM");
+                    }
+                    final HTTP2Stream stream = this.streams.get(streamID);
+                    if (stream != null) {
+                        final int errorCode = toInt(payload, 0);
+                        stream.fail(new HTTP2Exception(errorCode, "HTTP/2 stream " + streamID + " reset by peer"));
+                    }
+                    break;
+                }
+                case SETTINGS:
+                    this.onSettings(streamID, flags, payload);
+                    break;
+                case PUSH_PROMISE:
+                    throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "PUSH_PROMISE but push is disabled");
+                case PING:
+                    if (streamID != 0 || length != 8) {
+                        throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "invalid PING");
+                    }
+                    if ((flags & FLAG_ACK) == 0) {
+                        this.sendFrame(PING, FLAG_ACK, 0, payload);
+                    }
+                    break;
+                case GOAWAY:
+                    if (streamID != 0 || length < 8) {
+                        throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "invalid GOAWAY");
+                    }
+                    this.onGoAway(toInt(payload, 0) & 0x7fffffff, toInt(payload, 4));
+                    break;
+                case WINDOW_UPDATE:
+                    if (length != 4) {
+                        throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, "invalid WINDOW_UPDATE");
+                    }
+                    this.onWindowUpdate(streamID, toInt(payload, 0) & 0x7fffffff);
+                    break;
+                default:
+                    /* PRIORITY and unknown frame types are ignored */
+                    break;
+                }
+            }
+        } catch (final HTTP2Exception e) {
+            this.sendGoAway(e.getErrorCode());
+            this.close(e);
+        } catch (final IOException e) {
+            this.close(e);
+        } catch (final Throwable e) {
+            this.sendGoAway(HTTP2Exception.INTERNAL_ERROR);
+            this.close(new IOException(e));
+        }
+    }
+
+    private void onData(final int streamID, final int flags, final byte[] payload) throws HTTP2Exception {
+        if (streamID == 0) {
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "DATA on stream 0");
+        }
+        int offset = 0;
+        int end = payload.length;
+        if ((flags & FLAG_PADDED) != 0) {
+            if (payload.length == 0) {
+                throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "invalid DATA padding");
+            }
+            end -= payload[offset++] & 0xff;
+            if (end < offset) {
+                throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "invalid DATA padding");
+            }
+        }
+        this.connectionReceived += payload.length;
+        if (this.connectionReceived >= CONNECTION_WINDOW_SIZE / 2) {
+            this.sendWindowUpdate(0, this.connectionReceived);
+            this.connectionReceived = 0;
+        }
+        final HTTP2Stream stream = this.streams.get(streamID);
+        if (stream != null) {
+            try {
+                stream.onData(payload, offset, end - offset, payload.length, (flags & FLAG_END_STREAM) != 0);
+            } catch (final HTTP2Exception e) {
+                /* stream error */
+                this.sendReset(streamID, e.getErrorCode());
+                stream.fail(e);
+            }
+        }
+    }
+
+    private void onSettings(final int streamID, final int flags, final byte[] payload) throws HTTP2Exception {
+        if (streamID != 0) {
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "SETTINGS on stream " + streamID);
+        }
+        if ((flags & FLAG_ACK) != 0) {
+            if (payload.length != 0) {
+                throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, "SETTINGS ACK with payload");
+            }
+            return;
+        }
+        if (payload.length % 6 != 0) {
+            throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, "invalid SETTINGS length");
+        }
+        for (int offset = 0; offset < payload.length; offset += 6) {
+            final int id = (payload[offset] & 0xff) << 8 | payload[offset + 1] & 0xff;
+            final int value = toInt(payload, offset + 2);
+            switch (id) {
+            case SETTINGS_HEADER_TABLE_SIZE:
+                synchronized (this.writeLock) {
+                    this.encoder.setMaxTableSize(value < 0 ? Integer.MAX_VALUE : value);
+                }
+                break;
+            case SETTINGS_MAX_CONCURRENT_STREAMS:
+                this.remoteMaxConcurrentStreams = value < 0 ? Integer.MAX_VALUE : value;
+                synchronized (this.streamLock) {
+                    this.streamLock.notifyAll();
+                }
+                break;
+            case SETTINGS_INITIAL_WINDOW_SIZE:
+                if (value < 0) {
+                    throw new HTTP2Exception(HTTP2Exception.FLOW_CONTROL_ERROR, "invalid SETTINGS_INITIAL_WINDOW_SIZE");
+                }
+                synchronized (this.flowLock) {
+                    final int delta = value - this.remoteInitialWindowSize;
+                    this.remoteInitialWindowSize = value;
+                    for (final HTTP2Stream stream : this.streams.values()) {
+                        stream.sendWindow += delta;
+                    }
+                    this.flowLock.notifyAll();
+                }
+                break;
+            case SETTINGS_MAX_FRAME_SIZE:
+                if (value < DEFAULT_MAX_FRAME_SIZE || value > 0xffffff) {
+                    throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "invalid SETTINGS_MAX_FRAME_SIZE");
+                }
+                this.remoteMaxFrameSize = value;
+                break;
+            default:
+                /* ENABLE_PUSH, MAX_HEADER_LIST_SIZE and unknown settings */
+                break;
+            }
+        }
+        this.sendFrame(SETTINGS, FLAG_ACK, 0, new byte[0]);
+    }
+
+    private void onWindowUpdate(final int streamID, final int increment) throws HTTP2Exception {
+        if (increment == 0) {
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "WINDOW_UPDATE with 0 increment");
+        }
+        synchronized (this.flowLock) {
+            if (streamID == 0) {
+                this.connectionSendWindow += increment;
+                if (this.connectionSendWindow > Integer.MAX_VALUE) {
+                    throw new HTTP2Exception(HTTP2Exception.FLOW_CONTROL_ERROR, "connection window overflow");
+                }
+            } else {
+                final HTTP2Stream stream = this.streams.get(streamID);
+                if (stream != null) {
+                    stream.sendWindow += increment;
+                }
+            }
+            this.flowLock.notifyAll();
+        }
+    }
+
+    private void onGoAway(final int lastStreamID, final int errorCode) {
+        this.goAway = true;
+        synchronized (this.streamLock) {
+            this.streamLock.notifyAll();
+        }
+        final List<HTTP2Stream> unprocessed = new ArrayList<HTTP2Stream>();
+        for (final HTTP2Stream stream : this.streams.values()) {
+            if (stream.getId() > lastStreamID) {
+                unprocessed.add(stream);
+            }
+        }
+        for (final HTTP2Stream stream : unprocessed) {
+            stream.fail(new HTTP2Exception(errorCode, "HTTP/2 stream " + stream.getId() + " not processed (GOAWAY)", true));
+        }
+        if (this.streams.isEmpty()) {
+            this.close(new HTTP2Exception(errorCode, "GOAWAY"));
+        }
+    }
+
+    private void sendGoAway(final int errorCode) {
+        final byte[] payload = new byte[8];
+        System.arraycopy(toBytes(0), 0, payload, 0, 4);
+        System.arraycopy(toBytes(errorCode), 0, payload, 4, 4);
+        this.sendFrame(GOAWAY, 0, 0, payload);
+    }
+
+    /**
+     * graceful close, open streams fail
+     */
+    public void shutdown() {
+        this.goAway = true;
+        this.sendGoAway(HTTP2Exception.NO_ERROR);
+        this.close(new HTTP2Exception(HTTP2Exception.NO_ERROR, "HTTP/2 session shutdown"));
+    }
+
+    private void close(final IOException reason) {
+        synchronized (this) {
+            if (this.closedReason != null) {
+                return;
+            }
+            this.closedReason = reason;
+        }
+        try {
+            this.socketStream.close();
+        } catch (final Throwable ignore) {
+        }
+        for (final HTTP2Stream stream : this.streams.values()) {
+            stream.fail(new HTTP2Exception(HTTP2Exception.CONNECT_ERROR, "HTTP/2 session closed: " + reason.getMessage()));
+        }
+        synchronized (this.flowLock) {
+            this.flowLock.notifyAll();
+        }
+        synchronized (this.streamLock) {
+            this.streamLock.notifyAll();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HTTP2Session[" + this.name + "|streams=" + this.streams.size() + "|opened=" + this.openedStreams.get() + (this.closedReason != null ? "|closed" : "") + "]";
+    }
+}
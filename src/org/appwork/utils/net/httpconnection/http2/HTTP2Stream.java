@@ -0,0 +1,411 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpconnection.http2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.appwork.utils.KeyValueStringEntry;
+
+/**
+ * one request/response exchange of a {@link HTTP2Session}
+ *
+ * @author thomas
+ *
+ */
+public class HTTP2Stream {
+    private final HTTP2Session           session;
+    private final int                    id;
+    private final int                    windowSize;
+    /**
+     * guarded by the flow lock of the session
+     */
+    long                                 sendWindow;
+    private int                          receiveWindow;
+    private int                          unacknowledged   = 0;
+    private final LinkedList<ByteBuffer> data             = new LinkedList<ByteBuffer>();
+    private List<KeyValueStringEntry>    responseHeaders  = null;
+    private List<KeyValueStringEntry>    trailers         = null;
+    private volatile boolean             localClosed      = false;
+    private boolean                      remoteClosed     = false;
+    private volatile IOException         failure          = null;
+    private volatile int                 readTimeout      = 30000;
+    private final InputStream            inputStream;
+    private final OutputStream           outputStream;
+    private Runnable                     responseListener = null;
+
+    HTTP2Stream(final HTTP2Session session, final int id, final long sendWindow, final int windowSize) {
+        this.session = session;
+        this.id = id;
+        this.sendWindow = sendWindow;
+        this.windowSize = windowSize;
+        this.receiveWindow = windowSize;
+        this.inputStream = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                final byte[] b = new byte[1];
+                final int read = this.read(b, 0, 1);
+                return read == -1 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                return HTTP2Stream.this.read(b, off, len);
+            }
+
+            @Override
+            public int available() throws IOException {
+                synchronized (HTTP2Stream.this) {
+                    return HTTP2Stream.this.data.size() > 0 ? HTTP2Stream.this.data.getFirst().remaining() : 0;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                HTTP2Stream.this.cancel();
+            }
+        };
+        this.outputStream = new OutputStream() {
+            private final byte[] buffer   = new byte[HTTP2Session.DEFAULT_MAX_FRAME_SIZE];
+            private int          buffered = 0;
+
+            @Override
+            public void write(final int b) throws IOException {
+                if (this.buffered == this.buffer.length) {
+                    this.flush();
+                }
+                this.buffer[this.buffered++] = (byte) b;
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                if (len >= this.buffer.length) {
+                    this.flush();
+                    HTTP2Stream.this.session.writeData(HTTP2Stream.this, b, off, len, false);
+                } else {
+                    if (this.buffered + len > this.buffer.length) {
+                        this.flush();
+                    }
+                    System.arraycopy(b, off, this.buffer, this.buffered, len);
+                    this.buffered += len;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (this.buffered > 0) {
+                    final int length = this.buffered;
+                    this.buffered = 0;
+                    HTTP2Stream.this.session.writeData(HTTP2Stream.this, this.buffer, 0, length, false);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                synchronized (HTTP2Stream.this) {
+                    if (HTTP2Stream.this.localClosed) {
+                        return;
+                    }
+                }
+                final int length = this.buffered;
+                this.buffered = 0;
+                HTTP2Stream.this.session.writeData(HTTP2Stream.this, this.buffer, 0, length, true);
+            }
+        };
+    }
+
+    public int getId() {
+        return this.id;
+    }
+
+    public HTTP2Session getSession() {
+        return this.session;
+    }
+
+    public void setReadTimeout(final int readTimeout) {
+        this.readTimeout = Math.max(0, readTimeout);
+    }
+
+    /**
+     * @return request body, closing it ends the stream
+     */
+    public OutputStream getOutputStream() {
+        return this.outputStream;
+    }
+
+    /**
+     * @return response body, closing it before the end cancels the stream
+     */
+    public InputStream getInputStream() {
+        return this.inputStream;
+    }
+
+    /**
+     * @param listener
+     *            runs once the response header block arrived or the stream failed, on the reader thread of the session or immediately
+     */
+    public void setResponseListener(final Runnable listener) {
+        synchronized (this) {
+            if (this.responseHeaders == null && this.failure == null) {
+                this.responseListener = listener;
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    private void fireResponseListener() {
+        final Runnable listener;
+        synchronized (this) {
+            listener = this.responseListener;
+            this.responseListener = null;
+        }
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * waits for the final (non 1xx) response header block
+     */
+    public synchronized List<KeyValueStringEntry> getResponseHeaders() throws IOException {
+        final long timeout = this.readTimeout;
+        final long deadline = System.currentTimeMillis() + timeout;
+        while (this.responseHeaders == null) {
+            if (this.failure != null) {
+                throw this.failure;
+            }
+            this.await(deadline, timeout);
+        }
+        return this.responseHeaders;
+    }
+
+    /**
+     * @return trailing header block or null
+     */
+    public synchronized List<KeyValueStringEntry> getTrailers() {
+        return this.trailers;
+    }
+
+    public synchronized boolean isClosed() {
+        return this.failure != null || (this.localClosed && this.remoteClosed);
+    }
+
+    private void await(final long deadline, final long timeout) throws IOException {
+        try {
+            if (timeout == 0) {
+                this.wait();
+            } else {
+                final long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    throw new SocketTimeoutException("HTTP/2 stream " + this.id + " read timed out");
+                }
+                this.wait(wait);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int read = 0;
+        final int increment;
+        synchronized (this) {
+            final long timeout = this.readTimeout;
+            final long deadline = System.currentTimeMillis() + timeout;
+            while (this.data.size() == 0) {
+                if (this.failure != null) {
+                    throw this.failure;
+                } else if (this.remoteClosed) {
+                    return -1;
+                }
+                this.await(deadline, timeout);
+            }
+            while (read < len && this.data.size() > 0) {
+                final ByteBuffer buffer = this.data.getFirst();
+                final int chunk = Math.min(len - read, buffer.remaining());
+                buffer.get(b, off + read, chunk);
+                read += chunk;
+                if (!buffer.hasRemaining()) {
+                    this.data.removeFirst();
+                }
+            }
+            increment = this.consumed(read);
+        }
+        this.sendWindowUpdate(increment);
+        return read;
+    }
+
+    /**
+     * @return window increment to send once half of the receive window got consumed, 0 otherwise
+     */
+    private int consumed(final int bytes) {
+        this.unacknowledged += bytes;
+        if (this.unacknowledged >= this.windowSize / 2 && !this.remoteClosed && this.failure == null) {
+            final int increment = this.unacknowledged;
+            this.unacknowledged = 0;
+            this.receiveWindow += increment;
+            return increment;
+        }
+        return 0;
+    }
+
+    /**
+     * must not be called while holding the stream lock
+     */
+    private void sendWindowUpdate(final int increment) {
+        if (increment > 0) {
+            this.session.sendWindowUpdate(this.id, increment);
+        }
+    }
+
+    void onHeaders(final List<KeyValueStringEntry> headers, final boolean endStream) {
+        synchronized (this) {
+            if (this.responseHeaders == null) {
+                final String status = HTTP2Session.getHeader(headers, ":status");
+                if (status != null && status.startsWith("1") && !endStream) {
+                    /* informational response, the final response follows */
+                    return;
+                }
+                this.responseHeaders = headers;
+            } else {
+                this.trailers = headers;
+            }
+            if (endStream) {
+                this.remoteClosed = true;
+            }
+            this.notifyAll();
+        }
+        this.fireResponseListener();
+        if (endStream) {
+            this.checkClosed();
+        }
+    }
+
+    void onData(final byte[] payload, final int offset, final int length, final int frameLength, final boolean endStream) throws HTTP2Exception {
+        int increment = 0;
+        synchronized (this) {
+            if (this.failure != null) {
+                return;
+            } else if (this.remoteClosed) {
+                throw new HTTP2Exception(HTTP2Exception.STREAM_CLOSED, "DATA after END_STREAM");
+            } else if (this.responseHeaders == null) {
+                throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "DATA before HEADERS");
+            }
+            this.receiveWindow -= frameLength;
+            if (this.receiveWindow < 0) {
+                throw new HTTP2Exception(HTTP2Exception.FLOW_CONTROL_ERROR, "stream receive window exceeded");
+            }
+            if (length > 0) {
+                this.data.add(ByteBuffer.wrap(payload, offset, length));
+            }
+            if (endStream) {
+                this.remoteClosed = true;
+            } else if (frameLength > length) {
+                /* padding is never consumed by the reader */
+                increment = this.consumed(frameLength - length);
+            }
+            this.notifyAll();
+        }
+        this.sendWindowUpdate(increment);
+        if (endStream) {
+            this.checkClosed();
+        }
+    }
+
+    void onLocalClosed() {
+        synchronized (this) {
+            this.localClosed = true;
+        }
+        this.checkClosed();
+    }
+
+    void ensureWritable() throws IOException {
+        if (this.failure != null) {
+            throw this.failure;
+        } else if (this.localClosed) {
+            throw new IOException("HTTP/2 stream " + this.id + " already closed");
+        }
+    }
+
+    void fail(final IOException e) {
+        synchronized (this) {
+            if (this.failure == null) {
+                this.failure = e;
+            }
+            this.data.clear();
+            this.notifyAll();
+        }
+        this.fireResponseListener();
+        this.session.onStreamClosed(this);
+    }
+
+    private void checkClosed() {
+        final boolean closed;
+        synchronized (this) {
+            closed = this.localClosed && this.remoteClosed;
+        }
+        if (closed) {
+            this.session.onStreamClosed(this);
+        }
+    }
+
+    /**
+     * resets the stream with CANCEL unless it already completed
+     */
+    public void cancel() {
+        final boolean reset;
+        synchronized (this) {
+            reset = this.failure == null && !(this.localClosed && this.remoteClosed);
+        }
+        if (reset) {
+            this.session.sendReset(this.id, HTTP2Exception.CANCEL);
+            this.fail(new HTTP2Exception(HTTP2Exception.CANCEL, "HTTP/2 stream " + this.id + " cancelled"));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HTTP2Stream[" + this.id + "|" + this.session + "]";
+    }
+}
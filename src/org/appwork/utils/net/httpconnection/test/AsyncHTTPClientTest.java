@@ -0,0 +1,167 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpconnection.test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.net.protocol.http.HTTPConstants;
+import org.appwork.net.protocol.http.HTTPConstants.ResponseCode;
+import org.appwork.remoteapi.exceptions.BasicRemoteAPIException;
+import org.appwork.utils.Application;
+import org.appwork.utils.IO;
+import org.appwork.utils.net.HTTPHeader;
+import org.appwork.utils.net.httpconnection.AsyncHTTPCallback;
+import org.appwork.utils.net.httpconnection.AsyncHTTPClient;
+import org.appwork.utils.net.httpconnection.AsyncHTTPFuture;
+import org.appwork.utils.net.httpconnection.AsyncHTTPRequest;
+import org.appwork.utils.net.httpconnection.AsyncHTTPResponse;
+import org.appwork.utils.net.httpconnection.HTTPConnection.RequestMethod;
+import org.appwork.utils.net.httpconnection.HTTPProxy;
+import org.appwork.utils.net.httpserver.HttpServer;
+import org.appwork.utils.net.httpserver.HttpServer.Engine;
+import org.appwork.utils.net.httpserver.handler.HttpRequestHandler;
+import org.appwork.utils.net.httpserver.requests.GetRequest;
+import org.appwork.utils.net.httpserver.requests.PostRequest;
+import org.appwork.utils.net.httpserver.responses.HttpResponse;
+
+/**
+ * runs many slow requests with only a few client threads, the requests have to wait for their response in parallel
+ *
+ * @author thomas
+ *
+ */
+public class AsyncHTTPClientTest {
+    private static void answer(final HttpResponse response, final byte[] bytes) {
+        try {
+            response.setResponseCode(ResponseCode.SUCCESS_OK);
+            response.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_LENGTH, String.valueOf(bytes.length)));
+            response.getOutputStream(true).write(bytes);
+            response.getOutputStream(true).close();
+        } catch (final Exception e) {
+            throw new WTFException(e);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Application.setApplication(".appwork-test");
+        final HttpServer server = new HttpServer(0, Engine.SELECTOR);
+        server.setLocalhostOnly(true);
+        server.setMaxWorkers(250);
+        server.registerRequestHandler(new HttpRequestHandler() {
+            @Override
+            public boolean onPostRequest(PostRequest request, HttpResponse response) throws BasicRemoteAPIException {
+                try {
+                    answer(response, IO.readStream(-1, request.getInputStream()));
+                    return true;
+                } catch (final Exception e) {
+                    throw new WTFException(e);
+                }
+            }
+
+            @Override
+            public boolean onGetRequest(GetRequest request, HttpResponse response) throws BasicRemoteAPIException {
+                try {
+                    Thread.sleep(request.getRequestedPath().startsWith("/wait") ? 2500 : 1000);
+                    answer(response, request.getRequestedPath().getBytes("UTF-8"));
+                    return true;
+                } catch (final Exception e) {
+                    throw new WTFException(e);
+                }
+            }
+        });
+        server.start();
+        final AsyncHTTPClient client = new AsyncHTTPClient(4);
+        try {
+            final AsyncHTTPRequest post = new AsyncHTTPRequest(new URL("http://127.0.0.1:" + server.getPort() + "/post"));
+            post.setMethod(RequestMethod.POST);
+            post.setBody("hello".getBytes("UTF-8"));
+            final AsyncHTTPResponse echo = client.execute(post).get(10, TimeUnit.SECONDS);
+            if (echo.getResponseCode() != 200 || !"hello".equals(echo.getBodyAsString())) {
+                throw new WTFException("post: " + echo);
+            }
+            /* 0 = no read timeout, the response takes longer than the expire interval */
+            final AsyncHTTPRequest wait = new AsyncHTTPRequest(new URL("http://127.0.0.1:" + server.getPort() + "/wait"));
+            wait.setReadTimeout(0);
+            final AsyncHTTPResponse waited = client.execute(wait).get(10, TimeUnit.SECONDS);
+            if (!"/wait".equals(waited.getBodyAsString())) {
+                throw new WTFException("no read timeout: " + waited);
+            }
+            final int requests = 200;
+            final AtomicInteger callbacks = new AtomicInteger(0);
+            final List<AsyncHTTPFuture> futures = new ArrayList<AsyncHTTPFuture>();
+            final long started = System.currentTimeMillis();
+            for (int i = 0; i < requests; i++) {
+                final AsyncHTTPRequest request = new AsyncHTTPRequest(new URL("http://127.0.0.1:" + server.getPort() + "/slow" + i));
+                request.setProxy(HTTPProxy.NONE);
+                futures.add(client.execute(request, new AsyncHTTPCallback() {
+                    public void onCompleted(AsyncHTTPResponse response) {
+                        callbacks.incrementAndGet();
+                    }
+
+                    public void onFailed(AsyncHTTPRequest request, Throwable e) {
+                        e.printStackTrace();
+                    }
+                }));
+            }
+            for (int i = 0; i < requests; i++) {
+                final AsyncHTTPResponse response = futures.get(i).get(30, TimeUnit.SECONDS);
+                if (!("/slow" + i).equals(response.getBodyAsString())) {
+                    throw new WTFException("unexpected response: " + response);
+                }
+            }
+            final long duration = System.currentTimeMillis() - started;
+            System.out.println(requests + " requests in " + duration + "ms, parked " + client.getParkedTotal());
+            /* 4 blocking threads would need 50 seconds */
+            if (duration > 15000) {
+                throw new WTFException("requests did not run in parallel: " + duration);
+            }
+            if (client.getParkedTotal() < requests) {
+                throw new WTFException("requests were not parked: " + client.getParkedTotal());
+            }
+            Thread.sleep(100);
+            if (callbacks.get() != requests || client.getInFlight() != 0 || client.getFailedCount() != 0) {
+                throw new WTFException("stats: " + callbacks.get() + "/" + client.getInFlight() + "/" + client.getFailedCount());
+            }
+        } finally {
+            client.shutdown();
+            server.stop();
+        }
+        System.out.println("SUCCESSFUL");
+    }
+}
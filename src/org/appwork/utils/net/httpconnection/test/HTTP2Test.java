@@ -0,0 +1,399 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpconnection.test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.utils.Application;
+import org.appwork.utils.IO;
+import org.appwork.utils.KeyValueStringEntry;
+import org.appwork.utils.net.httpconnection.HTTP2ConnectionImpl;
+import org.appwork.utils.net.httpconnection.HTTPConnection.RequestMethod;
+import org.appwork.utils.net.httpconnection.HTTPProxy;
+import org.appwork.utils.net.httpconnection.http2.HPACKDecoder;
+import org.appwork.utils.net.httpconnection.http2.HPACKEncoder;
+import org.appwork.utils.net.httpconnection.http2.HTTP2Session;
+
+/**
+ * runs concurrent requests against a local HTTP/2 stand-in server and checks that they share one connection
+ *
+ * @author thomas
+ *
+ */
+public class HTTP2Test {
+    public static void main(String[] args) throws Exception {
+        Application.setApplication(".appwork-test");
+        testHPACK();
+        final StandInServer server = new StandInServer();
+        try {
+            final String base = "http://127.0.0.1:" + server.serverSocket.getLocalPort();
+            // concurrent slow requests are multiplexed over one connection
+            final int requests = 20;
+            final AtomicInteger success = new AtomicInteger(0);
+            final ArrayList<Thread> threads = new ArrayList<Thread>();
+            final long start = System.currentTimeMillis();
+            for (int i = 0; i < requests; i++) {
+                final int index = i;
+                final Thread thread = new Thread() {
+                    public void run() {
+                        try {
+                            final String response = new String(request(base + "/slow/" + index, null), "UTF-8");
+                            if (response.equals("/slow/" + index)) {
+                                success.incrementAndGet();
+                            } else {
+                                System.out.println("unexpected response " + response);
+                            }
+                        } catch (final Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                };
+                threads.add(thread);
+                thread.start();
+            }
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+            final long duration = System.currentTimeMillis() - start;
+            if (success.get() != requests) {
+                throw new WTFException("failed requests: " + (requests - success.get()));
+            }
+            if (duration > requests * StandInServer.DELAY / 2) {
+                throw new WTFException("requests were not multiplexed: " + duration + "ms");
+            }
+            // request body with a small server window
+            final byte[] body = new byte[200 * 1024];
+            new Random(1).nextBytes(body);
+            final String posted = new String(request(base + "/post", body), "UTF-8");
+            if (!posted.equals(body.length + ":" + Arrays.hashCode(body))) {
+                throw new WTFException("post: " + posted);
+            }
+            // response larger than the stream receive window
+            final byte[] large = request(base + "/large", null);
+            if (large.length != StandInServer.LARGE || large[large.length - 1] != (byte) (large.length - 1)) {
+                throw new WTFException("large: " + large.length);
+            }
+            if (server.connections.get() != 1) {
+                throw new WTFException("connections: " + server.connections.get());
+            }
+            if (HTTP2ConnectionImpl.getSessions().size() != 1 || HTTP2ConnectionImpl.getSessions().get(0).getOpenedStreams() != requests + 2) {
+                throw new WTFException("sessions: " + HTTP2ConnectionImpl.getSessions());
+            }
+            HTTP2ConnectionImpl.closeIdleSessions();
+        } finally {
+            server.serverSocket.close();
+        }
+        System.out.println("SUCCESSFUL");
+    }
+
+    private static byte[] request(final String url, final byte[] body) throws IOException {
+        final HTTP2ConnectionImpl connection = new HTTP2ConnectionImpl(new URL(url), HTTPProxy.NONE);
+        connection.setPriorKnowledge(true);
+        try {
+            if (body != null) {
+                connection.setRequestMethod(RequestMethod.POST);
+                connection.setRequestProperty("Content-Length", String.valueOf(body.length));
+                connection.connect();
+                connection.getOutputStream().write(body);
+            } else {
+                connection.connect();
+            }
+            final byte[] ret = IO.readStream(-1, connection.getInputStream());
+            if (!connection.isHTTP2() || connection.getResponseCode() != 200 || connection.getContentLength() != ret.length) {
+                throw new WTFException("unexpected response " + connection);
+            }
+            return ret;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void testHPACK() throws Exception {
+        // RFC 7541 C.4.1
+        final byte[] block = new byte[] { (byte) 0x82, (byte) 0x86, (byte) 0x84, 0x41, (byte) 0x8c, (byte) 0xf1, (byte) 0xe3, (byte) 0xc2, (byte) 0xe5, (byte) 0xf2, 0x3a, 0x6b, (byte) 0xa0, (byte) 0xab, (byte) 0x90, (byte) 0xf4, (byte) 0xff };
+        final List<KeyValueStringEntry> decoded = new HPACKDecoder().decode(block, 0, block.length);
+        if (decoded.size() != 4 || !"www.example.com".equals(decoded.get(3).getValue()) || !":authority".equals(decoded.get(3).getKey())) {
+            throw new WTFException("RFC 7541 C.4.1");
+        }
+        final HPACKEncoder encoder = new HPACKEncoder();
+        final HPACKDecoder decoder = new HPACKDecoder();
+        final Random random = new Random(2);
+        for (int round = 0; round < 100; round++) {
+            final List<KeyValueStringEntry> headers = new ArrayList<KeyValueStringEntry>();
+            headers.add(new KeyValueStringEntry(":method", "GET"));
+            headers.add(new KeyValueStringEntry(":path", "/round/" + round));
+            headers.add(new KeyValueStringEntry("user-agent", "HTTP2Test"));
+            final StringBuilder sb = new StringBuilder();
+            for (int i = random.nextInt(200); i > 0; i--) {
+                sb.append((char) random.nextInt(256));
+            }
+            headers.add(new KeyValueStringEntry("x-random", sb.toString()));
+            headers.add(new KeyValueStringEntry("authorization", "secret" + round));
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            encoder.encode(headers, bos);
+            final List<KeyValueStringEntry> ret = decoder.decode(bos.toByteArray(), 0, bos.size());
+            if (ret.size() != headers.size()) {
+                throw new WTFException("HPACK round " + round);
+            }
+            for (int i = 0; i < ret.size(); i++) {
+                if (!ret.get(i).getKey().equals(headers.get(i).getKey()) || !ret.get(i).getValue().equals(headers.get(i).getValue())) {
+                    throw new WTFException("HPACK round " + round + ": " + headers.get(i).getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * minimal h2c server with prior knowledge, just enough of RFC 7540 for the test
+     */
+    private static class StandInServer implements Runnable {
+        private static final int    DELAY       = 500;
+        private static final int    LARGE       = 3 * 1024 * 1024;
+        private static final int    WINDOW      = 16384;
+        private final ServerSocket  serverSocket;
+        private final AtomicInteger connections = new AtomicInteger(0);
+
+        private StandInServer() throws IOException {
+            this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            final Thread thread = new Thread(this, "StandInServer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        public void run() {
+            while (true) {
+                try {
+                    final Socket socket = this.serverSocket.accept();
+                    this.connections.incrementAndGet();
+                    final Thread thread = new Thread("StandInServer:" + socket) {
+                        public void run() {
+                            try {
+                                new Connection(socket).run();
+                            } catch (final IOException ignore) {
+                            }
+                        }
+                    };
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (final IOException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static class Connection {
+        private final Socket                                  socket;
+        private final DataInputStream                         in;
+        private final OutputStream                            out;
+        private final HPACKEncoder                            encoder          = new HPACKEncoder();
+        private final HPACKDecoder                            decoder          = new HPACKDecoder();
+        private final HashMap<Integer, ByteArrayOutputStream> bodies           = new HashMap<Integer, ByteArrayOutputStream>();
+        private final HashMap<Integer, String>                paths            = new HashMap<Integer, String>();
+        private final HashMap<Integer, long[]>                windows          = new HashMap<Integer, long[]>();
+        private long                                          connectionWindow = HTTP2Session.DEFAULT_WINDOW_SIZE;
+        private long                                          initialWindow    = HTTP2Session.DEFAULT_WINDOW_SIZE;
+
+        private Connection(final Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = socket.getOutputStream();
+        }
+
+        private void run() throws IOException {
+            final byte[] preface = new byte[HTTP2Session.PREFACE.length];
+            this.in.readFully(preface);
+            if (!Arrays.equals(preface, HTTP2Session.PREFACE)) {
+                throw new IOException("invalid preface");
+            }
+            // small window to test request flow control
+            this.writeFrame(HTTP2Session.SETTINGS, 0, 0, new byte[] { 0, HTTP2Session.SETTINGS_MAX_CONCURRENT_STREAMS, 0, 0, 0, 100, 0, HTTP2Session.SETTINGS_INITIAL_WINDOW_SIZE, 0, 0, (byte) (StandInServer.WINDOW >>> 8), (byte) StandInServer.WINDOW });
+            try {
+                while (true) {
+                    final int length = this.in.readUnsignedByte() << 16 | this.in.readUnsignedShort();
+                    final int type = this.in.readUnsignedByte();
+                    final int flags = this.in.readUnsignedByte();
+                    final int streamID = this.in.readInt() & 0x7fffffff;
+                    final byte[] payload = new byte[length];
+                    this.in.readFully(payload);
+                    switch (type) {
+                    case HTTP2Session.SETTINGS:
+                        if ((flags & HTTP2Session.FLAG_ACK) == 0) {
+                            for (int offset = 0; offset < length; offset += 6) {
+                                if (payload[offset + 1] == HTTP2Session.SETTINGS_INITIAL_WINDOW_SIZE) {
+                                    synchronized (this) {
+                                        this.initialWindow = toInt(payload, offset + 2);
+                                    }
+                                }
+                            }
+                            this.writeFrame(HTTP2Session.SETTINGS, HTTP2Session.FLAG_ACK, 0, new byte[0]);
+                        }
+                        break;
+                    case HTTP2Session.WINDOW_UPDATE:
+                        synchronized (this) {
+                            if (streamID == 0) {
+                                this.connectionWindow += toInt(payload, 0);
+                            } else if (this.windows.containsKey(streamID)) {
+                                this.windows.get(streamID)[0] += toInt(payload, 0);
+                            }
+                            this.notifyAll();
+                        }
+                        break;
+                    case HTTP2Session.HEADERS:
+                        // the client sends END_HEADERS without padding/priority
+                        for (final KeyValueStringEntry header : this.decoder.decode(payload, 0, length)) {
+                            if (":path".equals(header.getKey())) {
+                                this.paths.put(streamID, header.getValue());
+                            }
+                        }
+                        synchronized (this) {
+                            this.windows.put(streamID, new long[] { this.initialWindow });
+                        }
+                        this.bodies.put(streamID, new ByteArrayOutputStream());
+                        if ((flags & HTTP2Session.FLAG_END_STREAM) != 0) {
+                            this.respond(streamID);
+                        }
+                        break;
+                    case HTTP2Session.DATA:
+                        this.bodies.get(streamID).write(payload, 0, length);
+                        if (length > 0) {
+                            this.writeFrame(HTTP2Session.WINDOW_UPDATE, 0, 0, toBytes(length));
+                            this.writeFrame(HTTP2Session.WINDOW_UPDATE, 0, streamID, toBytes(length));
+                        }
+                        if ((flags & HTTP2Session.FLAG_END_STREAM) != 0) {
+                            this.respond(streamID);
+                        }
+                        break;
+                    case HTTP2Session.PING:
+                        if ((flags & HTTP2Session.FLAG_ACK) == 0) {
+                            this.writeFrame(HTTP2Session.PING, HTTP2Session.FLAG_ACK, 0, payload);
+                        }
+                        break;
+                    case HTTP2Session.GOAWAY:
+                        return;
+                    default:
+                        break;
+                    }
+                }
+            } finally {
+                this.socket.close();
+            }
+        }
+
+        private void respond(final int streamID) {
+            final String path = this.paths.get(streamID);
+            final byte[] request = this.bodies.remove(streamID).toByteArray();
+            new Thread() {
+                public void run() {
+                    try {
+                        final byte[] body;
+                        if (path.startsWith("/slow")) {
+                            Thread.sleep(StandInServer.DELAY);
+                            body = path.getBytes("UTF-8");
+                        } else if (path.equals("/post")) {
+                            body = (request.length + ":" + Arrays.hashCode(request)).getBytes("UTF-8");
+                        } else {
+                            body = new byte[StandInServer.LARGE];
+                            for (int i = 0; i < body.length; i++) {
+                                body[i] = (byte) i;
+                            }
+                        }
+                        Connection.this.sendResponse(streamID, body);
+                    } catch (final Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            }.start();
+        }
+
+        private void sendResponse(final int streamID, final byte[] body) throws IOException, InterruptedException {
+            final List<KeyValueStringEntry> headers = new ArrayList<KeyValueStringEntry>();
+            headers.add(new KeyValueStringEntry(":status", "200"));
+            headers.add(new KeyValueStringEntry("content-length", String.valueOf(body.length)));
+            headers.add(new KeyValueStringEntry("content-type", "application/octet-stream"));
+            synchronized (this.out) {
+                final ByteArrayOutputStream block = new ByteArrayOutputStream();
+                this.encoder.encode(headers, block);
+                this.writeFrame(HTTP2Session.HEADERS, HTTP2Session.FLAG_END_HEADERS, streamID, block.toByteArray());
+            }
+            int offset = 0;
+            while (offset < body.length) {
+                int chunk;
+                synchronized (this) {
+                    final long[] window = this.windows.get(streamID);
+                    while ((chunk = (int) Math.min(Math.min(this.connectionWindow, window[0]), Math.min(HTTP2Session.DEFAULT_MAX_FRAME_SIZE, body.length - offset))) <= 0) {
+                        this.wait();
+                    }
+                    this.connectionWindow -= chunk;
+                    window[0] -= chunk;
+                }
+                offset += chunk;
+                this.writeFrame(HTTP2Session.DATA, offset == body.length ? HTTP2Session.FLAG_END_STREAM : 0, streamID, Arrays.copyOfRange(body, offset - chunk, offset));
+            }
+        }
+
+        private void writeFrame(final int type, final int flags, final int streamID, final byte[] payload) throws IOException {
+            synchronized (this.out) {
+                this.out.write(new byte[] { (byte) (payload.length >>> 16), (byte) (payload.length >>> 8), (byte) payload.length, (byte) type, (byte) flags });
+                this.out.write(toBytes(streamID));
+                this.out.write(payload);
+                this.out.flush();
+            }
+        }
+    }
+
+    private static byte[] toBytes(final int value) {
+        return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value };
+    }
+
+    private static int toInt(final byte[] buffer, final int offset) {
+        return (buffer[offset] & 0xff) << 24 | (buffer[offset + 1] & 0xff) << 16 | (buffer[offset + 2] & 0xff) << 8 | buffer[offset + 3] & 0xff;
+    }
+}
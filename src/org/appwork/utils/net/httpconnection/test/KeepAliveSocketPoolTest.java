@@ -0,0 +1,219 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpconnection.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.net.protocol.http.HTTPConstants;
+import org.appwork.net.protocol.http.HTTPConstants.ResponseCode;
+import org.appwork.remoteapi.exceptions.BasicRemoteAPIException;
+import org.appwork.utils.Application;
+import org.appwork.utils.IO;
+import org.appwork.utils.net.HTTPHeader;
+import org.appwork.utils.net.httpconnection.HTTPConnectionImpl;
+import org.appwork.utils.net.httpconnection.HTTPConnectionImpl.KEEPALIVE;
+import org.appwork.utils.net.httpconnection.HTTPProxy;
+import org.appwork.utils.net.httpconnection.KeepAliveSocketPool;
+import org.appwork.utils.net.httpconnection.KeepAliveSocketStream;
+import org.appwork.utils.net.httpconnection.SocketStreamInterface;
+import org.appwork.utils.net.httpserver.HttpServer;
+import org.appwork.utils.net.httpserver.handler.HttpRequestHandler;
+import org.appwork.utils.net.httpserver.requests.GetRequest;
+import org.appwork.utils.net.httpserver.requests.PostRequest;
+import org.appwork.utils.net.httpserver.responses.HttpResponse;
+
+/**
+ * sends sequential requests with keep-alive enabled and checks that the pooled socket is reused. then borrows and releases from several
+ * threads while evictIdle removes empty routes, and checks that no socket got lost
+ *
+ * @author thomas
+ *
+ */
+public class KeepAliveSocketPoolTest {
+    private static final KeepAliveSocketPool.Matcher ANY = new KeepAliveSocketPool.Matcher() {
+        @Override
+        public boolean matches(KeepAliveSocketStream socketStream) {
+            return true;
+        }
+
+        @Override
+        public boolean validate(KeepAliveSocketStream socketStream) {
+            return true;
+        }
+    };
+
+    private static KeepAliveSocketStream createSocketStream() {
+        final Socket socket = new Socket();
+        return new KeepAliveSocketStream("localhost", new SocketStreamInterface() {
+            @Override
+            public Socket getSocket() {
+                return socket;
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                throw new IOException("not connected");
+            }
+
+            @Override
+            public OutputStream getOutputStream() throws IOException {
+                throw new IOException("not connected");
+            }
+
+            @Override
+            public void close() throws IOException {
+                socket.close();
+            }
+        }, 60000, 1000, null, null);
+    }
+
+    private static void concurrentEvictions() throws Exception {
+        final KeepAliveSocketPool pool = new KeepAliveSocketPool();
+        pool.setMaxTotal(Integer.MAX_VALUE);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicInteger created = new AtomicInteger(0);
+        final AtomicLong released = new AtomicLong(0);
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final String route = "route" + i % 2;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    while (running.get()) {
+                        KeepAliveSocketStream socketStream = pool.borrow(route, ANY);
+                        if (socketStream == null) {
+                            socketStream = createSocketStream();
+                            created.incrementAndGet();
+                        }
+                        pool.release(route, socketStream, Long.MAX_VALUE);
+                        released.incrementAndGet();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        final long end = System.currentTimeMillis() + 2000;
+        while (System.currentTimeMillis() < end) {
+            pool.evictIdle();
+        }
+        running.set(false);
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        int found = 0;
+        for (int i = 0; i < 2; i++) {
+            KeepAliveSocketStream socketStream;
+            while ((socketStream = pool.borrow("route" + i, ANY)) != null) {
+                if (socketStream.getSocket().isClosed()) {
+                    throw new WTFException("closed socket in pool");
+                }
+                found++;
+            }
+        }
+        System.out.println(released.get() + " releases, " + created.get() + " sockets, " + found + " found");
+        if (found != created.get() || pool.getIdleCount() != 0 || pool.getEvictions() != 0 || pool.getReleases() != released.get()) {
+            throw new WTFException("lost sockets: " + found + "/" + created.get() + " " + pool + " releases " + pool.getReleases());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Application.setApplication(".appwork-test");
+        final HttpServer server = new HttpServer(0);
+        server.setLocalhostOnly(true);
+        server.registerRequestHandler(new HttpRequestHandler() {
+            @Override
+            public boolean onPostRequest(PostRequest request, HttpResponse response) throws BasicRemoteAPIException {
+                return false;
+            }
+
+            @Override
+            public boolean onGetRequest(GetRequest request, HttpResponse response) throws BasicRemoteAPIException {
+                try {
+                    final byte[] bytes = request.getRequestedPath().getBytes("UTF-8");
+                    response.setResponseCode(ResponseCode.SUCCESS_OK);
+                    response.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_LENGTH, String.valueOf(bytes.length)));
+                    response.getOutputStream(true).write(bytes);
+                    response.getOutputStream(true).close();
+                    return true;
+                } catch (final Exception e) {
+                    throw new WTFException(e);
+                }
+            }
+        });
+        server.start();
+        try {
+            final KeepAliveSocketPool pool = HTTPConnectionImpl.getKeepAliveSocketPool();
+            final long hits = pool.getHits();
+            final int requests = 10;
+            for (int i = 0; i < requests; i++) {
+                final HTTPConnectionImpl connection = new HTTPConnectionImpl(new URL("http://127.0.0.1:" + server.getPort() + "/request" + i), HTTPProxy.NONE);
+                connection.setKeepAlive(KEEPALIVE.EXTERNAL_EXCEPTION);
+                connection.connect();
+                final InputStream is = connection.getInputStream();
+                final String response = new String(IO.readStream(-1, is), "UTF-8");
+                connection.disconnect();
+                if (!("/request" + i).equals(response)) {
+                    throw new WTFException("unexpected response: " + response);
+                }
+            }
+            if (pool.getHits() - hits != requests - 1) {
+                throw new WTFException("pool not used: " + pool);
+            }
+            if (server.getConnectionCount() != 1 || server.getRequestCount() != requests) {
+                throw new WTFException("stats: " + server.getConnectionCount() + "/" + server.getRequestCount());
+            }
+            if (pool.getIdleCount() != 1) {
+                throw new WTFException("idle: " + pool);
+            }
+            pool.setMaxTotal(0);
+            pool.evictIdle();
+            pool.clear();
+            if (pool.getIdleCount() != 0) {
+                throw new WTFException("clear: " + pool);
+            }
+        } finally {
+            server.stop();
+        }
+        concurrentEvictions();
+        System.out.println("SUCCESSFUL");
+    }
+}
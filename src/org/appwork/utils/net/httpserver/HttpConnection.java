@@ -33,6 +33,7 @@
  * ==================================================================================================================================================== */
 package org.appwork.utils.net.httpserver;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -41,6 +42,8 @@ import java.net.SocketException;
 import java.net.URLDecoder;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
@@ -146,28 +149,39 @@ public class HttpConnection implements Runnable, RawHttpConnectionInterface {
         return requestedURLParameters;
     }
 
-    protected final HttpServer   server;
-    protected final Socket       clientSocket;
-    protected boolean            outputStreamInUse = false;
-    protected HttpResponse       response          = null;
-    protected final InputStream  is;
-    protected final OutputStream os;
-    protected HttpRequest        request;
-    private static final Pattern METHOD            = Pattern.compile("(GET|POST|HEAD|OPTIONS|CONNECT)");
-    private static final Pattern REQUESTLINE       = Pattern.compile("\\s+(.+)\\s+HTTP/");
-    private static final Pattern REQUESTURL        = Pattern.compile("^(/.*?)($|\\?)");
-    private static final Pattern REQUESTPARAM      = Pattern.compile("^/.*?\\?(.+)");
+    protected final HttpServer    server;
+    protected final Socket        clientSocket;
+    protected boolean             outputStreamInUse = false;
+    protected HttpResponse        response          = null;
+    protected final InputStream   is;
+    protected final OutputStream  os;
+    protected HttpRequest         request;
+    private static final Pattern  METHOD            = Pattern.compile("(GET|POST|HEAD|OPTIONS|CONNECT)");
+    private static final Pattern  REQUESTLINE       = Pattern.compile("\\s+(.+)\\s+HTTP/");
+    private static final Pattern  REQUESTURL        = Pattern.compile("^(/.*?)($|\\?)");
+    private static final Pattern  REQUESTPARAM      = Pattern.compile("^/.*?\\?(.+)");
+    /* max number of unread request body bytes we skip to reuse the connection */
+    private static final long     MAX_SKIP          = 64 * 1024;
+    /* number of requests handled by this connection */
+    protected int                 requestCount      = 0;
+    protected boolean             requestKeepAlive  = false;
+    protected boolean             keepAlive         = false;
+    private long                  requestBodyStart  = -1;
+    private long                  responseBodyStart = -1;
+    private HttpRequestHeadParser headParser        = null;
+    /* set by a handler that takes over the connection, see detach */
+    private volatile Runnable     detachHandler     = null;
 
     protected HttpConnection(final HttpServer server, final Socket clientSocket, final InputStream is, final OutputStream os) throws IOException {
         this.server = server;
         this.clientSocket = clientSocket;
         if (is == null) {
-            this.is = clientSocket.getInputStream();
+            this.is = new KeepAliveInputStream(clientSocket.getInputStream());
         } else {
             this.is = is;
         }
         if (os == null) {
-            this.os = clientSocket.getOutputStream();
+            this.os = new KeepAliveOutputStream(clientSocket.getOutputStream());
         } else {
             this.os = os;
         }
@@ -226,18 +240,46 @@ public class HttpConnection implements Runnable, RawHttpConnectionInterface {
      * @throws IOException
      */
     protected HttpRequest buildRequest() throws IOException {
-        /* read request Method and Path */
-        final String requestLine = this.parseRequestLine();
+        /* read request Method, Path and Headers */
+        if (this.headParser == null) {
+            this.headParser = new HttpRequestHeadParser();
+        }
+        final HttpRequestHeadParser head = this.headParser;
+        if (!head.parse(this.getInputStream())) {
+            throw new EmptyRequestException();
+        }
+        final String requestLine = this.preProcessRequestLine(head.getRequestLine());
         if (StringUtils.isEmpty(requestLine)) {
             throw new EmptyRequestException();
         }
-        // TOTO: requestLine may be "" in some cases (chrome pre connection...?)
-        final HttpConnectionType connectionType = this.parseConnectionType(requestLine);
-        final String requestedURL = new Regex(requestLine, HttpConnection.REQUESTLINE).getMatch(0);
-        final String requestedPath = new Regex(requestedURL, HttpConnection.REQUESTURL).getMatch(0);
-        final List<KeyValuePair> requestedURLParameters = this.parseRequestURLParams(requestedURL);
-        /* read request Headers */
-        final HeaderCollection requestHeaders = this.parseRequestHeaders();
+        if (this.requestCount > 0 && this.clientSocket != null) {
+            /* next request on a persistent connection arrived, back from idle timeout to read timeout */
+            this.clientSocket.setSoTimeout(60 * 1000);
+        }
+        if (this.server != null) {
+            this.server.onRequest(this, this.requestCount > 0);
+        }
+        final HttpConnectionType connectionType;
+        final String requestedURL;
+        final String requestedPath;
+        final List<KeyValuePair> requestedURLParameters;
+        if (requestLine == head.getRequestLine()) {
+            connectionType = head.getMethod();
+            requestedURL = head.getRequestedURL();
+            requestedPath = head.getRequestedPath();
+            requestedURLParameters = head.getRequestedURLParameters();
+        } else {
+            /* preProcessRequestLine modified the request line */
+            connectionType = this.parseConnectionType(requestLine);
+            requestedURL = new Regex(requestLine, HttpConnection.REQUESTLINE).getMatch(0);
+            requestedPath = new Regex(requestedURL, HttpConnection.REQUESTURL).getMatch(0);
+            requestedURLParameters = this.parseRequestURLParams(requestedURL);
+        }
+        final HeaderCollection requestHeaders = head.getHeaders();
+        this.requestKeepAlive = this.isKeepAliveRequested(requestLine, requestHeaders);
+        if (this.is instanceof KeepAliveInputStream) {
+            this.requestBodyStart = ((KeepAliveInputStream) this.is).transferedBytes();
+        }
         final HttpRequest request;
         switch (connectionType) {
         case CONNECT:
@@ -277,6 +319,157 @@ public class HttpConnection implements Runnable, RawHttpConnectionInterface {
         return request;
     }
 
+    /**
+     * HTTP/1.1 connections are persistent unless the client sends Connection: close, HTTP/1.0 clients have to ask for keep-alive
+     */
+    protected boolean isKeepAliveRequested(final String requestLine, final HeaderCollection requestHeaders) {
+        if (requestHeaders.get(HTTPConstants.HEADER_REQUEST_UPGRADE) != null) {
+            return false;
+        }
+        final String connection = requestHeaders.getValue(HTTPConstants.HEADER_REQUEST_CONNECTION);
+        if (requestLine.endsWith("HTTP/1.0")) {
+            return connection != null && StringUtils.containsIgnoreCase(connection, "keep-alive");
+        } else {
+            return requestLine.endsWith("HTTP/1.1") && (connection == null || !StringUtils.containsIgnoreCase(connection, "close"));
+        }
+    }
+
+    /**
+     * decides, right before the response headers are sent, if the connection can be kept alive after this response. the response must
+     * have a known length and nobody may have set an explicit Connection header
+     */
+    protected boolean isKeepAlivePossible(final HttpRequest request, final HttpResponse response) {
+        if (!this.requestKeepAlive || this.server == null || request == null || response == null) {
+            return false;
+        } else if (!(this.is instanceof KeepAliveInputStream) || !(this.os instanceof KeepAliveOutputStream)) {
+            return false;
+        } else if (this.server.getKeepAliveTimeout() <= 0 || this.requestCount + 1 >= this.server.getMaxKeepAliveRequests()) {
+            return false;
+        } else if (this.isProxyRequest(request) || !response.hasDefaultConnectionHeader()) {
+            return false;
+        } else if (this.isBodylessResponse(request, response)) {
+            return true;
+        }
+        final HeaderCollection headers = response.getResponseHeaders();
+        return HTTPConstants.HEADER_RESPONSE_TRANSFER_ENCODING_CHUNKED.equalsIgnoreCase(headers.getValue(HTTPConstants.HEADER_RESPONSE_TRANSFER_ENCODING)) || headers.get(HTTPConstants.HEADER_RESPONSE_CONTENT_LENGTH) != null;
+    }
+
+    protected boolean isBodylessResponse(final HttpRequest request, final HttpResponse response) {
+        final int code = response.getResponseCode().getCode();
+        return request instanceof HeadRequest || code == 204 || code == 304 || code < 200;
+    }
+
+    /**
+     * called after a response on a persistent connection. checks that the response body was sent completely and the request body was read
+     * completely, then resets this connection for the next request
+     *
+     * @return true if the next request can be read from this connection
+     * @throws IOException
+     */
+    protected boolean prepareNextRequest() throws IOException {
+        if (!this.keepAlive) {
+            return false;
+        }
+        this.keepAlive = false;
+        final KeepAliveInputStream is = (KeepAliveInputStream) this.is;
+        final KeepAliveOutputStream os = (KeepAliveOutputStream) this.os;
+        os.flush();
+        final HttpResponse response = this.response;
+        final long responseBody = os.transferedBytes() - this.responseBodyStart;
+        if (this.isBodylessResponse(this.request, response)) {
+            if (responseBody != 0) {
+                return false;
+            }
+        } else if (HTTPConstants.HEADER_RESPONSE_TRANSFER_ENCODING_CHUNKED.equalsIgnoreCase(response.getResponseHeaders().getValue(HTTPConstants.HEADER_RESPONSE_TRANSFER_ENCODING))) {
+            if (!os.isLastChunkWritten()) {
+                return false;
+            }
+        } else {
+            try {
+                if (responseBody != Long.parseLong(response.getResponseHeaders().getValue(HTTPConstants.HEADER_RESPONSE_CONTENT_LENGTH))) {
+                    return false;
+                }
+            } catch (final NumberFormatException e) {
+                return false;
+            }
+        }
+        final HeaderCollection requestHeaders = this.request.getRequestHeaders();
+        if (requestHeaders.get(HTTPConstants.HEADER_RESPONSE_TRANSFER_ENCODING) != null) {
+            /* we cannot tell how much of a chunked request body is left */
+            return false;
+        }
+        final String contentLength = requestHeaders.getValue(HTTPConstants.HEADER_RESPONSE_CONTENT_LENGTH);
+        if (contentLength != null) {
+            final long left;
+            try {
+                left = this.requestBodyStart + Long.parseLong(contentLength.trim()) - is.transferedBytes();
+            } catch (final NumberFormatException e) {
+                return false;
+            }
+            if (left < 0 || left > HttpConnection.MAX_SKIP || !is.discard(left)) {
+                return false;
+            }
+        }
+        this.request = null;
+        this.response = null;
+        this.outputStreamInUse = false;
+        this.requestKeepAlive = false;
+        this.requestCount++;
+        if (this.clientSocket != null) {
+            this.clientSocket.setSoTimeout(this.server.getKeepAliveTimeout());
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the next request is already buffered (pipelining)
+     * @throws IOException
+     */
+    protected boolean isRequestPending() throws IOException {
+        return this.is.available() > 0;
+    }
+
+    /**
+     * @return true if response bodies can be sent with FileChannel.transferTo, this requires a plain (no TLS) socket with a channel
+     */
+    public boolean isZeroCopySupported() {
+        return this.os instanceof KeepAliveOutputStream && this.clientSocket != null && this.clientSocket.getChannel() != null;
+    }
+
+    /**
+     * sends count bytes of the channel, starting at position, directly to the socket (sendfile). the response headers must have been sent
+     *
+     * @throws IOException
+     */
+    public void transferFrom(final FileChannel channel, long position, long count) throws IOException {
+        if (!this.isZeroCopySupported()) {
+            throw new IllegalStateException("zero copy is not supported by " + this);
+        }
+        final KeepAliveOutputStream os = (KeepAliveOutputStream) this.os;
+        final SocketChannel socketChannel = this.clientSocket.getChannel();
+        os.flush();
+        final long total = count;
+        try {
+            while (count > 0) {
+                final long transferred = channel.transferTo(position, count, socketChannel);
+                if (transferred <= 0 && position >= channel.size()) {
+                    throw new EOFException("file is shorter than expected");
+                }
+                position += transferred;
+                count -= transferred;
+            }
+        } finally {
+            os.setTransferedBytes(os.transferedBytes() + total - count);
+        }
+    }
+
+    /**
+     * @return number of requests this connection has handled so far
+     */
+    public int getRequestCount() {
+        return this.requestCount;
+    }
+
     /**
      * @return
      */
@@ -284,6 +477,24 @@ public class HttpConnection implements Runnable, RawHttpConnectionInterface {
         return new HttpResponse(this);
     }
 
+    /**
+     * hands the connection over, e.g. to push events over a long living response. After the request handler returned, the connection is
+     * neither closed nor used for another request. Instead the connection thread calls the handler and returns, so the connection does not
+     * hold a worker of the server any longer. From then on the handler owns the connection and has to close it with
+     * {@link #closeConnection()} and {@link #close()}.
+     *
+     * The handler is called in any case. If the request failed after detach, the connection has already been closed.
+     *
+     * @param handler
+     */
+    public void detach(final Runnable handler) {
+        this.detachHandler = handler;
+    }
+
+    public boolean isDetached() {
+        return this.detachHandler != null;
+    }
+
     public boolean closableStreams() {
         return this.clientSocket == null;
     }
@@ -490,60 +701,75 @@ public class HttpConnection implements Runnable, RawHttpConnectionInterface {
     public void run() {
         boolean closeConnection = true;
         try {
-            if (this.request == null) {
-                this.request = this.buildRequest();
-            }
-            if (this.response == null) {
-                this.response = this.buildResponse();
-            }
-            final HttpRequest request = this.request;
-            if (this.deferRequest(request)) {
-                closeConnection = false;
-            } else {
-                boolean handled = false;
-                final boolean isPostRequest = isPostRequest(request);
-                final boolean isGetRequest = isGetRequest(request);
-                final boolean isProxyRequest = isProxyRequest(request);
-                final HttpResponse response = this.response;
-                for (final HttpRequestHandler handler : this.getHandler()) {
-                    final ExtendedHttpRequestHandler extendedHandler;
-                    if (handler instanceof ExtendedHttpRequestHandler) {
-                        extendedHandler = (ExtendedHttpRequestHandler) handler;
-                    } else {
-                        extendedHandler = null;
-                    }
-                    try {
-                        if (extendedHandler != null) {
-                            extendedHandler.onBeforeRequest(request, response);
-                        }
-                        if (isPostRequest) {
-                            handled = handler.onPostRequest((PostRequest) request, response);
-                        } else if (isGetRequest) {
-                            handled = handler.onGetRequest((GetRequest) request, response);
-                        } else if (isProxyRequest) {
-                            handled = ((HttpProxyHandler) handler).onProxyConnectRequest(request, response);
-                        }
-                        if (extendedHandler != null) {
-                            extendedHandler.onAfterRequest(request, response, handled);
+            while (true) {
+                if (this.request == null) {
+                    this.request = this.buildRequest();
+                }
+                if (this.response == null) {
+                    this.response = this.buildResponse();
+                }
+                final HttpRequest request = this.request;
+                if (this.deferRequest(request)) {
+                    closeConnection = false;
+                } else {
+                    boolean handled = false;
+                    final boolean isPostRequest = isPostRequest(request);
+                    final boolean isGetRequest = isGetRequest(request);
+                    final boolean isProxyRequest = isProxyRequest(request);
+                    final HttpResponse response = this.response;
+                    for (final HttpRequestHandler handler : this.getHandler()) {
+                        final ExtendedHttpRequestHandler extendedHandler;
+                        if (handler instanceof ExtendedHttpRequestHandler) {
+                            extendedHandler = (ExtendedHttpRequestHandler) handler;
+                        } else {
+                            extendedHandler = null;
                         }
-                        if (handled) {
-                            break;
+                        try {
+                            if (extendedHandler != null) {
+                                extendedHandler.onBeforeRequest(request, response);
+                            }
+                            if (isPostRequest) {
+                                handled = handler.onPostRequest((PostRequest) request, response);
+                            } else if (isGetRequest) {
+                                handled = handler.onGetRequest((GetRequest) request, response);
+                            } else if (isProxyRequest) {
+                                handled = ((HttpProxyHandler) handler).onProxyConnectRequest(request, response);
+                            }
+                            if (extendedHandler != null) {
+                                extendedHandler.onAfterRequest(request, response, handled);
+                            }
+                            if (handled) {
+                                break;
+                            }
+                        } catch (Throwable e) {
+                            if (extendedHandler != null) {
+                                extendedHandler.onAfterRequestException(request, response, e);
+                            }
+                            throw e;
                         }
-                    } catch (Throwable e) {
-                        if (extendedHandler != null) {
-                            extendedHandler.onAfterRequestException(request, response, e);
+                    }
+                    if (!handled) {
+                        /* generate error handler */
+                        this.onUnhandled(request, response);
+                    }
+                    /* send response headers if they have not been sent yet send yet */
+                    response.getOutputStream(true);
+                    if (this.isDetached()) {
+                        closeConnection = false;
+                    } else if (this.prepareNextRequest()) {
+                        if (this.server.parkConnection(this)) {
+                            /* the server engine waits for the next request without blocking this thread */
+                            closeConnection = false;
+                        } else {
+                            /* persistent connection, read the next (maybe already pipelined) request */
+                            continue;
                         }
-                        throw e;
                     }
                 }
-                if (!handled) {
-                    /* generate error handler */
-                    this.onUnhandled(request, response);
-                }
-                /* send response headers if they have not been sent yet send yet */
-                response.getOutputStream(true);
+                break;
             }
         } catch (final Throwable e) {
+            this.requestKeepAlive = false;
             try {
                 closeConnection = this.onException(e, this.request, this.response);
             } catch (final Throwable nothing) {
@@ -555,6 +781,10 @@ public class HttpConnection implements Runnable, RawHttpConnectionInterface {
                 this.closeConnection();
                 this.close();
             }
+            final Runnable detachHandler = this.detachHandler;
+            if (detachHandler != null) {
+                detachHandler.run();
+            }
             // if (getHook() == null) {
             // LogV3.finer("No Connection Hook!");
             // }
@@ -593,7 +823,15 @@ public class HttpConnection implements Runnable, RawHttpConnectionInterface {
                 if (lHook != null) {
                     lHook.onBeforeSendHeaders(response);
                 }
+                this.keepAlive = this.isKeepAlivePossible(this.request, this.response);
+                if (this.keepAlive) {
+                    this.response.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_REQUEST_CONNECTION, "keep-alive"));
+                    this.response.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HTTP_KEEP_ALIVE, "timeout=" + Math.max(1, this.server.getKeepAliveTimeout() / 1000) + ", max=" + (this.server.getMaxKeepAliveRequests() - this.requestCount - 1)));
+                }
                 openOutputStream(out, response);
+                if (this.keepAlive) {
+                    this.responseBodyStart = ((KeepAliveOutputStream) this.os).transferedBytes();
+                }
             } finally {
                 this.setOutputStreamInUse(true);
             }
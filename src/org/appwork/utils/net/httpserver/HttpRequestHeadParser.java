@@ -0,0 +1,408 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.appwork.net.protocol.http.HTTPConstants;
+import org.appwork.utils.net.HTTPHeader;
+import org.appwork.utils.net.HeaderCollection;
+import org.appwork.utils.net.httpserver.HttpConnection.HttpConnectionType;
+import org.appwork.utils.net.httpserver.requests.KeyValuePair;
+
+/**
+ * byte level parser for the request line and headers. reads the head into a reusable buffer and splits it without regex or intermediate
+ * line Strings. the results match HttpConnection.parseRequestLine/parseRequestHeaders/parseParameterList
+ *
+ * @author thomas
+ *
+ */
+@SuppressWarnings("deprecation")
+public class HttpRequestHeadParser {
+    private static final int      MAX_HEAD_SIZE = 64 * 1024;
+    /* common header names, reused instead of creating a new String for each request */
+    private static final String[] KNOWN_HEADERS = new String[] { HTTPConstants.HEADER_REQUEST_HOST, HTTPConstants.HEADER_REQUEST_CONNECTION, HTTPConstants.HEADER_REQUEST_ACCEPT, HTTPConstants.HEADER_REQUEST_ACCEPT_ENCODING, HTTPConstants.HEADER_REQUEST_ACCEPT_LANGUAGE, HTTPConstants.HEADER_REQUEST_USER_AGENT, HTTPConstants.HEADER_RESPONSE_CONTENT_LENGTH, HTTPConstants.HEADER_RESPONSE_CONTENT_TYPE, HTTPConstants.HEADER_REQUEST_COOKIE, HTTPConstants.HEADER_REQUEST_REFERER, HTTPConstants.HEADER_REQUEST_ORIGIN, HTTPConstants.HEADER_REQUEST_CACHE_CONTROL, HTTPConstants.HEADER_REQUEST_UPGRADE, HTTPConstants.HEADER_RESPONSE_TRANSFER_ENCODING, HTTPConstants.HEADER_REQUEST_RANGE, HTTPConstants.HEADER_REQUEST_IF_NON_MATCH, HTTPConstants.HEADER_REQUEST_IF_MODIFIED_SINCE, HTTPConstants.HEADER_REQUEST_AUTHORIZATION, HTTPConstants.HEADER_REQUEST_PRAGMA, "X-Forwarded-For" };
+    private static final byte[][] KNOWN_BYTES;
+    static {
+        KNOWN_BYTES = new byte[KNOWN_HEADERS.length][];
+        for (int index = 0; index < KNOWN_HEADERS.length; index++) {
+            KNOWN_BYTES[index] = HttpRequestHeadParser.latin1(KNOWN_HEADERS[index]);
+        }
+    }
+    private byte[]                buffer        = new byte[4096];
+    private int                   length        = 0;
+    private String                requestLine;
+    private HttpConnectionType    method;
+    private String                requestedURL;
+    private String                requestedPath;
+    private List<KeyValuePair>    requestedURLParameters;
+    private HeaderCollection      headers;
+    /* scratch buffer for percent decoding */
+    private byte[]                decodeBuffer  = new byte[256];
+
+    private static byte[] latin1(final String string) {
+        final byte[] ret = new byte[string.length()];
+        for (int index = 0; index < ret.length; index++) {
+            ret[index] = (byte) string.charAt(index);
+        }
+        return ret;
+    }
+
+    /**
+     * reads and parses the next request head. skips empty lines in front of the request line
+     *
+     * @return false if the stream ended or only contained an empty line
+     * @throws IOException
+     */
+    public boolean parse(final InputStream is) throws IOException {
+        this.requestLine = null;
+        this.method = null;
+        this.requestedURL = null;
+        this.requestedPath = null;
+        this.requestedURLParameters = null;
+        this.headers = null;
+        if (!this.readHead(is)) {
+            return false;
+        }
+        final byte[] buffer = this.buffer;
+        int lineEnd = this.lineEnd(0);
+        final int lineStart = this.trimStart(0, lineEnd);
+        final int lineStop = this.trimEnd(lineStart, lineEnd);
+        if (lineStart == lineStop) {
+            return false;
+        }
+        this.requestLine = new String(buffer, 0, lineStart, lineStop - lineStart);
+        this.parseRequestLine(lineStart, lineStop);
+        final HeaderCollection headers = new HeaderCollection();
+        int lineStartIndex = this.nextLine(lineEnd);
+        while (lineStartIndex < this.length) {
+            lineEnd = this.lineEnd(lineStartIndex);
+            if (lineEnd == lineStartIndex) {
+                break;
+            }
+            headers.add(this.parseHeader(lineStartIndex, lineEnd));
+            lineStartIndex = this.nextLine(lineEnd);
+        }
+        this.headers = headers;
+        return true;
+    }
+
+    /**
+     * reads until the empty line that ends the head. reads byte by byte, so nothing behind the head is consumed
+     */
+    private boolean readHead(final InputStream is) throws IOException {
+        int length = 0;
+        int read;
+        /* skip empty lines in front of the request */
+        while ((read = is.read()) == '\r' || read == '\n') {
+        }
+        if (read == -1) {
+            this.length = 0;
+            return false;
+        }
+        byte[] buffer = this.buffer;
+        buffer[length++] = (byte) read;
+        while (true) {
+            read = is.read();
+            if (read == -1) {
+                break;
+            }
+            if (length == buffer.length) {
+                if (length >= HttpRequestHeadParser.MAX_HEAD_SIZE) {
+                    throw new IOException("Request head too large");
+                }
+                final byte[] newBuffer = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, newBuffer, 0, length);
+                this.buffer = buffer = newBuffer;
+            }
+            buffer[length++] = (byte) read;
+            if (read == '\n') {
+                /* \n\n or \r\n\r\n ends the head */
+                if (length >= 2 && buffer[length - 2] == '\n' || length >= 4 && buffer[length - 2] == '\r' && buffer[length - 3] == '\n') {
+                    break;
+                }
+            }
+        }
+        this.length = length;
+        return true;
+    }
+
+    /* index of the \r\n or \n that ends the line starting at start */
+    private int lineEnd(final int start) {
+        final byte[] buffer = this.buffer;
+        int index = start;
+        while (index < this.length && buffer[index] != '\n') {
+            index++;
+        }
+        if (index > start && buffer[index - 1] == '\r') {
+            return index - 1;
+        }
+        return index;
+    }
+
+    /* index behind the line terminator at lineEnd */
+    private int nextLine(final int lineEnd) {
+        if (lineEnd < this.length && this.buffer[lineEnd] == '\r') {
+            return lineEnd + 2;
+        }
+        return lineEnd + 1;
+    }
+
+    private int trimStart(int start, final int end) {
+        while (start < end && this.buffer[start] <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private int trimEnd(final int start, int end) {
+        while (end > start && this.buffer[end - 1] <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private void parseRequestLine(final int start, final int end) throws IOException {
+        final byte[] buffer = this.buffer;
+        this.requestedURLParameters = new LinkedList<KeyValuePair>();
+        int methodEnd = start;
+        while (methodEnd < end && buffer[methodEnd] > ' ') {
+            methodEnd++;
+        }
+        this.method = HttpConnectionType.UNKNOWN;
+        for (final HttpConnectionType type : HttpConnectionType.values()) {
+            if (type.length() == methodEnd - start && this.equals(start, type.name())) {
+                this.method = type;
+                break;
+            }
+        }
+        /* the url is everything between the method and the last whitespace in front of HTTP/ */
+        int versionStart = end;
+        while (versionStart > methodEnd && buffer[versionStart - 1] > ' ') {
+            versionStart--;
+        }
+        if (versionStart == methodEnd || !this.equals(versionStart, "HTTP/")) {
+            return;
+        }
+        final int urlStart = this.trimStart(methodEnd, versionStart);
+        final int urlEnd = this.trimEnd(urlStart, versionStart);
+        if (urlStart == urlEnd) {
+            return;
+        }
+        this.requestedURL = new String(buffer, 0, urlStart, urlEnd - urlStart);
+        if (buffer[urlStart] != '/') {
+            /* absolute url (proxy request), no path and parameters */
+            return;
+        }
+        int query = urlStart;
+        while (query < urlEnd && buffer[query] != '?') {
+            query++;
+        }
+        this.requestedPath = query == urlEnd ? this.requestedURL : this.requestedURL.substring(0, query - urlStart);
+        this.requestedURLParameters = this.parseParameters(query + 1, urlEnd);
+    }
+
+    private boolean equals(final int start, final String string) {
+        if (start + string.length() > this.length) {
+            return false;
+        }
+        for (int index = 0; index < string.length(); index++) {
+            if (this.buffer[start + index] != string.charAt(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * same result as HttpConnection.parseParameterList: split at & (not followed by #), first = separates key and value, key _ (jquery
+     * timestamp) is dropped
+     */
+    private List<KeyValuePair> parseParameters(final int start, final int end) throws IOException {
+        final List<KeyValuePair> ret = new LinkedList<KeyValuePair>();
+        if (start >= end) {
+            return ret;
+        }
+        final byte[] buffer = this.buffer;
+        int segmentStart = start;
+        for (int index = start; index <= end; index++) {
+            if (index == end || buffer[index] == '&' && (index + 1 >= end || buffer[index + 1] != '#')) {
+                int equals = segmentStart;
+                while (equals < index && buffer[equals] != '=') {
+                    equals++;
+                }
+                if (equals == index) {
+                    /* no value */
+                    ret.add(new KeyValuePair(null, this.decode(segmentStart, index)));
+                } else if (!(equals - segmentStart == 1 && buffer[segmentStart] == '_')) {
+                    ret.add(new KeyValuePair(this.decode(segmentStart, equals), this.decode(equals + 1, index)));
+                }
+                segmentStart = index + 1;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * URLDecoder.decode(new String(bytes, ISO-8859-1), UTF-8) without the intermediate String
+     */
+    private String decode(final int start, final int end) throws IOException {
+        final byte[] buffer = this.buffer;
+        boolean plain = true;
+        for (int index = start; index < end; index++) {
+            if (buffer[index] == '%' || buffer[index] == '+') {
+                plain = false;
+                break;
+            }
+        }
+        if (plain) {
+            return new String(buffer, 0, start, end - start);
+        }
+        final StringBuilder sb = new StringBuilder(end - start);
+        int index = start;
+        while (index < end) {
+            final byte b = buffer[index];
+            if (b == '+') {
+                sb.append(' ');
+                index++;
+            } else if (b == '%') {
+                /* consecutive escapes are one UTF-8 sequence */
+                int count = 0;
+                while (index < end && buffer[index] == '%') {
+                    if (index + 2 >= end) {
+                        throw new IOException("URLDecoder: Incomplete trailing escape (%) pattern");
+                    }
+                    final int high = Character.digit(buffer[index + 1], 16);
+                    final int low = Character.digit(buffer[index + 2], 16);
+                    if (high < 0 || low < 0) {
+                        throw new IOException("URLDecoder: Illegal hex characters in escape (%) pattern");
+                    }
+                    if (count == this.decodeBuffer.length) {
+                        final byte[] newBuffer = new byte[count * 2];
+                        System.arraycopy(this.decodeBuffer, 0, newBuffer, 0, count);
+                        this.decodeBuffer = newBuffer;
+                    }
+                    this.decodeBuffer[count++] = (byte) (high << 4 | low);
+                    index += 3;
+                }
+                try {
+                    sb.append(new String(this.decodeBuffer, 0, count, "UTF-8"));
+                } catch (final UnsupportedEncodingException e) {
+                    throw new IOException(e);
+                }
+            } else {
+                sb.append((char) (b & 0xff));
+                index++;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * same split as HttpConnection.parseRequestHeaders: first ": ", else first ":", else the whole line is the value
+     */
+    private HTTPHeader parseHeader(final int start, final int end) {
+        final byte[] buffer = this.buffer;
+        int colon = -1;
+        int valueStart = -1;
+        for (int index = start + 1; index + 1 < end; index++) {
+            if (buffer[index] == ':' && buffer[index + 1] == ' ') {
+                colon = index;
+                valueStart = index + 2;
+                break;
+            }
+        }
+        if (colon < 0) {
+            for (int index = start + 1; index < end; index++) {
+                if (buffer[index] == ':') {
+                    colon = index;
+                    valueStart = index + 1;
+                    break;
+                }
+            }
+        }
+        if (colon < 0) {
+            return new HTTPHeader(null, new String(buffer, 0, start, end - start));
+        }
+        return new HTTPHeader(this.headerName(start, colon), new String(buffer, 0, valueStart, end - valueStart));
+    }
+
+    private String headerName(final int start, final int end) {
+        final int length = end - start;
+        for (int known = 0; known < HttpRequestHeadParser.KNOWN_BYTES.length; known++) {
+            final byte[] bytes = HttpRequestHeadParser.KNOWN_BYTES[known];
+            if (bytes.length == length) {
+                int index = 0;
+                while (index < length && this.buffer[start + index] == bytes[index]) {
+                    index++;
+                }
+                if (index == length) {
+                    return HttpRequestHeadParser.KNOWN_HEADERS[known];
+                }
+            }
+        }
+        return new String(this.buffer, 0, start, length);
+    }
+
+    /**
+     * @return the trimmed request line
+     */
+    public String getRequestLine() {
+        return this.requestLine;
+    }
+
+    public HttpConnectionType getMethod() {
+        return this.method;
+    }
+
+    public String getRequestedURL() {
+        return this.requestedURL;
+    }
+
+    public String getRequestedPath() {
+        return this.requestedPath;
+    }
+
+    public List<KeyValuePair> getRequestedURLParameters() {
+        return this.requestedURLParameters;
+    }
+
+    public HeaderCollection getHeaders() {
+        return this.headers;
+    }
+}
@@ -42,6 +42,7 @@ import java.net.SocketAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -49,6 +50,7 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.appwork.utils.net.httpserver.handler.HttpRequestHandler;
@@ -61,15 +63,75 @@ import org.appwork.utils.net.httpserver.responses.HttpResponse;
  *
  */
 public class HttpServer implements Runnable, HTTPBridge {
+    public static enum Engine {
+        /* blocking accept loop, one thread per connection */
+        BLOCKING,
+        /* java.nio Selector, threads are only used while a request is handled */
+        SELECTOR
+    }
+
     private final int                                      wishPort;
-    private final AtomicReference<ServerSocket>            controlSocket   = new AtomicReference<ServerSocket>(null);
-    private volatile Thread                                serverThread    = null;
-    private boolean                                        localhostOnly   = false;
-    private boolean                                        debug           = false;
-    private final CopyOnWriteArrayList<HttpRequestHandler> requestHandlers = new CopyOnWriteArrayList<HttpRequestHandler>();
+    private final AtomicReference<ServerSocket>            controlSocket        = new AtomicReference<ServerSocket>(null);
+    private volatile Thread                                serverThread         = null;
+    private boolean                                        localhostOnly        = false;
+    private boolean                                        debug                = false;
+    private final CopyOnWriteArrayList<HttpRequestHandler> requestHandlers      = new CopyOnWriteArrayList<HttpRequestHandler>();
+    /* idle timeout in ms between two requests on a persistent connection, 0 disables keep-alive */
+    private volatile int                                   keepAliveTimeout     = 15 * 1000;
+    private volatile int                                   maxKeepAliveRequests = 100;
+    private final AtomicLong                               connections          = new AtomicLong(0);
+    private final AtomicLong                               requests             = new AtomicLong(0);
+    private final Engine                                   engine;
+    private volatile int                                   maxWorkers           = 64;
+    private volatile SelectorServerEngine                  selectorEngine       = null;
 
     public HttpServer(final int port) {
+        this(port, Engine.BLOCKING);
+    }
+
+    public HttpServer(final int port, final Engine engine) {
         this.wishPort = port;
+        this.engine = engine == null ? Engine.BLOCKING : engine;
+    }
+
+    public Engine getEngine() {
+        return this.engine;
+    }
+
+    /**
+     * @return max number of threads handling requests in the SELECTOR engine
+     */
+    public int getMaxWorkers() {
+        return this.maxWorkers;
+    }
+
+    /**
+     * @param maxWorkers
+     *            max number of threads handling requests in the SELECTOR engine, used on next start
+     */
+    public void setMaxWorkers(final int maxWorkers) {
+        this.maxWorkers = Math.max(1, maxWorkers);
+    }
+
+    /**
+     * @return the SELECTOR engine while the server is running, null otherwise
+     */
+    public SelectorServerEngine getSelectorEngine() {
+        return this.selectorEngine;
+    }
+
+    protected boolean isControlSocket(final ServerSocket socket) {
+        return this.controlSocket.get() == socket;
+    }
+
+    /**
+     * called by a persistent connection after a response
+     *
+     * @return true if the engine waits for the next request of this connection, false if the connection keeps its thread
+     */
+    protected boolean parkConnection(final HttpConnection connection) throws IOException {
+        final SelectorServerEngine selectorEngine = this.selectorEngine;
+        return selectorEngine != null && selectorEngine.park(connection);
     }
 
     protected Runnable createConnectionHandler(final Socket clientSocket) throws IOException {
@@ -114,6 +176,70 @@ public class HttpServer implements Runnable, HTTPBridge {
         return this.getWishedPort();
     }
 
+    /**
+     * @return idle timeout in ms a persistent connection waits for the next request
+     */
+    public int getKeepAliveTimeout() {
+        return this.keepAliveTimeout;
+    }
+
+    /**
+     * @param keepAliveTimeout
+     *            idle timeout in ms, 0 disables persistent connections
+     */
+    public void setKeepAliveTimeout(final int keepAliveTimeout) {
+        this.keepAliveTimeout = Math.max(0, keepAliveTimeout);
+    }
+
+    /**
+     * @return max number of requests handled by one connection
+     */
+    public int getMaxKeepAliveRequests() {
+        return this.maxKeepAliveRequests;
+    }
+
+    public void setMaxKeepAliveRequests(final int maxKeepAliveRequests) {
+        this.maxKeepAliveRequests = Math.max(1, maxKeepAliveRequests);
+    }
+
+    /**
+     * @return number of connections that handled at least one request
+     */
+    public long getConnectionCount() {
+        return this.connections.get();
+    }
+
+    /**
+     * @return number of handled requests
+     */
+    public long getRequestCount() {
+        return this.requests.get();
+    }
+
+    /**
+     * @return share of requests that reused an existing connection, 0.0 - 1.0
+     */
+    public double getConnectionReuseRatio() {
+        final long requests = this.requests.get();
+        if (requests == 0) {
+            return 0;
+        }
+        return Math.max(0, requests - this.connections.get()) / (double) requests;
+    }
+
+    /**
+     * called by the HttpConnection for every request it reads
+     *
+     * @param reused
+     *            true if the request was read from a persistent connection
+     */
+    protected void onRequest(final HttpConnection connection, final boolean reused) {
+        if (!reused) {
+            this.connections.incrementAndGet();
+        }
+        this.requests.incrementAndGet();
+    }
+
     public int getWishedPort() {
         return wishPort;
     }
@@ -149,6 +275,10 @@ public class HttpServer implements Runnable, HTTPBridge {
 
     public void run() {
         final ServerSocket socket = this.controlSocket.get();
+        if (socket.getChannel() != null) {
+            this.runSelectorEngine(socket);
+            return;
+        }
         try {
             socket.setSoTimeout(5 * 60 * 1000);
         } catch (final SocketException e1) {
@@ -247,6 +377,26 @@ public class HttpServer implements Runnable, HTTPBridge {
         }
     }
 
+    private void runSelectorEngine(final ServerSocket socket) {
+        SelectorServerEngine selectorEngine = null;
+        try {
+            selectorEngine = new SelectorServerEngine(this, socket.getChannel());
+            this.selectorEngine = selectorEngine;
+            selectorEngine.run();
+        } catch (final IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (this.selectorEngine == selectorEngine) {
+                this.selectorEngine = null;
+            }
+            this.controlSocket.compareAndSet(socket, null);
+            try {
+                socket.close();
+            } catch (final Throwable e) {
+            }
+        }
+    }
+
     /**
      * @param debug
      *            the debug to set
@@ -288,7 +438,15 @@ public class HttpServer implements Runnable, HTTPBridge {
         } else {
             port = getWishedPort();
         }
-        if (this.isLocalhostOnly()) {
+        if (this.getEngine() == Engine.SELECTOR) {
+            controlSocket = ServerSocketChannel.open().socket();
+            controlSocket.setReuseAddress(true);
+            if (this.isLocalhostOnly()) {
+                controlSocket.bind(new InetSocketAddress(this.getLocalHost(), port));
+            } else {
+                controlSocket.bind(new InetSocketAddress(port));
+            }
+        } else if (this.isLocalhostOnly()) {
             /* we only want localhost bound here */
             final SocketAddress socketAddress = new InetSocketAddress(this.getLocalHost(), port);
             controlSocket = new ServerSocket();
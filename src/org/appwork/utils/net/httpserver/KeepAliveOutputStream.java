@@ -0,0 +1,97 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.appwork.utils.net.CountingOutputStream;
+
+/**
+ * socket OutputStream of a persistent HttpConnection. close only flushes, so handlers that close the response stream do not end the
+ * connection. remembers the last bytes written to detect the final chunk of a chunked response
+ *
+ * @author thomas
+ *
+ */
+public class KeepAliveOutputStream extends CountingOutputStream {
+    private static final byte[] LAST_CHUNK = new byte[] { '0', '\r', '\n', '\r', '\n' };
+    private final byte[]        tail       = new byte[LAST_CHUNK.length];
+    private int                 tailIndex  = 0;
+
+    public KeepAliveOutputStream(final OutputStream os) {
+        super(os);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.flush();
+    }
+
+    @Override
+    public void write(final byte[] b) throws IOException {
+        this.write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        super.write(b, off, len);
+        for (int index = Math.max(off, off + len - this.tail.length); index < off + len; index++) {
+            this.tail[this.tailIndex] = b[index];
+            this.tailIndex = (this.tailIndex + 1) % this.tail.length;
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        super.write(b);
+        this.tail[this.tailIndex] = (byte) b;
+        this.tailIndex = (this.tailIndex + 1) % this.tail.length;
+    }
+
+    /**
+     * @return true if the last bytes written are the final chunk (0\r\n\r\n) of a chunked body
+     */
+    public boolean isLastChunkWritten() {
+        if (this.transferedBytes() < this.tail.length) {
+            return false;
+        }
+        for (int index = 0; index < LAST_CHUNK.length; index++) {
+            if (this.tail[(this.tailIndex + index) % this.tail.length] != LAST_CHUNK[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpserver;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HttpServer engine that waits for requests with a java.nio Selector. a connection only occupies a worker thread while a request is read
+ * and handled, idle and keep-alive connections are parked in the selector. connections are queued instead of rejected when all workers are
+ * busy.
+ *
+ * @author thomas
+ *
+ */
+public class SelectorServerEngine implements Runnable {
+    private static class Parked {
+        private final SocketChannel  channel;
+        private final HttpConnection connection;
+        private final long           deadline;
+
+        private Parked(final SocketChannel channel, final HttpConnection connection, final long timeout) {
+            this.channel = channel;
+            this.connection = connection;
+            this.deadline = System.currentTimeMillis() + timeout;
+        }
+    }
+
+    /* idle timeout for new connections until the first request arrives */
+    private static final int                    FIRST_REQUEST_TIMEOUT = 60 * 1000;
+    private final HttpServer                    server;
+    private final ServerSocketChannel           serverChannel;
+    private final Selector                      selector;
+    private final ThreadPoolExecutor            workers;
+    private final ConcurrentLinkedQueue<Parked> parkQueue             = new ConcurrentLinkedQueue<Parked>();
+
+    public SelectorServerEngine(final HttpServer server, final ServerSocketChannel serverChannel) throws IOException {
+        this.server = server;
+        this.serverChannel = serverChannel;
+        this.selector = Selector.open();
+        final int maxWorkers = Math.max(1, server.getMaxWorkers());
+        this.workers = new ThreadPoolExecutor(maxWorkers, maxWorkers, 10000l, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                return new HttpConnectionThread(server, r);
+            }
+        }) {
+            @Override
+            protected void beforeExecute(final Thread t, final Runnable r) {
+                if (t instanceof HttpConnectionThread && r instanceof HttpConnection) {
+                    ((HttpConnectionThread) t).setCurrentConnection((HttpConnection) r);
+                }
+                super.beforeExecute(t, r);
+            }
+        };
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * hands a persistent connection back to the selector until the next request arrives
+     *
+     * @return false if the connection has to continue in the calling thread
+     */
+    public boolean park(final HttpConnection connection) throws IOException {
+        final Socket socket = connection.getClientSocket();
+        final SocketChannel channel = socket != null ? socket.getChannel() : null;
+        if (channel == null || connection.isRequestPending() || !this.selector.isOpen()) {
+            return false;
+        }
+        this.parkQueue.add(new Parked(channel, connection, this.server.getKeepAliveTimeout()));
+        this.selector.wakeup();
+        return true;
+    }
+
+    /**
+     * @return number of connections waiting in the selector
+     */
+    public int getParkedConnections() {
+        return Math.max(0, this.selector.keys().size() - 1);
+    }
+
+    /**
+     * @return number of connections waiting for a free worker
+     */
+    public int getQueuedConnections() {
+        return this.workers.getQueue().size();
+    }
+
+    public void run() {
+        final ServerSocket socket = this.serverChannel.socket();
+        try {
+            this.serverChannel.configureBlocking(false);
+            this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+            final List<SelectionKey> readable = new ArrayList<SelectionKey>();
+            long nextExpire = System.currentTimeMillis() + 1000;
+            while (this.server.isControlSocket(socket)) {
+                this.selector.select(1000);
+                this.registerParked();
+                final Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    final SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    } else if (key.isAcceptable()) {
+                        this.accept();
+                    } else if (key.isReadable()) {
+                        key.cancel();
+                        readable.add(key);
+                    }
+                }
+                if (readable.size() > 0) {
+                    /* deregister the canceled keys, the channels can then be switched back to blocking mode */
+                    this.selector.selectNow();
+                    for (final SelectionKey key : readable) {
+                        this.dispatch((Parked) key.attachment());
+                    }
+                    readable.clear();
+                }
+                final long now = System.currentTimeMillis();
+                if (now >= nextExpire) {
+                    nextExpire = now + 1000;
+                    this.expire(now);
+                }
+            }
+        } catch (final IOException e) {
+            if (this.server.isControlSocket(socket)) {
+                e.printStackTrace();
+            }
+        } finally {
+            this.close();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = this.serverChannel.accept()) != null) {
+            try {
+                channel.configureBlocking(false);
+                channel.register(this.selector, SelectionKey.OP_READ, new Parked(channel, null, SelectorServerEngine.FIRST_REQUEST_TIMEOUT));
+            } catch (final IOException e) {
+                this.close(channel);
+            }
+        }
+    }
+
+    private void registerParked() {
+        Parked parked;
+        while ((parked = this.parkQueue.poll()) != null) {
+            try {
+                parked.channel.configureBlocking(false);
+                parked.channel.register(this.selector, SelectionKey.OP_READ, parked);
+            } catch (final IOException e) {
+                this.close(parked);
+            }
+        }
+    }
+
+    private void dispatch(final Parked parked) {
+        try {
+            parked.channel.configureBlocking(true);
+            final Runnable runnable;
+            if (parked.connection != null) {
+                runnable = parked.connection;
+            } else {
+                try {
+                    runnable = this.server.createConnectionHandler(parked.channel.socket());
+                } catch (Throwable e) {
+                    throw new IOException(e);
+                }
+            }
+            if (runnable == null) {
+                this.close(parked);
+            } else {
+                this.workers.execute(runnable);
+            }
+        } catch (final Throwable e) {
+            e.printStackTrace();
+            this.close(parked);
+        }
+    }
+
+    private void expire(final long now) {
+        for (final SelectionKey key : this.selector.keys()) {
+            final Object attachment = key.attachment();
+            if (attachment instanceof Parked && ((Parked) attachment).deadline < now) {
+                key.cancel();
+                this.close((Parked) attachment);
+            }
+        }
+    }
+
+    private void close(final SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (final Throwable ignore) {
+        }
+    }
+
+    private void close(final Parked parked) {
+        if (parked.connection != null) {
+            try {
+                parked.connection.closeConnection();
+            } finally {
+                parked.connection.close();
+            }
+        }
+        this.close(parked.channel);
+    }
+
+    private void close() {
+        try {
+            this.serverChannel.close();
+        } catch (final Throwable ignore) {
+        }
+        try {
+            for (final SelectionKey key : this.selector.keys()) {
+                if (key.attachment() instanceof Parked) {
+                    this.close((Parked) key.attachment());
+                }
+            }
+        } catch (final Throwable ignore) {
+        }
+        try {
+            this.selector.close();
+        } catch (final Throwable ignore) {
+        }
+        Parked parked;
+        while ((parked = this.parkQueue.poll()) != null) {
+            this.close(parked);
+        }
+        final List<Runnable> waiting = this.workers.shutdownNow();
+        if (waiting != null) {
+            /* close all waiting HttpConnections */
+            for (final Runnable runnable : waiting) {
+                try {
+                    if (runnable instanceof HttpConnection) {
+                        ((HttpConnection) runnable).closeConnection();
+                    }
+                } catch (final Throwable e) {
+                }
+            }
+        }
+    }
+}
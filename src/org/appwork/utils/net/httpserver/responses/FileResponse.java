@@ -1,38 +1,39 @@
-/**
- * 
- * ====================================================================================================================================================
- *         "AppWork Utilities" License
- *         The "AppWork Utilities" will be called [The Product] from now on.
- * ====================================================================================================================================================
- *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
- *         Schwabacher Straße 117
- *         90763 Fürth
- *         Germany   
- * === Preamble ===
- *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
- *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
- *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
- * 	
- * === 3rd Party Licences ===
- *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
- *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
- * 	
- * === Definition: Commercial Usage ===
- *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
- *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
- * === Dual Licensing ===
- * === Commercial Usage ===
- *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
- *     Contact AppWork for further details: <e-mail@appwork.org>
- * === Non-Commercial Usage ===
- *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
- *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
- * 	
- *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
- * ====================================================================================================================================================
- * ==================================================================================================================================================== */
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
 package org.appwork.utils.net.httpserver.responses;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -41,16 +42,28 @@ import java.io.OutputStream;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.TimeZone;
 import java.util.zip.GZIPOutputStream;
 
 import org.appwork.net.protocol.http.HTTPConstants;
 import org.appwork.net.protocol.http.HTTPConstants.ResponseCode;
 import org.appwork.utils.Files;
 import org.appwork.utils.ReusableByteArrayOutputStream;
+import org.appwork.utils.formatter.TimeFormatter;
 import org.appwork.utils.net.ChunkedOutputStream;
 import org.appwork.utils.net.HTTPHeader;
+import org.appwork.utils.net.HeaderCollection;
+import org.appwork.utils.net.httpconnection.HTTPConnectionUtils;
+import org.appwork.utils.net.httpserver.HttpConnection;
+import org.appwork.utils.net.httpserver.RawHttpConnectionInterface;
+import org.appwork.utils.net.httpserver.requests.HeadRequest;
 import org.appwork.utils.net.httpserver.requests.HttpRequestInterface;
 
 /**
@@ -118,24 +131,24 @@ public class FileResponse {
             /* we do not support ranges for URL resources at the moment */
             return false;
         }
-        return false;
+        return true;
+    }
+
+    /* do we send the content gzip encoded? */
+    protected boolean useGZIP() {
+        /* only allow gzip when not offering to save the file */
+        return this.allowGZIP() && !this.useContentDisposition();
     }
 
     /* what is the size of the given Content ? */
     protected long getContentLength(final long knownLength) {
-        /* TODO: check for unsatisfied range or not allowed range */
-        final boolean allowRanges = this.allowRanges();
         if (this.inputURL != null) {
             /* we do not know size of URL resources in advance! */
             if (knownLength >= 0) { return knownLength; }
             return -1;
         } else {
-            if (!allowRanges) {
-                /* send complete file */
-                return this.inputFile.length();
-            } else {
-                return -1;
-            }
+            /* send complete file */
+            return this.inputFile.length();
         }
     }
 
@@ -156,6 +169,10 @@ public class FileResponse {
     }
 
     public void sendFile() throws IOException {
+        if (this.inputFile != null && !this.useGZIP()) {
+            this.sendFileChannel();
+            return;
+        }
         InputStream is = null;
         URLConnection con = null;
         GZIPOutputStream gos = null;
@@ -175,17 +192,10 @@ public class FileResponse {
                 knownLength = this.inputFile.length();
             }
             this.response.setResponseCode(ResponseCode.SUCCESS_OK);
-            if (this.allowRanges()) {
-                /* do we allow ranges? */
-                this.response.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_ENCODING, "bytes"));
-            }
-            if (this.allowGZIP()) {
+            if (this.useGZIP()) {
                 /* do we use gzip for content encoding? */
-                if (!this.useContentDisposition()) {
-                    /* only allow gzip when not offering to save the file */
-                    gzip = true;
-                    this.response.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_ENCODING, "gzip"));
-                }
+                gzip = true;
+                this.response.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_ENCODING, "gzip"));
             }
             final long length = this.getContentLength(knownLength);
             if (length >= 0 && !gzip) {
@@ -220,7 +230,7 @@ public class FileResponse {
                 }
             }
             /* forward the data from inputstream to outputstream */
-            final byte[] buffer = new byte[1024];
+            final byte[] buffer = new byte[32 * 1024];
             int read = 0;
             while ((read = is.read(buffer)) >= 0) {
                 if (read > 0) {
@@ -252,6 +262,157 @@ public class FileResponse {
         }
     }
 
+    /**
+     * sends the plain (not gzip encoded) file. supports conditional requests (If-None-Match/If-Modified-Since), single and multiple ranges
+     * and sends the data with FileChannel.transferTo if the connection allows it
+     */
+    protected void sendFileChannel() throws IOException {
+        final long length = this.inputFile.length();
+        final long lastModified = this.inputFile.lastModified();
+        final String etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+        final HeaderCollection headers = this.response.getResponseHeaders();
+        headers.add(new HTTPHeader(HTTPConstants.HEADER_ETAG, etag));
+        if (lastModified > 0) {
+            headers.add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_LAST_MODIFIED, FileResponse.formatDate(lastModified)));
+        }
+        if (this.isNotModified(etag, lastModified)) {
+            this.response.setResponseCode(ResponseCode.NOT_MODIFIED);
+            this.response.getOutputStream(true).flush();
+            return;
+        }
+        if (this.useContentDisposition()) {
+            /* offer file to download */
+            headers.add(new HTTPHeader("Content-Disposition", "attachment;filename*=UTF-8''" + URLEncoder.encode(this.getFileName(), "UTF-8")));
+        }
+        List<long[]> ranges = null;
+        if (this.allowRanges()) {
+            headers.add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_ACCEPT_RANGES, "bytes"));
+            final String ifRange = this.request.getRequestHeaders().getValue(HTTPConstants.HEADER_REQUEST_ID_RANGE);
+            if (ifRange == null || ifRange.equals(etag)) {
+                ranges = HTTPConnectionUtils.parseRequestRange(this.request.getRequestHeaders().getValue(HTTPConstants.HEADER_REQUEST_RANGE), length);
+            }
+        }
+        if (ranges != null && ranges.size() == 0) {
+            this.response.setResponseCode(ResponseCode.ERROR_RANGE_NOT_SUPPORTED);
+            headers.add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_RANGE, "bytes */" + length));
+            headers.add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_LENGTH, "0"));
+            this.response.getOutputStream(true).flush();
+            return;
+        }
+        final boolean sendBody = !(this.request instanceof HeadRequest);
+        final FileInputStream fis = new FileInputStream(this.inputFile);
+        try {
+            final FileChannel channel = fis.getChannel();
+            final OutputStream os;
+            if (ranges == null) {
+                this.response.setResponseCode(ResponseCode.SUCCESS_OK);
+                headers.add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_TYPE, this.getMimeType()));
+                headers.add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_LENGTH, String.valueOf(length)));
+                os = this.response.getOutputStream(true);
+                if (sendBody) {
+                    this.transfer(channel, 0, length, os);
+                }
+            } else if (ranges.size() == 1) {
+                final long[] range = ranges.get(0);
+                this.response.setResponseCode(ResponseCode.SUCCESS_PARTIAL_CONTENT);
+                headers.add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_TYPE, this.getMimeType()));
+                headers.add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_RANGE, "bytes " + range[0] + "-" + range[1] + "/" + length));
+                headers.add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_LENGTH, String.valueOf(range[1] - range[0] + 1)));
+                os = this.response.getOutputStream(true);
+                if (sendBody) {
+                    this.transfer(channel, range[0], range[1] - range[0] + 1, os);
+                }
+            } else {
+                /* multipart/byteranges, the part headers are prepared first to get the Content-Length */
+                final String boundary = "AWBOUNDARY" + Long.toHexString(System.nanoTime());
+                final byte[][] partHeaders = new byte[ranges.size()][];
+                long contentLength = 0;
+                for (int index = 0; index < partHeaders.length; index++) {
+                    final long[] range = ranges.get(index);
+                    partHeaders[index] = ("\r\n--" + boundary + "\r\n" + HTTPConstants.HEADER_RESPONSE_CONTENT_TYPE + ": " + this.getMimeType() + "\r\n" + HTTPConstants.HEADER_RESPONSE_CONTENT_RANGE + ": bytes " + range[0] + "-" + range[1] + "/" + length + "\r\n\r\n").getBytes("ISO-8859-1");
+                    contentLength += partHeaders[index].length + range[1] - range[0] + 1;
+                }
+                final byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes("ISO-8859-1");
+                contentLength += end.length;
+                this.response.setResponseCode(ResponseCode.SUCCESS_PARTIAL_CONTENT);
+                headers.add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary));
+                headers.add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_LENGTH, String.valueOf(contentLength)));
+                os = this.response.getOutputStream(true);
+                if (sendBody) {
+                    for (int index = 0; index < partHeaders.length; index++) {
+                        final long[] range = ranges.get(index);
+                        os.write(partHeaders[index]);
+                        this.transfer(channel, range[0], range[1] - range[0] + 1, os);
+                    }
+                    os.write(end);
+                }
+            }
+            os.flush();
+        } finally {
+            fis.close();
+        }
+    }
+
+    /**
+     * @return true if the client already has the current version (If-None-Match has priority over If-Modified-Since)
+     */
+    protected boolean isNotModified(final String etag, final long lastModified) {
+        final String ifNoneMatch = this.request.getRequestHeaders().getValue(HTTPConstants.HEADER_REQUEST_IF_NON_MATCH);
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if ("*".equals(tag) || etag.equals(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        final String ifModifiedSince = this.request.getRequestHeaders().getValue(HTTPConstants.HEADER_REQUEST_IF_MODIFIED_SINCE);
+        if (ifModifiedSince != null && lastModified > 0) {
+            final Date date = TimeFormatter.parseDateString(ifModifiedSince);
+            /* http dates have seconds precision */
+            return date != null && lastModified / 1000 <= date.getTime() / 1000;
+        }
+        return false;
+    }
+
+    /**
+     * sends count bytes of the channel starting at position. uses sendfile if the connection is a plain socket
+     */
+    protected void transfer(final FileChannel channel, long position, long count, final OutputStream os) throws IOException {
+        if (this.response instanceof HttpResponse) {
+            final RawHttpConnectionInterface connection = ((HttpResponse) this.response).getConnection();
+            if (connection instanceof HttpConnection && ((HttpConnection) connection).isZeroCopySupported()) {
+                os.flush();
+                ((HttpConnection) connection).transferFrom(channel, position, count);
+                return;
+            }
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(count, 64 * 1024));
+        while (count > 0) {
+            buffer.clear();
+            if (buffer.remaining() > count) {
+                buffer.limit((int) count);
+            }
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("file is shorter than expected");
+            }
+            os.write(buffer.array(), 0, read);
+            position += read;
+            count -= read;
+        }
+    }
+
+    private static String formatDate(final long timestamp) {
+        final SimpleDateFormat df = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        df.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return df.format(new Date(timestamp));
+    }
+
     /* do we want the client to download this file or not? */
     protected boolean useContentDisposition() {
         if (this.inputURL != null) { return false; }
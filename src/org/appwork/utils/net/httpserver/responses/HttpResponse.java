@@ -57,6 +57,7 @@ public class HttpResponse implements HttpResponseInterface {
     protected final RawHttpConnectionInterface connection;
     protected OutputStream                     outputStream  = null;
     protected boolean                          asyncResponse = false;
+    private final HTTPHeader                   defaultConnectionHeader;
 
     public RawHttpConnectionInterface getConnection() {
         return connection;
@@ -65,7 +66,8 @@ public class HttpResponse implements HttpResponseInterface {
     public HttpResponse(final RawHttpConnectionInterface connection) {
         this.connection = connection;
         this.responseHeaders = new HeaderCollection();
-        this.responseHeaders.add(new HTTPHeader(HTTPConstants.HEADER_REQUEST_CONNECTION, "close"));
+        this.defaultConnectionHeader = new HTTPHeader(HTTPConstants.HEADER_REQUEST_CONNECTION, "close");
+        this.responseHeaders.add(this.defaultConnectionHeader);
         this.responseHeaders.add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_SERVER, "AppWork GmbH HttpServer"));
     }
 
@@ -100,6 +102,13 @@ public class HttpResponse implements HttpResponseInterface {
         return this.outputStream;
     }
 
+    /**
+     * @return true if nobody replaced the default Connection: close header, the connection may then decide to keep the connection alive
+     */
+    public boolean hasDefaultConnectionHeader() {
+        return this.responseHeaders.get(HTTPConstants.HEADER_REQUEST_CONNECTION) == this.defaultConnectionHeader;
+    }
+
     /**
      * @return the responseCode
      */
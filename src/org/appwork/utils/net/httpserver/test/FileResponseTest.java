@@ -0,0 +1,163 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpserver.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.remoteapi.exceptions.BasicRemoteAPIException;
+import org.appwork.utils.Application;
+import org.appwork.utils.IO;
+import org.appwork.utils.Regex;
+import org.appwork.utils.net.httpserver.HttpServer;
+import org.appwork.utils.net.httpserver.HttpServer.Engine;
+import org.appwork.utils.net.httpserver.handler.HttpRequestHandler;
+import org.appwork.utils.net.httpserver.requests.GetRequest;
+import org.appwork.utils.net.httpserver.requests.PostRequest;
+import org.appwork.utils.net.httpserver.responses.FileResponse;
+import org.appwork.utils.net.httpserver.responses.HttpResponse;
+
+/**
+ * full, ranged and conditional FileResponses on one persistent connection, for both server engines
+ *
+ * @author thomas
+ *
+ */
+public class FileResponseTest {
+    public static void main(String[] args) throws Exception {
+        Application.setApplication(".appwork-test");
+        final File file = File.createTempFile("fileresponse", ".bin");
+        file.delete();
+        file.deleteOnExit();
+        final byte[] content = new byte[1024 * 1024 + 17];
+        new Random(1).nextBytes(content);
+        IO.writeToFile(file, content);
+        for (final Engine engine : Engine.values()) {
+            test(engine, file, content);
+        }
+        System.out.println("SUCCESSFUL");
+    }
+
+    private static void test(final Engine engine, final File file, final byte[] content) throws Exception {
+        final HttpServer server = new HttpServer(0, engine);
+        server.setLocalhostOnly(true);
+        server.registerRequestHandler(new HttpRequestHandler() {
+            @Override
+            public boolean onPostRequest(PostRequest request, HttpResponse response) throws BasicRemoteAPIException {
+                return false;
+            }
+
+            @Override
+            public boolean onGetRequest(GetRequest request, HttpResponse response) throws BasicRemoteAPIException {
+                try {
+                    new FileResponse(request, response, file).sendFile();
+                    return true;
+                } catch (final IOException e) {
+                    throw new WTFException(e);
+                }
+            }
+        });
+        server.start();
+        final Socket socket = new Socket("127.0.0.1", server.getPort());
+        try {
+            socket.setSoTimeout(10000);
+            String head = request(socket, "", null);
+            final byte[] full = body;
+            assertTrue(head.startsWith("HTTP/1.1 200") && Arrays.equals(full, content), "full " + head);
+            final String etag = new Regex(head, "ETag: (\"[^\"]+\")").getMatch(0);
+            head = request(socket, "Range: bytes=10-19\r\n", null);
+            assertTrue(head.startsWith("HTTP/1.1 206") && head.contains("Content-Range: bytes 10-19/" + content.length) && Arrays.equals(body, Arrays.copyOfRange(content, 10, 20)), "range " + head);
+            head = request(socket, "Range: bytes=-5\r\n", null);
+            assertTrue(head.startsWith("HTTP/1.1 206") && Arrays.equals(body, Arrays.copyOfRange(content, content.length - 5, content.length)), "suffix " + head);
+            head = request(socket, "Range: bytes=0-4,100-104\r\n", null);
+            final String multipart = new String(body, "ISO-8859-1");
+            assertTrue(head.startsWith("HTTP/1.1 206") && head.contains("multipart/byteranges") && multipart.contains("Content-Range: bytes 0-4/" + content.length) && multipart.contains("Content-Range: bytes 100-104/" + content.length) && multipart.contains(new String(content, 100, 5, "ISO-8859-1")), "multi " + head);
+            head = request(socket, "Range: bytes=" + content.length + "-\r\n", null);
+            assertTrue(head.startsWith("HTTP/1.1 416"), "unsatisfiable " + head);
+            head = request(socket, "If-None-Match: " + etag + "\r\n", null);
+            assertTrue(head.startsWith("HTTP/1.1 304") && body.length == 0, "etag " + head);
+            head = request(socket, "If-Modified-Since: " + new Regex(head, "Last-Modified: ([^\r\n]+)").getMatch(0) + "\r\n", null);
+            assertTrue(head.startsWith("HTTP/1.1 304"), "modified since " + head);
+            head = request(socket, "", "HEAD");
+            assertTrue(head.startsWith("HTTP/1.1 200") && head.contains("Content-Length: " + content.length), "head " + head);
+            assertTrue(server.getConnectionCount() == 1 && server.getRequestCount() == 8, "not reused " + server.getConnectionCount());
+        } finally {
+            socket.close();
+            server.stop();
+        }
+    }
+
+    private static byte[] body;
+
+    private static String request(final Socket socket, final String headers, final String method) throws IOException {
+        socket.getOutputStream().write(((method == null ? "GET" : method) + " /file HTTP/1.1\r\nHost: localhost\r\n" + headers + "\r\n").getBytes("ISO-8859-1"));
+        final InputStream is = socket.getInputStream();
+        final StringBuilder head = new StringBuilder();
+        while (!head.toString().endsWith("\r\n\r\n")) {
+            final int read = is.read();
+            if (read == -1) {
+                throw new IOException("closed");
+            }
+            head.append((char) read);
+        }
+        final String length = new Regex(head.toString(), "Content-Length: (\\d+)").getMatch(0);
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        if (length != null && method == null) {
+            final byte[] buffer = new byte[8192];
+            long left = Long.parseLong(length);
+            while (left > 0) {
+                final int read = is.read(buffer, 0, (int) Math.min(buffer.length, left));
+                if (read == -1) {
+                    throw new IOException("closed");
+                }
+                bos.write(buffer, 0, read);
+                left -= read;
+            }
+        }
+        body = bos.toByteArray();
+        return head.toString();
+    }
+
+    private static void assertTrue(final boolean b, final String message) {
+        if (!b) {
+            throw new WTFException(message);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpserver.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.utils.Application;
+import org.appwork.utils.Regex;
+import org.appwork.utils.StringUtils;
+import org.appwork.utils.net.HTTPHeader;
+import org.appwork.utils.net.HeaderCollection;
+import org.appwork.utils.net.httpserver.HttpConnection;
+import org.appwork.utils.net.httpserver.HttpRequestHeadParser;
+import org.appwork.utils.net.httpserver.requests.KeyValuePair;
+
+/**
+ * compares HttpRequestHeadParser with the String/Regex based parse methods of HttpConnection
+ *
+ * @author thomas
+ *
+ */
+public class HeadParserTest {
+    private static class LegacyParser extends HttpConnection {
+        private InputStream is;
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return this.is;
+        }
+
+        private String[] parse(final byte[] head) throws IOException {
+            this.is = new ByteArrayInputStream(head);
+            final String requestLine = this.parseRequestLine();
+            final String requestedURL = new Regex(requestLine, "\\s+(.+)\\s+HTTP/").getMatch(0);
+            final String requestedPath = new Regex(requestedURL, "^(/.*?)($|\\?)").getMatch(0);
+            return new String[] { requestLine, this.parseConnectionType(requestLine).name(), requestedURL, requestedPath, HeadParserTest.toString(this.parseRequestURLParams(requestedURL)), HeadParserTest.toString(this.parseRequestHeaders()) };
+        }
+    }
+
+    private static String toString(final List<KeyValuePair> parameters) {
+        final StringBuilder sb = new StringBuilder();
+        for (final KeyValuePair pair : parameters) {
+            sb.append(pair.key).append('=').append(pair.value).append('|');
+        }
+        return sb.toString();
+    }
+
+    private static String toString(final HeaderCollection headers) {
+        final StringBuilder sb = new StringBuilder();
+        for (final HTTPHeader header : headers) {
+            sb.append(header.getKey()).append(':').append(header.getValue()).append('|');
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Application.setApplication(".appwork-test");
+        final String[] requests = new String[] { "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n", "GET /jd/getVersion?a=1&b=%C3%A4%20x+y&_=123&c&d=e=f HTTP/1.1\r\nHost: localhost:3128\r\nUser-Agent: Mozilla/5.0 (X11; Linux x86_64)\r\nAccept: */*\r\nX-Custom:novalue\r\nbrokenline\r\nCookie: a=b; c=d\r\n\r\n", "POST /events/listen?x=&#y=1 HTTP/1.0\r\nContent-Length: 10\r\nContent-Type: application/json\r\n\r\n", "GET http://example.com/x?y=1 HTTP/1.1\nHost: example.com\n\n", "OPTIONS /api HTTP/1.1\r\nOrigin: http://my.jdownloader.org\r\nX:a: b\r\n\r\n" };
+        final HttpRequestHeadParser parser = new HttpRequestHeadParser();
+        final LegacyParser legacy = new LegacyParser();
+        for (final String request : requests) {
+            final byte[] bytes = request.getBytes("ISO-8859-1");
+            final String[] expected = legacy.parse(bytes);
+            if (!parser.parse(new ByteArrayInputStream(bytes))) {
+                throw new WTFException("not parsed: " + request);
+            }
+            final String[] actual = new String[] { parser.getRequestLine(), parser.getMethod().name(), parser.getRequestedURL(), parser.getRequestedPath(), toString(parser.getRequestedURLParameters()), toString(parser.getHeaders()) };
+            for (int index = 0; index < expected.length; index++) {
+                if (!StringUtils.equals(expected[index], actual[index])) {
+                    throw new WTFException("field " + index + " differs: " + expected[index] + " != " + actual[index]);
+                }
+            }
+        }
+        if (parser.parse(new ByteArrayInputStream("\r\n".getBytes("ISO-8859-1")))) {
+            throw new WTFException("empty request");
+        }
+        System.out.println("SUCCESSFUL");
+    }
+}
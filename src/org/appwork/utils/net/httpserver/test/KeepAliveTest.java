@@ -0,0 +1,147 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpserver.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.net.protocol.http.HTTPConstants;
+import org.appwork.net.protocol.http.HTTPConstants.ResponseCode;
+import org.appwork.remoteapi.exceptions.BasicRemoteAPIException;
+import org.appwork.utils.Application;
+import org.appwork.utils.Regex;
+import org.appwork.utils.net.ChunkedOutputStream;
+import org.appwork.utils.net.HTTPHeader;
+import org.appwork.utils.net.httpserver.HttpServer;
+import org.appwork.utils.net.httpserver.HttpServer.Engine;
+import org.appwork.utils.net.httpserver.handler.HttpRequestHandler;
+import org.appwork.utils.net.httpserver.requests.GetRequest;
+import org.appwork.utils.net.httpserver.requests.HttpRequest;
+import org.appwork.utils.net.httpserver.requests.PostRequest;
+import org.appwork.utils.net.httpserver.responses.HttpResponse;
+
+/**
+ * sends pipelined requests over one socket and checks that all of them are answered on the same connection
+ *
+ * @author thomas
+ *
+ */
+public class KeepAliveTest {
+    public static void main(String[] args) throws Exception {
+        Application.setApplication(".appwork-test");
+        for (final Engine engine : Engine.values()) {
+            test(engine);
+        }
+        System.out.println("SUCCESSFUL");
+    }
+
+    private static void test(final Engine engine) throws Exception {
+        final HttpServer server = new HttpServer(0, engine);
+        server.setLocalhostOnly(true);
+        server.registerRequestHandler(new HttpRequestHandler() {
+            @Override
+            public boolean onPostRequest(PostRequest request, HttpResponse response) throws BasicRemoteAPIException {
+                // the request body is not read, the connection has to skip it
+                return this.respond(request, response);
+            }
+
+            @Override
+            public boolean onGetRequest(GetRequest request, HttpResponse response) throws BasicRemoteAPIException {
+                return this.respond(request, response);
+            }
+
+            private boolean respond(HttpRequest request, HttpResponse response) {
+                try {
+                    final byte[] bytes = ("response " + request.getRequestedPath() + ";").getBytes("UTF-8");
+                    response.setResponseCode(ResponseCode.SUCCESS_OK);
+                    if ("/chunked".equals(request.getRequestedPath())) {
+                        response.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_TRANSFER_ENCODING, HTTPConstants.HEADER_RESPONSE_TRANSFER_ENCODING_CHUNKED));
+                        final OutputStream os = new ChunkedOutputStream(response.getOutputStream(true));
+                        os.write(bytes);
+                        os.close();
+                    } else if ("/nolength".equals(request.getRequestedPath())) {
+                        response.getOutputStream(true).write(bytes);
+                    } else {
+                        response.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_LENGTH, String.valueOf(bytes.length)));
+                        response.getOutputStream(true).write(bytes);
+                        response.getOutputStream(true).close();
+                    }
+                    return true;
+                } catch (final Exception e) {
+                    throw new WTFException(e);
+                }
+            }
+        });
+        server.start();
+        try {
+            final Socket socket = new Socket("127.0.0.1", server.getPort());
+            socket.setSoTimeout(10000);
+            final StringBuilder sb = new StringBuilder();
+            sb.append("GET /a HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            sb.append("POST /post HTTP/1.1\r\nHost: localhost\r\nContent-Length: 10\r\n\r\n0123456789");
+            sb.append("GET /chunked HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            sb.append("GET /b HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            sb.append("GET /nolength HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            sb.append("GET /never HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            socket.getOutputStream().write(sb.toString().getBytes("ISO-8859-1"));
+            socket.getOutputStream().flush();
+            final InputStream is = socket.getInputStream();
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            // read until the server closes the connection after the response without length
+            while ((read = is.read(buffer)) != -1) {
+                bos.write(buffer, 0, read);
+            }
+            socket.close();
+            final String responses = bos.toString("ISO-8859-1");
+            final String[] paths = new Regex(responses, "response (/[^;]+);").getColumn(0);
+            if (paths.length != 5 || !"/a".equals(paths[0]) || !"/post".equals(paths[1]) || !"/chunked".equals(paths[2]) || !"/b".equals(paths[3]) || !"/nolength".equals(paths[4])) {
+                throw new WTFException("unexpected responses: " + responses);
+            }
+            if (new Regex(responses, "Connection: keep-alive").count() != 4 || new Regex(responses, "Connection: close").count() != 1) {
+                throw new WTFException("unexpected Connection headers: " + responses);
+            }
+            if (server.getConnectionCount() != 1 || server.getRequestCount() != 5) {
+                throw new WTFException("stats: " + server.getConnectionCount() + "/" + server.getRequestCount());
+            }
+            System.out.println(engine + " reuse ratio " + server.getConnectionReuseRatio());
+        } finally {
+            server.stop();
+        }
+    }
+}
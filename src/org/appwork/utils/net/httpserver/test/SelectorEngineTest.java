@@ -0,0 +1,143 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpserver.test;
+
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.net.protocol.http.HTTPConstants;
+import org.appwork.net.protocol.http.HTTPConstants.ResponseCode;
+import org.appwork.remoteapi.exceptions.BasicRemoteAPIException;
+import org.appwork.utils.Application;
+import org.appwork.utils.net.HTTPHeader;
+import org.appwork.utils.net.httpserver.HttpServer;
+import org.appwork.utils.net.httpserver.HttpServer.Engine;
+import org.appwork.utils.net.httpserver.handler.HttpRequestHandler;
+import org.appwork.utils.net.httpserver.requests.GetRequest;
+import org.appwork.utils.net.httpserver.requests.PostRequest;
+import org.appwork.utils.net.httpserver.responses.HttpResponse;
+
+/**
+ * many slow (long polling like) clients on a SELECTOR server with a few workers. all requests have to be answered and idle connections
+ * must not hold a worker
+ *
+ * @author thomas
+ *
+ */
+public class SelectorEngineTest {
+    private static final int CLIENTS  = 200;
+    private static final int REQUESTS = 3;
+
+    public static void main(String[] args) throws Exception {
+        Application.setApplication(".appwork-test");
+        final HttpServer server = new HttpServer(0, Engine.SELECTOR);
+        server.setLocalhostOnly(true);
+        server.setMaxWorkers(8);
+        server.registerRequestHandler(new HttpRequestHandler() {
+            @Override
+            public boolean onPostRequest(PostRequest request, HttpResponse response) throws BasicRemoteAPIException {
+                return false;
+            }
+
+            @Override
+            public boolean onGetRequest(GetRequest request, HttpResponse response) throws BasicRemoteAPIException {
+                try {
+                    Thread.sleep(10);
+                    response.setResponseCode(ResponseCode.SUCCESS_OK);
+                    response.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_LENGTH, "2"));
+                    response.getOutputStream(true).write("ok".getBytes("ISO-8859-1"));
+                    return true;
+                } catch (final Exception e) {
+                    throw new WTFException(e);
+                }
+            }
+        });
+        server.start();
+        final List<Socket> sockets = new ArrayList<Socket>();
+        try {
+            final AtomicInteger answered = new AtomicInteger(0);
+            final List<Thread> clients = new ArrayList<Thread>();
+            for (int i = 0; i < CLIENTS; i++) {
+                final Socket socket = new Socket("127.0.0.1", server.getPort());
+                socket.setSoTimeout(30000);
+                sockets.add(socket);
+                final Thread client = new Thread() {
+                    public void run() {
+                        try {
+                            final InputStream is = socket.getInputStream();
+                            for (int request = 0; request < REQUESTS; request++) {
+                                socket.getOutputStream().write("GET /poll HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes("ISO-8859-1"));
+                                final StringBuilder sb = new StringBuilder();
+                                while (!sb.toString().endsWith("\r\n\r\nok")) {
+                                    final int read = is.read();
+                                    if (read == -1) {
+                                        throw new WTFException("closed");
+                                    }
+                                    sb.append((char) read);
+                                }
+                                answered.incrementAndGet();
+                            }
+                        } catch (final Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                };
+                clients.add(client);
+                client.start();
+            }
+            for (final Thread client : clients) {
+                client.join();
+            }
+            if (answered.get() != CLIENTS * REQUESTS) {
+                throw new WTFException("answered " + answered.get() + " of " + CLIENTS * REQUESTS);
+            }
+            Thread.sleep(200);
+            final int parked = server.getSelectorEngine().getParkedConnections();
+            if (parked != CLIENTS) {
+                throw new WTFException("parked " + parked);
+            }
+            System.out.println("reuse ratio " + server.getConnectionReuseRatio());
+            System.out.println("SUCCESSFUL");
+        } finally {
+            for (final Socket socket : sockets) {
+                socket.close();
+            }
+            server.stop();
+        }
+    }
+}
@@ -40,7 +40,7 @@ import java.io.InputStream;
  * @author daniel
  *
  */
-public class ThrottledInputStream extends InputStream implements ThrottledConnection {
+public class ThrottledInputStream extends InputStream implements TokenBucketThrottledConnection {
     private ThrottledConnectionHandler handler;
     private InputStream                in;
     protected volatile long            transferedCounter  = 0;
@@ -52,6 +52,7 @@ public class ThrottledInputStream extends InputStream implements ThrottledConnec
     private long                       lastTimeReset      = 0;
     private final long                 onems              = 1000000l;
     private final long                 onesec             = 1000000000l;
+    private volatile TokenBucket       tokenBucket        = null;
 
     /**
      * constructor for not managed ThrottledInputStream
@@ -112,6 +113,21 @@ public class ThrottledInputStream extends InputStream implements ThrottledConnec
      */
     @Override
     public int read() throws IOException {
+        final TokenBucket tokenBucket = this.tokenBucket;
+        if (tokenBucket != null) {
+            try {
+                tokenBucket.acquire(1, this);
+            } catch (final InterruptedException e) {
+                throw new IOException("throttle interrupted", e);
+            }
+            this.lastRead2 = this.in.read();
+            if (this.lastRead2 == -1) {
+                tokenBucket.refund(1);
+                return -1;
+            }
+            this.transferedCounter++;
+            return this.lastRead2;
+        }
         this.lastRead2 = this.in.read();
         if (this.lastRead2 == -1) {
             /* end of line */
@@ -129,7 +145,23 @@ public class ThrottledInputStream extends InputStream implements ThrottledConnec
 
     @Override
     public int read(final byte b[], final int off, final int len) throws IOException {
-        if (this.limitCurrent == 0) {
+        final TokenBucket tokenBucket = this.tokenBucket;
+        if (tokenBucket != null && len > 0) {
+            final int granted;
+            try {
+                granted = (int) tokenBucket.acquire(len, this);
+            } catch (final InterruptedException e) {
+                throw new IOException("throttle interrupted", e);
+            }
+            this.lastRead2 = this.in.read(b, off, granted);
+            if (this.lastRead2 == -1) {
+                /* end of line */
+                tokenBucket.refund(granted);
+                return -1;
+            }
+            tokenBucket.refund(granted - this.lastRead2);
+            this.transferedCounter += this.lastRead2;
+        } else if (this.limitCurrent == 0) {
             this.lastRead2 = this.in.read(b, off, len);
             if (this.lastRead2 == -1) {
                 /* end of line */
@@ -218,6 +250,10 @@ public class ThrottledInputStream extends InputStream implements ThrottledConnec
      *            /S
      */
     public void setLimit(final int kpsLimit) {
+        final TokenBucket tokenBucket = this.tokenBucket;
+        if (tokenBucket != null) {
+            tokenBucket.setRate(kpsLimit);
+        }
         if (kpsLimit == this.limitCurrent) {
             return;
         }
@@ -225,6 +261,19 @@ public class ThrottledInputStream extends InputStream implements ThrottledConnec
         this.limitCurrent = Math.max(0, kpsLimit);
     }
 
+    @Override
+    public TokenBucket getTokenBucket() {
+        return this.tokenBucket;
+    }
+
+    @Override
+    public void setTokenBucket(final TokenBucket tokenBucket) {
+        this.tokenBucket = tokenBucket;
+        synchronized (this) {
+            this.notify();
+        }
+    }
+
     @Override
     public long skip(final long n) throws IOException {
         return this.in.skip(n);
@@ -40,7 +40,7 @@ import java.io.OutputStream;
  * @author daniel
  * 
  */
-public class ThrottledOutputStream extends OutputStream implements ThrottledConnection {
+public class ThrottledOutputStream extends OutputStream implements TokenBucketThrottledConnection {
     private ThrottledConnectionHandler handler;
     private OutputStream               out;
     protected volatile long            transferedCounter  = 0;
@@ -54,6 +54,7 @@ public class ThrottledOutputStream extends OutputStream implements ThrottledConn
     private long                       lastTimeReset      = 0;
     private final long                 onems              = 1000000l;
     private final long                 onesec             = 1000000000l;
+    private volatile TokenBucket       tokenBucket        = null;
 
     /**
      * constructor for not managed ThrottledOutputStream
@@ -120,6 +121,10 @@ public class ThrottledOutputStream extends OutputStream implements ThrottledConn
      * @param kpsLimit
      */
     public void setLimit(final int kpsLimit) {
+        final TokenBucket tokenBucket = this.tokenBucket;
+        if (tokenBucket != null) {
+            tokenBucket.setRate(kpsLimit);
+        }
         if (kpsLimit == this.limitCurrent) {
             return;
         }
@@ -127,6 +132,19 @@ public class ThrottledOutputStream extends OutputStream implements ThrottledConn
         this.limitCurrent = Math.max(0, kpsLimit);
     }
 
+    @Override
+    public TokenBucket getTokenBucket() {
+        return this.tokenBucket;
+    }
+
+    @Override
+    public void setTokenBucket(final TokenBucket tokenBucket) {
+        this.tokenBucket = tokenBucket;
+        synchronized (this) {
+            this.notify();
+        }
+    }
+
     public void setOutputStream(final OutputStream os) {
         if (os == null) {
             throw new IllegalArgumentException("Outputstream is null");
@@ -144,7 +162,23 @@ public class ThrottledOutputStream extends OutputStream implements ThrottledConn
 
     @Override
     public void write(final byte b[], final int off, final int len) throws IOException {
-        if (this.limitCurrent == 0) {
+        final TokenBucket tokenBucket = this.tokenBucket;
+        if (tokenBucket != null) {
+            this.offset = off;
+            this.rest = len;
+            while (this.rest > 0) {
+                /* loop until all data is written */
+                try {
+                    this.todo = (int) tokenBucket.acquire(this.rest, this);
+                } catch (final InterruptedException e) {
+                    throw new IOException("throttle interrupted", e);
+                }
+                this.out.write(b, this.offset, this.todo);
+                this.offset += this.todo;
+                this.rest -= this.todo;
+                this.transferedCounter += this.todo;
+            }
+        } else if (this.limitCurrent == 0) {
             /* no limit is set */
             this.out.write(b, off, len);
             this.transferedCounter += len;
@@ -170,6 +204,17 @@ public class ThrottledOutputStream extends OutputStream implements ThrottledConn
      */
     @Override
     public void write(final int b) throws IOException {
+        final TokenBucket tokenBucket = this.tokenBucket;
+        if (tokenBucket != null) {
+            try {
+                tokenBucket.acquire(1, this);
+            } catch (final InterruptedException e) {
+                throw new IOException("throttle interrupted", e);
+            }
+            this.out.write(b);
+            this.transferedCounter++;
+            return;
+        }
         this.out.write(b);
         this.transferedCounter++;
         if (this.limitCurrent != 0) {
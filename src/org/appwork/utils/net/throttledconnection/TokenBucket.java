@@ -0,0 +1,306 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.throttledconnection;
+
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * hierarchical token bucket, eg global -> group -> connection. bytes are taken from the whole chain, so every level enforces its rate.
+ * tokens are refilled on access with nanosecond precision, no extra thread is required.
+ *
+ * a single take never gets more than capacity/children of a level. children that find a level empty queue up and the first one in the
+ * queue gets the next share, so the children of a level take turns instead of the busiest child getting everything
+ *
+ * @author thomas
+ *
+ */
+public class TokenBucket {
+    private static final long             ONESEC      = 1000000000l;
+    /* smallest burst, avoids tiny reads/writes at low rates */
+    private static final long             MIN_BURST   = 4096;
+    private final TokenBucket             parent;
+    private final AtomicInteger           children    = new AtomicInteger(0);
+    private final AtomicLong              consumed    = new AtomicLong(0);
+    private volatile long                 rate        = 0;
+    private long                          capacity    = 0;
+    private long                          tokens      = 0;
+    private long                          lastRefill  = System.nanoTime();
+    private boolean                       attached    = false;
+    /* children that got nothing, the first one gets the next share */
+    private final LinkedList<TokenBucket> starving    = new LinkedList<TokenBucket>();
+    private long                          reservedEnd = 0;
+
+    public TokenBucket() {
+        this(null, 0);
+    }
+
+    /**
+     * @param parent
+     *            null for a root bucket
+     * @param rate
+     *            bytes/s, 0 = no limit on this level
+     */
+    public TokenBucket(final TokenBucket parent, final long rate) {
+        this.parent = parent;
+        this.setRate(rate);
+        this.tokens = this.capacity;
+    }
+
+    public TokenBucket getParent() {
+        return this.parent;
+    }
+
+    /**
+     * @return bytes/s, 0 = no limit on this level
+     */
+    public long getRate() {
+        return this.rate;
+    }
+
+    /**
+     * @param rate
+     *            bytes/s, 0 = no limit on this level
+     */
+    public synchronized void setRate(final long rate) {
+        final long newRate = Math.max(0, rate);
+        if (newRate == this.rate && this.capacity > 0) {
+            return;
+        }
+        this.refill(System.nanoTime());
+        this.rate = newRate;
+        /* up to 100ms burst, but never more than one second worth of tokens */
+        this.capacity = Math.max(1, Math.min(newRate, Math.max(MIN_BURST, newRate / 10)));
+        this.tokens = Math.min(this.tokens, this.capacity);
+    }
+
+    /**
+     * registers a child (connection or group) for the fair share of this bucket
+     */
+    public synchronized void attach() {
+        if (!this.attached && this.parent != null) {
+            this.attached = true;
+            this.parent.children.incrementAndGet();
+        }
+    }
+
+    public synchronized void detach() {
+        if (this.attached) {
+            this.attached = false;
+            this.parent.children.decrementAndGet();
+        }
+    }
+
+    public int getChildren() {
+        return this.children.get();
+    }
+
+    /**
+     * @return bytes taken from this bucket in total
+     */
+    public long getConsumed() {
+        return this.consumed.get();
+    }
+
+    /**
+     * @return true if no level of the chain has a limit
+     */
+    public boolean isUnlimited() {
+        for (TokenBucket bucket = this; bucket != null; bucket = bucket.parent) {
+            if (bucket.rate > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void refill(final long now) {
+        final long elapsed = now - this.lastRefill;
+        if (elapsed <= 0) {
+            return;
+        }
+        final long rate = this.rate;
+        if (rate > 0) {
+            final long add = elapsed >= ONESEC ? rate : elapsed * rate / ONESEC;
+            if (add == 0) {
+                /* keep lastRefill, so the elapsed time adds up */
+                return;
+            }
+            this.tokens = Math.min(this.capacity, this.tokens + add);
+        }
+        this.lastRefill = now;
+    }
+
+    private long getShare() {
+        return Math.max(1, this.capacity / Math.max(1, this.children.get()));
+    }
+
+    /**
+     * takes up to wanted bytes from the whole chain without waiting
+     *
+     * @return granted bytes, 0 if any level is empty
+     */
+    public long take(final long wanted) {
+        if (wanted <= 0) {
+            return 0;
+        }
+        return this.take(wanted, System.nanoTime(), null);
+    }
+
+    /**
+     * @return tokens the child may use, excluding the share of the first starving child
+     */
+    private long getAvailable(final TokenBucket child, final long now) {
+        if (this.starving.size() > 0 && now - this.reservedEnd > 0) {
+            /* first child did not come back in time */
+            this.starving.removeFirst();
+            this.reserve(now);
+        }
+        final boolean turn = child == null || this.starving.size() == 0 || this.starving.getFirst() == child;
+        if (this.rate > 0) {
+            return turn ? this.tokens : this.tokens - this.getShare();
+        }
+        return turn ? Long.MAX_VALUE : 0;
+    }
+
+    private void reserve(final long now) {
+        if (this.rate > 0) {
+            /* time to refill the share twice */
+            this.reservedEnd = now + 2 * (this.getShare() * ONESEC / this.rate) + 10000000l;
+        } else {
+            this.reservedEnd = now + 250000000l;
+        }
+    }
+
+    /* locks are always taken child before parent */
+    private synchronized long take(long wanted, final long now, final TokenBucket child) {
+        final boolean limited = this.rate > 0;
+        if (limited) {
+            this.refill(now);
+            wanted = Math.min(wanted, this.getShare());
+        }
+        wanted = Math.min(wanted, this.getAvailable(child, now));
+        if (wanted > 0 && this.parent != null) {
+            wanted = this.parent.take(wanted, now, this);
+        }
+        if (wanted <= 0) {
+            if (child != null && !this.starving.contains(child)) {
+                this.starving.add(child);
+                if (this.starving.size() == 1) {
+                    this.reserve(now);
+                }
+            }
+            return 0;
+        }
+        if (limited) {
+            this.tokens -= wanted;
+        }
+        if (this.starving.size() > 0 && this.starving.getFirst() == child) {
+            this.starving.removeFirst();
+            this.reserve(now);
+        }
+        this.consumed.addAndGet(wanted);
+        return wanted;
+    }
+
+    /**
+     * returns unused bytes of a take to the whole chain, eg a read returned less than granted
+     */
+    public void refund(final long unused) {
+        if (unused <= 0) {
+            return;
+        }
+        for (TokenBucket bucket = this; bucket != null; bucket = bucket.parent) {
+            synchronized (bucket) {
+                if (bucket.rate > 0) {
+                    bucket.tokens = Math.min(bucket.capacity, bucket.tokens + unused);
+                }
+                bucket.consumed.addAndGet(-unused);
+            }
+        }
+    }
+
+    /**
+     * @return nanoseconds until a take of wanted bytes can get a useful amount on every level
+     */
+    public long getWaitNanos(final long wanted) {
+        final long now = System.nanoTime();
+        long ret = 0;
+        long need = Math.max(1, wanted);
+        TokenBucket child = null;
+        for (TokenBucket bucket = this; bucket != null; child = bucket, bucket = bucket.parent) {
+            synchronized (bucket) {
+                final long rate = bucket.rate;
+                if (rate > 0) {
+                    bucket.refill(now);
+                    /* a take never gets more than the share of a level below */
+                    need = Math.min(need, bucket.getShare());
+                    final long deficit = need - bucket.getAvailable(child, now);
+                    if (deficit > 0) {
+                        ret = Math.max(ret, deficit * ONESEC / rate);
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * takes up to wanted bytes from the whole chain, waits on monitor until at least one byte is available
+     *
+     * @return granted bytes
+     */
+    public long acquire(final long wanted, final Object monitor) throws InterruptedException {
+        if (wanted <= 0) {
+            return 0;
+        }
+        while (true) {
+            final long granted = this.take(wanted);
+            if (granted > 0) {
+                return granted;
+            }
+            /* at least 1ms, also while another child has its turn */
+            final long wait = Math.max(1000000l, this.getWaitNanos(wanted));
+            synchronized (monitor) {
+                monitor.wait(wait / 1000000l, (int) (wait % 1000000l));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TokenBucket[rate=" + this.rate + "|children=" + this.children.get() + "|consumed=" + this.consumed.get() + "]";
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.throttledconnection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ThrottledConnectionHandler without watchdog thread. every connection gets its own {@link TokenBucket} below the bucket of this handler,
+ * the handler bucket can be placed below a global bucket. the streams take their bytes from the buckets while reading/writing.
+ *
+ * @author thomas
+ *
+ */
+public class TokenBucketThrottledConnectionHandler implements ThrottledConnectionHandler {
+    private final String                   name;
+    private final TokenBucket              bucket;
+    private final Set<ThrottledConnection> connections  = Collections.newSetFromMap(new ConcurrentHashMap<ThrottledConnection, Boolean>());
+    private volatile int                   limit        = 0;
+    private int                            speed        = 0;
+    private long                           speedTime    = 0;
+    private long                           speedTraffic = 0;
+
+    public TokenBucketThrottledConnectionHandler(final String name) {
+        this(name, null);
+    }
+
+    /**
+     * @param parent
+     *            bucket shared with other handlers, eg a global limit. null for none
+     */
+    public TokenBucketThrottledConnectionHandler(final String name, final TokenBucket parent) {
+        this.name = name;
+        this.bucket = new TokenBucket(parent, 0);
+        this.bucket.attach();
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public TokenBucket getTokenBucket() {
+        return this.bucket;
+    }
+
+    @Override
+    public void addThrottledConnection(final ThrottledConnection con) {
+        if (!this.connections.add(con)) {
+            return;
+        }
+        con.setHandler(this);
+        if (con instanceof TokenBucketThrottledConnection) {
+            final TokenBucket connectionBucket = new TokenBucket(this.bucket, con.getLimit());
+            connectionBucket.attach();
+            ((TokenBucketThrottledConnection) con).setTokenBucket(connectionBucket);
+        } else {
+            /* no inline support, limit the connection to its share */
+            con.setLimit(this.limit / Math.max(1, this.connections.size()));
+        }
+    }
+
+    @Override
+    public void removeThrottledConnection(final ThrottledConnection con) {
+        if (!this.connections.remove(con)) {
+            return;
+        }
+        if (con instanceof TokenBucketThrottledConnection) {
+            final TokenBucketThrottledConnection tcon = (TokenBucketThrottledConnection) con;
+            final TokenBucket connectionBucket = tcon.getTokenBucket();
+            if (connectionBucket != null && connectionBucket.getParent() == this.bucket) {
+                connectionBucket.detach();
+                tcon.setTokenBucket(null);
+            }
+        }
+        con.setHandler(null);
+    }
+
+    @Override
+    public List<ThrottledConnection> getConnections() {
+        return new ArrayList<ThrottledConnection>(this.connections);
+    }
+
+    @Override
+    public int getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * @param limit
+     *            bytes/s for all connections of this handler, 0 = no limit
+     */
+    @Override
+    public void setLimit(final int limit) {
+        this.limit = Math.max(0, limit);
+        this.bucket.setRate(this.limit);
+    }
+
+    /**
+     * @return bytes/s, updated on access at most once per second
+     */
+    @Override
+    public synchronized int getSpeed() {
+        final long now = System.currentTimeMillis();
+        final long traffic = this.bucket.getConsumed();
+        if (this.speedTime == 0) {
+            this.speedTime = now;
+            this.speedTraffic = traffic;
+        } else if (now - this.speedTime >= 1000) {
+            this.speed = (int) ((traffic - this.speedTraffic) * 1000 / (now - this.speedTime));
+            this.speedTime = now;
+            this.speedTraffic = traffic;
+        }
+        return this.speed;
+    }
+
+    @Override
+    public long getTraffic() {
+        return this.bucket.getConsumed();
+    }
+
+    @Override
+    public int size() {
+        return this.connections.size();
+    }
+
+    @Override
+    public String toString() {
+        return this.name + "|" + this.bucket;
+    }
+}
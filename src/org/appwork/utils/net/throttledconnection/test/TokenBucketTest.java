@@ -0,0 +1,141 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.throttledconnection.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.utils.net.throttledconnection.ThrottledInputStream;
+import org.appwork.utils.net.throttledconnection.TokenBucket;
+import org.appwork.utils.net.throttledconnection.TokenBucketThrottledConnectionHandler;
+
+/**
+ * global limit with two groups: one unlimited group with three connections, one limited group with one connection
+ *
+ * @author thomas
+ *
+ */
+public class TokenBucketTest {
+    private static class Reader extends Thread {
+        private final ThrottledInputStream is;
+        private volatile boolean           running = true;
+
+        private Reader(final TokenBucketThrottledConnectionHandler handler) {
+            this.is = new ThrottledInputStream(new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    return 0;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return len;
+                }
+            });
+            this.is.setHandler(handler);
+        }
+
+        @Override
+        public void run() {
+            final byte[] buffer = new byte[32 * 1024];
+            try {
+                while (this.running) {
+                    this.is.read(buffer, 0, buffer.length);
+                }
+                this.is.close();
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void check(final String what, final long value, final long expected, final int tolerance) {
+        System.out.println(what + ": " + value + " expected " + expected);
+        if (Math.abs(value - expected) > expected * tolerance / 100) {
+            throw new WTFException(what + ": " + value + " expected " + expected);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final TokenBucket global = new TokenBucket(null, 200 * 1024);
+        final TokenBucketThrottledConnectionHandler groupA = new TokenBucketThrottledConnectionHandler("A", global);
+        final TokenBucketThrottledConnectionHandler groupB = new TokenBucketThrottledConnectionHandler("B", global);
+        groupB.setLimit(50 * 1024);
+        final List<Reader> readers = new ArrayList<Reader>();
+        for (int i = 0; i < 3; i++) {
+            readers.add(new Reader(groupA));
+        }
+        readers.add(new Reader(groupB));
+        for (final Reader reader : readers) {
+            reader.start();
+        }
+        /* skip the initial bursts */
+        Thread.sleep(500);
+        final long startTotal = global.getConsumed();
+        final long startA = groupA.getTraffic();
+        final long startB = groupB.getTraffic();
+        final long[] perConnection = new long[readers.size()];
+        for (int i = 0; i < readers.size(); i++) {
+            perConnection[i] = -readers.get(i).is.transfered();
+        }
+        final int seconds = 3;
+        Thread.sleep(seconds * 1000);
+        final long total = global.getConsumed() - startTotal;
+        final long trafficA = groupA.getTraffic() - startA;
+        final long trafficB = groupB.getTraffic() - startB;
+        for (int i = 0; i < readers.size(); i++) {
+            perConnection[i] += readers.get(i).is.transfered();
+        }
+        for (final Reader reader : readers) {
+            reader.running = false;
+        }
+        for (final Reader reader : readers) {
+            reader.join(5000);
+        }
+        check("global", total, seconds * 200 * 1024, 10);
+        check("group B", trafficB, seconds * 50 * 1024, 10);
+        check("group A", trafficA, seconds * 150 * 1024, 10);
+        for (int i = 0; i < 3; i++) {
+            /* connections of the unlimited group share its part by taking turns */
+            check("connection " + i, perConnection[i], seconds * 50 * 1024, 40);
+        }
+        if (groupA.size() != 0 || groupB.size() != 0 || global.getChildren() != 2) {
+            throw new WTFException("connections not removed: " + groupA + "/" + groupB);
+        }
+        System.out.println("SUCCESSFUL");
+    }
+}
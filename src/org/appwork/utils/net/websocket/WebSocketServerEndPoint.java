@@ -0,0 +1,172 @@
+package org.appwork.utils.net.websocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.net.protocol.http.HTTPConstants;
+import org.appwork.utils.StringUtils;
+import org.appwork.utils.encoding.Base64;
+import org.appwork.utils.net.HeaderCollection;
+import org.appwork.utils.net.websocket.WebSocketFrameHeader.OP_CODE;
+
+/**
+ * server side of a websocket connection. frames sent by a server must not be masked (https://tools.ietf.org/html/rfc6455#section-5.1),
+ * writing is synchronized so a reader may answer pings while another thread pushes data. for channel based sockets the frames are written
+ * to the channel directly, because the socket adaptor streams share one lock and a blocked read would block every write
+ *
+ * @author thomas
+ *
+ */
+public class WebSocketServerEndPoint extends WebSocketEndPoint {
+    public static final String  HEADER_SEC_WEBSOCKET_KEY    = "Sec-WebSocket-Key";
+    public static final String  HEADER_SEC_WEBSOCKET_ACCEPT = "Sec-WebSocket-Accept";
+    // https://tools.ietf.org/html/rfc6455#section-1.3
+    private static final String MAGIC                       = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private final InputStream   is;
+    private final OutputStream  os;
+    private final SocketChannel channel;
+    private volatile boolean    closed                      = false;
+
+    public WebSocketServerEndPoint(final InputStream is, final OutputStream os) {
+        this(is, os, null);
+    }
+
+    /**
+     * @param channel
+     *            optional, must be in blocking mode and os must have been flushed
+     */
+    public WebSocketServerEndPoint(final InputStream is, final OutputStream os, final SocketChannel channel) {
+        this.is = is;
+        this.os = os;
+        this.channel = channel;
+    }
+
+    /**
+     * @return true if the request headers ask for a websocket upgrade
+     */
+    public static boolean isUpgradeRequest(final HeaderCollection requestHeaders) {
+        return "websocket".equalsIgnoreCase(requestHeaders.getValue(HTTPConstants.HEADER_REQUEST_UPGRADE)) && StringUtils.isNotEmpty(requestHeaders.getValue(HEADER_SEC_WEBSOCKET_KEY));
+    }
+
+    /**
+     * https://tools.ietf.org/html/rfc6455#section-4.2.2
+     *
+     * @param key
+     *            value of the Sec-WebSocket-Key request header
+     * @return value of the Sec-WebSocket-Accept response header
+     */
+    public static String buildAcceptKey(final String key) {
+        try {
+            final MessageDigest md = MessageDigest.getInstance("SHA-1");
+            return Base64.encodeToString(md.digest((key.trim() + MAGIC).getBytes("ISO-8859-1")), false);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new WTFException(e);
+        } catch (final IOException e) {
+            throw new WTFException(e);
+        }
+    }
+
+    @Override
+    public byte[] nextMask() {
+        return null;
+    }
+
+    @Override
+    public WriteWebSocketFrame buildPongFrame(final ReadWebSocketFrame ping) {
+        if (OP_CODE.PING.equals(ping.getOpCode())) {
+            if (ping.hasPayLoad()) {
+                return new WriteWebSocketFrame(new WebSocketFrameHeader(true, OP_CODE.PONG, ping.getPayloadLength()), ping.getPayload());
+            } else {
+                return new WriteWebSocketFrame(new WebSocketFrameHeader(true, OP_CODE.PONG, 0));
+            }
+        } else {
+            throw new IllegalArgumentException("Wrong OpCode:" + ping.getOpCode());
+        }
+    }
+
+    public WriteWebSocketFrame buildUTF8TextFrame(final byte[] utf8) {
+        return new WriteWebSocketFrame(new WebSocketFrameHeader(true, OP_CODE.UTF8_TEXT, utf8.length), utf8);
+    }
+
+    @Override
+    public WriteWebSocketFrame buildUTF8TextFrame(final String text) {
+        return this.buildUTF8TextFrame(text.getBytes(Charset.forName("UTF-8")));
+    }
+
+    @Override
+    public synchronized void writeFrame(final WriteWebSocketFrame webSocketFrame) throws IOException {
+        if (this.channel == null) {
+            super.writeFrame(webSocketFrame);
+            this.os.flush();
+        } else {
+            this.log(webSocketFrame);
+            final ByteBuffer[] buffers;
+            if (webSocketFrame.hasPayLoad()) {
+                buffers = new ByteBuffer[] { ByteBuffer.wrap(webSocketFrame.getHeader()), ByteBuffer.wrap(webSocketFrame.getPayload()) };
+            } else {
+                buffers = new ByteBuffer[] { ByteBuffer.wrap(webSocketFrame.getHeader()) };
+            }
+            while (buffers[buffers.length - 1].hasRemaining()) {
+                this.channel.write(buffers);
+            }
+        }
+    }
+
+    @Override
+    protected void onOpCode_Ping(final ReadWebSocketFrame ping) throws IOException {
+        this.writeFrame(this.buildPongFrame(ping));
+    }
+
+    @Override
+    protected void onOpCode_Close(final ReadWebSocketFrame close) throws IOException {
+        this.close();
+    }
+
+    /**
+     * sends a close frame once, the connection itself is closed by the http server
+     */
+    public void close() throws IOException {
+        if (!this.closed) {
+            this.closed = true;
+            this.writeFrame(this.buildCloseFrame());
+        }
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * reads and handles frames until a close frame was sent or received, a broken connection counts as closed
+     */
+    public void readFrames() throws IOException {
+        try {
+            while (!this.closed) {
+                this.readNextFrame();
+            }
+        } finally {
+            this.closed = true;
+        }
+    }
+
+    @Override
+    protected void log(final WebSocketFrame webSocketFrame) {
+    }
+
+    @Override
+    protected InputStream getInputStream() throws IOException {
+        return this.is;
+    }
+
+    @Override
+    protected OutputStream getOutputStream() throws IOException {
+        return this.os;
+    }
+}
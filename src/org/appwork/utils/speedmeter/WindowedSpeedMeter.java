@@ -0,0 +1,179 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.speedmeter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * lock-free SpeedMeterInterface. bytes are counted in a time wheel of slots, every slot has striped counters so concurrent putBytes calls
+ * do not contend on one cache line. getValue sums the slots of the window, optionally weighted with an exponential decay (EWMA) so recent
+ * slots count more.
+ *
+ * the time of putBytes is ignored, bytes are put into the slot of the current time.
+ *
+ * @author thomas
+ *
+ */
+public class WindowedSpeedMeter implements SpeedMeterInterface {
+    /* one counter per 64 byte cache line */
+    private static final int      PADDING = 8;
+    private final Resolution      resolution;
+    private final int             slots;
+    private final long            slotNanos;
+    private final double          decay;
+    private final int             stripeMask;
+    /* slot number (time/slotNanos) that each slot currently counts */
+    private final AtomicLongArray epochs;
+    private final AtomicLongArray counters;
+    private volatile long         start;
+
+    /**
+     * 5 seconds window with 10 slots, no decay
+     */
+    public WindowedSpeedMeter() {
+        this(5000, 10, 1.0d);
+    }
+
+    /**
+     * @param windowMillis
+     *            time window of getValue
+     * @param slots
+     *            number of slots in the window
+     * @param decay
+     *            weight factor per slot age, 1.0 = plain average over the window, smaller values (eg 0.7) prefer recent slots
+     */
+    public WindowedSpeedMeter(final long windowMillis, final int slots, final double decay) {
+        this(windowMillis, slots, decay, Resolution.MILLI_SECONDS);
+    }
+
+    public WindowedSpeedMeter(final long windowMillis, final int slots, final double decay, final Resolution resolution) {
+        if (resolution == null) {
+            throw new IllegalArgumentException("Resolution is null!");
+        }
+        if (slots < 1 || windowMillis < slots) {
+            throw new IllegalArgumentException("invalid window " + windowMillis + "/" + slots);
+        }
+        if (decay <= 0 || decay > 1) {
+            throw new IllegalArgumentException("decay must be in (0,1]: " + decay);
+        }
+        this.resolution = resolution;
+        this.slots = slots;
+        this.slotNanos = windowMillis * 1000000l / slots;
+        this.decay = decay;
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() && stripes < 8) {
+            stripes <<= 1;
+        }
+        this.stripeMask = stripes - 1;
+        this.epochs = new AtomicLongArray(slots);
+        this.counters = new AtomicLongArray(slots * stripes * PADDING);
+        this.resetSpeedmeter();
+    }
+
+    @Override
+    public Resolution getResolution() {
+        return this.resolution;
+    }
+
+    /**
+     * @return slot of the given epoch, reset if it still counts an older epoch
+     */
+    private int getSlot(final long epoch) {
+        final int slot = (int) (epoch % this.slots);
+        final long current = this.epochs.get(slot);
+        if (current < epoch && this.epochs.compareAndSet(slot, current, epoch)) {
+            /* bytes added by other threads between the CAS and the reset are lost, the meter is an estimation anyway */
+            final int stripes = this.stripeMask + 1;
+            for (int stripe = 0; stripe < stripes; stripe++) {
+                this.counters.set((slot * stripes + stripe) * PADDING, 0);
+            }
+        }
+        return slot;
+    }
+
+    @Override
+    public void putBytes(final long bytes, final long time) {
+        if (bytes <= 0) {
+            return;
+        }
+        final long epoch = (System.nanoTime() - this.start) / this.slotNanos;
+        final int slot = this.getSlot(epoch);
+        final int stripe = (int) Thread.currentThread().getId() & this.stripeMask;
+        this.counters.addAndGet((slot * (this.stripeMask + 1) + stripe) * PADDING, bytes);
+    }
+
+    @Override
+    public long getValue(final Resolution requestedResolution) {
+        final long elapsed = System.nanoTime() - this.start;
+        if (elapsed < this.slotNanos) {
+            return 0;
+        }
+        final long epoch = elapsed / this.slotNanos;
+        final long inCurrentSlot = elapsed - epoch * this.slotNanos;
+        final int stripes = this.stripeMask + 1;
+        double bytes = 0;
+        double nanos = 0;
+        double weight = 1.0d;
+        for (int age = 0; age < this.slots && age <= epoch; age++) {
+            final int slot = (int) ((epoch - age) % this.slots);
+            /* the current slot is only partly over */
+            final long duration = age == 0 ? inCurrentSlot : this.slotNanos;
+            if (this.epochs.get(slot) == epoch - age) {
+                long sum = 0;
+                for (int stripe = 0; stripe < stripes; stripe++) {
+                    sum += this.counters.get((slot * stripes + stripe) * PADDING);
+                }
+                bytes += weight * sum;
+            }
+            nanos += weight * duration;
+            weight *= this.decay;
+        }
+        if (nanos <= 0) {
+            return 0;
+        }
+        /* bytes per 1/factor seconds */
+        return (long) (bytes * 1000000000l / nanos / requestedResolution.factor);
+    }
+
+    @Override
+    public void resetSpeedmeter() {
+        for (int i = 0; i < this.slots; i++) {
+            this.epochs.set(i, -1);
+        }
+        for (int i = 0; i < this.counters.length(); i++) {
+            this.counters.set(i, 0);
+        }
+        this.start = System.nanoTime();
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.speedmeter.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.utils.speedmeter.SpeedMeterInterface.Resolution;
+import org.appwork.utils.speedmeter.WindowedSpeedMeter;
+
+/**
+ * several threads put bytes into one meter, the window is larger than the runtime so the meter has to match the real average
+ *
+ * @author thomas
+ *
+ */
+public class WindowedSpeedMeterTest {
+    public static void main(String[] args) throws Exception {
+        final WindowedSpeedMeter meter = new WindowedSpeedMeter(10000, 20, 1.0d);
+        final AtomicLong total = new AtomicLong(0);
+        final long started = System.currentTimeMillis();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    while (System.currentTimeMillis() - started < 1500) {
+                        meter.putBytes(1000, 1);
+                        total.addAndGet(1000);
+                        try {
+                            Thread.sleep(1);
+                        } catch (final InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        final long speed = meter.getValue(Resolution.SECONDS);
+        final long expected = total.get() * 1000 / (System.currentTimeMillis() - started);
+        System.out.println(speed + " B/s, expected " + expected);
+        if (Math.abs(speed - expected) > expected / 10) {
+            throw new WTFException(speed + " B/s, expected " + expected);
+        }
+        /* the window keeps sliding after the first read, so both resolutions only match within the tolerance */
+        final long milli = meter.getValue(Resolution.MILLI_SECONDS);
+        if (Math.abs(milli * 1000 - speed) > speed / 10 + 1000) {
+            throw new WTFException("resolution: " + milli + " B/ms, " + speed + " B/s");
+        }
+        final WindowedSpeedMeter ewma = new WindowedSpeedMeter(1000, 10, 0.5d);
+        ewma.putBytes(100000, 1);
+        Thread.sleep(500);
+        final long old = ewma.getValue(Resolution.SECONDS);
+        for (int i = 0; i < 10; i++) {
+            ewma.putBytes(100000, 1);
+        }
+        Thread.sleep(120);
+        /* recent bytes count more than in a plain average */
+        if (ewma.getValue(Resolution.SECONDS) <= old * 4) {
+            throw new WTFException("ewma: " + old + " -> " + ewma.getValue(Resolution.SECONDS));
+        }
+        meter.resetSpeedmeter();
+        if (meter.getValue(Resolution.SECONDS) != 0) {
+            throw new WTFException("reset");
+        }
+        System.out.println("SUCCESSFUL");
+    }
+}
@@ -0,0 +1,362 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.zip;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * minimal zip writer (no zip64) that can copy the entries of an existing zip file raw, without inflating and deflating them again. new
+ * entries are deflated with a data descriptor, so the input is read only once.
+ *
+ * @author thomas
+ *
+ */
+public class ZipIORawWriter {
+    private static final int  LOCAL_HEADER       = 0x04034b50;
+    private static final int  DATA_DESCRIPTOR    = 0x08074b50;
+    private static final int  CENTRAL_HEADER     = 0x02014b50;
+    private static final int  END_OF_CENTRAL_DIR = 0x06054b50;
+    private static final int  FLAG_DESCRIPTOR    = 0x08;
+    private static final int  FLAG_UTF8          = 0x800;
+    private static final long MAX_32             = 0xffffffffl;
+
+    private static class Entry {
+        private byte[] name;
+        private int    flags;
+        private int    method;
+        private int    dosTime;
+        private long   crc;
+        private long   compressedSize;
+        private long   size;
+        private long   offset;
+    }
+
+    private final OutputStream     os;
+    private final ArrayList<Entry> entries = new ArrayList<Entry>();
+    private final byte[]           buf     = new byte[32767];
+    private final Deflater         deflater;
+    private long                   written = 0;
+    private boolean                closed  = false;
+
+    public ZipIORawWriter(final File zipFile, final int level) throws FileNotFoundException {
+        this(new BufferedOutputStream(new FileOutputStream(zipFile), 65536), level);
+    }
+
+    public ZipIORawWriter(final OutputStream os, final int level) {
+        this.os = os;
+        this.deflater = new Deflater(level, true);
+    }
+
+    /**
+     * deflates the file as new entry
+     */
+    public synchronized void addFile(final File file, final String name) throws IOException {
+        final InputStream is = new FileInputStream(file);
+        try {
+            this.addStream(is, name, file.lastModified());
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * deflates the stream as new entry. the stream is not closed
+     */
+    public synchronized void addStream(final InputStream is, final String name, final long time) throws IOException {
+        final Entry entry = new Entry();
+        entry.name = name.getBytes("UTF-8");
+        entry.flags = FLAG_UTF8 | FLAG_DESCRIPTOR;
+        entry.method = Deflater.DEFLATED;
+        entry.dosTime = toDosTime(time);
+        entry.offset = this.written;
+        this.writeLocalHeader(entry);
+        final CRC32 crc = new CRC32();
+        final byte[] out = new byte[this.buf.length];
+        this.deflater.reset();
+        int read;
+        while ((read = is.read(this.buf)) >= 0) {
+            if (read == 0) {
+                continue;
+            }
+            crc.update(this.buf, 0, read);
+            entry.size += read;
+            this.deflater.setInput(this.buf, 0, read);
+            while (!this.deflater.needsInput()) {
+                entry.compressedSize += this.write(out, this.deflater.deflate(out));
+            }
+        }
+        this.deflater.finish();
+        while (!this.deflater.finished()) {
+            entry.compressedSize += this.write(out, this.deflater.deflate(out));
+        }
+        if (entry.size > MAX_32 || entry.compressedSize > MAX_32) {
+            throw new ZipIOException("entry too large(no zip64 support): " + name);
+        }
+        entry.crc = crc.getValue();
+        this.writeInt(DATA_DESCRIPTOR);
+        this.writeInt(entry.crc);
+        this.writeInt(entry.compressedSize);
+        this.writeInt(entry.size);
+        this.entries.add(entry);
+    }
+
+    /**
+     * copies all entries of the zip file raw.
+     *
+     * @param prefix
+     *            prepended to the entry names, may be null
+     * @throws ZipIOException
+     *             if the zip cannot be copied raw(zip64, encrypted or broken file). all headers are checked before the first entry is
+     *             copied, so nothing has been written yet and the zip can be added in another way
+     */
+    public synchronized void addZip(final File zip, final String prefix) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(zip, "r");
+        try {
+            final ArrayList<Entry> source = readCentralDirectory(raf);
+            final long length = raf.length();
+            final long[] dataStarts = new long[source.size()];
+            final byte[] header = new byte[30];
+            for (int i = 0; i < dataStarts.length; i++) {
+                final Entry src = source.get(i);
+                if (src.offset + header.length > length) {
+                    throw new ZipIOException("invalid local header in " + zip);
+                }
+                raf.seek(src.offset);
+                raf.readFully(header);
+                if (readInt(header, 0) != LOCAL_HEADER) {
+                    throw new ZipIOException("invalid local header in " + zip);
+                }
+                dataStarts[i] = src.offset + 30 + readShort(header, 26) + readShort(header, 28);
+                if (dataStarts[i] + src.compressedSize > length) {
+                    throw new ZipIOException("unexpected end of " + zip);
+                }
+            }
+            final byte[] prefixBytes = prefix == null ? new byte[0] : prefix.getBytes("UTF-8");
+            for (int i = 0; i < dataStarts.length; i++) {
+                final Entry src = source.get(i);
+                final Entry entry = new Entry();
+                entry.name = new byte[prefixBytes.length + src.name.length];
+                System.arraycopy(prefixBytes, 0, entry.name, 0, prefixBytes.length);
+                System.arraycopy(src.name, 0, entry.name, prefixBytes.length, src.name.length);
+                entry.flags = src.flags & ~FLAG_DESCRIPTOR | FLAG_UTF8;
+                entry.method = src.method;
+                entry.dosTime = src.dosTime;
+                entry.crc = src.crc;
+                entry.compressedSize = src.compressedSize;
+                entry.size = src.size;
+                entry.offset = this.written;
+                this.writeLocalHeader(entry);
+                raf.seek(dataStarts[i]);
+                long left = src.compressedSize;
+                while (left > 0) {
+                    final int read = raf.read(this.buf, 0, (int) Math.min(this.buf.length, left));
+                    if (read < 0) {
+                        // not a ZipIOException: the output already contains a part of the zip, so it must not be added again
+                        throw new IOException(zip + " has been truncated while it was copied");
+                    }
+                    this.write(this.buf, read);
+                    left -= read;
+                }
+                this.entries.add(entry);
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            final long centralStart = this.written;
+            for (final Entry entry : this.entries) {
+                this.writeInt(CENTRAL_HEADER);
+                this.writeShort(20);
+                this.writeShort(20);
+                this.writeShort(entry.flags);
+                this.writeShort(entry.method);
+                this.writeInt(entry.dosTime);
+                this.writeInt(entry.crc);
+                this.writeInt(entry.compressedSize);
+                this.writeInt(entry.size);
+                this.writeShort(entry.name.length);
+                this.writeShort(0);
+                this.writeShort(0);
+                this.writeShort(0);
+                this.writeShort(0);
+                this.writeInt(0);
+                this.writeInt(entry.offset);
+                this.write(entry.name, entry.name.length);
+            }
+            final long centralSize = this.written - centralStart;
+            if (this.entries.size() > 0xffff || centralStart > MAX_32) {
+                throw new ZipIOException("zip too large(no zip64 support)");
+            }
+            this.writeInt(END_OF_CENTRAL_DIR);
+            this.writeShort(0);
+            this.writeShort(0);
+            this.writeShort(this.entries.size());
+            this.writeShort(this.entries.size());
+            this.writeInt(centralSize);
+            this.writeInt(centralStart);
+            this.writeShort(0);
+            this.os.flush();
+        } finally {
+            this.deflater.end();
+            this.os.close();
+        }
+    }
+
+    private void writeLocalHeader(final Entry entry) throws IOException {
+        if (entry.offset > MAX_32) {
+            throw new ZipIOException("zip too large(no zip64 support)");
+        }
+        final boolean descriptor = (entry.flags & FLAG_DESCRIPTOR) != 0;
+        this.writeInt(LOCAL_HEADER);
+        this.writeShort(20);
+        this.writeShort(entry.flags);
+        this.writeShort(entry.method);
+        this.writeInt(entry.dosTime);
+        this.writeInt(descriptor ? 0 : entry.crc);
+        this.writeInt(descriptor ? 0 : entry.compressedSize);
+        this.writeInt(descriptor ? 0 : entry.size);
+        this.writeShort(entry.name.length);
+        this.writeShort(0);
+        this.write(entry.name, entry.name.length);
+    }
+
+    private int write(final byte[] b, final int len) throws IOException {
+        if (len > 0) {
+            this.os.write(b, 0, len);
+            this.written += len;
+        }
+        return len;
+    }
+
+    private void writeShort(final int v) throws IOException {
+        this.os.write(v & 0xff);
+        this.os.write(v >>> 8 & 0xff);
+        this.written += 2;
+    }
+
+    private void writeInt(final long v) throws IOException {
+        this.writeShort((int) (v & 0xffff));
+        this.writeShort((int) (v >>> 16 & 0xffff));
+    }
+
+    private static ArrayList<Entry> readCentralDirectory(final RandomAccessFile raf) throws IOException {
+        final long length = raf.length();
+        final int tail = (int) Math.min(length, 0xffff + 22);
+        final byte[] end = new byte[tail];
+        raf.seek(length - tail);
+        raf.readFully(end);
+        int eocd = -1;
+        for (int i = tail - 22; i >= 0; i--) {
+            if (readInt(end, i) == END_OF_CENTRAL_DIR) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new ZipIOException("no end of central directory found");
+        }
+        final int count = readShort(end, eocd + 10);
+        final long size = readInt(end, eocd + 12) & MAX_32;
+        final long offset = readInt(end, eocd + 16) & MAX_32;
+        if (count == 0xffff || size == MAX_32 || offset == MAX_32 || offset + size > length) {
+            throw new ZipIOException("zip64 or invalid central directory");
+        }
+        final byte[] central = new byte[(int) size];
+        raf.seek(offset);
+        raf.readFully(central);
+        final ArrayList<Entry> ret = new ArrayList<Entry>(count);
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            if (pos + 46 > central.length || readInt(central, pos) != CENTRAL_HEADER) {
+                throw new ZipIOException("invalid central directory");
+            }
+            final Entry entry = new Entry();
+            entry.flags = readShort(central, pos + 8);
+            entry.method = readShort(central, pos + 10);
+            entry.dosTime = readInt(central, pos + 12);
+            entry.crc = readInt(central, pos + 16) & MAX_32;
+            entry.compressedSize = readInt(central, pos + 20) & MAX_32;
+            entry.size = readInt(central, pos + 24) & MAX_32;
+            final int nameLength = readShort(central, pos + 28);
+            final int extraLength = readShort(central, pos + 30);
+            final int commentLength = readShort(central, pos + 32);
+            entry.offset = readInt(central, pos + 42) & MAX_32;
+            if (entry.compressedSize == MAX_32 || entry.size == MAX_32 || entry.offset == MAX_32 || (entry.flags & 0x01) != 0) {
+                throw new ZipIOException("zip64 or encrypted entry");
+            }
+            entry.name = new byte[nameLength];
+            System.arraycopy(central, pos + 46, entry.name, 0, nameLength);
+            ret.add(entry);
+            pos += 46 + nameLength + extraLength + commentLength;
+        }
+        return ret;
+    }
+
+    private static int readShort(final byte[] b, final int off) {
+        return b[off] & 0xff | (b[off + 1] & 0xff) << 8;
+    }
+
+    private static int readInt(final byte[] b, final int off) {
+        return readShort(b, off) | readShort(b, off + 2) << 16;
+    }
+
+    private static int toDosTime(final long time) {
+        final Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        final int year = cal.get(Calendar.YEAR);
+        if (year < 1980) {
+            return 1 << 21 | 1 << 16;
+        }
+        return year - 1980 << 25 | cal.get(Calendar.MONTH) + 1 << 21 | cal.get(Calendar.DAY_OF_MONTH) << 16 | cal.get(Calendar.HOUR_OF_DAY) << 11 | cal.get(Calendar.MINUTE) << 5 | cal.get(Calendar.SECOND) >> 1;
+    }
+}
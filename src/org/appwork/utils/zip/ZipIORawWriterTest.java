@@ -0,0 +1,140 @@
+/**
+ * 
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany   
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ * 	
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header. 	
+ * 	
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the 
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ * 	
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.zip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.appwork.exceptions.WTFException;
+import org.appwork.utils.IO;
+
+/**
+ * a zip with a broken second local header must be rejected by {@link ZipIORawWriter#addZip(File, String)} before anything is written, so
+ * the caller can add it in another way without duplicate or orphaned entries
+ *
+ * @author thomas
+ *
+ */
+public class ZipIORawWriterTest {
+    private static String read(final InputStream is) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final byte[] buf = new byte[1024];
+        int read;
+        while ((read = is.read(buf)) >= 0) {
+            bos.write(buf, 0, read);
+        }
+        return new String(bos.toByteArray(), "UTF-8");
+    }
+
+    public static void main(String[] args) throws Exception {
+        final File source = File.createTempFile("zipIORawWriterTest", ".zip");
+        final File target = File.createTempFile("zipIORawWriterTest", ".zip");
+        try {
+            final ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(source));
+            for (final String name : new String[] { "a.txt", "b.txt" }) {
+                zos.putNextEntry(new ZipEntry(name));
+                zos.write(("content of " + name).getBytes("UTF-8"));
+                zos.closeEntry();
+            }
+            zos.close();
+            /* break the signature of the second local header */
+            final byte[] bytes = IO.readFile(source);
+            int headers = 0;
+            for (int i = 0; i < bytes.length - 3; i++) {
+                if (bytes[i] == 'P' && bytes[i + 1] == 'K' && bytes[i + 2] == 3 && bytes[i + 3] == 4 && ++headers == 2) {
+                    bytes[i + 2] = 0;
+                    break;
+                }
+            }
+            if (headers != 2) {
+                throw new WTFException("second local header not found");
+            }
+            source.delete();
+            IO.writeToFile(source, bytes, IO.SYNC.NONE);
+            final ZipIORawWriter writer = new ZipIORawWriter(target, 9);
+            writer.addStream(new ByteArrayInputStream("before".getBytes("UTF-8")), "before.txt", System.currentTimeMillis());
+            try {
+                writer.addZip(source, "broken/");
+                throw new WTFException("broken zip accepted");
+            } catch (final ZipIOException e) {
+                // expected
+            }
+            writer.addStream(new ByteArrayInputStream("after".getBytes("UTF-8")), "after.txt", System.currentTimeMillis());
+            writer.close();
+            final ArrayList<String> central = new ArrayList<String>();
+            final ZipFile zipFile = new ZipFile(target);
+            try {
+                final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    final ZipEntry entry = entries.nextElement();
+                    central.add(entry.getName() + "=" + read(zipFile.getInputStream(entry)));
+                }
+            } finally {
+                zipFile.close();
+            }
+            if (!central.toString().equals("[before.txt=before, after.txt=after]")) {
+                throw new WTFException("central directory: " + central);
+            }
+            /* no orphaned data between the entries */
+            final ArrayList<String> local = new ArrayList<String>();
+            final ZipInputStream zis = new ZipInputStream(new FileInputStream(target));
+            try {
+                ZipEntry entry;
+                while ((entry = zis.getNextEntry()) != null) {
+                    local.add(entry.getName() + "=" + read(zis));
+                }
+            } finally {
+                zis.close();
+            }
+            if (!local.equals(central)) {
+                throw new WTFException("local headers: " + local);
+            }
+            System.out.println("SUCCESSFUL");
+        } finally {
+            source.delete();
+            target.delete();
+        }
+    }
+}